@@ -51,6 +51,8 @@ public class ChainReplication extends Replica {
     private InetAddressAndPort successor;
     private InetAddressAndPort predecessor;
     private final Configuration configuration;
+    //client writes waiting at the head for the tail's acknowledgement.
+    private final RequestWaitingList requestWaitingList;
 
     // State
     private final Map<String, String> durableStore = new ConcurrentHashMap<>();
@@ -325,6 +327,8 @@ public class ChainReplication extends Replica {
                           InetAddressAndPort peerConnectionAddress,
                           List<InetAddressAndPort> peerAddresses) throws IOException {
         super(name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses);
+        this.requestWaitingList = new RequestWaitingList(clock);
+        requestWaitingList.registerMetrics(getMetrics(), "replica.requestWaitingList");
         this.configuration = new Configuration(peerAddresses);
         // Initialize version generator with node ID from peer address position
         int nodeId = configuration.replicaIndex(peerConnectionAddress);
@@ -1028,6 +1032,16 @@ public class ChainReplication extends Replica {
         return currentTerm;
     }
 
+    @Override
+    protected String describeRole() {
+        return String.valueOf(role);
+    }
+
+    @Override
+    protected long describeTerm() {
+        return currentTerm;
+    }
+
     public InetAddressAndPort getCurrentLeader() {
         return currentLeader;
     }
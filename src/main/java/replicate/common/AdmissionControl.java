@@ -0,0 +1,153 @@
+package replicate.common;
+
+import replicate.metrics.Counter;
+import replicate.metrics.MetricsRegistry;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control for the client requests of a Replica, opt-in with Config.withMaxQueuedClientRequests
+ * and Config.withMaxInflightQuorumRequests.
+ *
+ * Without it, every client request is queued on the unbounded queue of its update lane. Under overload
+ * the queue, and so the latency, grows till the requests time out, and the work done for them is wasted.
+ * With admission control, requests beyond the limits are rejected immediately with an OverloadedException,
+ * so clients can back off or try another node.
+ *
+ * Client requests wait in a bounded FIFO queue per lane. For each request, a pull task is queued on the lane,
+ * which runs the client request at the head of the queue. If peer messages were queued on the lane after
+ * the pull task, it goes back to the end of the lane queue once, so that peer messages, which complete the
+ * work already admitted, are handled before new client work.
+ *
+ *   client ──► [bounded client queue] ──► pull ─┐
+ *   peer   ─────────────────────────────────────┴──► update lane
+ */
+public class AdmissionControl {
+    private final int maxQueuedClientRequests;
+    private final int maxInflightQuorumRequests;
+    private final ExecutorService[] lanes;
+    private final Queue<Runnable>[] clientQueues;
+    private final AtomicInteger[] queuedPeerMessages;
+    private final AtomicInteger queuedClientRequests = new AtomicInteger();
+    private final AtomicInteger inflightQuorumRequests = new AtomicInteger();
+    private final Counter admitted = new Counter();
+    private final Counter rejectedQueueFull = new Counter();
+    private final Counter rejectedInflightQuorums = new Counter();
+    private final Counter rejectedLaneShutdown = new Counter();
+
+    public AdmissionControl(Config config, ExecutorService[] lanes) {
+        this.maxQueuedClientRequests = config.getMaxQueuedClientRequests();
+        this.maxInflightQuorumRequests = config.getMaxInflightQuorumRequests();
+        this.lanes = lanes;
+        this.clientQueues = new Queue[lanes.length];
+        this.queuedPeerMessages = new AtomicInteger[lanes.length];
+        for (int i = 0; i < lanes.length; i++) {
+            clientQueues[i] = new ConcurrentLinkedQueue<>();
+            queuedPeerMessages[i] = new AtomicInteger();
+        }
+    }
+
+    //Throws OverloadedException if the request is not admitted, also when the lane is shut down.
+    public void submitClientRequest(int lane, Runnable request) {
+        if (maxInflightQuorumRequests > 0 && inflightQuorumRequests.get() >= maxInflightQuorumRequests) {
+            rejectedInflightQuorums.increment();
+            throw new OverloadedException("Overloaded: " + inflightQuorumRequests.get() + " quorum requests in flight");
+        }
+        if (!tryReserveQueueSlot()) {
+            rejectedQueueFull.increment();
+            throw new OverloadedException("Overloaded: " + maxQueuedClientRequests + " client requests queued");
+        }
+        clientQueues[lane].add(request);
+        try {
+            lanes[lane].execute(new PullClientRequest(lane));
+        } catch (RejectedExecutionException e) {
+            //nothing would pull the request off the queue.
+            clientQueues[lane].remove(request);
+            queuedClientRequests.decrementAndGet();
+            rejectedLaneShutdown.increment();
+            throw new OverloadedException("Overloaded: update lane " + lane + " is shut down");
+        }
+        admitted.increment();
+    }
+
+    private boolean tryReserveQueueSlot() {
+        if (maxQueuedClientRequests <= 0) {
+            queuedClientRequests.incrementAndGet();
+            return true;
+        }
+        int queued;
+        do {
+            queued = queuedClientRequests.get();
+            if (queued >= maxQueuedClientRequests) {
+                return false;
+            }
+        } while (!queuedClientRequests.compareAndSet(queued, queued + 1));
+        return true;
+    }
+
+    //message should call peerMessageStarted when it runs. It is not wrapped to do that,
+    //to save an allocation for every peer message.
+    public void submitPeerMessage(int lane, Runnable message) {
+        queuedPeerMessages[lane].incrementAndGet();
+        try {
+            lanes[lane].execute(message);
+        } catch (RejectedExecutionException e) {
+            queuedPeerMessages[lane].decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void peerMessageStarted(int lane) {
+        queuedPeerMessages[lane].decrementAndGet();
+    }
+
+    //Quorum requests count as in flight till the quorum completes, successfully or not.
+    public void quorumStarted(AsyncQuorumCallback<?> callback) {
+        inflightQuorumRequests.incrementAndGet();
+        callback.getQuorumFuture().whenComplete((r, e) -> inflightQuorumRequests.decrementAndGet());
+    }
+
+    public int getQueuedClientRequests() {
+        return queuedClientRequests.get();
+    }
+
+    public int getInflightQuorumRequests() {
+        return inflightQuorumRequests.get();
+    }
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".queuedClientRequests", this::getQueuedClientRequests);
+        registry.gauge(prefix + ".inflightQuorumRequests", this::getInflightQuorumRequests);
+        registry.register(prefix + ".admitted", admitted);
+        registry.register(prefix + ".rejectedQueueFull", rejectedQueueFull);
+        registry.register(prefix + ".rejectedInflightQuorums", rejectedInflightQuorums);
+        registry.register(prefix + ".rejectedLaneShutdown", rejectedLaneShutdown);
+    }
+
+    //There is one pull task for each queued client request. They are interchangeable, each runs
+    //the request at the head of the queue, so client requests on a lane run in the order they were admitted.
+    private class PullClientRequest implements Runnable {
+        private final int lane;
+        private boolean yielded;
+
+        PullClientRequest(int lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            if (!yielded && queuedPeerMessages[lane].get() > 0) {
+                yielded = true;
+                lanes[lane].execute(this);
+                return;
+            }
+            Runnable request = clientQueues[lane].poll();
+            queuedClientRequests.decrementAndGet();
+            request.run();
+        }
+    }
+}
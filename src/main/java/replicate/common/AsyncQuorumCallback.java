@@ -12,13 +12,22 @@ import java.util.function.Predicate;
 
 /**
  * Completes the associated future once quorum predicate succeeds.
+ * Responses can arrive on different threads, e.g. errors are reported from the timer
+ * thread when requests expire, so the counts are updated under the callback's monitor.
+ * Responses arriving after the future is completed are ignored, so the map of responses
+ * the future completes with does not change afterwards.
+ * Replica cancels the requests still waiting for a response once the future completes.
  */
 public class AsyncQuorumCallback<T> implements RequestCallback<T> {
     private final int totalResponses;
+    private final int quorum;
     List<Exception> exceptions = new ArrayList<>();
     Map<InetAddressAndPort, T> responses = new HashMap<>();
     CompletableFuture<Map<InetAddressAndPort, T>> quorumFuture = new CompletableFuture<>();
     private Predicate<T> successCondition;
+    private int successfulResponses;
+    private int receivedResponses;
+    private boolean completed;
 
     public AsyncQuorumCallback(int totalResponses) {
         //This is default implementation. it's good to provide a specific quorum condition.
@@ -29,38 +38,60 @@ public class AsyncQuorumCallback<T> implements RequestCallback<T> {
         this.successCondition = successCondition;
         assert totalResponses > 0;
         this.totalResponses = totalResponses;
+        this.quorum = totalResponses / 2 + 1;
     }
 
-    private int majorityQuorum() {
-        return totalResponses / 2 + 1;
+    @Override
+    public void onResponse(T r, InetAddressAndPort fromAddress) {
+        boolean quorumSucceeded;
+        boolean allResponded;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            responses.put(fromAddress, r);
+            receivedResponses++;
+            if (successCondition.test(r)) {
+                successfulResponses++;
+            }
+            quorumSucceeded = successfulResponses >= quorum;
+            allResponded = receivedResponses == totalResponses;
+            completed = quorumSucceeded || allResponded;
+        }
+        complete(quorumSucceeded, allResponded);
     }
 
     @Override
-    public void onResponse(T r, InetAddressAndPort fromAddress) {
-        responses.put(fromAddress, r);
-        tryCompletingFuture();
+    public void onError(Exception e) {
+        boolean allResponded;
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            exceptions.add(e);
+            receivedResponses++;
+            allResponded = receivedResponses == totalResponses;
+            completed = allResponded;
+        }
+        complete(false, allResponded);
     }
 
-    private void tryCompletingFuture() {
-        if (quorumSucceeded(responses)) {
+    //The future is completed outside the monitor, as it runs the dependent stages.
+    private void complete(boolean quorumSucceeded, boolean allResponded) {
+        if (quorumSucceeded) {
             quorumFuture.complete(responses);
-            return;
-        }
-        if (responses.size() + exceptions.size() == totalResponses) {
+        } else if (allResponded) {
             quorumFuture.completeExceptionally(new RuntimeException("Quorum condition not met after " + totalResponses + " responses"));
         }
     }
 
-    private boolean quorumSucceeded(Map<InetAddressAndPort, T> r) {
-        return r.values()
-                .stream()
-                .filter(successCondition).count() >= majorityQuorum();
+    //whether the response counts towards the quorum.
+    public boolean isSuccess(T response) {
+        return successCondition.test(response);
     }
 
-    @Override
-    public void onError(Exception e) {
-        exceptions.add(e);
-        tryCompletingFuture();
+    public int getQuorum() {
+        return quorum;
     }
 
     public CompletableFuture<Map<InetAddressAndPort, T>> getQuorumFuture() {
@@ -1,9 +1,14 @@
 package replicate.common;
 
+import replicate.net.ListenerMode;
+import replicate.net.TransportType;
+
 import java.io.File;
 import java.time.Duration;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +28,32 @@ public class Config {
     private long followerTimeoutMs = 5000l;
     private boolean supportLogGroup = false;
     private boolean doAsyncRepair = false;
+    private int peerOutboundQueueSize = 1024;
+    private long peerConnectionIdleTimeoutMs = Duration.ofMinutes(5).toMillis();
+    private long peerBatchLingerMicros = 0;
+    private int peerMaxBatchBytes = 64 * 1024;
+    private int ioReactors = 1;
+    private ListenerMode listenerMode = ListenerMode.NIO;
+    private boolean loopbackSerialization = false;
+    //-Dreplicate.transport=netty runs every node, e.g. in the whole test suite, on Netty.
+    private TransportType transportType = TransportType.valueOf(System.getProperty("replicate.transport", "nio").toUpperCase());
+    private int connectionMaxOutboundMessages = 1024;
+    private long connectionWriteHighWatermarkBytes = 1024 * 1024;
+    private long connectionWriteLowWatermarkBytes = 256 * 1024;
+    private long requestTimeoutMs = 2000;
+    private int updateLanes = 1;
+    private boolean stagedPipeline = false;
+    private int stageThreads = 2;
+    private int stageQueueCapacity = 1024;
+    private int walMaxBatchEntries = 0;
+    private int maxQueuedClientRequests = 0;
+    private int maxInflightQuorumRequests = 0;
+    private boolean adaptiveTimeouts = false;
+    private boolean targetedQuorums = false;
+    private long minRequestTimeoutMs = 20;
+    private Long maxRequestTimeoutMs;
+    private Map<MessageId, Long> requestTimeoutsMs = new EnumMap<>(MessageId.class);
+    private ReplicaRuntime runtime = ReplicaRuntime.shared();
 
     public Config() {
         // Default constructor
@@ -172,4 +203,244 @@ public class Config {
     public void setOperationTimeoutMs(int operationTimeoutMs) {
         this.operationTimeoutMs = operationTimeoutMs;
     }
+
+    //Maximum messages waiting to be written to a single peer.
+    //Sends to a peer with a full queue fail immediately.
+    public int getPeerOutboundQueueSize() {
+        return peerOutboundQueueSize;
+    }
+
+    public Config withPeerOutboundQueueSize(int peerOutboundQueueSize) {
+        this.peerOutboundQueueSize = peerOutboundQueueSize;
+        return this;
+    }
+
+    //Connections to peers are closed if no message is sent for this long.
+    //They are reopened on the next message.
+    public long getPeerConnectionIdleTimeoutMs() {
+        return peerConnectionIdleTimeoutMs;
+    }
+
+    public Config withPeerConnectionIdleTimeoutMs(long peerConnectionIdleTimeoutMs) {
+        this.peerConnectionIdleTimeoutMs = peerConnectionIdleTimeoutMs;
+        return this;
+    }
+
+    //Messages queued for a peer are written together as a single batch of up to maxBatchBytes.
+    //With non-zero lingerMicros, writes wait for more messages to accumulate in the batch.
+    public Config withPeerBatching(long lingerMicros, int maxBatchBytes) {
+        this.peerBatchLingerMicros = lingerMicros;
+        this.peerMaxBatchBytes = maxBatchBytes;
+        return this;
+    }
+
+    public long getPeerBatchLingerMicros() {
+        return peerBatchLingerMicros;
+    }
+
+    public int getPeerMaxBatchBytes() {
+        return peerMaxBatchBytes;
+    }
+
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    public Config withTransportType(TransportType transportType) {
+        this.transportType = transportType;
+        return this;
+    }
+
+    //Loopback transport passes messages as objects, unless asked to serialize them.
+    public boolean isLoopbackSerialization() {
+        return loopbackSerialization;
+    }
+
+    public Config withLoopbackSerialization() {
+        this.loopbackSerialization = true;
+        return this;
+    }
+
+    //only used by the NIO transport.
+    public ListenerMode getListenerMode() {
+        return listenerMode;
+    }
+
+    public Config withListenerMode(ListenerMode listenerMode) {
+        this.listenerMode = listenerMode;
+        return this;
+    }
+
+    //Number of selector threads reading and writing the accepted connections of each listener.
+    public int getIoReactors() {
+        return ioReactors;
+    }
+
+    public Config withIoReactors(int ioReactors) {
+        this.ioReactors = ioReactors;
+        return this;
+    }
+
+    //Responses waiting to be written to a single connection.
+    //A connection with this many pending responses is closed.
+    public int getConnectionMaxOutboundMessages() {
+        return connectionMaxOutboundMessages;
+    }
+
+    public Config withConnectionMaxOutboundMessages(int connectionMaxOutboundMessages) {
+        this.connectionMaxOutboundMessages = connectionMaxOutboundMessages;
+        return this;
+    }
+
+    //Reads from a connection stop when more than highWatermarkBytes of responses are pending
+    //and resume once the pending bytes drop to lowWatermarkBytes.
+    public Config withConnectionWriteWatermarks(long lowWatermarkBytes, long highWatermarkBytes) {
+        this.connectionWriteLowWatermarkBytes = lowWatermarkBytes;
+        this.connectionWriteHighWatermarkBytes = highWatermarkBytes;
+        return this;
+    }
+
+    public long getConnectionWriteHighWatermarkBytes() {
+        return connectionWriteHighWatermarkBytes;
+    }
+
+    public long getConnectionWriteLowWatermarkBytes() {
+        return connectionWriteLowWatermarkBytes;
+    }
+
+    //Time to wait for the response from a peer, before the request fails with TimeoutException.
+    //Can be set per message type, e.g. longer for messages which need disk writes on the peer.
+    public Duration getRequestTimeout(MessageId messageId) {
+        return Duration.ofMillis(requestTimeoutsMs.getOrDefault(messageId, requestTimeoutMs));
+    }
+
+    public Config withRequestTimeoutMs(long requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+        return this;
+    }
+
+    public Config withRequestTimeoutMs(MessageId messageId, long requestTimeoutMs) {
+        this.requestTimeoutsMs.put(messageId, requestTimeoutMs);
+        return this;
+    }
+
+    //Single threaded lanes for handlers registered with a lane key. See Replica.
+    public int getUpdateLanes() {
+        return updateLanes;
+    }
+
+    public Config withUpdateLanes(int updateLanes) {
+        this.updateLanes = updateLanes;
+        return this;
+    }
+
+    //Decode and respond run on separate stages, with their own threads. See PipelineStage.
+    public boolean isStagedPipeline() {
+        return stagedPipeline;
+    }
+
+    public Config withStagedPipeline(int stageThreads) {
+        this.stagedPipeline = true;
+        this.stageThreads = stageThreads;
+        return this;
+    }
+
+    public int getStageThreads() {
+        return stageThreads;
+    }
+
+    //Submitting to a stage blocks once its queue has these many items.
+    public int getStageQueueCapacity() {
+        return stageQueueCapacity;
+    }
+
+    public Config withStageQueueCapacity(int stageQueueCapacity) {
+        this.stageQueueCapacity = stageQueueCapacity;
+        return this;
+    }
+
+    //Threads borrowed by the replica. All the replicas in a JVM share ReplicaRuntime.shared() by default.
+    public ReplicaRuntime getRuntime() {
+        return runtime;
+    }
+
+    public Config withRuntime(ReplicaRuntime runtime) {
+        this.runtime = runtime;
+        return this;
+    }
+
+    //WAL entries are written by a batching stage, with a single fsync for up to these many entries.
+    public boolean isWalBatching() {
+        return walMaxBatchEntries > 0;
+    }
+
+    public int getWalMaxBatchEntries() {
+        return walMaxBatchEntries;
+    }
+
+    public Config withWalBatching(int maxBatchEntries) {
+        this.walMaxBatchEntries = maxBatchEntries;
+        return this;
+    }
+
+    //Client requests are rejected as overloaded beyond these limits. 0 means no limit. See AdmissionControl.
+    public boolean isAdmissionControl() {
+        return maxQueuedClientRequests > 0 || maxInflightQuorumRequests > 0;
+    }
+
+    public int getMaxQueuedClientRequests() {
+        return maxQueuedClientRequests;
+    }
+
+    public Config withMaxQueuedClientRequests(int maxQueuedClientRequests) {
+        this.maxQueuedClientRequests = maxQueuedClientRequests;
+        return this;
+    }
+
+    public int getMaxInflightQuorumRequests() {
+        return maxInflightQuorumRequests;
+    }
+
+    public Config withMaxInflightQuorumRequests(int maxInflightQuorumRequests) {
+        this.maxInflightQuorumRequests = maxInflightQuorumRequests;
+        return this;
+    }
+
+    //Timeouts for requests to peers are estimated from the round trip times to each peer,
+    //between min and max request timeout. See RttEstimator.
+    public boolean isAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    public Config withAdaptiveTimeouts() {
+        this.adaptiveTimeouts = true;
+        return this;
+    }
+
+    public Config withAdaptiveTimeouts(long minRequestTimeoutMs, long maxRequestTimeoutMs) {
+        this.adaptiveTimeouts = true;
+        this.minRequestTimeoutMs = minRequestTimeoutMs;
+        this.maxRequestTimeoutMs = maxRequestTimeoutMs;
+        return this;
+    }
+
+    public Duration getMinRequestTimeout() {
+        return Duration.ofMillis(minRequestTimeoutMs);
+    }
+
+    //the request timeout, unless set explicitly.
+    public Duration getMaxRequestTimeout() {
+        return Duration.ofMillis(maxRequestTimeoutMs != null ? maxRequestTimeoutMs : requestTimeoutMs);
+    }
+
+    //Reads, version queries and paxos prepare are sent to the fastest quorum of replicas,
+    //with hedged requests to the others. See TargetedQuorum.
+    public boolean isTargetedQuorums() {
+        return targetedQuorums;
+    }
+
+    public Config withTargetedQuorums() {
+        this.targetedQuorums = true;
+        return this;
+    }
 }
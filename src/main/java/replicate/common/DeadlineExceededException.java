@@ -0,0 +1,10 @@
+package replicate.common;
+
+//Client request dropped without handling, as its deadline passed while it was queued.
+//Not an OverloadedException, so that clients and metrics can tell a late request from a rejected one.
+//No stack trace is captured, as the request is dropped the same way every time.
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(String message) {
+        super(message, null, false, false);
+    }
+}
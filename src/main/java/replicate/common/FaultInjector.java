@@ -0,0 +1,124 @@
+package replicate.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import replicate.net.InetAddressAndPort;
+import replicate.net.SendFailureHandler;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drop and delay rules used by tests to simulate network failures.
+ * Message counts for the 'after N messages' rules are taken from the per peer counters
+ * in Network, relative to the count when the rule was reset.
+ */
+class FaultInjector implements MessageInterceptor {
+    private static Logger logger = LogManager.getLogger(FaultInjector.class);
+
+    public static final int MESSAGE_DELAY = 1000;
+
+    private final Network network;
+    private final Set<InetAddressAndPort> dropRequestsTo = ConcurrentHashMap.newKeySet();
+    private final Map<InetAddressAndPort, Integer> dropAfter = new ConcurrentHashMap<>();
+    private final Map<InetAddressAndPort, Integer> delayMessagesAfter = new ConcurrentHashMap<>();
+    private final Map<InetAddressAndPort, Set<MessageId>> delayMessageTypes = new ConcurrentHashMap<>();
+    //no of messages sent to the peer when its count was last reset.
+    private final Map<InetAddressAndPort, Long> countBaseline = new ConcurrentHashMap<>();
+
+    //shared with other replicas, so it is not shut down with the network.
+    private final ScheduledExecutorService executor;
+    private volatile boolean shutdown;
+
+    FaultInjector(Network network, ScheduledExecutorService executor) {
+        this.network = network;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean beforeSend(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) throws IOException {
+        if (dropRequestsTo.contains(address) || noOfMessagesReachedLimit(address)) {
+            network.disconnect(address);
+            throw new IOException("Unable to connect to " + address);
+        }
+
+        if (shouldDelayMessagesOfType(address, message.getRequestId())
+                || shouldDelayMessagesTo(address)) {
+            sendAfterDelay(address, message, failureHandler, MESSAGE_DELAY);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean shouldDelayMessagesOfType(InetAddressAndPort address, int requestId) {
+        Set<MessageId> ids = delayMessageTypes.get(address);
+        return ids != null && ids.contains(MessageId.valueOf(requestId));
+    }
+
+    private boolean shouldDelayMessagesTo(InetAddressAndPort address) {
+        Integer delayAfterNRequests = delayMessagesAfter.get(address);
+        return delayAfterNRequests != null && noOfMessagesSentTo(address) >= delayAfterNRequests;
+    }
+
+    private boolean noOfMessagesReachedLimit(InetAddressAndPort address) {
+        Integer dropAfterMessages = dropAfter.get(address);
+        return dropAfterMessages != null && noOfMessagesSentTo(address) >= dropAfterMessages;
+    }
+
+    private long noOfMessagesSentTo(InetAddressAndPort address) {
+        return network.getMessagesSentTo(address) - countBaseline.getOrDefault(address, 0L);
+    }
+
+    private void resetMessageCount(InetAddressAndPort address) {
+        countBaseline.put(address, network.getMessagesSentTo(address));
+    }
+
+    private void sendAfterDelay(InetAddressAndPort address,
+                                RequestOrResponse message,
+                                SendFailureHandler failureHandler,
+                                long delay) {
+        executor.schedule(()->{
+            if (shutdown) {
+                return;
+            }
+            logger.info("Sending delayed message "
+                            + MessageId.valueOf(message.getRequestId())
+                    + " to address = " +
+                            address);
+            network.sendMessage(address, message, failureHandler);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void dropMessagesTo(InetAddressAndPort address) {
+        dropRequestsTo.add(address);
+    }
+
+    void reconnectTo(InetAddressAndPort address) {
+        dropRequestsTo.remove(address);
+        dropAfter.remove(address);
+        delayMessagesAfter.remove(address);
+        resetMessageCount(address); //also reset message counter to specific address.
+    }
+
+    void dropMessagesAfter(InetAddressAndPort address, int dropAfterNoOfMessages) {
+        resetMessageCount(address); //only count messages here after.
+        dropAfter.put(address, dropAfterNoOfMessages);
+    }
+
+    void addDelayForMessagesToAfterNMessages(InetAddressAndPort address, int noOfMessages) {
+        delayMessagesAfter.put(address, noOfMessages);
+    }
+
+    void addDelayForMessagesOfType(InetAddressAndPort address, MessageId messageId) {
+        delayMessageTypes.computeIfAbsent(address, a -> ConcurrentHashMap.newKeySet()).add(messageId);
+    }
+
+    //messages still waiting for their delay are dropped.
+    void shutdown() {
+        shutdown = true;
+    }
+}
@@ -3,7 +3,9 @@ package replicate.common;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.time.Duration;
 import java.util.concurrent.*;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
 
@@ -26,10 +28,26 @@ public class FutureUtils {
             int maxAttempts,
             final ScheduledExecutorService scheduledExecutor) {
 
+        return retryWithBackoff(operation, maxAttempts, attempt -> Duration.ofMillis(100), scheduledExecutor);
+    }
+
+    /**
+     * Retry the given operation after a random delay between 0 and the backoff for the attempt,
+     * e.g. derived from the round trip times to the peers. The randomness keeps competing
+     * proposers from retrying in lock step.
+     *
+     * @param maxBackoff max delay after the given failed attempt, starting with 1
+     */
+    public static <T> CompletableFuture<T> retryWithBackoff(
+            final Supplier<CompletableFuture<T>> operation,
+            int maxAttempts,
+            final IntFunction<Duration> maxBackoff,
+            final ScheduledExecutorService scheduledExecutor) {
+
         final CompletableFuture<T> resultFuture = new CompletableFuture<>();
 
         retryOperationWithRandomDelay(
-                resultFuture, operation, 1, maxAttempts, scheduledExecutor);
+                resultFuture, operation, 1, maxAttempts, maxBackoff, scheduledExecutor);
 
         return resultFuture;
     }
@@ -39,6 +57,7 @@ public class FutureUtils {
             final Supplier<CompletableFuture<T>> operation,
             int attempt,
             int maxAttempts,
+            final IntFunction<Duration> maxBackoff,
             final ScheduledExecutorService scheduledExecutor) {
         logger.info("Attempt " + attempt + " of maxAttemps " + maxAttempts);
         if (!resultFuture.isDone()) {
@@ -55,7 +74,7 @@ public class FutureUtils {
                                                 "Operation future was cancelled.", throwable));
                             } else {
                              if (maxAttempts > attempt) {
-                                    long retryDelayMillis = ThreadLocalRandom.current().nextInt(100);
+                                    long retryDelayMicros = ThreadLocalRandom.current().nextLong(Math.max(1, maxBackoff.apply(attempt).toNanos() / 1000));
                                     final ScheduledFuture<?> scheduledFuture =
                                             scheduledExecutor.schedule(
                                                     (Runnable)
@@ -65,9 +84,10 @@ public class FutureUtils {
                                                                             operation,
                                                                             attempt + 1,
                                                                             maxAttempts,
+                                                                            maxBackoff,
                                                                             scheduledExecutor),
-                                                    retryDelayMillis,
-                                                    TimeUnit.MILLISECONDS);
+                                                    retryDelayMicros,
+                                                    TimeUnit.MICROSECONDS);
 
                                     resultFuture.whenComplete(
                                             (innerT, innerThrowable) ->
@@ -14,18 +14,62 @@ import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
 import replicate.net.InetAddressAndPort;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 
 public class JsonSerDes {
+    //ObjectMappers are thread safe once configured, and expensive to create.
+    //Every message on the wire is serialized with these, so they are created once.
+    private static final ObjectMapper jsonWriter = createJsonWriter();
+    private static final ObjectMapper jsonReader = createJsonReader();
+    private static final ObjectMapper cborWriter = createCborWriter();
+    private static final ObjectMapper cborReader = createCborReader();
+
+    private static ObjectMapper createJsonWriter() {
+        var objectMapper = new ObjectMapper(new JsonFactory());
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        return objectMapper;
+    }
+
+    private static ObjectMapper createJsonReader() {
+        var objectMapper = new ObjectMapper(new JsonFactory());
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper
+                .registerModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT));
+        var module = new SimpleModule();
+        module.addKeyDeserializer(InetAddressAndPort.class, new InetAddressAndPortKeyDeserializer());
+        objectMapper.registerModule(module);
+        return objectMapper;
+    }
 
+    private static ObjectMapper createCborWriter() {
+        var objectMapper = new ObjectMapper(new CBORFactory());
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+        objectMapper.registerModule(new Jdk8Module());
+        return objectMapper;
+    }
 
+    private static ObjectMapper createCborReader() {
+        var objectMapper = new ObjectMapper(new CBORFactory());
+        objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
+        objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        objectMapper
+                .registerModule(new ParameterNamesModule(JsonCreator.Mode.PROPERTIES));
+        var module = new SimpleModule();
+        module.addKeyDeserializer(InetAddressAndPort.class, new InetAddressAndPortKeyDeserializer());
+        objectMapper.registerModule(module);
+        objectMapper.registerModule(new Jdk8Module());
+        objectMapper.setConstructorDetector(ConstructorDetector.USE_PROPERTIES_BASED);
+        return objectMapper;
+    }
 
     public static String toJson(Object obj) {
-        var objectMapper = new ObjectMapper(new JsonFactory());
         try {
-            objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-            objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-            return new String(objectMapper.writeValueAsBytes(obj));
+            return new String(jsonWriter.writeValueAsBytes(obj));
 
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
@@ -34,15 +78,7 @@ public class JsonSerDes {
 
     public static <T> T fromJson(byte[] json, Class<T> clazz) {
         try {
-            var objectMapper = new ObjectMapper(new JsonFactory());
-            objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-            objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            objectMapper
-                    .registerModule(new ParameterNamesModule(JsonCreator.Mode.DEFAULT));
-            var module = new SimpleModule();
-            module.addKeyDeserializer(InetAddressAndPort.class, new InetAddressAndPortKeyDeserializer());
-            objectMapper.registerModule(module);
-            return objectMapper.readValue(json, clazz);
+            return jsonReader.readValue(json, clazz);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -50,31 +86,36 @@ public class JsonSerDes {
     }
 
     public static byte[] serialize(Object obj) {
-        var objectMapper = new ObjectMapper(new CBORFactory());
         try {
-            objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-            objectMapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
-            objectMapper.registerModule(new Jdk8Module());
-            return objectMapper.writeValueAsBytes(obj);
+            return cborWriter.writeValueAsBytes(obj);
 
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
+    //Serializes straight into the stream, e.g. a pooled network buffer, without an intermediate byte array.
+    public static void serialize(Object obj, OutputStream out) {
+        try {
+            cborWriter.writeValue(out, obj);
+
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static <T> T deserialize(InputStream in, Class<T> clazz) {
+        try {
+            return cborReader.readValue(in, clazz);
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <T> T deserialize(byte[] json, Class<T> clazz) {
         try {
-            var objectMapper = new ObjectMapper(new CBORFactory());
-            objectMapper.setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY);
-            objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-            objectMapper
-                    .registerModule(new ParameterNamesModule(JsonCreator.Mode.PROPERTIES));
-            var module = new SimpleModule();
-            module.addKeyDeserializer(InetAddressAndPort.class, new InetAddressAndPortKeyDeserializer());
-            objectMapper.registerModule(module);
-            objectMapper.registerModule(new Jdk8Module());
-            objectMapper.setConstructorDetector(ConstructorDetector.USE_PROPERTIES_BASED);
-            return objectMapper.readValue(json, clazz);
+            return cborReader.readValue(json, clazz);
 
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -0,0 +1,259 @@
+package replicate.common;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the tasks of an update lane of a Replica one at a time, in the order they are executed.
+ * A lane has either a thread of its own, or runs on a pool shared with other lanes. A pooled lane
+ * is scheduled on the pool only while it has tasks, and gives the thread back after a batch of them,
+ * so a busy lane can not starve the others.
+ * Executing a task allocates only the queue node. A ScheduledThreadPoolExecutor wraps every task
+ * in a ScheduledFutureTask, even the ones without a delay, which is most of them.
+ * Delayed tasks, like the retries of FutureUtils.retryWithBackoff, wait on the timer, which then
+ * executes them on the lane. They are dropped once the lane is shut down.
+ * @see ReplicaRuntime#newLane
+ */
+public class LaneExecutor extends AbstractExecutorService implements ScheduledExecutorService {
+    private static final Logger logger = LogManager.getLogger(LaneExecutor.class);
+    //tasks a pooled lane runs before giving the thread to the other lanes.
+    private static final int BATCH_SIZE = 64;
+
+    private final String name;
+    private final ScheduledExecutorService timer;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    //tasks queued or running. The lane is scheduled when this goes up from 0.
+    private final AtomicInteger pending = new AtomicInteger();
+    //one of the two is set.
+    private final Thread thread;
+    private final Executor pool;
+    private final Runnable drainBatch = this::drainBatch;
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private volatile boolean shutdown;
+
+    //a lane with a thread of its own.
+    public LaneExecutor(String name, ScheduledExecutorService timer) {
+        this.name = name;
+        this.timer = timer;
+        this.pool = null;
+        this.thread = new Thread(this::runOnOwnThread, name);
+        this.thread.start();
+    }
+
+    //a lane sharing the threads of the pool with other lanes.
+    public LaneExecutor(String name, Executor pool, ScheduledExecutorService timer) {
+        this.name = name;
+        this.timer = timer;
+        this.pool = pool;
+        this.thread = null;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Objects.requireNonNull(task);
+        if (shutdown) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+        tasks.add(task);
+        if (pending.getAndIncrement() == 0) {
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            } else {
+                pool.execute(drainBatch);
+            }
+        }
+    }
+
+    private void runOnOwnThread() {
+        while (true) {
+            if (pending.get() == 0) {
+                if (shutdown) {
+                    break;
+                }
+                LockSupport.park(this);
+                continue;
+            }
+            runNext();
+        }
+        terminated.countDown();
+    }
+
+    private void drainBatch() {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (runNext() == 0) {
+                if (shutdown) {
+                    terminated.countDown();
+                }
+                return;
+            }
+        }
+        pool.execute(drainBatch);
+    }
+
+    //returns the no of tasks left.
+    private int runNext() {
+        Runnable task = tasks.poll();
+        //an interrupt meant for the previous task is not carried over, same as in a ThreadPoolExecutor.
+        Thread.interrupted();
+        try {
+            task.run();
+        } catch (Throwable t) {
+            logger.error(name + " task failed", t);
+        }
+        return pending.decrementAndGet();
+    }
+
+    //tasks waiting in the lane, including the one running.
+    public int getQueuedTasks() {
+        return pending.get();
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        } else if (pending.get() == 0) {
+            terminated.countDown();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> notRun = new ArrayList<>();
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            notRun.add(task);
+            if (pending.decrementAndGet() == 0 && thread == null) {
+                terminated.countDown();
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return notRun;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return terminated.getCount() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return terminated.await(timeout, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(Executors.callable(command, null), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return new DelayedTask<>(callable, System.nanoTime() + unit.toNanos(delay), 0).arm();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period should be positive, but was " + period);
+        }
+        return new DelayedTask<>(Executors.callable(command, null), System.nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period)).arm();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay should be positive, but was " + delay);
+        }
+        return new DelayedTask<>(Executors.callable(command, null), System.nanoTime() + unit.toNanos(initialDelay), -unit.toNanos(delay)).arm();
+    }
+
+    //Runs on the lane. Periodic tasks are armed on the timer again after every run.
+    private class DelayedTask<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+        //positive for a fixed rate, negative for a fixed delay and 0 for tasks which run once.
+        private final long periodNanos;
+        private volatile long triggerNanos;
+        private volatile ScheduledFuture<?> timeout;
+
+        DelayedTask(Callable<V> callable, long triggerNanos, long periodNanos) {
+            super(callable);
+            this.triggerNanos = triggerNanos;
+            this.periodNanos = periodNanos;
+        }
+
+        DelayedTask<V> arm() {
+            try {
+                timeout = timer.schedule(this::executeOnLane, triggerNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                //the runtime is shut down.
+                super.cancel(false);
+            }
+            return this;
+        }
+
+        private void executeOnLane() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                execute(this);
+            } catch (RejectedExecutionException e) {
+                //the lane is shut down.
+                super.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+                return;
+            }
+            if (runAndReset()) {
+                triggerNanos = periodNanos > 0 ? triggerNanos + periodNanos : System.nanoTime() - periodNanos;
+                arm();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            ScheduledFuture<?> timeout = this.timeout;
+            if (cancelled && timeout != null) {
+                timeout.cancel(false);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return periodNanos != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(triggerNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -1,8 +1,5 @@
 package replicate.common;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public enum MessageId {
     VoteRequest(0),
     VoteResponse(1),
@@ -69,10 +66,14 @@ public enum MessageId {
     ChainReadResponse(59),
     Recovery(63),
     RecoveryResponse(64),
-    CleanVersion(54);
+    CleanVersion(54),
+
+    //Served by every replica on its client port.
+    GetStats(65);
 
-    public static MessageId valueOf(Integer id) {
-        return map.get(id);
+    //called for every message read by the transports, so it is an array lookup, without boxing the id.
+    public static MessageId valueOf(int id) {
+        return id >= 0 && id < byId.length ? byId[id] : null;
     }
 
     int id;
@@ -84,10 +85,15 @@ public enum MessageId {
         return id;
     }
 
-    private static final Map<Integer, MessageId> map = new HashMap<>();
+    private static final MessageId[] byId;
     static {
-        for (MessageId pageType : MessageId.values()) {
-            map.put(pageType.id, pageType);
+        int maxId = 0;
+        for (MessageId messageId : MessageId.values()) {
+            maxId = Math.max(maxId, messageId.id);
+        }
+        byId = new MessageId[maxId + 1];
+        for (MessageId messageId : MessageId.values()) {
+            byId[messageId.id] = messageId;
         }
     }
 }
@@ -0,0 +1,19 @@
+package replicate.common;
+
+import replicate.net.InetAddressAndPort;
+import replicate.net.SendFailureHandler;
+
+import java.io.IOException;
+
+/**
+ * Hook on the send path of {@link Network}, used to inject faults like dropped or delayed messages.
+ * Interceptors are only invoked if at least one is installed, so sends in production don't pay for them.
+ */
+interface MessageInterceptor {
+    /**
+     * Returns true if the message should continue to the transport, false if the interceptor
+     * has taken over the message, for example to send it later.
+     * Throwing IOException fails the send as if the peer was unreachable.
+     */
+    boolean beforeSend(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) throws IOException;
+}
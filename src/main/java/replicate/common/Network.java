@@ -1,161 +1,134 @@
 package replicate.common;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
+import replicate.net.ConnectionStats;
 import replicate.net.InetAddressAndPort;
-import replicate.net.SocketClient;
-import replicate.quorum.QuorumKVStore;
+import replicate.net.SendFailureHandler;
+import replicate.net.Transport;
+import replicate.metrics.Counter;
+import replicate.metrics.MetricsRegistry;
 
 import java.io.IOException;
-import java.util.*;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 class Network {
-    private static Logger logger = LogManager.getLogger(Network.class);
-
-    public static final int MESSAGE_DELAY = 1000;
-
-    List<InetAddressAndPort> dropRequestsTo = new ArrayList<>();
-    Map<InetAddressAndPort, Integer> noOfMessages = new HashMap<>();
-    Map<InetAddressAndPort, Integer> dropAfter = new HashMap<>();
-    Map<InetAddressAndPort, Integer> delayMessagesAfter = new HashMap<>();
-    Map<InetAddressAndPort, Set<MessageId>> delayMessageTypes =
-            new HashMap<>();
-
-    ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
-    public void sendOneWay(InetAddressAndPort address, RequestOrResponse message) throws IOException {
-        if (dropRequestsTo.contains(address) || noOfMessagesReachedLimit(address)) {
-            removeExistingConnections(address);
-            throw new IOException("Unable to connect to " + address);
-        }
+    private static final MessageInterceptor[] NO_INTERCEPTORS = new MessageInterceptor[0];
+
+    //Sends are asynchronous. Messages are only queued by the transport for the destination.
+    private final Transport transport;
+    //Interceptors are installed only when tests configure fault rules.
+    //With none installed, a send is a single array length check in addition to the transport send.
+    private volatile MessageInterceptor[] interceptors = NO_INTERCEPTORS;
+    private FaultInjector faultInjector;
+    private final Map<InetAddressAndPort, Counter> messagesSent = new ConcurrentHashMap<>();
+    private final MetricsRegistry metrics;
+    private final ScheduledExecutorService scheduler;
+
+    public Network(Transport transport) {
+        this(transport, new MetricsRegistry());
+    }
 
-        if (shouldDelayMessagesOfType(address, MessageId.valueOf(message.getRequestId()))) {
-            sendAfterDelay(address, message, MESSAGE_DELAY);
-            return;
-        }
+    public Network(Transport transport, MetricsRegistry metrics) {
+        this(transport, metrics, ReplicaRuntime.shared().getScheduler());
+    }
 
-        if (shouldDelayMessagesTo(address)) {
-            sendAfterDelay(address, message, MESSAGE_DELAY);
-            return;
-        }
-        logger.info("Sending " + MessageId.valueOf(message.getRequestId()) +
-                " to " + address);
-        sendMessage(address, message);
+    //the scheduler delays the messages held back by the FaultInjector.
+    public Network(Transport transport, MetricsRegistry metrics, ScheduledExecutorService scheduler) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        transport.getConnectionStats().registerMetrics(metrics, "network.peerConnections");
     }
 
-    private boolean shouldDelayMessagesOfType(InetAddressAndPort address, MessageId messageId) {
-        Set<MessageId> ids = delayMessageTypes.getOrDefault(address,
-                new HashSet<>());
-        return ids.contains(messageId);
+    public ConnectionStats getConnectionStats() {
+        return transport.getConnectionStats();
     }
 
-    private void removeExistingConnections(InetAddressAndPort address) {
-        SocketClient socketClient = connectionPool.remove(address);
-        if (socketClient != null) {
-            socketClient.close();
+    //Failures to connect or write to the peer are reported to failureHandler asynchronously.
+    //IOException is thrown only if the messages to the address are configured to be dropped.
+    public void sendOneWay(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) throws IOException {
+        MessageInterceptor[] interceptors = this.interceptors;
+        if (interceptors.length != 0 && !intercept(interceptors, address, message, failureHandler)) {
+            return;
         }
+        sendMessage(address, message, failureHandler);
     }
 
-    private void sendAfterDelay(InetAddressAndPort address,
-                                RequestOrResponse message,
-                                long delay) {
-        executor.schedule(()->{
-            try {
-                logger.info("Sending delayed message "
-                                + MessageId.valueOf(message.getRequestId())
-                        + " to address = " +
-                                address);
-                sendMessage(address, message);
-            } catch (IOException e) {
-                e.printStackTrace();
+    private boolean intercept(MessageInterceptor[] interceptors, InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) throws IOException {
+        for (MessageInterceptor interceptor : interceptors) {
+            if (!interceptor.beforeSend(address, message, failureHandler)) {
+                return false;
             }
-        }, delay, TimeUnit.MILLISECONDS);
-    }
-
-    private boolean shouldDelayMessagesTo(InetAddressAndPort address) {
-        Integer delayAfterNRequests = delayMessagesAfter.get(address);
-        Integer noOfRequestsSent = noOfMessages.get(address);
-        if ((delayAfterNRequests == null) || (noOfRequestsSent == null)) {
-            return false;
         }
-        return noOfRequestsSent >= delayAfterNRequests;
+        return true;
     }
 
-    Map<InetAddressAndPort, SocketClient> connectionPool = new HashMap<>();
+    //Sends without going through the interceptors.
+    void sendMessage(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        transport.send(address, message, failureHandler);
+        messagesSentCounter(address).increment();
+    }
 
-    private void sendMessage(InetAddressAndPort address, RequestOrResponse message) throws IOException {
-        SocketClient socketClient = getOrCreateConnection(address);
-        socketClient.sendOneway(message);
-        Integer integer = noOfMessages.get(address);
-        if (integer == null) {
-            integer = 0;
+    private Counter messagesSentCounter(InetAddressAndPort address) {
+        Counter counter = messagesSent.get(address);
+        if (counter != null) {
+            return counter;
         }
-        noOfMessages.put(address, integer + 1);
+        return messagesSent.computeIfAbsent(address, a -> metrics.counter("network.messagesSent." + a));
     }
 
-    private RequestOrResponse sendAndReceive(InetAddressAndPort address, RequestOrResponse message) throws IOException {
-        SocketClient socketClient = getOrCreateConnection(address);
-        RequestOrResponse response = socketClient.blockingSend(message);
-        Integer integer = noOfMessages.get(address);
-        if (integer == null) {
-            integer = 0;
-        }
-        noOfMessages.put(address, integer + 1);
-        return response;
+    public long getMessagesSentTo(InetAddressAndPort address) {
+        Counter counter = messagesSent.get(address);
+        return counter == null ? 0 : counter.get();
     }
 
-    private synchronized SocketClient getOrCreateConnection(InetAddressAndPort address) throws IOException {
-        SocketClient socketClient = connectionPool.get(address);
-        if (socketClient == null || !socketClient.isClosed()) {
-            socketClient = new SocketClient(address);
-            connectionPool.put(address, socketClient);
-        }
-        return socketClient;
+    void disconnect(InetAddressAndPort address) {
+        transport.disconnect(address);
     }
 
-    private boolean noOfMessagesReachedLimit(InetAddressAndPort address) {
-        Integer dropAfterMessages = dropAfter.get(address);
-        Integer noOfMessages = this.noOfMessages.get(address);
-        return dropAfterMessages == null?false:(noOfMessages != null && noOfMessages >= dropAfterMessages);
+    public synchronized void addInterceptor(MessageInterceptor interceptor) {
+        MessageInterceptor[] newInterceptors = Arrays.copyOf(interceptors, interceptors.length + 1);
+        newInterceptors[interceptors.length] = interceptor;
+        interceptors = newInterceptors;
+    }
+
+    private synchronized FaultInjector faultInjector() {
+        if (faultInjector == null) {
+            faultInjector = new FaultInjector(this, scheduler);
+            addInterceptor(faultInjector);
+        }
+        return faultInjector;
     }
 
     public void dropMessagesTo(InetAddressAndPort address) {
-        dropRequestsTo.add(address);
+        faultInjector().dropMessagesTo(address);
     }
 
     public void reconnectTo(InetAddressAndPort address) {
-        dropRequestsTo.remove(address);
-        dropAfter.remove(address);
-        delayMessagesAfter.remove(address);
-        noOfMessages.remove(address); //also reset message counter to specific address.
+        faultInjector().reconnectTo(address);
     }
 
     public void dropMessagesAfter(InetAddressAndPort address, int dropAfterNoOfMessages) {
-        noOfMessages.remove(address); //only count messages here after.
-        dropAfter.put(address, dropAfterNoOfMessages);
+        faultInjector().dropMessagesAfter(address, dropAfterNoOfMessages);
     }
 
     public void addDelayForMessagesToAfterNMessages(InetAddressAndPort peerConnectionAddress, int noOfMessages) {
-        delayMessagesAfter.put(peerConnectionAddress, noOfMessages);
+        faultInjector().addDelayForMessagesToAfterNMessages(peerConnectionAddress, noOfMessages);
     }
 
     public void addDelayForMessagesOfType(InetAddressAndPort peerConnectionAddress,
                                           MessageId messageId) {
-        Set<MessageId> messageIds = delayMessageTypes.get(peerConnectionAddress);
-        if (messageIds == null) {
-            messageIds = new HashSet<>();
-        }
-        messageIds.add(messageId);
-        delayMessageTypes.put(peerConnectionAddress, messageIds);
+        faultInjector().addDelayForMessagesOfType(peerConnectionAddress, messageId);
     }
 
     public void closeAllConnections() {
-        Set<InetAddressAndPort> inetAddressAndPorts = connectionPool.keySet();
-        for (InetAddressAndPort inetAddressAndPort : inetAddressAndPorts) {
-            connectionPool.get(inetAddressAndPort).close();
+        synchronized (this) {
+            if (faultInjector != null) {
+                faultInjector.shutdown();
+            }
         }
-        connectionPool.clear();
+        transport.shutdown();
     }
 }
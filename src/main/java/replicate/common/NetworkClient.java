@@ -1,12 +1,35 @@
 package replicate.common;
 
 import replicate.net.InetAddressAndPort;
+import replicate.net.NetworkException;
+import replicate.net.PipelinedConnection;
 import replicate.net.SocketClient;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NetworkClient implements Closeable {
+    private final int connectionsPerAddress;
+    private final int maxInFlightPerConnection;
+    private final Map<InetAddressAndPort, ConnectionPool> pools = new ConcurrentHashMap<>();
+
+    public NetworkClient() {
+        this(1, 128);
+    }
+
+    //sendAsync spreads requests round-robin over connectionsPerAddress connections to each node,
+    //each with up to maxInFlightPerConnection requests waiting for responses.
+    public NetworkClient(int connectionsPerAddress, int maxInFlightPerConnection) {
+        this.connectionsPerAddress = connectionsPerAddress;
+        this.maxInFlightPerConnection = maxInFlightPerConnection;
+    }
 
-public class NetworkClient {
     public static class Response<T> {
         T result;
         Optional<String> errorMessage = Optional.empty();
@@ -54,4 +77,74 @@ public class NetworkClient {
             return Response.result(result);
         }
     }
+
+    //Sends the request on a pooled connection without waiting for the response.
+    //The connection stays open for later requests till the client is closed.
+    public <Req extends MessagePayload, Res> CompletableFuture<Response<Res>> sendAsync(Req request, InetAddressAndPort address, Class<Res> responseClass) {
+        return sendAsync(request, address, responseClass, Duration.ZERO);
+    }
+
+    //The deadline is sent with the request. The server responds with a "Deadline exceeded" error without handling
+    //the request, if the deadline passes while the request is queued. Requests rejected under load get an
+    //"Overloaded" error instead. Duration.ZERO means no deadline.
+    public <Req extends MessagePayload, Res> CompletableFuture<Response<Res>> sendAsync(Req request, InetAddressAndPort address, Class<Res> responseClass, Duration deadline) {
+        PipelinedConnection connection;
+        try {
+            connection = pools.computeIfAbsent(address, ConnectionPool::new).next();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new NetworkException("Could not connect to " + address, e));
+        }
+        return connection.send(request.getMessageId().getId(), JsonSerDes.serialize(request), (int) deadline.toMillis())
+                .thenApply(response -> toResponse(response, responseClass));
+    }
+
+    private static <Res> Response<Res> toResponse(RequestOrResponse response, Class<Res> responseClass) {
+        if (response.isError()) {
+            return Response.error(JsonSerDes.deserialize(response.getMessageBodyJson(), String.class));
+        }
+        return Response.result(JsonSerDes.deserialize(response.getMessageBodyJson(), responseClass));
+    }
+
+    @Override
+    public void close() {
+        for (ConnectionPool pool : pools.values()) {
+            pool.close();
+        }
+        pools.clear();
+    }
+
+    class ConnectionPool {
+        private final InetAddressAndPort address;
+        private final PipelinedConnection[] connections = new PipelinedConnection[connectionsPerAddress];
+        private final AtomicInteger next = new AtomicInteger();
+
+        ConnectionPool(InetAddressAndPort address) {
+            this.address = address;
+        }
+
+        PipelinedConnection next() throws IOException {
+            int index = Math.floorMod(next.getAndIncrement(), connections.length);
+            PipelinedConnection connection = connections[index];
+            if (connection != null && !connection.isClosed()) {
+                return connection;
+            }
+            synchronized (this) {
+                //closed connections are replaced on the next request that picks them.
+                connection = connections[index];
+                if (connection == null || connection.isClosed()) {
+                    connection = new PipelinedConnection(address, maxInFlightPerConnection);
+                    connections[index] = connection;
+                }
+                return connection;
+            }
+        }
+
+        synchronized void close() {
+            for (PipelinedConnection connection : connections) {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,9 @@
+package replicate.common;
+
+//Client request rejected by admission control. Requests whose deadline passed in the queue fail with DeadlineExceededException instead.
+//Thrown on every rejection under overload, so no stack trace is captured.
+public class OverloadedException extends RuntimeException {
+    public OverloadedException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,130 @@
+package replicate.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * A stage of a staged event-driven (SEDA) pipeline. Each stage has its own bounded queue
+ * and threads, so stages doing CPU work and stages doing disk or network IO overlap,
+ * and are sized separately.
+ *
+ *  decode ──[queue]──► apply ──[queue]──► wal ──[queue]──► respond
+ *
+ * When the queue is full, submit blocks, which pushes back on the previous stage
+ * rather than queuing without limit.
+ * Batching stages drain up to maxBatch items from the queue and hand them to the handler
+ * together, e.g. so that a single fsync covers many WAL entries.
+ */
+public class PipelineStage<T> implements Logging {
+    private final String name;
+    private final BlockingQueue<QueuedItem<T>> queue;
+    private final int maxBatch;
+    private final Consumer<List<T>> batchHandler;
+    private final List<Thread> workers = new ArrayList<>();
+    private final StageMetrics metrics;
+    private volatile boolean running = true;
+
+    public static <T> PipelineStage<T> of(String name, int threads, int capacity, Consumer<T> handler) {
+        return new PipelineStage<>(name, threads, capacity, 1, items -> {
+            for (T item : items) {
+                handler.accept(item);
+            }
+        });
+    }
+
+    //single threaded, so that the batches are handled in submission order.
+    public static <T> PipelineStage<T> batching(String name, int capacity, int maxBatch, Consumer<List<T>> batchHandler) {
+        return new PipelineStage<>(name, 1, capacity, maxBatch, batchHandler);
+    }
+
+    private PipelineStage(String name, int threads, int capacity, int maxBatch, Consumer<List<T>> batchHandler) {
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.batchHandler = batchHandler;
+        this.metrics = new StageMetrics(name, queue::size);
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::run, name + "-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    public void submit(T item) {
+        try {
+            queue.put(new QueuedItem<>(item, System.nanoTime()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while submitting to stage " + name, e);
+        }
+    }
+
+    private void run() {
+        List<QueuedItem<T>> drained = new ArrayList<>(maxBatch);
+        List<T> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                QueuedItem<T> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                drained.add(first);
+                queue.drainTo(drained, maxBatch - 1);
+                long start = System.nanoTime();
+                for (QueuedItem<T> queuedItem : drained) {
+                    metrics.recordQueueWait(start - queuedItem.enqueuedNanos);
+                    batch.add(queuedItem.item);
+                }
+                handle(batch);
+                metrics.recordService(batch.size(), System.nanoTime() - start);
+            } catch (InterruptedException e) {
+                //shutdown.
+            } finally {
+                drained.clear();
+                batch.clear();
+            }
+        }
+    }
+
+    private void handle(List<T> batch) {
+        try {
+            batchHandler.accept(batch);
+        } catch (Exception e) {
+            getLogger().error("Stage " + name + " failed to handle " + batch.size() + " items", e);
+        }
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private static class QueuedItem<T> {
+        final T item;
+        final long enqueuedNanos;
+
+        QueuedItem(T item, long enqueuedNanos) {
+            this.item = item;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
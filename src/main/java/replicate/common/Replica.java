@@ -3,16 +3,28 @@ package replicate.common;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import replicate.heartbeat.HeartBeatScheduler;
+import replicate.metrics.Counter;
+import replicate.metrics.Histogram;
+import replicate.metrics.MetricsRegistry;
+import replicate.metrics.messages.GetStatsRequest;
+import replicate.metrics.messages.StatsResponse;
 import replicate.net.ClientConnection;
+import replicate.net.ConnectionStats;
 import replicate.net.InetAddressAndPort;
-import replicate.net.NIOSocketListener;
+import replicate.net.NioTransport;
+import replicate.net.ReactorStats;
+import replicate.net.SendFailureHandler;
+import replicate.net.Transport;
+import replicate.net.requestwaitinglist.IntKeyedRequestWaitingList;
 import replicate.net.requestwaitinglist.RequestCallback;
-import replicate.net.requestwaitinglist.RequestWaitingList;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -29,21 +41,61 @@ import java.util.stream.Collectors;
 
 public abstract class Replica {
     private static Logger logger = LogManager.getLogger(Replica.class);
+    private static final Duration DEFAULT_RETRY_BACKOFF = Duration.ofMillis(100);
     private final Config config;
     private final String name;
-    private final NIOSocketListener peerListener;
-    private final NIOSocketListener clientListener;
+    private final Transport transport;
     private final InetAddressAndPort clientConnectionAddress;
     private final InetAddressAndPort peerConnectionAddress;
     private final Network network;
-    protected final RequestWaitingList requestWaitingList;
+    //callbacks for the requests sent to peers, waiting for the response with the same correlationId.
+    private final IntKeyedRequestWaitingList pendingResponses;
+    //Round trip times to each peer, measured on pendingResponses.
+    //With Config.withAdaptiveTimeouts, they give the timeouts for requests to the peer. Without it, the timeouts
+    //are fixed by Config.getRequestTimeout. With Config.withTargetedQuorums, they rank the peers for quorum requests.
+    private final RttEstimator rttEstimator;
+    //seeded randomly, so that responses to requests sent before a restart do not match new requests.
+    private final AtomicInteger nextCorrelationId = new AtomicInteger(ThreadLocalRandom.current().nextInt());
     protected SystemClock clock;
     private List<InetAddressAndPort> peerAddresses;
     private volatile long heartbeatReceivedNs = 0;
 
     //SingleThreaded executor used to execute all the state manipulation methods of replica, so that
     //all the state updates happen in a single thread, without needing any synchronization.
-    protected ScheduledExecutorService singularUpdateQueueExecutor = Executors.newSingleThreadScheduledExecutor();
+    protected final ScheduledExecutorService singularUpdateQueueExecutor;
+
+    //Handlers registered with a lane key run on one of these single threaded lanes, picked by the key.
+    //So the messages for a key are handled in order, while different keys are handled in parallel.
+    //Lane 0 is the singularUpdateQueueExecutor, which runs all the other handlers, so state
+    //which is not partitioned by key, like generation or heartbeats, is only updated on it.
+    //Opt-in with Config.withUpdateLanes. By default, there is only lane 0.
+    //Lanes have a thread each, unless the ReplicaRuntime shares a pool of threads among them.
+    private final LaneExecutor[] updateLanes;
+
+    //Bounds the client requests queued on the update lanes, and prioritises peer messages over them.
+    //Opt-in with Config.withMaxQueuedClientRequests or Config.withMaxInflightQuorumRequests.
+    //Without it, client requests are queued on the lanes without a limit.
+    private final AdmissionControl admissionControl;
+
+    //Staged pipeline for the request path, opt-in with Config.withStagedPipeline:
+    //  decode ──► apply (update lanes) ──► wal (DurableKVStore, with Config.withWalBatching) ──► respond
+    //Without it, messages are decoded on the transport threads, and responses are encoded
+    //on the thread completing the response.
+    //Transports hand over the messages of a connection in the order they were read, and decoding
+    //is partitioned by connection, so messages from a connection reach the update lanes in order.
+    private final PipelineStage<Runnable>[] decodeStages;
+    private final StageMetrics applyMetrics;
+    private final PipelineStage<AsyncStage<?>> respondStage;
+
+    //Pull with getMetrics().snapshot(). Components update their metrics directly.
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    //indexed by MessageId ordinal, created on the first quorum request of the type.
+    private final Histogram[] quorumLatency = new Histogram[MessageId.values().length];
+    private final long startedAtNanos = System.nanoTime();
+    //client requests dropped without handling, as their deadline passed while they were queued.
+    private final Counter deadlineExceeded = metrics.counter("replica.clientRequests.deadlineExceeded");
+    //duplicate requests sent by targeted quorums to replicas beyond the fastest quorum.
+    private final Counter hedgedRequests = metrics.counter("replica.targetedQuorum.hedges");
 
     public Replica(String name, Config config,
                    SystemClock clock,
@@ -51,18 +103,80 @@ public abstract class Replica {
                    InetAddressAndPort peerConnectionAddress,
                    List<InetAddressAndPort> peerAddresses) throws IOException {
         this.name = name;
-        this.network = new Network();
+        this.transport = Transport.create(config);
+        this.network = new Network(transport, metrics, config.getRuntime().getScheduler());
         this.config = config;
-        this.requestWaitingList = new RequestWaitingList(clock);
+        this.updateLanes = createUpdateLanes(config.getRuntime(), config.getUpdateLanes());
+        this.singularUpdateQueueExecutor = updateLanes[0];
+        this.heartBeatScheduler = new HeartBeatScheduler(this::sendHeartbeats, heartBeatInterval.toMillis(), config.getRuntime().getScheduler());
+        this.heartbeatChecker = new HeartBeatScheduler(this::checkLeader, heartbeatTimeout.toMillis(), config.getRuntime().getScheduler());
+        this.admissionControl = config.isAdmissionControl() ? new AdmissionControl(config, updateLanes) : null;
+        this.decodeStages = config.isStagedPipeline() ? createDecodeStages(config) : null;
+        this.applyMetrics = config.isStagedPipeline() ? new StageMetrics(name + "-apply", () -> Arrays.stream(getUpdateLaneQueueDepths()).sum()) : null;
+        this.respondStage = config.isStagedPipeline()
+                ? PipelineStage.of(name + "-respond", config.getStageThreads(), config.getStageQueueCapacity(), this::respond)
+                : null;
+        this.rttEstimator = config.isAdaptiveTimeouts() || config.isTargetedQuorums()
+                ? new RttEstimator(config.getMinRequestTimeout(), config.getMaxRequestTimeout(), Duration.ofNanos(HashedWheelTimer.shared().getTickNanos()), metrics)
+                : null;
+        this.pendingResponses = new IntKeyedRequestWaitingList(HashedWheelTimer.shared(), config.getMaxRequestTimeout(), rttEstimator);
         this.clock = clock;
         this.peerAddresses = peerAddresses;
         this.clientConnectionAddress = clientConnectionAddress;
         this.peerConnectionAddress = peerConnectionAddress;
-        this.peerListener = new NIOSocketListener(this::handlePeerMessage, peerConnectionAddress);
-        this.clientListener = new NIOSocketListener(this::handleClientRequest, clientConnectionAddress);
+        this.transport.listenForPeers(peerConnectionAddress, this::handlePeerMessage);
+        this.transport.listenForClients(clientConnectionAddress, this::handleClientRequest);
+        this.registerMetrics();
+        this.handlesRequestAsync(MessageId.GetStats, this::handleGetStats, GetStatsRequest.class);
         this.registerHandlers();
     }
 
+    private void registerMetrics() {
+        for (int i = 0; i < updateLanes.length; i++) {
+            LaneExecutor lane = updateLanes[i];
+            //lane 0 is the singularUpdateQueueExecutor.
+            metrics.gauge("replica.updateLane." + i + ".queueDepth", lane::getQueuedTasks);
+        }
+        //all the threads in the process, including the ones shared with other replicas.
+        metrics.gauge("process.threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        pendingResponses.registerMetrics(metrics, "replica.pendingResponses");
+        metrics.gauge("timer.pendingTimeouts", HashedWheelTimer.shared()::pendingTimeouts);
+        List<ReactorStats> clientReactorStats = getClientReactorStats();
+        for (int i = 0; i < clientReactorStats.size(); i++) {
+            clientReactorStats.get(i).registerMetrics(metrics, "transport.clientReactor." + i);
+        }
+        List<ReactorStats> peerReactorStats = getPeerReactorStats();
+        for (int i = 0; i < peerReactorStats.size(); i++) {
+            peerReactorStats.get(i).registerMetrics(metrics, "transport.peerReactor." + i);
+        }
+        for (StageMetrics stageMetrics : getPipelineMetrics()) {
+            stageMetrics.registerMetrics(metrics);
+        }
+        if (admissionControl != null) {
+            admissionControl.registerMetrics(metrics, "replica.admission");
+        }
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    //Runs on the singularUpdateQueueExecutor, so subclasses can read their role and term without races.
+    private CompletableFuture<StatsResponse> handleGetStats(GetStatsRequest request) {
+        long uptimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAtNanos);
+        return CompletableFuture.completedFuture(StatsResponse.of(getName(), describeRole(), describeTerm(), uptimeMs, metrics.snapshot()));
+    }
+
+    //Role reported in the stats, e.g. Leader or Follower. Overridden by implementations with roles.
+    protected String describeRole() {
+        return "Replica";
+    }
+
+    //Term, generation or view reported in the stats. Overridden by implementations which have one.
+    protected long describeTerm() {
+        return 0;
+    }
+
 
     //TODO: Make heartbeat intervals configurable.
     private final Duration heartBeatInterval = Duration.ofMillis(100l);
@@ -70,9 +184,8 @@ public abstract class Replica {
     /**
      * Following schedulers support implementing basic heartbeat mechanism.
      */
-    protected HeartBeatScheduler heartBeatScheduler = new HeartBeatScheduler(()->{
-        sendHeartbeats();
-    }, heartBeatInterval.toMillis());
+    //Run on the runtime's timer, shared with other replicas.
+    protected final HeartBeatScheduler heartBeatScheduler;
 
     //no-op. implemented by subclass implementations.
     protected void sendHeartbeats() {
@@ -81,9 +194,7 @@ public abstract class Replica {
 
     protected Duration heartbeatTimeout = Duration.ofMillis(heartBeatInterval.toMillis() * 5);
 
-    protected HeartBeatScheduler heartbeatChecker = new HeartBeatScheduler(()->{
-        checkLeader();
-    }, heartbeatTimeout.toMillis());
+    protected final HeartBeatScheduler heartbeatChecker;
 
     protected void checkLeader() {
         //no-op. implemented by implementations.
@@ -91,8 +202,7 @@ public abstract class Replica {
 
 
     public final void start() {
-        peerListener.start();
-        clientListener.start();
+        transport.start();
         onStart();
     }
 
@@ -103,11 +213,25 @@ public abstract class Replica {
 
     }
 
+    //Sends are asynchronous. Failure to deliver a message, for which a response message is expected,
+    //is reported to pendingResponses on the singularUpdateQueueExecutor, same as the responses.
+    private final SendFailureHandler failPendingRequest = this::failPendingRequest;
+    private final SendFailureHandler logOnewayFailure = this::logSendFailure;
+
+    private void failPendingRequest(RequestOrResponse request, Exception e) {
+        logSendFailure(request, e);
+        singularUpdateQueueExecutor.execute(() -> pendingResponses.handleError(request.getCorrelationId(), e));
+    }
+
+    private void logSendFailure(RequestOrResponse message, Exception e) {
+        logger.error("Communication failure sending " + MessageId.valueOf(message.getRequestId()) + " from " + getName() + ". " + e.getMessage());
+    }
+
     //Send message without expecting any messages as a response from the peer
     //@see sendRequestToReplicas which expects a message from the peer.
     protected <T extends MessagePayload> void sendOneway(InetAddressAndPort address, T request, int correlationId) {
         try {
-            network.sendOneWay(address, new RequestOrResponse(request.getMessageId().getId(), serialize(request), correlationId, getPeerConnectionAddress()));
+            network.sendOneWay(address, new RequestOrResponse(request.getMessageId().getId(), serialize(request), correlationId, getPeerConnectionAddress()), logOnewayFailure);
         } catch (IOException e) {
             logger.error("Communication failure sending request to " + address + " from " + getName());
         }
@@ -118,6 +242,10 @@ public abstract class Replica {
     //The response message types are configured to invoke responseMessageHandler which invokes the callback
     //@see responseMessageHandler
     public <T> void sendMessageToReplicas(RequestCallback callback, MessageId messageId, T requestToReplicas) {
+        recordQuorumLatency(callback, messageId);
+        if (admissionControl != null && callback instanceof AsyncQuorumCallback) {
+            admissionControl.quorumStarted((AsyncQuorumCallback<?>) callback);
+        }
         for (InetAddressAndPort replica : peerAddresses) {
             int correlationId = newCorrelationId();
             RequestOrResponse request = new RequestOrResponse(messageId.getId(), serialize(requestToReplicas), correlationId, getPeerConnectionAddress());
@@ -125,21 +253,124 @@ public abstract class Replica {
         }
     }
 
+    //For requests which only need a quorum of responses, like reads, version queries or paxos prepare.
+    //Sends the request only to the fastest quorum of replicas, as ranked by their round trip times,
+    //with hedged requests to the others if they are slow to respond. See TargetedQuorum.
+    //Without Config.withTargetedQuorums, sends to all the replicas, like sendMessageToReplicas.
+    public <R, T> void sendMessageToQuorum(AsyncQuorumCallback<R> callback, MessageId messageId, T requestToReplicas) {
+        if (!config.isTargetedQuorums()) {
+            sendMessageToReplicas(callback, messageId, requestToReplicas);
+            return;
+        }
+        recordQuorumLatency(callback, messageId);
+        if (admissionControl != null) {
+            admissionControl.quorumStarted(callback);
+        }
+        byte[] payload = serialize(requestToReplicas);
+        List<InetAddressAndPort> replicas = replicasByRoundTrip();
+        TargetedQuorum<R> targetedQuorum = new TargetedQuorum<>(callback, replicas, hedgeDelayNanos(replicas, callback.getQuorum()),
+                (replica, targetedCallback) -> sendMessageToReplica(targetedCallback, replica,
+                        new RequestOrResponse(messageId.getId(), payload, newCorrelationId(), getPeerConnectionAddress())),
+                hedgedRequests);
+        targetedQuorum.start();
+    }
+
+    //Replicas without a response yet sort first, so that they get measured.
+    private List<InetAddressAndPort> replicasByRoundTrip() {
+        List<InetAddressAndPort> replicas = new ArrayList<>(peerAddresses);
+        replicas.sort(Comparator.comparingLong(rttEstimator::getSmoothedRttNanos));
+        return replicas;
+    }
+
+    //By when the slowest replica of the quorum has responded to most requests.
+    private long hedgeDelayNanos(List<InetAddressAndPort> replicasByRoundTrip, int quorum) {
+        long hedgeDelay = 0;
+        for (int i = 0; i < quorum; i++) {
+            hedgeDelay = Math.max(hedgeDelay, rttEstimator.getHedgeDelayNanos(replicasByRoundTrip.get(i)));
+        }
+        return hedgeDelay == 0 ? config.getMinRequestTimeout().toNanos() : hedgeDelay;
+    }
+
     //Sends message to replica and expects that the replica will send back a message with the same correlationId.
-    //The message is kept waiting in the RequestWaitingList and expired if the replica fails to send message back.
+    //The message is kept waiting in pendingResponses and expired if the replica fails to send message back.
     public void sendMessageToReplica(RequestCallback callback, InetAddressAndPort replicaAddress, RequestOrResponse request) {
         try {
-            logger.debug(getName() + " Sending " + MessageId.valueOf(request.getRequestId()) + " to " + replicaAddress + " with CorrelationId:" + request.getCorrelationId());
-            requestWaitingList.add(request.getCorrelationId(), callback);
-            network.sendOneWay(replicaAddress, request);
+            MessageId messageId = MessageId.valueOf(request.getRequestId());
+            if (logger.isDebugEnabled()) {
+                logger.debug(getName() + " Sending " + messageId + " to " + replicaAddress + " with CorrelationId:" + request.getCorrelationId());
+            }
+            pendingResponses.add(request.getCorrelationId(), callback, requestTimeout(messageId, replicaAddress), replicaAddress);
+            cancelOnQuorumCompletion(callback, request.getCorrelationId());
+            network.sendOneWay(replicaAddress, request, failPendingRequest);
          } catch (IOException e) {
             logger.error("Communication failure sending request to " + replicaAddress + " from " + getName());
             //If communication fails, it should immidiately report it to the callback.
             //Otherwise if a quorum of replica could not be reached, the callback will never complete.
-            requestWaitingList.handleError(request.getCorrelationId(), e);
+            pendingResponses.handleError(request.getCorrelationId(), e);
          }
     }
 
+    private Duration requestTimeout(MessageId messageId, InetAddressAndPort replicaAddress) {
+        Duration configured = config.getRequestTimeout(messageId);
+        return config.isAdaptiveTimeouts() ? rttEstimator.timeout(replicaAddress, configured) : configured;
+    }
+
+    //Max delay before retrying a quorum operation, e.g. after a competing proposal, for FutureUtils.retryWithBackoff.
+    //With adaptive timeouts, the timeout of the slowest peer, doubled on every failed attempt.
+    //So retries are quick when the peers are, and back off when they are loaded.
+    //Peers without a round trip yet are left out, as their timeout is only the max. Without any, it starts from 100ms.
+    protected Duration retryBackoff(int attempt) {
+        if (!config.isAdaptiveTimeouts()) {
+            return DEFAULT_RETRY_BACKOFF;
+        }
+        Duration maxTimeout = config.getMaxRequestTimeout();
+        Duration slowest = null;
+        for (InetAddressAndPort peer : otherReplicas()) {
+            Duration timeout = rttEstimator.timeout(peer, null);
+            if (timeout != null && (slowest == null || timeout.compareTo(slowest) > 0)) {
+                slowest = timeout;
+            }
+        }
+        if (slowest == null) {
+            slowest = DEFAULT_RETRY_BACKOFF;
+        }
+        Duration backoff = slowest.multipliedBy(1L << Math.min(attempt - 1, 6));
+        return backoff.compareTo(maxTimeout) > 0 ? maxTimeout : backoff;
+    }
+
+    //null without Config.withAdaptiveTimeouts or Config.withTargetedQuorums.
+    public RttEstimator getRttEstimator() {
+        return rttEstimator;
+    }
+
+    //Once a quorum completes, responses to its outstanding requests are ignored.
+    //So they are removed from the waiting list, instead of waiting for a late response or expiry.
+    private void cancelOnQuorumCompletion(RequestCallback callback, int correlationId) {
+        if (callback instanceof AsyncQuorumCallback) {
+            ((AsyncQuorumCallback<?>) callback).getQuorumFuture().whenComplete((r, e) -> pendingResponses.cancel(correlationId));
+        } else if (callback instanceof TargetedQuorum) {
+            ((TargetedQuorum<?>) callback).getQuorumFuture().whenComplete((r, e) -> pendingResponses.cancel(correlationId));
+        }
+    }
+
+    private void recordQuorumLatency(RequestCallback callback, MessageId messageId) {
+        if (callback instanceof AsyncQuorumCallback) {
+            long start = System.nanoTime();
+            Histogram latency = quorumLatency(messageId);
+            ((AsyncQuorumCallback<?>) callback).getQuorumFuture().whenComplete((r, e) -> latency.record(System.nanoTime() - start));
+        }
+    }
+
+    private Histogram quorumLatency(MessageId messageId) {
+        Histogram latency = quorumLatency[messageId.ordinal()];
+        if (latency == null) {
+            //racing threads get the same histogram from the registry.
+            latency = metrics.histogram("quorum." + messageId + ".latencyNanos");
+            quorumLatency[messageId.ordinal()] = latency;
+        }
+        return latency;
+    }
+
     public <T extends MessagePayload> void sendOnewayMessageToReplicas(T requestToReplicas) {
         for (InetAddressAndPort replica : peerAddresses) {
             int correlationId = newCorrelationId();
@@ -158,20 +389,28 @@ public abstract class Replica {
         return peerAddresses.stream().filter(r -> !r.equals(peerConnectionAddress)).collect(Collectors.toList());
     }
 
-    final Map<MessageId, MessageHandler> handlers = new HashMap<>();
+    //indexed by MessageId.ordinal(), so dispatching a message is an array lookup.
+    private final MessageHandler<?>[] handlers = new MessageHandler<?>[MessageId.values().length];
 
     //handles messages sent by peers in the cluster in message passing style.
     //peer to peer communication happens on peerConnectionAddress
     public void handlePeerMessage(Message<RequestOrResponse> message)
     {
-        var messageHandler = handlers.get(message.getMessageId());
-        var deserializedRequest = deserialize(message.messagePayload(), messageHandler.requestClass);
-        singularUpdateQueueExecutor.submit(()->{
-            markHeartbeatReceived(); //TODO: Mark heartbeats in message handling explicitly. As this can be user request as well.
-            RequestOrResponse request = message.messagePayload();
-            MessageId key = MessageId.valueOf(request.getRequestId());
-            messageHandler.handler.apply(new Message<>(deserializedRequest, message.header));
-        });
+        if (decodeStages != null) {
+            decodeStageFor(message).submit(() -> dispatchPeerMessage(message));
+            return;
+        }
+        dispatchPeerMessage(message);
+    }
+
+    private void dispatchPeerMessage(Message<RequestOrResponse> message) {
+        PeerMessageTask<?> task = handlerFor(message).decodePeerMessage(message);
+        Runnable apply = timedApply(task);
+        if (admissionControl != null) {
+            admissionControl.submitPeerMessage(task.lane, apply);
+            return;
+        }
+        updateLanes[task.lane].execute(apply);
     }
 
     protected void markHeartbeatReceived() {
@@ -181,18 +420,85 @@ public abstract class Replica {
     //handles requests sent by clients of the cluster.
     //rpc requests are sent by clients on the clientConnectionAddress
     public void handleClientRequest(Message<RequestOrResponse> message) {
-        var messageHandler = handlers.get(message.getMessageId());
-        var deserializedRequest = deserialize(message.messagePayload(), messageHandler.requestClass);
-        singularUpdateQueueExecutor.submit(() -> {
-            RequestOrResponse request = message.messagePayload();
-            Function<Object, CompletableFuture<?>> handler = messageHandler.handler;
-            handler.apply(deserializedRequest)
-                    .whenComplete((response , throwable)-> {
-                        respondToClient(response, throwable, message.getCorrelationId(), message.getClientConnection(), request.getRequestId());
-                    });
-        });
-        ;
+        long receivedNanos = System.nanoTime();
+        if (decodeStages != null) {
+            decodeStageFor(message).submit(() -> dispatchClientRequest(message, receivedNanos));
+            return;
+        }
+        dispatchClientRequest(message, receivedNanos);
+    }
+
+    private void dispatchClientRequest(Message<RequestOrResponse> message, long receivedNanos) {
+        ClientRequestTask<?, ?> task = handlerFor(message).decodeClientRequest(message, receivedNanos);
+        Runnable apply = timedApply(task);
+        if (admissionControl == null) {
+            updateLanes[task.lane].execute(apply);
+            return;
+        }
+        try {
+            admissionControl.submitClientRequest(task.lane, apply);
+        } catch (OverloadedException e) {
+            task.respond(null, e);
+        }
+    }
+
+    private MessageHandler<?> handlerFor(Message<RequestOrResponse> message) {
+        MessageHandler<?> handler = handlers[message.getMessageId().ordinal()];
+        if (handler == null) {
+            throw new IllegalArgumentException(getName() + " has no handler for " + message.getMessageId());
+        }
+        return handler;
+    }
+
+    //called once the response future is complete.
+    private void respond(AsyncStage<?> stage) {
+        var message = stage.getMessage();
+        RequestOrResponse request = message.messagePayload();
+        stage.getResponse().whenComplete((response, throwable) ->
+                respondToClient(response, throwable, message.getCorrelationId(), message.getClientConnection(), request.getRequestId()));
+    }
 
+    private PipelineStage<Runnable>[] createDecodeStages(Config config) {
+        PipelineStage<Runnable>[] stages = new PipelineStage[config.getStageThreads()];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = PipelineStage.of(name + "-decode-" + i, 1, config.getStageQueueCapacity(), Runnable::run);
+        }
+        return stages;
+    }
+
+    private PipelineStage<Runnable> decodeStageFor(Message<RequestOrResponse> message) {
+        Object connection = message.getClientConnection() != null ? message.getClientConnection() : message.getFromAddress();
+        return decodeStages[Math.floorMod(Objects.hashCode(connection), decodeStages.length)];
+    }
+
+    private Runnable timedApply(Runnable apply) {
+        if (applyMetrics == null) {
+            return apply;
+        }
+        long submittedNanos = System.nanoTime();
+        return () -> {
+            long start = System.nanoTime();
+            applyMetrics.recordQueueWait(start - submittedNanos);
+            try {
+                apply.run();
+            } finally {
+                applyMetrics.recordService(1, System.nanoTime() - start);
+            }
+        };
+    }
+
+    //Latency and queue depth of each stage, in pipeline order. Empty without Config.withStagedPipeline.
+    public List<StageMetrics> getPipelineMetrics() {
+        if (decodeStages == null) {
+            return Collections.emptyList();
+        }
+        List<StageMetrics> metrics = new ArrayList<>();
+        for (PipelineStage<Runnable> decodeStage : decodeStages) {
+            metrics.add(decodeStage.getMetrics());
+        }
+        metrics.add(applyMetrics);
+        metrics.add(respondStage.getMetrics());
+        return metrics;
     }
 
     private static void respondToClient(Object response, Throwable throwable, int correlationId, ClientConnection clientConnection, Integer requestId) {
@@ -219,8 +525,8 @@ public abstract class Replica {
      * One way message passing communication.
      * But the receiver of the message is supposed to send message to sender
      * The message handler returns a response which is sent as a message to the sender.
-     * @see RequestWaitingList comes in handy here, as the response message is expected
-     * by the sender and passed to the RequestWaitingList to handle.
+     * @see IntKeyedRequestWaitingList comes in handy here, as the response message is expected
+     * by the sender and passed to the IntKeyedRequestWaitingList to handle.
      * @see replicate.paxos.SingleValuePaxos as an example.
      *
      * +----------+                +----------------+             +-----------+
@@ -254,24 +560,170 @@ public abstract class Replica {
      *
      * */
 
-    static class MessageHandler<Req extends MessagePayload, Res> {
-        Class requestClass;
-        Function<Message<Req>, Res> handler;
-
-        public MessageHandler(Class requestClass, Function<Message<Req>, Res> handler) {
+    /**
+     * Decodes the messages of one MessageId into the task run on the update lane.
+     * The task is the only object allocated per message, apart from the decoded request.
+     */
+    abstract class MessageHandler<Req extends MessagePayload> {
+        final Class<Req> requestClass;
+        //null if the handler runs on lane 0.
+        final Function<Req, ?> laneKey;
+        //time spent in the handler on the update lane.
+        final Histogram latency;
+
+        MessageHandler(MessageId messageId, Class<Req> requestClass, Function<Req, ?> laneKey) {
             this.requestClass = requestClass;
+            this.laneKey = laneKey;
+            this.latency = metrics.histogram("handler." + messageId + ".latencyNanos");
+        }
+
+        Req decode(Message<RequestOrResponse> message) {
+            return deserialize(message.messagePayload(), requestClass);
+        }
+
+        //index of the update lane. 0 is the singularUpdateQueueExecutor.
+        int laneFor(Req request) {
+            if (laneKey == null || updateLanes.length == 1) {
+                return 0;
+            }
+            int hash = laneKey.apply(request).hashCode();
+            //spread the high bits, as keys like "key1", "key2" differ only in the low bits.
+            hash ^= (hash >>> 16);
+            return Math.floorMod(hash, updateLanes.length);
+        }
+
+        PeerMessageTask<Req> decodePeerMessage(Message<RequestOrResponse> message) {
+            throw new IllegalArgumentException(message.getMessageId() + " is handled as a client request, not a peer message");
+        }
+
+        ClientRequestTask<Req, ?> decodeClientRequest(Message<RequestOrResponse> message, long receivedNanos) {
+            throw new IllegalArgumentException(message.getMessageId() + " is handled as a peer message, not a client request");
+        }
+    }
+
+    final class PeerMessageHandler<Req extends MessagePayload> extends MessageHandler<Req> {
+        final Consumer<Message<Req>> handler;
+
+        PeerMessageHandler(MessageId messageId, Class<Req> requestClass, Consumer<Message<Req>> handler, Function<Req, ?> laneKey) {
+            super(messageId, requestClass, laneKey);
+            this.handler = handler;
+        }
+
+        @Override
+        PeerMessageTask<Req> decodePeerMessage(Message<RequestOrResponse> message) {
+            Req request = decode(message);
+            return new PeerMessageTask<>(this, request, message.header, laneFor(request));
+        }
+    }
+
+    final class RequestHandler<Req extends MessagePayload, Res> extends MessageHandler<Req> {
+        final Function<Req, CompletableFuture<Res>> handler;
+        //time till the response future completes, e.g. after a quorum of replicas respond.
+        final Histogram responseLatency;
+
+        RequestHandler(MessageId messageId, Class<Req> requestClass, Function<Req, CompletableFuture<Res>> handler, Function<Req, ?> laneKey) {
+            super(messageId, requestClass, laneKey);
             this.handler = handler;
+            this.responseLatency = metrics.histogram("handler." + messageId + ".responseLatencyNanos");
+        }
+
+        @Override
+        ClientRequestTask<Req, Res> decodeClientRequest(Message<RequestOrResponse> message, long receivedNanos) {
+            Req request = decode(message);
+            return new ClientRequestTask<>(this, message, request, receivedNanos, laneFor(request));
+        }
+    }
+
+    //The message passed to the handler is the task itself, so it is not allocated separately.
+    final class PeerMessageTask<Req extends MessagePayload> extends Message<Req> implements Runnable {
+        private final PeerMessageHandler<Req> messageHandler;
+        final int lane;
+
+        PeerMessageTask(PeerMessageHandler<Req> messageHandler, Req request, Header header, int lane) {
+            super(request, header);
+            this.messageHandler = messageHandler;
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            if (admissionControl != null) {
+                admissionControl.peerMessageStarted(lane);
+            }
+            markHeartbeatReceived(); //TODO: Mark heartbeats in message handling explicitly. As this can be user request as well.
+            long start = System.nanoTime();
+            try {
+                messageHandler.handler.accept(this);
+            } catch (RuntimeException e) {
+                //tasks are executed, not submitted, so the exception would otherwise kill the lane's thread.
+                logger.error(getName() + " failed handling " + getMessageId(), e);
+            }
+            messageHandler.latency.record(System.nanoTime() - start);
         }
     }
 
+    //Runs the request on the update lane and is the callback for the response future.
+    final class ClientRequestTask<Req extends MessagePayload, Res> implements Runnable, BiConsumer<Res, Throwable> {
+        private final RequestHandler<Req, Res> requestHandler;
+        private final Message<RequestOrResponse> message;
+        private final Req request;
+        private final long receivedNanos;
+        final int lane;
+        private long startNanos;
+        private CompletableFuture<Res> response;
+
+        ClientRequestTask(RequestHandler<Req, Res> requestHandler, Message<RequestOrResponse> message, Req request, long receivedNanos, int lane) {
+            this.requestHandler = requestHandler;
+            this.message = message;
+            this.request = request;
+            this.receivedNanos = receivedNanos;
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            int timeoutMs = message.messagePayload().getTimeoutMs();
+            if (timeoutMs > 0 && System.nanoTime() - receivedNanos > TimeUnit.MILLISECONDS.toNanos(timeoutMs)) {
+                //the client has given up on the response, so the work is not done at all.
+                deadlineExceeded.increment();
+                respond(null, new DeadlineExceededException("Deadline exceeded after " + timeoutMs + "ms in queue"));
+                return;
+            }
+            startNanos = System.nanoTime();
+            try {
+                response = requestHandler.handler.apply(request);
+            } catch (RuntimeException e) {
+                logger.error(getName() + " failed handling " + message.getMessageId(), e);
+                response = CompletableFuture.failedFuture(e);
+            }
+            requestHandler.latency.record(System.nanoTime() - startNanos);
+            response.whenComplete(this);
+        }
+
+        //called when the response future completes.
+        @Override
+        public void accept(Res r, Throwable throwable) {
+            requestHandler.responseLatency.record(System.nanoTime() - startNanos);
+            if (respondStage != null) {
+                respondStage.submit(new AsyncStage<>(message, response));
+                return;
+            }
+            respond(r, throwable);
+        }
 
+        void respond(Object r, Throwable throwable) {
+            respondToClient(r, throwable, message.getCorrelationId(), message.getClientConnection(), message.messagePayload().getRequestId());
+        }
+    }
 
     public <Req extends MessagePayload> void handlesMessage(MessageId messageId, Consumer<Message<Req>> handler, Class<Req> requestClass) {
-       Function<Message<Req>, Void> functionWrapper = reqMessage -> {
-           handler.accept(reqMessage);
-           return null;
-       };
-        handlers.put(messageId, new MessageHandler(requestClass, functionWrapper));
+        handlesMessage(messageId, handler, requestClass, null);
+    }
+
+    //The messages are handled on the update lane for the key extracted from the message.
+    //Only for handlers which touch state partitioned by that key.
+    public <Req extends MessagePayload> void handlesMessage(MessageId messageId, Consumer<Message<Req>> handler, Class<Req> requestClass, Function<Req, ?> laneKey) {
+        handlers[messageId.ordinal()] = new PeerMessageHandler<>(messageId, requestClass, handler, laneKey);
     }
 
     //Configures a handler to process a given request.
@@ -279,19 +731,41 @@ public abstract class Replica {
     //This is request-response  communication or rpc.
     //The sender expects a response to the request on the same connection.
     public <T  extends MessagePayload, Res> Replica handlesRequestAsync(MessageId messageId, Function<T, CompletableFuture<Res>> handler, Class<T> requestClass) {
-        handlers.put(messageId, new MessageHandler(requestClass, handler));
+        return handlesRequestAsync(messageId, handler, requestClass, null);
+    }
+
+    //The requests are handled on the update lane for the key extracted from the request.
+    public <T  extends MessagePayload, Res> Replica handlesRequestAsync(MessageId messageId, Function<T, CompletableFuture<Res>> handler, Class<T> requestClass, Function<T, ?> laneKey) {
+        handlers[messageId.ordinal()] = new RequestHandler<>(messageId, requestClass, handler, laneKey);
         return this;
     }
 
+    private LaneExecutor[] createUpdateLanes(ReplicaRuntime runtime, int noOfLanes) {
+        LaneExecutor[] lanes = new LaneExecutor[noOfLanes];
+        for (int i = 0; i < noOfLanes; i++) {
+            lanes[i] = runtime.newLane(name + "-update-lane-" + i);
+        }
+        return lanes;
+    }
+
+    //No of messages waiting in each update lane. Index 0 is the singularUpdateQueueExecutor.
+    public int[] getUpdateLaneQueueDepths() {
+        int[] depths = new int[updateLanes.length];
+        for (int i = 0; i < updateLanes.length; i++) {
+            depths[i] = updateLanes[i].getQueuedTasks();
+        }
+        return depths;
+    }
+
     protected <T> void handleResponse(Message<T> message) {
-        requestWaitingList.handleResponse(message.getCorrelationId(), message.messagePayload(), message.getFromAddress());
+        pendingResponses.handleResponse(message.getCorrelationId(), message.messagePayload(), message.getFromAddress());
     }
 
     public int getServerId() {
         return config.getServerId();
     }
     private int newCorrelationId() {
-        return new Random().nextInt();
+        return nextCorrelationId.incrementAndGet();
     }
 
     public int getNoOfReplicas() {
@@ -334,6 +808,28 @@ public abstract class Replica {
         network.addDelayForMessagesOfType(n.getPeerConnectionAddress(), messageId);
     }
 
+    //Requests sent to peers, waiting for a response.
+    public int getNoOfPendingRequests() {
+        return pendingResponses.size();
+    }
+
+    public long getMessagesSentTo(Replica n) {
+        return network.getMessagesSentTo(n.getPeerConnectionAddress());
+    }
+
+    public ConnectionStats getPeerConnectionStats() {
+        return network.getConnectionStats();
+    }
+
+    //only the NIO transport has reactors.
+    public List<ReactorStats> getClientReactorStats() {
+        return transport instanceof NioTransport ? ((NioTransport) transport).getClientReactorStats() : Collections.emptyList();
+    }
+
+    public List<ReactorStats> getPeerReactorStats() {
+        return transport instanceof NioTransport ? ((NioTransport) transport).getPeerReactorStats() : Collections.emptyList();
+    }
+
     public int majorityQuorum() {
         return getNoOfReplicas() / 2 + 1;
     }
@@ -345,11 +841,18 @@ public abstract class Replica {
     protected abstract void registerHandlers();
 
     public void shutdown() {
-        peerListener.shudown();
-        clientListener.shudown();
         heartbeatChecker.stop();
         heartBeatScheduler.stop();
         network.closeAllConnections();
+        for (LaneExecutor lane : updateLanes) {
+            lane.shutdown();
+        }
+        if (decodeStages != null) {
+            for (PipelineStage<Runnable> decodeStage : decodeStages) {
+                decodeStage.shutdown();
+            }
+            respondStage.shutdown();
+        }
     }
 
     public Duration elapsedTimeSinceLastHeartbeat() {
@@ -0,0 +1,178 @@
+package replicate.common;
+
+import replicate.net.NIOReactor;
+import replicate.net.NettyEventLoops;
+import replicate.net.PeerChannelSelector;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads which the replicas in a JVM borrow, instead of starting their own.
+ *
+ * Every runtime has a timer, for heartbeats, retries, delayed messages and log cleaning,
+ * and dispatch threads, which hand the messages read from connections over to the replicas.
+ * Each connection is pinned to one dispatch thread, so its messages are handed over in the order they were read.
+ * Update lanes, NIO selectors and Netty event loops need threads of their own, unless the runtime
+ * is created with laneThreads and ioThreads, in which case they share that many threads. That bounds the threads
+ * in a process hosting hundreds of replica groups, at the cost of lanes and connections of
+ * different replicas waiting for each other when all the shared threads are busy.
+ *
+ * The shared runtime, used unless Config.withRuntime sets another, gives each replica its own
+ * lanes and selectors, same as a replica running in a process of its own.
+ */
+public class ReplicaRuntime {
+    private static class Shared {
+        static final ReplicaRuntime INSTANCE = new ReplicaRuntime("replicate", 0, 0);
+    }
+
+    public static ReplicaRuntime shared() {
+        return Shared.INSTANCE;
+    }
+
+    private final String name;
+    private final ScheduledThreadPoolExecutor scheduler;
+    //single threaded, so that the messages of a connection pinned to one are not reordered.
+    private final List<ThreadPoolExecutor> dispatchExecutors = new ArrayList<>();
+    private final AtomicInteger nextDispatchExecutor = new AtomicInteger();
+    //null unless lanes share threads.
+    private final ThreadPoolExecutor laneExecutor;
+    //empty unless the selectors share threads.
+    private final List<NIOReactor> ioReactors = new ArrayList<>();
+    private final List<PeerChannelSelector> peerChannelSelectors = new ArrayList<>();
+    private final AtomicInteger nextPeerChannelSelector = new AtomicInteger();
+    //created on first use, as only the netty transport needs them. Null unless the selectors share threads.
+    private NettyEventLoops nettyEventLoops;
+
+    //laneThreads and ioThreads of 0 give every update lane and selector a thread of its own.
+    public ReplicaRuntime(String name, int laneThreads, int ioThreads) {
+        if (laneThreads < 0 || ioThreads < 0) {
+            throw new IllegalArgumentException("laneThreads and ioThreads can not be negative, but were " + laneThreads + " and " + ioThreads);
+        }
+        this.name = name;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, daemonThreads(name + "-timer-"));
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < processors; i++) {
+            dispatchExecutors.add(fixedPool(1, name + "-dispatch-" + i + "-"));
+        }
+        this.laneExecutor = laneThreads > 0 ? fixedPool(laneThreads, name + "-lane-") : null;
+        try {
+            for (int i = 0; i < ioThreads; i++) {
+                NIOReactor reactor = new NIOReactor(name + "-io-" + i);
+                reactor.setDaemon(true);
+                reactor.start();
+                ioReactors.add(reactor);
+                PeerChannelSelector selector = new PeerChannelSelector(name + "-peers-" + i);
+                selector.start();
+                peerChannelSelectors.add(selector);
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //For short tasks only, as all the replicas share the timer thread.
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    //Connections are spread round-robin over the dispatch threads, and should keep the one they get.
+    public Executor nextDispatchExecutor() {
+        return dispatchExecutors.get(Math.floorMod(nextDispatchExecutor.getAndIncrement(), dispatchExecutors.size()));
+    }
+
+    public LaneExecutor newLane(String laneName) {
+        return laneExecutor == null
+                ? new LaneExecutor(laneName, scheduler)
+                : new LaneExecutor(laneName, laneExecutor, scheduler);
+    }
+
+    public boolean sharesIoThreads() {
+        return !ioReactors.isEmpty();
+    }
+
+    //Reactors for the connections accepted by the listeners. Empty unless the selectors share threads.
+    public List<NIOReactor> getIoReactors() {
+        return Collections.unmodifiableList(ioReactors);
+    }
+
+    //Transports are spread round-robin over the selectors. Null unless the selectors share threads.
+    public PeerChannelSelector nextPeerChannelSelector() {
+        if (peerChannelSelectors.isEmpty()) {
+            return null;
+        }
+        return peerChannelSelectors.get(Math.floorMod(nextPeerChannelSelector.getAndIncrement(), peerChannelSelectors.size()));
+    }
+
+    //Event loops for all the netty transports on this runtime, with as many I/O threads as the selectors.
+    //Null unless the selectors share threads.
+    public synchronized NettyEventLoops getNettyEventLoops() {
+        if (!sharesIoThreads()) {
+            return null;
+        }
+        if (nettyEventLoops == null) {
+            nettyEventLoops = NettyEventLoops.create(name, ioReactors.size());
+        }
+        return nettyEventLoops;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //Replicas using the runtime should be shut down first.
+    public void shutdown() {
+        synchronized (this) {
+            if (nettyEventLoops != null) {
+                nettyEventLoops.shutdown();
+            }
+        }
+        for (NIOReactor reactor : ioReactors) {
+            reactor.shutdown();
+        }
+        for (PeerChannelSelector selector : peerChannelSelectors) {
+            selector.shutdown();
+        }
+        if (laneExecutor != null) {
+            laneExecutor.shutdown();
+        }
+        for (ThreadPoolExecutor dispatchExecutor : dispatchExecutors) {
+            dispatchExecutor.shutdown();
+        }
+        scheduler.shutdown();
+    }
+
+    /**
+     * Live threads in this process, by name with the numbers left out,
+     * so e.g. all the update lanes of the replicas are counted together.
+     */
+    public static Map<String, Integer> threadReport() {
+        Map<String, Integer> threads = new TreeMap<>();
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            threads.merge(thread.getName().replaceAll("[0-9]+", "N"), 1, Integer::sum);
+        }
+        return threads;
+    }
+
+    private static ThreadPoolExecutor fixedPool(int threads, String namePrefix) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), daemonThreads(namePrefix));
+    }
+
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -12,12 +12,20 @@ public class RequestOrResponse {
     private Integer generation = -1;
     InetAddressAndPort fromAddress;
     boolean isError;
+    //Set by clients, time within which they expect the response. 0 means no deadline.
+    //Relative, so the deadline does not depend on the clocks of client and server agreeing.
+    private int timeoutMs;
 
     public RequestOrResponse setError() {
         isError = true;
         return this;
     }
 
+    public RequestOrResponse setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
     //for jackson
     private RequestOrResponse(){}
 
@@ -103,5 +111,9 @@ public class RequestOrResponse {
     public boolean isError() {
         return isError;
     }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
 }
 
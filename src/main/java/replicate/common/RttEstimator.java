@@ -0,0 +1,143 @@
+package replicate.common;
+
+import replicate.metrics.MetricsRegistry;
+import replicate.net.InetAddressAndPort;
+import replicate.net.requestwaitinglist.RoundTripListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the round trip time to each peer, the way TCP estimates its retransmission timeout
+ * (Jacobson/Karels, RFC 6298), from the request/response pairs in the IntKeyedRequestWaitingList.
+ *
+ *   first sample R:  srtt = R, rttvar = R/2
+ *   later samples:   rttvar = 3/4 rttvar + 1/4 |srtt - R|
+ *                    srtt   = 7/8 srtt   + 1/8 R
+ *   timeout          = srtt + max(granularity, 4 * rttvar)
+ *
+ * The timeout is kept between the configured min and max. A request which expires doubles the
+ * timeout for the peer, up to the max, till the next response, so a loaded peer is not flooded
+ * with requests which are bound to time out again.
+ *
+ * The samples include the time the peer takes to handle the request, e.g. to write to its WAL.
+ * So the variance also absorbs the difference between message types.
+ */
+public class RttEstimator implements RoundTripListener {
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    private final long minTimeoutNanos;
+    private final long maxTimeoutNanos;
+    private final long granularityNanos;
+    private final MetricsRegistry metrics;
+    private final Map<InetAddressAndPort, PeerRtt> peers = new ConcurrentHashMap<>();
+
+    public RttEstimator(Duration minTimeout, Duration maxTimeout, Duration granularity, MetricsRegistry metrics) {
+        this.minTimeoutNanos = minTimeout.toNanos();
+        this.maxTimeoutNanos = maxTimeout.toNanos();
+        this.granularityNanos = granularity.toNanos();
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onResponse(InetAddressAndPort peer, long roundTripNanos) {
+        peerRtt(peer).sample(roundTripNanos);
+    }
+
+    @Override
+    public void onExpiry(InetAddressAndPort peer) {
+        peerRtt(peer).backoff();
+    }
+
+    //The default is used till there is a response from the peer.
+    public Duration timeout(InetAddressAndPort peer, Duration defaultTimeout) {
+        PeerRtt rtt = peers.get(peer);
+        if (rtt == null) {
+            return defaultTimeout;
+        }
+        long timeoutNanos = rtt.timeoutNanos();
+        return timeoutNanos == 0 ? defaultTimeout : Duration.ofNanos(timeoutNanos);
+    }
+
+    //0 till there is a response from the peer.
+    public long getSmoothedRttNanos(InetAddressAndPort peer) {
+        PeerRtt rtt = peers.get(peer);
+        return rtt == null ? 0 : rtt.getSmoothedRttNanos();
+    }
+
+    public long getRttVarianceNanos(InetAddressAndPort peer) {
+        PeerRtt rtt = peers.get(peer);
+        return rtt == null ? 0 : rtt.getRttVarianceNanos();
+    }
+
+    //Approximates the p95 of the round trip times, as srtt + 2 * rttvar, which is about 1.65 standard
+    //deviations above the mean for normally distributed samples. 0 till there is a response from the peer.
+    public long getHedgeDelayNanos(InetAddressAndPort peer) {
+        PeerRtt rtt = peers.get(peer);
+        return rtt == null ? 0 : rtt.hedgeDelayNanos();
+    }
+
+    private PeerRtt peerRtt(InetAddressAndPort peer) {
+        PeerRtt rtt = peers.get(peer);
+        if (rtt != null) {
+            return rtt;
+        }
+        return peers.computeIfAbsent(peer, this::newPeerRtt);
+    }
+
+    private PeerRtt newPeerRtt(InetAddressAndPort peer) {
+        PeerRtt rtt = new PeerRtt();
+        if (metrics != null) {
+            metrics.gauge("rtt." + peer + ".smoothedMicros", () -> TimeUnit.NANOSECONDS.toMicros(rtt.getSmoothedRttNanos()));
+            metrics.gauge("rtt." + peer + ".timeoutMicros", () -> TimeUnit.NANOSECONDS.toMicros(rtt.timeoutNanos()));
+        }
+        return rtt;
+    }
+
+    //Samples are reported by the threads completing requests, so the estimate is updated under its monitor.
+    private class PeerRtt {
+        private long srttNanos;
+        private long rttvarNanos;
+        private int backoffShift;
+
+        synchronized void sample(long rttNanos) {
+            if (srttNanos == 0) {
+                srttNanos = Math.max(1, rttNanos);
+                rttvarNanos = rttNanos / 2;
+            } else {
+                long error = rttNanos - srttNanos;
+                srttNanos += error >> 3;
+                rttvarNanos += (Math.abs(error) - rttvarNanos) >> 2;
+            }
+            backoffShift = 0;
+        }
+
+        synchronized void backoff() {
+            backoffShift = Math.min(backoffShift + 1, MAX_BACKOFF_SHIFT);
+        }
+
+        //0 if there is no sample yet.
+        synchronized long timeoutNanos() {
+            if (srttNanos == 0) {
+                return 0;
+            }
+            long timeout = srttNanos + Math.max(granularityNanos, 4 * rttvarNanos);
+            timeout = Math.max(minTimeoutNanos, Math.min(maxTimeoutNanos, timeout));
+            return Math.min(maxTimeoutNanos, timeout << backoffShift);
+        }
+
+        synchronized long hedgeDelayNanos() {
+            return srttNanos == 0 ? 0 : srttNanos + 2 * rttvarNanos;
+        }
+
+        synchronized long getSmoothedRttNanos() {
+            return srttNanos;
+        }
+
+        synchronized long getRttVarianceNanos() {
+            return rttvarNanos;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package replicate.common;
+
+import replicate.metrics.Counter;
+import replicate.metrics.Histogram;
+import replicate.metrics.MetricsRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Latency and queue depth of a stage of the request pipeline.
+ * Queue wait is the time an item waits in the queue of the stage, service time is the time
+ * taken by the stage to process it. A stage whose queue keeps growing, with the queue wait
+ * much higher than the service time, is the bottleneck.
+ */
+public class StageMetrics {
+    private final String name;
+    private final IntSupplier queueDepth;
+    private final Counter processed = new Counter();
+    private final Counter batches = new Counter();
+    private final Histogram queueWaitNanos = new Histogram();
+    private final Histogram serviceNanos = new Histogram();
+
+    public StageMetrics(String name, IntSupplier queueDepth) {
+        this.name = name;
+        this.queueDepth = queueDepth;
+    }
+
+    public void recordQueueWait(long nanos) {
+        queueWaitNanos.record(nanos);
+    }
+
+    //items processed together in a batch share the service time.
+    public void recordService(int items, long nanos) {
+        processed.add(items);
+        batches.increment();
+        serviceNanos.record(nanos);
+    }
+
+    public void registerMetrics(MetricsRegistry registry) {
+        String prefix = "stage." + name;
+        registry.gauge(prefix + ".queueDepth", this::getQueueDepth);
+        registry.register(prefix + ".processed", processed);
+        registry.register(prefix + ".queueWaitNanos", queueWaitNanos);
+        registry.register(prefix + ".serviceNanos", serviceNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public double getAverageBatchSize() {
+        long noOfBatches = batches.get();
+        return noOfBatches == 0 ? 0 : (double) processed.get() / noOfBatches;
+    }
+
+    public long getAverageQueueWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) queueWaitNanos.snapshot().getMean());
+    }
+
+    public long getMaxQueueWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(queueWaitNanos.snapshot().getMax());
+    }
+
+    //per batch, which is per item for stages which do not batch.
+    public long getAverageServiceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) serviceNanos.snapshot().getMean());
+    }
+
+    public long getMaxServiceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(serviceNanos.snapshot().getMax());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{queueDepth=%d, processed=%d, avgBatch=%.1f, queueWait avg/max=%d/%dus, service avg/max=%d/%dus}",
+                name, getQueueDepth(), getProcessed(), getAverageBatchSize(),
+                getAverageQueueWaitMicros(), getMaxQueueWaitMicros(),
+                getAverageServiceMicros(), getMaxServiceMicros());
+    }
+}
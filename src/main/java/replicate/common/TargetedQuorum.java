@@ -0,0 +1,112 @@
+package replicate.common;
+
+import replicate.metrics.Counter;
+import replicate.net.InetAddressAndPort;
+import replicate.net.requestwaitinglist.RequestCallback;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Sends a quorum request only to as many replicas as the quorum needs, the ones with the lowest
+ * round trip times, instead of to all the replicas. Another replica is sent a duplicate of the request
+ *  - when a replica responds with an error, or with a response which does not count for the quorum, or
+ *  - when the quorum is not complete by the hedge delay, about the p95 round trip time of the replicas
+ *    the request was sent to. The hedge is then armed again for the next replica.
+ *
+ * Responses are passed on to the AsyncQuorumCallback, which completes the quorum as usual.
+ * It still expects a response from all the replicas, so it fails only once every replica is tried.
+ *
+ *   replicas by rtt:  [r1  r2  r3] r4  r5      quorum of 3 sent first
+ *                                  ▲
+ *                     hedge delay, error or rejection ──► next replica
+ */
+class TargetedQuorum<T> implements RequestCallback<T> {
+    private final AsyncQuorumCallback<T> quorumCallback;
+    private final List<InetAddressAndPort> replicas;
+    private final long hedgeDelayNanos;
+    private final BiConsumer<InetAddressAndPort, RequestCallback<T>> send;
+    private final Counter hedges;
+    //guarded by this.
+    private int noOfReplicasSent;
+    private HashedWheelTimer.Timeout hedge;
+
+    //replicas are ordered fastest first.
+    TargetedQuorum(AsyncQuorumCallback<T> quorumCallback, List<InetAddressAndPort> replicas, long hedgeDelayNanos,
+                   BiConsumer<InetAddressAndPort, RequestCallback<T>> send, Counter hedges) {
+        this.quorumCallback = quorumCallback;
+        this.replicas = replicas;
+        this.hedgeDelayNanos = hedgeDelayNanos;
+        this.send = send;
+        this.hedges = hedges;
+    }
+
+    void start() {
+        quorumCallback.getQuorumFuture().whenComplete((r, e) -> cancelHedge());
+        for (int i = 0; i < quorumCallback.getQuorum(); i++) {
+            sendToNextReplica();
+        }
+        armHedge();
+    }
+
+    @Override
+    public void onResponse(T response, InetAddressAndPort fromNode) {
+        quorumCallback.onResponse(response, fromNode);
+        if (!quorumCallback.isSuccess(response)) {
+            sendToNextReplica();
+        }
+    }
+
+    @Override
+    public void onError(Exception e) {
+        quorumCallback.onError(e);
+        sendToNextReplica();
+    }
+
+    CompletableFuture<Map<InetAddressAndPort, T>> getQuorumFuture() {
+        return quorumCallback.getQuorumFuture();
+    }
+
+    private boolean sendToNextReplica() {
+        return sendToNextReplica(false);
+    }
+
+    private boolean sendToNextReplica(boolean hedged) {
+        InetAddressAndPort replica;
+        synchronized (this) {
+            if (noOfReplicasSent == replicas.size() || quorumCallback.getQuorumFuture().isDone()) {
+                return false;
+            }
+            replica = replicas.get(noOfReplicasSent++);
+        }
+        //counted before sending, so the hedge is visible by the time the response completes the quorum.
+        if (hedged) {
+            hedges.increment();
+        }
+        //sent outside the monitor, as a failed send reports the error to this callback right away.
+        send.accept(replica, this);
+        return true;
+    }
+
+    private void onHedgeDelay() {
+        if (sendToNextReplica(true)) {
+            armHedge();
+        }
+    }
+
+    private synchronized void armHedge() {
+        if (noOfReplicasSent == replicas.size() || quorumCallback.getQuorumFuture().isDone()) {
+            return;
+        }
+        hedge = HashedWheelTimer.shared().schedule(this::onHedgeDelay, hedgeDelayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized void cancelHedge() {
+        if (hedge != null) {
+            hedge.cancel();
+        }
+    }
+}
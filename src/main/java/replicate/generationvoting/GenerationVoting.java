@@ -70,7 +70,7 @@ public class GenerationVoting extends Replica {
     CompletableFuture<Integer> proposeNumber(int proposedNumber) {
         int maxAttempts =   5;
         AtomicInteger proposal = new AtomicInteger(proposedNumber);
-        return FutureUtils.retryWithRandomDelay(() -> {
+        return FutureUtils.retryWithBackoff(() -> {
             PrepareRequest nr = new PrepareRequest(proposal.incrementAndGet());
             var callback = new AsyncQuorumCallback<PrepareResponse>(getNoOfReplicas(), p -> p.promised);
 
@@ -81,7 +81,7 @@ public class GenerationVoting extends Replica {
                     .exceptionally(ex -> {
                         throw new RuntimeException("Exception occurred while processing the request.", ex);
                     });
-        }, maxAttempts, singularUpdateQueueExecutor);
+        }, maxAttempts, this::retryBackoff, singularUpdateQueueExecutor);
     }
 
     private void handlePrepareRequest(Message<PrepareRequest> message) {
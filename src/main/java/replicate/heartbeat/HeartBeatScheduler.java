@@ -3,21 +3,28 @@ package replicate.heartbeat;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.Random;
+import replicate.common.ReplicaRuntime;
+
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class HeartBeatScheduler {
     private static final Logger logger = LogManager.getLogger(HeartBeatScheduler.class);
-    private ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    //shared with other schedulers, so the action should not block.
+    private final ScheduledExecutorService executor;
 
     private Runnable action;
     private Long heartBeatInterval;
 
     public HeartBeatScheduler(Runnable action, Long heartBeatIntervalMs) {
+        this(action, heartBeatIntervalMs, ReplicaRuntime.shared().getScheduler());
+    }
+
+    public HeartBeatScheduler(Runnable action, Long heartBeatIntervalMs, ScheduledExecutorService executor) {
         this.action = action;
         this.heartBeatInterval = heartBeatIntervalMs;
+        this.executor = executor;
     }
 
     private ScheduledFuture<?> scheduledTask;
@@ -38,7 +45,8 @@ public class HeartBeatScheduler {
     public void stop() {
         if (scheduledTask != null) {
             try {
-                boolean cancelled = scheduledTask.cancel(true);
+                //not interrupted, as the thread is shared.
+                boolean cancelled = scheduledTask.cancel(false);
                 logger.info("Stopped scheduled task " + cancelled);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -0,0 +1,29 @@
+package replicate.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count, e.g. messages sent or requests expired.
+ * Backed by a LongAdder, so threads incrementing it concurrently do not contend,
+ * and incrementing does not allocate once the adder has a cell for the thread.
+ */
+public class Counter implements Metric {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long n) {
+        count.add(n);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
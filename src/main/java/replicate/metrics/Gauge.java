@@ -0,0 +1,10 @@
+package replicate.metrics;
+
+/**
+ * Current value read on every snapshot, e.g. a queue depth.
+ * Gauges are read on the thread taking the snapshot, so they should be cheap and thread-safe.
+ */
+@FunctionalInterface
+public interface Gauge extends Metric {
+    long getValue();
+}
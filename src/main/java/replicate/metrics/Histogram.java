@@ -0,0 +1,118 @@
+package replicate.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Distribution of values, typically latencies in nanoseconds.
+ *
+ * Values are counted in log-linear buckets. Each power of 2 is split into 16 linear
+ * sub-buckets, so a value is reported with at most 1/16 (~6%) error, whatever its magnitude,
+ * with 960 buckets covering the whole range of long.
+ *
+ *   0..15   16..31        32..63          64..127
+ *   [1 each][16 of 1]     [16 of 2]       [16 of 4]   ...
+ *
+ * Values are recorded into one of a fixed number of stripes of buckets, picked by the
+ * recording thread, so threads rarely contend and recording never allocates after the
+ * stripe is created. The stripes are merged when a snapshot is taken.
+ * Unlike buckets per thread, the memory does not grow with the threads which ever recorded,
+ * e.g. with a virtual thread per request.
+ */
+public class Histogram implements Metric {
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    //a power of 2, at least as many as the processors, so that threads running at the same time rarely share a stripe.
+    static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    //created on first use, so a histogram recorded by a few threads keeps only a few stripes.
+    private final AtomicReferenceArray<Recorder> recorders = new AtomicReferenceArray<>(STRIPES);
+
+    //negative values are recorded as 0.
+    public void record(long value) {
+        recorderForCurrentThread().record(Math.max(0, value));
+    }
+
+    private Recorder recorderForCurrentThread() {
+        long threadId = Thread.currentThread().getId();
+        int stripe = (int) (threadId ^ (threadId >>> 32)) * 0x9E3779B9 >>> 16 & (STRIPES - 1);
+        Recorder r = recorders.get(stripe);
+        if (r == null) {
+            recorders.compareAndSet(stripe, null, new Recorder());
+            r = recorders.get(stripe);
+        }
+        return r;
+    }
+
+    public HistogramSnapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            Recorder r = recorders.get(stripe);
+            if (r == null) {
+                continue;
+            }
+            for (int i = 0; i < BUCKETS; i++) {
+                long bucketCount = r.counts.get(i);
+                counts[i] += bucketCount;
+                count += bucketCount;
+            }
+            sum += r.totals.get(Recorder.SUM);
+            max = Math.max(max, r.totals.get(Recorder.MAX));
+        }
+        return new HistogramSnapshot(counts, count, sum, max);
+    }
+
+    //@VisibleForTesting
+    int allocatedStripes() {
+        int allocated = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            if (recorders.get(stripe) != null) {
+                allocated++;
+            }
+        }
+        return allocated;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    //highest value counted in the bucket.
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowerBound = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    //Shared by the threads mapped to its stripe, so updated atomically.
+    private static class Recorder {
+        static final int SUM = 0;
+        static final int MAX = 1;
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final AtomicLongArray totals = new AtomicLongArray(2);
+
+        void record(long value) {
+            //the count is the sum of the buckets, so is not updated separately.
+            counts.incrementAndGet(bucketIndex(value));
+            totals.addAndGet(SUM, value);
+            long max;
+            while (value > (max = totals.get(MAX)) && !totals.compareAndSet(MAX, max, value)) {
+                //retry, another thread raised the max.
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package replicate.metrics;
+
+/**
+ * Marker for the metrics kept in a MetricsRegistry: Counter, Gauge and Histogram.
+ */
+public interface Metric {
+}
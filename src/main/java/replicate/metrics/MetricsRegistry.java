@@ -0,0 +1,60 @@
+package replicate.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named metrics of a replica, e.g. "handler.SetValueRequest.latencyNanos".
+ * Components create or register their metrics once, keep a reference, and update it directly,
+ * so the registry is not involved in the hot path.
+ * Tests and tools pull the current values with snapshot.
+ */
+public class MetricsRegistry {
+    private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    public Counter counter(String name) {
+        return getOrCreate(name, Counter.class, new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return getOrCreate(name, Histogram.class, new Histogram());
+    }
+
+    //replaces the gauge registered earlier with the same name.
+    public void gauge(String name, Gauge gauge) {
+        metrics.put(name, gauge);
+    }
+
+    //Registers a metric created by a component, so that the component can update it
+    //without knowing about the registry. Replaces a metric registered earlier with the same name.
+    public <T extends Metric> T register(String name, T metric) {
+        metrics.put(name, metric);
+        return metric;
+    }
+
+    public void remove(String name) {
+        metrics.remove(name);
+    }
+
+    private <T extends Metric> T getOrCreate(String name, Class<T> type, T newMetric) {
+        Metric metric = metrics.computeIfAbsent(name, n -> newMetric);
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + metric.getClass().getSimpleName() + ", not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    public MetricsSnapshot snapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        metrics.forEach((name, metric) -> {
+            if (metric instanceof Counter) {
+                snapshot.counters.put(name, ((Counter) metric).get());
+            } else if (metric instanceof Gauge) {
+                snapshot.gauges.put(name, ((Gauge) metric).getValue());
+            } else if (metric instanceof Histogram) {
+                snapshot.histograms.put(name, ((Histogram) metric).snapshot());
+            }
+        });
+        return snapshot;
+    }
+}
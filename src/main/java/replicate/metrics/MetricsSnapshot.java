@@ -0,0 +1,49 @@
+package replicate.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Values of all the metrics of a registry, sorted by name.
+ */
+public class MetricsSnapshot {
+    final Map<String, Long> counters = new TreeMap<>();
+    final Map<String, Long> gauges = new TreeMap<>();
+    final Map<String, HistogramSnapshot> histograms = new TreeMap<>();
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, HistogramSnapshot> getHistograms() {
+        return histograms;
+    }
+
+    //0 if there is no such counter.
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    //0 if there is no such gauge.
+    public long getGauge(String name) {
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    //null if there is no such histogram.
+    public HistogramSnapshot getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        counters.forEach((name, value) -> builder.append(name).append(" = ").append(value).append('\n'));
+        gauges.forEach((name, value) -> builder.append(name).append(" = ").append(value).append('\n'));
+        histograms.forEach((name, value) -> builder.append(name).append(" {").append(value).append("}\n"));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package replicate.metrics.messages;
+
+import replicate.common.MessageId;
+import replicate.common.MessagePayload;
+
+//Served by every Replica on its client port. See Replica.handleGetStats.
+public class GetStatsRequest extends MessagePayload {
+    public GetStatsRequest() {
+        super(MessageId.GetStats);
+    }
+}
@@ -0,0 +1,119 @@
+package replicate.metrics.messages;
+
+import replicate.metrics.HistogramSnapshot;
+import replicate.metrics.MetricsSnapshot;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact snapshot of the metrics of a replica, with its role and term.
+ * Counters are cumulative, so throughput is the difference between two snapshots.
+ * Histograms are reduced to a few percentiles, and the ones with no values are left out.
+ */
+public class StatsResponse {
+    private final String name;
+    private final String role;
+    private final long term;
+    private final long uptimeMs;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, LatencySummary> latencies;
+
+    public StatsResponse(String name, String role, long term, long uptimeMs,
+                         Map<String, Long> counters, Map<String, Long> gauges, Map<String, LatencySummary> latencies) {
+        this.name = name;
+        this.role = role;
+        this.term = term;
+        this.uptimeMs = uptimeMs;
+        this.counters = counters;
+        this.gauges = gauges;
+        this.latencies = latencies;
+    }
+
+    public static StatsResponse of(String name, String role, long term, long uptimeMs, MetricsSnapshot snapshot) {
+        Map<String, LatencySummary> latencies = new TreeMap<>();
+        snapshot.getHistograms().forEach((histogramName, histogram) -> {
+            if (histogram.getCount() > 0) {
+                latencies.put(histogramName, LatencySummary.of(histogram));
+            }
+        });
+        return new StatsResponse(name, role, term, uptimeMs, snapshot.getCounters(), snapshot.getGauges(), latencies);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public long getUptimeMs() {
+        return uptimeMs;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+    public Map<String, LatencySummary> getLatencies() {
+        return latencies;
+    }
+
+    public static class LatencySummary {
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        public LatencySummary(long count, long mean, long p50, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        static LatencySummary of(HistogramSnapshot histogram) {
+            return new LatencySummary(histogram.getCount(), Math.round(histogram.getMean()),
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMax());
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -415,6 +415,16 @@ public class MultiPaxosWithHeartbeats extends Replica {
         return role == ServerRole.Leader;
     }
 
+    @Override
+    protected String describeRole() {
+        return String.valueOf(role);
+    }
+
+    @Override
+    protected long describeTerm() {
+        return promisedGeneration.requestId;
+    }
+
     @Override
     public void onStart() {
     }
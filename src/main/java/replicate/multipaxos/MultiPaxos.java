@@ -378,4 +378,14 @@ public class MultiPaxos extends Replica {
     public boolean isLeader() {
         return role == ServerRole.Leader;
     }
+
+    @Override
+    protected String describeRole() {
+        return String.valueOf(role);
+    }
+
+    @Override
+    protected long describeTerm() {
+        return promisedGeneration.requestId;
+    }
 }
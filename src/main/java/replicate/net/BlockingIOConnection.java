@@ -3,6 +3,7 @@ package replicate.net;
 import replicate.common.JsonSerDes;
 import replicate.common.RequestOrResponse;
 
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -23,7 +24,9 @@ public class BlockingIOConnection implements ClientConnection {
         try {
             var serializedMessage = JsonSerDes.serialize(response);
             var outputStream = clientSocket.getOutputStream();
-            var dataStream = new DataOutputStream(outputStream);
+            //size and message go out in a single write. Writing the size separately makes
+            //Nagle's algorithm hold back the message till the size is acknowledged.
+            var dataStream = new DataOutputStream(new BufferedOutputStream(outputStream, 4 + serializedMessage.length));
             dataStream.writeInt(serializedMessage.length);
             dataStream.write(serializedMessage);
             dataStream.flush();
@@ -51,7 +54,7 @@ public class BlockingIOConnection implements ClientConnection {
             var dataInputStream = new DataInputStream(inputStream);
             var size = dataInputStream.readInt();
             var responseBytes = new byte[size];
-            dataInputStream.read(responseBytes);
+            dataInputStream.readFully(responseBytes);
             return responseBytes;
 
         } catch (IOException e) {
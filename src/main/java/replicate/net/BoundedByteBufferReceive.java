@@ -26,7 +26,10 @@ public class BoundedByteBufferReceive {
         }
         // if we have a buffer read some stuff into it
         if(contentBuffer != null) {
-            read = socketChannel.read(contentBuffer);
+            int bytesRead = socketChannel.read(contentBuffer);
+            if (bytesRead < 0)
+                throw new EOFException();
+            read += bytesRead;
             // did we get everything?
             if(!contentBuffer.hasRemaining()) {
                 contentBuffer.rewind();
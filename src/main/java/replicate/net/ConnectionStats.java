@@ -0,0 +1,63 @@
+package replicate.net;
+
+import replicate.metrics.Counter;
+import replicate.metrics.MetricsRegistry;
+
+/**
+ * Counters for the outbound peer connections of a node.
+ * A healthy cluster should see connects stay flat while reuses grow with every message.
+ * messagesWritten / writes gives the average number of messages batched in a single write.
+ */
+public class ConnectionStats {
+    final Counter connects = new Counter();
+    final Counter reuses = new Counter();
+    final Counter failures = new Counter();
+    final Counter idleCloses = new Counter();
+    final Counter writes = new Counter();
+    final Counter messagesWritten = new Counter();
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.register(prefix + ".connects", connects);
+        registry.register(prefix + ".reuses", reuses);
+        registry.register(prefix + ".failures", failures);
+        registry.register(prefix + ".idleCloses", idleCloses);
+        registry.register(prefix + ".writes", writes);
+        registry.register(prefix + ".messagesWritten", messagesWritten);
+    }
+
+    public long getConnects() {
+        return connects.get();
+    }
+
+    public long getReuses() {
+        return reuses.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getIdleCloses() {
+        return idleCloses.get();
+    }
+
+    public long getWrites() {
+        return writes.get();
+    }
+
+    public long getMessagesWritten() {
+        return messagesWritten.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats{" +
+                "connects=" + getConnects() +
+                ", reuses=" + getReuses() +
+                ", failures=" + getFailures() +
+                ", idleCloses=" + getIdleCloses() +
+                ", writes=" + getWrites() +
+                ", messagesWritten=" + getMessagesWritten() +
+                '}';
+    }
+}
@@ -0,0 +1,27 @@
+package replicate.net;
+
+import replicate.common.Config;
+
+import java.io.IOException;
+
+/**
+ * Accepts connections on an address and passes the requests read from them to a RequestConsumer.
+ */
+public interface Listener {
+    void start();
+
+    void shudown();
+
+    static Listener create(RequestConsumer requestConsumer, InetAddressAndPort listenAddress, Config config) throws IOException {
+        switch (config.getListenerMode()) {
+            case THREAD_PER_CONNECTION:
+                return new SocketListener(requestConsumer, listenAddress, config);
+            case VIRTUAL_THREAD_PER_CONNECTION:
+                return new SocketListener(requestConsumer, listenAddress, config,
+                        VirtualThreads.threadFactory("SocketHandler-" + listenAddress + "-"),
+                        VirtualThreads.threadPerTaskExecutor("RequestHandler-" + listenAddress + "-"));
+            default:
+                return new NIOSocketListener(requestConsumer, listenAddress, config);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package replicate.net;
+
+/**
+ * How a node serves the connections it accepts.
+ */
+public enum ListenerMode {
+    //a few selector threads multiplexing all the connections. See NIOSocketListener.
+    NIO,
+    //a platform thread blocked reading each connection. See SocketListener.
+    THREAD_PER_CONNECTION,
+    //a virtual thread reading each connection, and another handling each request.
+    //Falls back to platform threads on JVMs without virtual threads.
+    VIRTUAL_THREAD_PER_CONNECTION
+}
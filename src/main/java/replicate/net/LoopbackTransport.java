@@ -0,0 +1,150 @@
+package replicate.net;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import replicate.common.Config;
+import replicate.common.JsonSerDes;
+import replicate.common.Message;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory transport between replicas in the same JVM.
+ * Peer messages are put on a lock-free queue of the destination, without going through
+ * sockets. Each destination drains its queue on the ReplicaRuntime's dispatch threads, one batch at a time,
+ * so a cluster of hundreds of nodes does not need a thread per node.
+ * Messages are passed as objects, unless the config asks for them to be serialized,
+ * which catches messages that would not survive the wire.
+ * Clients still connect over TCP, so NetworkClient works unchanged.
+ */
+public class LoopbackTransport implements Transport {
+    private static final Logger logger = LogManager.getLogger(LoopbackTransport.class);
+    private static final int MAX_BATCH = 64;
+    //all the loopback replicas in this JVM.
+    private static final Map<InetAddressAndPort, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final Config config;
+    private final ConnectionStats stats = new ConnectionStats();
+    private final Map<InetAddressAndPort, Mailbox> ownMailboxes = new ConcurrentHashMap<>();
+    private Listener clientListener;
+
+    public LoopbackTransport(Config config) {
+        this.config = config;
+    }
+
+    @Override
+    public void listenForPeers(InetAddressAndPort address, RequestConsumer consumer) {
+        ownMailboxes.put(address, new Mailbox(consumer, config.getRuntime().nextDispatchExecutor()));
+    }
+
+    @Override
+    public void listenForClients(InetAddressAndPort address, RequestConsumer consumer) throws IOException {
+        clientListener = Listener.create(consumer, address, config);
+    }
+
+    @Override
+    public void start() {
+        for (Map.Entry<InetAddressAndPort, Mailbox> entry : ownMailboxes.entrySet()) {
+            if (mailboxes.putIfAbsent(entry.getKey(), entry.getValue()) != null) {
+                throw new IllegalStateException("Loopback address " + entry.getKey() + " is already in use");
+            }
+        }
+        if (clientListener != null) {
+            clientListener.start();
+        }
+    }
+
+    @Override
+    public void send(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        Mailbox mailbox = mailboxes.get(address);
+        if (mailbox == null) {
+            stats.failures.increment();
+            failureHandler.onSendFailure(message, new IOException("No replica listening on " + address));
+            return;
+        }
+        stats.writes.increment();
+        stats.messagesWritten.increment();
+        mailbox.deliver(config.isLoopbackSerialization() ? roundTrip(message) : message);
+    }
+
+    private static RequestOrResponse roundTrip(RequestOrResponse message) {
+        return JsonSerDes.deserialize(JsonSerDes.serialize(message), RequestOrResponse.class);
+    }
+
+    @Override
+    public void disconnect(InetAddressAndPort address) {
+        //no connections to close.
+    }
+
+    @Override
+    public ConnectionStats getConnectionStats() {
+        return stats;
+    }
+
+    @Override
+    public void shutdown() {
+        for (Map.Entry<InetAddressAndPort, Mailbox> entry : ownMailboxes.entrySet()) {
+            mailboxes.remove(entry.getKey(), entry.getValue());
+        }
+        if (clientListener != null) {
+            clientListener.shudown();
+        }
+    }
+
+    static class Mailbox implements Runnable {
+        private final RequestConsumer consumer;
+        //one of the runtime's dispatch threads, which other mailboxes and connections may share.
+        private final Executor deliveryPool;
+        private final ConcurrentLinkedQueue<RequestOrResponse> queue = new ConcurrentLinkedQueue<>();
+        //set while the mailbox is queued on, or being drained by, the delivery pool.
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        Mailbox(RequestConsumer consumer, Executor deliveryPool) {
+            this.consumer = consumer;
+            this.deliveryPool = deliveryPool;
+        }
+
+        void deliver(RequestOrResponse message) {
+            queue.add(message);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                deliveryPool.execute(this);
+            }
+        }
+
+        //Drains at most MAX_BATCH messages, so that busy mailboxes do not starve the others.
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_BATCH; i++) {
+                RequestOrResponse message = queue.poll();
+                if (message == null) {
+                    break;
+                }
+                accept(message);
+            }
+            scheduled.set(false);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void accept(RequestOrResponse message) {
+            try {
+                var header = new Message.Header(message.getFromAddress(), message.getCorrelationId(), MessageId.valueOf(message.getRequestId()));
+                consumer.accept(new Message<>(message, header));
+            } catch (Exception e) {
+                logger.error("Error handling " + MessageId.valueOf(message.getRequestId()), e);
+            }
+        }
+    }
+}
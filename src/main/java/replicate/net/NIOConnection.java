@@ -10,24 +10,43 @@ import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NIOConnection implements ClientConnection, Logging {
     private static final Logger LOG = LogManager.getLogger(NIOConnection.class);
+    static final int MAX_FRAMES_PER_READ = 64;
 
     private SocketChannel sock;
     private SelectionKey sk;
-    private NIOSocketListener server;
+    private NIOReactor reactor;
     private boolean closed;
     private BoundedByteBufferReceive receive = null;
-    LinkedBlockingQueue<ByteBuffer> outgoingBuffers = new LinkedBlockingQueue<ByteBuffer>();
+    //responses are written by the request handling threads and drained by the reactor thread.
+    private final Object outboundLock = new Object();
+    private final OutboundBuffers outgoingBuffers;
+    private final long highWatermarkBytes;
+    private final long lowWatermarkBytes;
+    private boolean readsPaused;
+    //set when a wakeup is issued, cleared by the reactor before it writes.
+    //writes in between rely on the pending wakeup.
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
     private RequestConsumer requestConsumer;
-    public NIOConnection(SocketChannel sock, SelectionKey sk, NIOSocketListener server, RequestConsumer consumer) {
+    private final NIOSocketListener listener;
+    //requests are handed over to the consumer on one of the runtime's dispatch threads, in the order they are read.
+    //Other connections may share the thread.
+    private final Executor executor;
+
+    public NIOConnection(SocketChannel sock, SelectionKey sk, NIOReactor reactor, NIOSocketListener listener) {
         this.sock = sock;
         this.sk = sk;
-        this.server = server;
-        this.requestConsumer = consumer;
+        this.reactor = reactor;
+        this.listener = listener;
+        this.requestConsumer = listener.getRequestConsumer();
+        Config config = listener.getConfig();
+        this.executor = config.getRuntime().nextDispatchExecutor();
+        this.outgoingBuffers = new OutboundBuffers(config.getConnectionMaxOutboundMessages());
+        this.highWatermarkBytes = config.getConnectionWriteHighWatermarkBytes();
+        this.lowWatermarkBytes = config.getConnectionWriteLowWatermarkBytes();
     }
 
     void doIO(SelectionKey selectionKey) throws InterruptedException {
@@ -39,17 +58,20 @@ public class NIOConnection implements ClientConnection, Logging {
                 read(selectionKey);
             }
             //<codeFragment name="nioWrite">
-            if (selectionKey.isWritable()) {
-                if (outgoingBuffers.size() > 0) {
-                    long bytesSent = sock.write(outgoingBuffers.toArray(ByteBuffer[]::new));
-                    for (ByteBuffer outgoingBuffer : outgoingBuffers) {
-                        if (!outgoingBuffer.hasRemaining()) {
-                            outgoingBuffers.remove(outgoingBuffer);
-                        }
-                    }
+            if (sock != null && selectionKey.isWritable()) {
+                wakeupPending.set(false);
+                synchronized (outboundLock) {
+                    long bytesSent = outgoingBuffers.writeTo(sock);
+                    reactor.getStats().bytesWritten.add(bytesSent);
+                    int ops = selectionKey.interestOps();
                     if (outgoingBuffers.isEmpty()) {
-                        selectionKey.interestOps(selectionKey.interestOps() & (~SelectionKey.OP_WRITE));
+                        ops &= ~SelectionKey.OP_WRITE;
                     }
+                    if (readsPaused && outgoingBuffers.pendingBytes() <= lowWatermarkBytes) {
+                        readsPaused = false;
+                        ops |= SelectionKey.OP_READ;
+                    }
+                    selectionKey.interestOps(ops);
                 }
             }
             //</codeFragment>
@@ -61,43 +83,56 @@ public class NIOConnection implements ClientConnection, Logging {
         }
     }
 
-    Executor executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-
     private void read(SelectionKey key) throws Exception {
         var socketChannel = (SocketChannel)key.channel();
-        if (receive == null) {
-            receive = new BoundedByteBufferReceive();
-        }
-        int bytesRead = receive.readFrom(socketChannel);
-        if (bytesRead < 0) {
-            close();
-        } else if (receive.complete) {
-            RequestOrResponse deserialize = JsonSerDes.deserialize(receive.contentBuffer.flip().array(), RequestOrResponse.class);
-            RequestOrResponse request = deserialize;
+        //peers write the messages queued together back to back, so the frames already received
+        //are read in one go, up to MAX_FRAMES_PER_READ so that other connections on the reactor get their turn.
+        for (int frames = 0; frames < MAX_FRAMES_PER_READ; frames++) {
+            if (receive == null) {
+                receive = new BoundedByteBufferReceive();
+            }
+            int bytesRead = receive.readFrom(socketChannel);
+            reactor.getStats().bytesRead.add(Math.max(bytesRead, 0));
+            if (bytesRead < 0) {
+                close();
+                return;
+            }
+            if (!receive.complete) {
+                // more reading to be done
+                //OP_READ stays registered, unless paused for backpressure.
+                getLogger().trace("Did not finish reading, waiting for more data on connection " + socketChannel.getRemoteAddress());
+                return;
+            }
+            RequestOrResponse request = JsonSerDes.deserialize(receive.contentBuffer.flip().array(), RequestOrResponse.class);
 
             //TODO:submit request
             //requestChannel.sendRequest(new RequestWrapper(id, request, key));
-            MessageId messageId = MessageId.valueOf(request.getRequestId());
-            //submit for execution.
-            var header = new Message.Header(request.getFromAddress(), request.getCorrelationId(), messageId);
-            executor.execute(()-> requestConsumer.accept(new Message<RequestOrResponse>(request, header, this)));
+            submit(request);
             receive = null; //ready to read next request.
-        } else {
-            // more reading to be done
-            getLogger().trace("Did not finish reading, registering for read again on connection " + socketChannel.getRemoteAddress());
-            key.interestOps(SelectionKey.OP_READ);
         }
     }
 
+    private void submit(RequestOrResponse request) {
+        MessageId messageId = MessageId.valueOf(request.getRequestId());
+        reactor.getStats().messagesRead.increment();
+        //submit for execution.
+        var header = new Message.Header(request.getFromAddress(), request.getCorrelationId(), messageId);
+        executor.execute(()-> requestConsumer.accept(new Message<RequestOrResponse>(request, header, this)));
+    }
+
+    NIOSocketListener getListener() {
+        return listener;
+    }
+
     @Override
     public void close() {
-        if (closed) {
-            return;
-        }
-        closed = true;
-        synchronized (server.cnxns) {
-            server.cnxns.remove(this);
+        synchronized (outboundLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
         }
+        reactor.removeConnection(this);
         if (requestConsumer != null) {
             requestConsumer.close(this);
         }
@@ -148,11 +183,37 @@ public class NIOConnection implements ClientConnection, Logging {
     @Override
     public void write(RequestOrResponse response) {
         ByteBuffer responseBuffer = serializeResponse(response);
-        outgoingBuffers.add(responseBuffer);
-        sk.selector().wakeup();
-        if (sk.isValid()) {
-            sk.interestOps(sk.interestOps() | SelectionKey.OP_WRITE);
+        synchronized (outboundLock) {
+            if (closed) {
+                return;
+            }
+            if (!outgoingBuffers.add(responseBuffer)) {
+                //client is not reading its responses. Drop it rather than buffering without bound.
+                LOG.warn("Closing connection with " + outgoingBuffers.size() + " responses pending");
+                reactor.getStats().overflowCloses.increment();
+                closeOnReactor();
+                return;
+            }
+            //interest has to be set before waking up the selector, otherwise
+            //the selector can go back to select without OP_WRITE, delaying the response till the select timeout.
+            if (sk.isValid()) {
+                int ops = sk.interestOps() | SelectionKey.OP_WRITE;
+                if (!readsPaused && outgoingBuffers.pendingBytes() > highWatermarkBytes) {
+                    //stop reading more requests till the client catches up with the responses.
+                    readsPaused = true;
+                    reactor.getStats().readPauses.increment();
+                    ops &= ~SelectionKey.OP_READ;
+                }
+                sk.interestOps(ops);
+            }
         }
+        if (wakeupPending.compareAndSet(false, true)) {
+            sk.selector().wakeup();
+        }
+    }
+
+    private void closeOnReactor() {
+        reactor.execute(this::close);
     }
 
     private ByteBuffer serializeResponse(RequestOrResponse response) {
@@ -0,0 +1,209 @@
+package replicate.net;
+
+import replicate.common.Logging;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes a subset of the connections accepted by NIOSocketListeners.
+ * Each reactor has its own selector and thread, so connections are served in parallel
+ * on multiple cores. Accepted connections are handed over through a queue and registered
+ * with the selector on the reactor thread.
+ * A reactor also accepts the connections for the listeners registered with it.
+ * Reactors either belong to a single listener, or are shared by the listeners of all the
+ * replicas using a ReplicaRuntime, in which case the stats cover all of those listeners.
+ */
+public class NIOReactor extends Thread implements Logging {
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Accepted> acceptedConnections = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final Set<NIOConnection> cnxns = new HashSet<>();
+    private final ReactorStats stats = new ReactorStats();
+    private volatile boolean running = true;
+
+    private record Accepted(SocketChannel socketChannel, NIOSocketListener listener) {}
+
+    public NIOReactor(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+    }
+
+    void addConnection(SocketChannel socketChannel, NIOSocketListener listener) {
+        acceptedConnections.add(new Accepted(socketChannel, listener));
+        selector.wakeup();
+    }
+
+    //accepts the connections for the listener on this reactor's thread.
+    void listen(ServerSocketChannel serverSocketChannel, NIOSocketListener listener) {
+        execute(() -> {
+            try {
+                serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT, listener);
+            } catch (IOException e) {
+                getLogger().error("Unable to listen on " + serverSocketChannel, e);
+            }
+        });
+    }
+
+    //Closes the server socket right away rather than on the next select, so that its port can be reused.
+    void stopListening(ServerSocketChannel serverSocketChannel) throws InterruptedException, IOException {
+        if (!running) {
+            serverSocketChannel.close();
+            return;
+        }
+        CountDownLatch closed = new CountDownLatch(1);
+        execute(() -> {
+            try {
+                serverSocketChannel.close();
+                selector.selectNow();
+            } catch (IOException e) {
+                getLogger().warn("ignoring exception during listener close", e);
+            } finally {
+                closed.countDown();
+            }
+        });
+        if (!closed.await(5, TimeUnit.SECONDS)) {
+            getLogger().warn(getName() + " did not close " + serverSocketChannel);
+        }
+    }
+
+    //runs the task on the reactor thread.
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(1000);
+                long loopStart = System.nanoTime();
+                registerAcceptedConnections();
+                runPendingTasks();
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey k : selected) {
+                    //connections of a listener sharing the reactor can be closed from other threads.
+                    if (!k.isValid()) {
+                        continue;
+                    }
+                    if (k.isAcceptable()) {
+                        ((NIOSocketListener) k.attachment()).acceptConnections();
+                    } else if ((k.readyOps() & (SelectionKey.OP_READ | SelectionKey.OP_WRITE)) != 0) {
+                        NIOConnection c = (NIOConnection) k.attachment();
+                        c.doIO(k);
+                    }
+                }
+                selected.clear();
+                stats.recordSelectLoop(System.nanoTime() - loopStart);
+            } catch (Exception e) {
+                getLogger().error(e);
+            }
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    private void registerAcceptedConnections() throws IOException {
+        Accepted accepted;
+        while ((accepted = acceptedConnections.poll()) != null) {
+            SocketChannel sc = accepted.socketChannel();
+            sc.configureBlocking(false);
+            SelectionKey sk = sc.register(selector, SelectionKey.OP_READ);
+            NIOConnection cnxn = new NIOConnection(sc, sk, this, accepted.listener());
+            sk.attach(cnxn);
+            synchronized (cnxns) {
+                cnxns.add(cnxn);
+            }
+            stats.connections.incrementAndGet();
+        }
+    }
+
+    void removeConnection(NIOConnection cnxn) {
+        synchronized (cnxns) {
+            if (cnxns.remove(cnxn)) {
+                stats.connections.decrementAndGet();
+            }
+        }
+    }
+
+    ReactorStats getStats() {
+        return stats;
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            getLogger().warn("Interrupted", e);
+        }
+        closeAllConnections();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            getLogger().warn("ignoring exception during selector close", e);
+        }
+    }
+
+    //Closes the connections accepted by the listener, leaving the others to the listeners sharing the reactor.
+    void closeConnections(NIOSocketListener listener) {
+        List<NIOConnection> listenerConnections = new ArrayList<>();
+        synchronized (cnxns) {
+            for (NIOConnection cnxn : cnxns) {
+                if (cnxn.getListener() == listener) {
+                    listenerConnections.add(cnxn);
+                }
+            }
+        }
+        for (NIOConnection cnxn : listenerConnections) {
+            try {
+                cnxn.close();
+            } catch (Exception e) {
+                // Do nothing.
+            }
+        }
+    }
+
+    private void closeAllConnections() {
+        synchronized (cnxns) {
+            // got to clear all the connections that we have in the selector
+            for (Iterator<NIOConnection> it = cnxns.iterator(); it.hasNext(); ) {
+                NIOConnection cnxn = it.next();
+                it.remove();
+                try {
+                    cnxn.close();
+                } catch (Exception e) {
+                    // Do nothing.
+                }
+            }
+            stats.connections.set(0);
+        }
+        pendingTasks.clear();
+        Accepted accepted;
+        while ((accepted = acceptedConnections.poll()) != null) {
+            try {
+                accepted.socketChannel().close();
+            } catch (IOException e) {
+                // Do nothing.
+            }
+        }
+    }
+}
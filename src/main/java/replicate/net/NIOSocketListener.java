@@ -1,102 +1,128 @@
 package replicate.net;
 
+import replicate.common.Config;
 import replicate.common.Logging;
+import replicate.common.ReplicaRuntime;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
 
-public class NIOSocketListener extends Thread implements Logging {
+/**
+ * Accepts connections on a listen address and hands them round-robin to a set of NIOReactors,
+ * each of which does the reads and writes for its connections on its own selector thread.
+ * The connections are accepted on one of the reactors too, so the listener has no thread of its own.
+ * The reactors belong to the listener, unless the ReplicaRuntime shares its reactors
+ * among the listeners of all its replicas.
+ */
+public class NIOSocketListener implements Listener, Logging {
     private final ServerSocketChannel ss;
-    private final Selector selector;
     private final RequestConsumer requestConsumer;
+    private final Config config;
+    private final List<NIOReactor> reactors = new ArrayList<>();
+    private final boolean ownsReactors;
+    //accessed only by the thread of acceptingReactor.
+    private int nextReactor = 0;
+    private final NIOReactor acceptingReactor;
+    private boolean started;
 
     public NIOSocketListener(RequestConsumer requestConsumer, InetAddressAndPort listenAddress) throws IOException {
+        this(requestConsumer, listenAddress, new Config());
+    }
+
+    public NIOSocketListener(RequestConsumer requestConsumer, InetAddressAndPort listenAddress, Config config) throws IOException {
         this.requestConsumer = requestConsumer;
-        this.selector = Selector.open();
+        this.config = config;
+        ReplicaRuntime runtime = config.getRuntime();
+        this.ownsReactors = !runtime.sharesIoThreads();
+        if (ownsReactors) {
+            int noOfReactors = config.getIoReactors();
+            if (noOfReactors < 1) {
+                throw new IllegalArgumentException("Need at least one reactor, got " + noOfReactors);
+            }
+            for (int i = 0; i < noOfReactors; i++) {
+                reactors.add(new NIOReactor("NIOReactor-" + listenAddress + "-" + i));
+            }
+        } else {
+            reactors.addAll(runtime.getIoReactors());
+        }
+        //listeners sharing the reactors accept on different ones.
+        this.acceptingReactor = reactors.get(Math.floorMod(listenAddress.hashCode(), reactors.size()));
         this.ss = ServerSocketChannel.open();
         ss.socket().bind(new InetSocketAddress(listenAddress.getAddress(), listenAddress.getPort()));
         ss.configureBlocking(false);
-        ss.register(selector, SelectionKey.OP_ACCEPT);
     }
-    HashSet<NIOConnection> cnxns = new HashSet<NIOConnection>();
+
     @Override
-    public void run() {
-        while (!ss.socket().isClosed()) {
-            try {
-                selector.select(1000);
-                Set<SelectionKey> selected;
-                synchronized (this) {
-                    selected = selector.selectedKeys();
-                }
-                ArrayList<SelectionKey> selectedList = new ArrayList<SelectionKey>(
-                        selected);
-                Collections.shuffle(selectedList);
-                for (SelectionKey k : selectedList) {
-                    if ((k.readyOps() & SelectionKey.OP_ACCEPT) != 0) {
-                        SocketChannel sc = ((ServerSocketChannel) k
-                                .channel()).accept();
-                        sc.configureBlocking(false);
-                        SelectionKey sk = sc.register(selector,
-                                SelectionKey.OP_READ);
-                        NIOConnection cnxn = createConnection(sc, sk);
-                        sk.attach(cnxn);
-                        addCnxn(cnxn);
-                    } else if ((k.readyOps() & (SelectionKey.OP_READ | SelectionKey.OP_WRITE)) != 0) {
-                        NIOConnection c = (NIOConnection) k.attachment();
-                        c.doIO(k);
-                    }
-                }
-                selected.clear();
-            } catch (Exception e) {
-                getLogger().error(e);
+    public synchronized void start() {
+        if (ownsReactors) {
+            for (NIOReactor reactor : reactors) {
+                reactor.start();
             }
         }
+        acceptingReactor.listen(ss, this);
+        started = true;
     }
 
-    private void addCnxn(NIOConnection cnxn) {
-        this.cnxns.add(cnxn);
+    //called on the accepting reactor's thread when connections are ready to be accepted.
+    void acceptConnections() {
+        try {
+            SocketChannel sc;
+            while ((sc = ss.accept()) != null) {
+                nextReactor().addConnection(sc, this);
+            }
+        } catch (IOException e) {
+            getLogger().error(e);
+        }
     }
 
-    protected NIOConnection createConnection(SocketChannel sock,
-                                             SelectionKey sk) throws IOException {
-        return new NIOConnection(sock, sk, this, requestConsumer);
+    private NIOReactor nextReactor() {
+        NIOReactor reactor = reactors.get(nextReactor);
+        nextReactor = (nextReactor + 1) % reactors.size();
+        return reactor;
     }
 
+    RequestConsumer getRequestConsumer() {
+        return requestConsumer;
+    }
 
+    Config getConfig() {
+        return config;
+    }
 
-    public void shudown() {
-         try {
-            ss.close();
+    public List<ReactorStats> getReactorStats() {
+        List<ReactorStats> stats = new ArrayList<>();
+        for (NIOReactor reactor : reactors) {
+            stats.add(reactor.getStats());
+        }
+        return stats;
+    }
+
+    public synchronized void shudown() {
+        try {
+            if (started) {
+                acceptingReactor.stopListening(ss);
+            } else {
+                ss.close();
+            }
             clear();
-            this.interrupt();
-            this.join();
         } catch (InterruptedException e) {
-            getLogger().warn("Interrupted",e);
+            getLogger().warn("Interrupted", e);
         } catch (Exception e) {
             getLogger().error("Unexpected exception", e);
         }
     }
 
-    synchronized public void clear() {
-        selector.wakeup();
-        synchronized (cnxns) {
-            // got to clear all the connections that we have in the selector
-            for (Iterator<NIOConnection> it = cnxns.iterator(); it
-                    .hasNext();) {
-                NIOConnection cnxn = it.next();
-                it.remove();
-                try {
-                    cnxn.close();
-                } catch (Exception e) {
-                    // Do nothing.
-                }
+    public void clear() {
+        for (NIOReactor reactor : reactors) {
+            if (ownsReactors) {
+                reactor.shutdown();
+            } else {
+                reactor.closeConnections(this);
             }
         }
-
     }
 }
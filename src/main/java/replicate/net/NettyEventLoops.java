@@ -0,0 +1,50 @@
+package replicate.net;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The boss and worker event loops of NettyTransport, with the channel classes to use on them.
+ * A transport creates its own, unless its ReplicaRuntime shares I/O threads,
+ * in which case all the transports on the runtime use the runtime's.
+ */
+public class NettyEventLoops {
+    final EventLoopGroup bossGroup;
+    final EventLoopGroup workerGroup;
+    final Class<? extends ServerChannel> serverChannelClass;
+    final Class<? extends Channel> channelClass;
+
+    private NettyEventLoops(EventLoopGroup bossGroup, EventLoopGroup workerGroup,
+                            Class<? extends ServerChannel> serverChannelClass, Class<? extends Channel> channelClass) {
+        this.bossGroup = bossGroup;
+        this.workerGroup = workerGroup;
+        this.serverChannelClass = serverChannelClass;
+        this.channelClass = channelClass;
+    }
+
+    //The epoll transport is used when the native library is on the classpath, NIO otherwise.
+    public static NettyEventLoops create(String name, int ioThreads) {
+        ThreadFactory bossThreads = new DefaultThreadFactory(name + "-netty-boss", true);
+        ThreadFactory workerThreads = new DefaultThreadFactory(name + "-netty-io", true);
+        if (NettyTransport.Epoll.isAvailable()) {
+            return new NettyEventLoops(NettyTransport.Epoll.newEventLoopGroup(1, bossThreads),
+                    NettyTransport.Epoll.newEventLoopGroup(ioThreads, workerThreads),
+                    NettyTransport.Epoll.serverChannelClass(), NettyTransport.Epoll.channelClass());
+        }
+        return new NettyEventLoops(new NioEventLoopGroup(1, bossThreads), new NioEventLoopGroup(ioThreads, workerThreads),
+                NioServerSocketChannel.class, NioSocketChannel.class);
+    }
+
+    public void shutdown() {
+        bossGroup.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        workerGroup.shutdownGracefully(0, 100, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+}
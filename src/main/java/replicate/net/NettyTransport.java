@@ -0,0 +1,343 @@
+package replicate.net;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import replicate.common.Config;
+import replicate.common.JsonSerDes;
+import replicate.common.Logging;
+import replicate.common.Message;
+import replicate.common.MessageId;
+import replicate.common.ReplicaRuntime;
+import replicate.common.RequestOrResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Transport on Netty event loops.
+ * Messages are framed the same way as the NIO transport, a 4 byte length followed by the
+ * serialized message, so clients work unchanged against either transport.
+ * Messages are serialized straight into pooled direct buffers.
+ * The epoll transport is used when the native library is on the classpath, NIO otherwise.
+ * The event loops are the ReplicaRuntime's when it shares I/O threads, so a process hosting
+ * many replicas does not start event loops for each of them.
+ *
+ * Request consumers are called on the event loop threads, so they must hand over any
+ * blocking work, as Replica does with its singular update queue.
+ */
+public class NettyTransport implements Transport, Logging {
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private final NettyEventLoops eventLoops;
+    //false when the event loops are shared through the runtime, which shuts them down.
+    private final boolean ownsEventLoops;
+    private final WriteBufferWaterMark writeBufferWaterMark;
+    private final ConnectionStats stats = new ConnectionStats();
+    private final Map<InetAddressAndPort, RequestConsumer> consumers = new ConcurrentHashMap<>();
+    private final List<Channel> serverChannels = new ArrayList<>();
+    private final Map<InetAddressAndPort, ChannelFuture> peerConnections = new ConcurrentHashMap<>();
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    public NettyTransport(Config config) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark((int) config.getConnectionWriteLowWatermarkBytes(), (int) config.getConnectionWriteHighWatermarkBytes());
+        ReplicaRuntime runtime = config.getRuntime();
+        this.ownsEventLoops = !runtime.sharesIoThreads();
+        this.eventLoops = ownsEventLoops
+                ? NettyEventLoops.create(runtime.getName(), config.getIoReactors())
+                : runtime.getNettyEventLoops();
+    }
+
+    @Override
+    public void listenForPeers(InetAddressAndPort address, RequestConsumer consumer) {
+        consumers.put(address, consumer);
+    }
+
+    @Override
+    public void listenForClients(InetAddressAndPort address, RequestConsumer consumer) {
+        consumers.put(address, consumer);
+    }
+
+    @Override
+    public void start() {
+        for (Map.Entry<InetAddressAndPort, RequestConsumer> entry : consumers.entrySet()) {
+            InetAddressAndPort address = entry.getKey();
+            RequestConsumer consumer = entry.getValue();
+            ServerBootstrap bootstrap = new ServerBootstrap()
+                    .group(eventLoops.bossGroup, eventLoops.workerGroup)
+                    .channel(eventLoops.serverChannelClass)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                    .childOption(ChannelOption.TCP_NODELAY, true)
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
+                    .childHandler(new ChannelInitializer<>() {
+                        @Override
+                        protected void initChannel(Channel channel) {
+                            addFraming(channel.pipeline());
+                            channel.pipeline().addLast(new RequestHandler(consumer));
+                        }
+                    });
+            Channel serverChannel = bootstrap.bind(new InetSocketAddress(address.getAddress(), address.getPort()))
+                    .syncUninterruptibly().channel();
+            serverChannels.add(serverChannel);
+            getLogger().info("Listening on " + address + " with " + eventLoops.serverChannelClass.getSimpleName());
+        }
+    }
+
+    private static void addFraming(ChannelPipeline pipeline) {
+        //writes are flushed together when many are issued in the same event loop iteration.
+        pipeline.addLast(new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true));
+        pipeline.addLast(new LengthFieldBasedFrameDecoder(MAX_FRAME_BYTES, 0, 4, 0, 4));
+        pipeline.addLast(new LengthFieldPrepender(4));
+    }
+
+    @Override
+    public void send(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        ChannelFuture connectFuture = connectionTo(address);
+        if (connectFuture.isDone()) {
+            write(connectFuture, address, message, failureHandler);
+        } else {
+            connectFuture.addListener(f -> write(connectFuture, address, message, failureHandler));
+        }
+    }
+
+    //Connections are created once per peer and reused for all the messages to that peer.
+    private ChannelFuture connectionTo(InetAddressAndPort address) {
+        ChannelFuture connectFuture = peerConnections.get(address);
+        if (!isUsable(connectFuture)) {
+            synchronized (peerConnections) {
+                connectFuture = peerConnections.get(address);
+                if (!isUsable(connectFuture)) {
+                    ChannelFuture newConnection = connect(address);
+                    peerConnections.put(address, newConnection);
+                    return newConnection;
+                }
+            }
+        }
+        //including connections another sender created while this one waited for the lock.
+        stats.reuses.increment();
+        return connectFuture;
+    }
+
+    private static boolean isUsable(ChannelFuture connectFuture) {
+        return connectFuture != null && (!connectFuture.isDone() || connectFuture.channel().isActive());
+    }
+
+    private ChannelFuture connect(InetAddressAndPort address) {
+        ChannelFuture connectFuture = new Bootstrap()
+                .group(eventLoops.workerGroup)
+                .channel(eventLoops.channelClass)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark)
+                .handler(new ChannelInitializer<>() {
+                    @Override
+                    protected void initChannel(Channel channel) {
+                        addFraming(channel.pipeline());
+                        //peers respond on their own connection to our peer listener. Nothing is expected here.
+                        channel.pipeline().addLast(new DiscardHandler());
+                    }
+                })
+                .connect(new InetSocketAddress(address.getAddress(), address.getPort()));
+        connectFuture.addListener(f -> {
+            if (f.isSuccess()) {
+                stats.connects.increment();
+            } else {
+                stats.failures.increment();
+            }
+        });
+        connectFuture.channel().closeFuture().addListener(f -> peerConnections.remove(address, connectFuture));
+        return connectFuture;
+    }
+
+    private void write(ChannelFuture connectFuture, InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        if (!connectFuture.isSuccess()) {
+            failureHandler.onSendFailure(message, new IOException("Unable to connect to " + address, connectFuture.cause()));
+            return;
+        }
+        Channel channel = connectFuture.channel();
+        if (!channel.isWritable()) {
+            //peer is not keeping up. Fail fast rather than buffering without bound.
+            failureHandler.onSendFailure(message, new IOException("Too many messages pending for " + address));
+            return;
+        }
+        stats.writes.increment();
+        stats.messagesWritten.increment();
+        channel.writeAndFlush(encode(channel.alloc(), message)).addListener(f -> {
+            if (!f.isSuccess()) {
+                stats.failures.increment();
+                failureHandler.onSendFailure(message, new IOException("Failed to write to " + address, f.cause()));
+            }
+        });
+    }
+
+    static ByteBuf encode(ByteBufAllocator allocator, RequestOrResponse message) {
+        ByteBuf buffer = allocator.directBuffer();
+        try {
+            JsonSerDes.serialize(message, new ByteBufOutputStream(buffer));
+            return buffer;
+        } catch (RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void disconnect(InetAddressAndPort address) {
+        ChannelFuture connectFuture = peerConnections.remove(address);
+        if (connectFuture != null) {
+            connectFuture.channel().close();
+        }
+    }
+
+    @Override
+    public ConnectionStats getConnectionStats() {
+        return stats;
+    }
+
+    @Override
+    public void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
+        for (Channel serverChannel : serverChannels) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        for (ChannelFuture connectFuture : peerConnections.values()) {
+            connectFuture.channel().close();
+        }
+        peerConnections.clear();
+        if (ownsEventLoops) {
+            eventLoops.shutdown();
+        }
+    }
+
+    //One per accepted connection.
+    static class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> implements ClientConnection {
+        private final RequestConsumer consumer;
+        private Channel channel;
+
+        RequestHandler(RequestConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            this.channel = ctx.channel();
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+            accept(JsonSerDes.deserialize(new ByteBufInputStream(frame), RequestOrResponse.class));
+        }
+
+        private void accept(RequestOrResponse request) {
+            MessageId messageId = MessageId.valueOf(request.getRequestId());
+            var header = new Message.Header(request.getFromAddress(), request.getCorrelationId(), messageId);
+            consumer.accept(new Message<>(request, header, this));
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            //stop reading requests while the client is not reading its responses.
+            ctx.channel().config().setAutoRead(ctx.channel().isWritable());
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            consumer.close(this);
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+
+        @Override
+        public void write(RequestOrResponse response) {
+            channel.writeAndFlush(encode(channel.alloc(), response));
+        }
+
+        @Override
+        public void close() {
+            channel.close();
+        }
+    }
+
+    static class DiscardHandler extends SimpleChannelInboundHandler<ByteBuf> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.close();
+        }
+    }
+
+    //netty-transport-native-epoll is optional, so its classes are only loaded reflectively.
+    static class Epoll {
+        private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+        static boolean isAvailable() {
+            try {
+                return (Boolean) Class.forName(EPOLL_PACKAGE + "Epoll").getMethod("isAvailable").invoke(null);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return false;
+            }
+        }
+
+        static EventLoopGroup newEventLoopGroup(int threads, ThreadFactory threadFactory) {
+            try {
+                return (EventLoopGroup) Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup")
+                        .getConstructor(int.class, ThreadFactory.class).newInstance(threads, threadFactory);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        static Class<? extends ServerChannel> serverChannelClass() {
+            return (Class<? extends ServerChannel>) load("EpollServerSocketChannel");
+        }
+
+        @SuppressWarnings("unchecked")
+        static Class<? extends Channel> channelClass() {
+            return (Class<? extends Channel>) load("EpollSocketChannel");
+        }
+
+        private static Class<?> load(String className) {
+            try {
+                return Class.forName(EPOLL_PACKAGE + className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package replicate.net;
+
+import replicate.common.Config;
+import replicate.common.RequestOrResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transport built on the project's own socket code.
+ * Listeners are created according to the configured ListenerMode.
+ * Messages to peers are queued on PeerChannels, written by the PeerChannelSelector thread,
+ * which is the transport's own unless the ReplicaRuntime shares its selectors.
+ */
+public class NioTransport implements Transport {
+    private final Config config;
+    private final PeerChannels peerChannels;
+    //null when the selector is shared.
+    private final PeerChannelSelector ownSelector;
+    private final List<Listener> listeners = new ArrayList<>();
+    private Listener peerListener;
+    private Listener clientListener;
+
+    public NioTransport(Config config) throws IOException {
+        this.config = config;
+        PeerChannelSelector sharedSelector = config.getRuntime().nextPeerChannelSelector();
+        if (sharedSelector == null) {
+            this.ownSelector = new PeerChannelSelector();
+            this.ownSelector.start();
+            this.peerChannels = new PeerChannels(config, ownSelector);
+        } else {
+            this.ownSelector = null;
+            this.peerChannels = new PeerChannels(config, sharedSelector);
+        }
+    }
+
+    @Override
+    public void listenForPeers(InetAddressAndPort address, RequestConsumer consumer) throws IOException {
+        peerListener = Listener.create(consumer, address, config);
+        listeners.add(peerListener);
+    }
+
+    @Override
+    public void listenForClients(InetAddressAndPort address, RequestConsumer consumer) throws IOException {
+        clientListener = Listener.create(consumer, address, config);
+        listeners.add(clientListener);
+    }
+
+    @Override
+    public void start() {
+        for (Listener listener : listeners) {
+            listener.start();
+        }
+    }
+
+    @Override
+    public void send(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        peerChannels.channelTo(address).send(message, failureHandler);
+    }
+
+    @Override
+    public void disconnect(InetAddressAndPort address) {
+        peerChannels.disconnect(address);
+    }
+
+    @Override
+    public ConnectionStats getConnectionStats() {
+        return peerChannels.getStats();
+    }
+
+    public List<ReactorStats> getPeerReactorStats() {
+        return reactorStats(peerListener);
+    }
+
+    public List<ReactorStats> getClientReactorStats() {
+        return reactorStats(clientListener);
+    }
+
+    //only NIO listeners have reactors.
+    private static List<ReactorStats> reactorStats(Listener listener) {
+        return listener instanceof NIOSocketListener ? ((NIOSocketListener) listener).getReactorStats() : Collections.emptyList();
+    }
+
+    @Override
+    public void shutdown() {
+        for (Listener listener : listeners) {
+            listener.shudown();
+        }
+        peerChannels.close();
+        if (ownSelector != null) {
+            ownSelector.shutdown();
+        }
+    }
+}
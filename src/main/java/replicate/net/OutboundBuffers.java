@@ -0,0 +1,74 @@
+package replicate.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+/**
+ * Bounded ring of buffers waiting to be written to a connection.
+ * The buffers are written with gathering writes straight from the ring array,
+ * at most two writes when the pending buffers wrap around the end of the array.
+ * Not thread safe. NIOConnection guards it with its own lock.
+ */
+class OutboundBuffers {
+    private final ByteBuffer[] ring;
+    private final int mask;
+    //the ring is rounded up to a power of two for masking, but holds at most capacity buffers.
+    private final int capacity;
+    private int head;
+    private int size;
+    private long pendingBytes;
+
+    OutboundBuffers(int capacity) {
+        int ringSize = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.ring = new ByteBuffer[ringSize];
+        this.mask = ringSize - 1;
+        this.capacity = capacity;
+    }
+
+    boolean add(ByteBuffer buffer) {
+        if (size == capacity) {
+            return false;
+        }
+        ring[(head + size) & mask] = buffer;
+        size++;
+        pendingBytes += buffer.remaining();
+        return true;
+    }
+
+    long writeTo(GatheringByteChannel channel) throws IOException {
+        long totalWritten = 0;
+        while (size > 0) {
+            int start = head & mask;
+            int length = Math.min(size, ring.length - start);
+            long written = channel.write(ring, start, length);
+            totalWritten += written;
+            pendingBytes -= written;
+            releaseWrittenBuffers();
+            if (size > 0 && (head & mask) == start) {
+                break; //socket send buffer is full.
+            }
+        }
+        return totalWritten;
+    }
+
+    private void releaseWrittenBuffers() {
+        while (size > 0 && !ring[head & mask].hasRemaining()) {
+            ring[head & mask] = null;
+            head++;
+            size--;
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long pendingBytes() {
+        return pendingBytes;
+    }
+}
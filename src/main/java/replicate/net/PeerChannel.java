@@ -0,0 +1,383 @@
+package replicate.net;
+
+import replicate.common.Config;
+import replicate.common.JsonSerDes;
+import replicate.common.Logging;
+import replicate.common.RequestOrResponse;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound connection to a single peer.
+ * The caller only puts the message in a bounded queue and returns.
+ * Connecting, serializing and writing happens on the PeerChannelSelector thread,
+ * so a slow or unreachable peer never blocks the caller, which is typically the
+ * singular update thread of the Replica.
+ *
+ * If the connection can not be established or breaks while writing, all the queued messages
+ * are failed through their SendFailureHandler. The channel then backs off exponentially,
+ * failing new messages immediately, and reconnects on the first send after the backoff.
+ *
+ * Once connected, the same connection is used for all the messages to the peer.
+ * The selector periodically checks its health. The connection is closed if the peer closes it,
+ * if writes are stalled for WRITE_STALL_TIMEOUT_NANOS or if it stays idle longer than the idle timeout.
+ * A closed idle connection is transparently reopened by the next send.
+ *
+ * All the messages queued at the time of writing are sent together, up to maxBatchBytes,
+ * as their frames written back to back with a single write. With a non-zero linger,
+ * the selector waits for up to lingerNanos for more messages to accumulate before writing.
+ */
+public class PeerChannel implements Logging {
+    static final long INITIAL_RECONNECT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    static final long MAX_RECONNECT_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    //Approximate size of the RequestOrResponse fields other than the message body.
+    static final int ENVELOPE_BYTES = 64;
+    //A peer which does not read anything for this long is considered dead.
+    static final long WRITE_STALL_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    enum State {
+        Disconnected, Connecting, Connected, BackingOff, Closed
+    }
+
+    record Outbound(RequestOrResponse message, SendFailureHandler failureHandler) {}
+
+    private final InetAddressAndPort address;
+    private final PeerChannelSelector selector;
+    private final ArrayBlockingQueue<Outbound> outboundQueue;
+    private final ConnectionStats stats;
+    private final long idleTimeoutNanos;
+    private final long lingerNanos;
+    private final int maxBatchBytes;
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private volatile boolean flushScheduled;
+    private final AtomicBoolean signalled = new AtomicBoolean(false);
+    private volatile State state = State.Disconnected;
+    private volatile long reconnectAtNanos;
+
+    //following are accessed only by the selector thread.
+    private long backoffNanos = INITIAL_RECONNECT_BACKOFF_NANOS;
+    private SocketChannel socketChannel;
+    private SelectionKey selectionKey;
+    private ByteBuffer writeBuffer;
+    private final List<Outbound> inFlight = new ArrayList<>();
+    //Peers never write on this connection. Reads are only to detect the connection being closed.
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(64);
+    private long lastActivityNanos;
+    private long writeStalledSinceNanos;
+    private long flushDeadlineNanos;
+
+    PeerChannel(InetAddressAndPort address, PeerChannelSelector selector, Config config, ConnectionStats stats) {
+        this.address = address;
+        this.selector = selector;
+        this.outboundQueue = new ArrayBlockingQueue<>(config.getPeerOutboundQueueSize());
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(config.getPeerConnectionIdleTimeoutMs());
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(config.getPeerBatchLingerMicros());
+        this.maxBatchBytes = config.getPeerMaxBatchBytes();
+        this.stats = stats;
+    }
+
+    public void send(RequestOrResponse message, SendFailureHandler failureHandler) {
+        State currentState = state;
+        if (currentState == State.Closed) {
+            failureHandler.onSendFailure(message, new IOException("Channel to " + address + " is closed"));
+            return;
+        }
+        if (currentState == State.BackingOff && System.nanoTime() < reconnectAtNanos) {
+            failureHandler.onSendFailure(message, new IOException("Unable to connect to " + address));
+            return;
+        }
+        if (!outboundQueue.offer(new Outbound(message, failureHandler))) {
+            failureHandler.onSendFailure(message, new IOException("Outbound queue to " + address + " is full"));
+            return;
+        }
+        if (currentState == State.Connected) {
+            stats.reuses.increment();
+        }
+        long pendingBytes = queuedBytes.addAndGet(estimatedSize(message));
+        if (flushScheduled && pendingBytes < maxBatchBytes) {
+            //selector is lingering for more messages and will write this one along with them.
+            return;
+        }
+        signal();
+    }
+
+    private static int estimatedSize(RequestOrResponse message) {
+        return message.getMessageBodyJson().length + ENVELOPE_BYTES;
+    }
+
+    private void signal() {
+        if (signalled.compareAndSet(false, true)) {
+            selector.signal(this);
+        }
+    }
+
+    //invoked on the selector thread whenever new messages are queued.
+    void onSignal() {
+        signalled.set(false);
+        switch (state) {
+            case Disconnected:
+                connect();
+                break;
+            case BackingOff:
+                if (System.nanoTime() >= reconnectAtNanos) {
+                    connect();
+                } else {
+                    failQueued(new IOException("Unable to connect to " + address));
+                }
+                break;
+            case Connected:
+                if (lingerNanos == 0 || queuedBytes.get() >= maxBatchBytes) {
+                    flush();
+                } else {
+                    scheduleFlush();
+                }
+                break;
+            case Connecting:
+            case Closed:
+                break;
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled) {
+            return;
+        }
+        flushDeadlineNanos = System.nanoTime() + lingerNanos;
+        flushScheduled = true;
+        selector.lingerBeforeFlush(this);
+    }
+
+    long getFlushDeadlineNanos() {
+        return flushDeadlineNanos;
+    }
+
+    //invoked on the selector thread once the linger time has passed.
+    void flushAfterLinger() {
+        //Cleared before draining the queue, so that a sender seeing it set
+        //is guaranteed to have its message drained by this flush.
+        flushScheduled = false;
+        if (state == State.Connected) {
+            flush();
+        } else if (!outboundQueue.isEmpty()) {
+            signal();
+        }
+    }
+
+    private void connect() {
+        try {
+            state = State.Connecting;
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+            socketChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            socketChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            boolean connected = socketChannel.connect(new InetSocketAddress(address.getAddress(), address.getPort()));
+            selectionKey = selector.register(socketChannel, connected ? 0 : SelectionKey.OP_CONNECT, this);
+            if (connected) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            connectionFailed(e);
+        }
+    }
+
+    void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                socketChannel.finishConnect();
+                onConnected();
+            }
+            if (key.isValid() && key.isReadable()) {
+                readFromPeer();
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+        } catch (IOException e) {
+            connectionFailed(e);
+        }
+    }
+
+    private void onConnected() {
+        getLogger().debug("Connected to " + address);
+        stats.connects.increment();
+        state = State.Connected;
+        backoffNanos = INITIAL_RECONNECT_BACKOFF_NANOS;
+        lastActivityNanos = System.nanoTime();
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        flush();
+    }
+
+    private void readFromPeer() throws IOException {
+        readBuffer.clear();
+        if (socketChannel.read(readBuffer) < 0) {
+            peerClosed();
+        }
+    }
+
+    //The peer closed the connection, most likely because it restarted.
+    //Reconnect right away if there are messages to send.
+    private void peerClosed() {
+        getLogger().info("Connection closed by " + address);
+        closeSocket();
+        failInFlight(new IOException("Connection closed by " + address));
+        state = State.Disconnected;
+        if (!outboundQueue.isEmpty()) {
+            connect();
+        }
+    }
+
+    //invoked periodically on the selector thread.
+    void checkHealth(long nowNanos) {
+        if (state != State.Connected) {
+            return;
+        }
+        if (writeStalledSinceNanos != 0 && nowNanos - writeStalledSinceNanos > WRITE_STALL_TIMEOUT_NANOS) {
+            connectionFailed(new IOException("Writes to " + address + " stalled"));
+
+        } else if (writeBuffer == null && outboundQueue.isEmpty() && nowNanos - lastActivityNanos > idleTimeoutNanos) {
+            getLogger().debug("Closing idle connection to " + address);
+            stats.idleCloses.increment();
+            closeSocket();
+            state = State.Disconnected;
+        }
+    }
+
+    private void flush() {
+        try {
+            while (true) {
+                if (writeBuffer == null || !writeBuffer.hasRemaining()) {
+                    inFlight.clear();
+                    writeBuffer = nextWriteBuffer();
+                    if (writeBuffer == null) {
+                        selectionKey.interestOps(SelectionKey.OP_READ);
+                        return;
+                    }
+                }
+                socketChannel.write(writeBuffer);
+                lastActivityNanos = System.nanoTime();
+                if (writeBuffer.hasRemaining()) {
+                    //socket buffer is full. Continue when the peer has read some of it.
+                    if (writeStalledSinceNanos == 0) {
+                        writeStalledSinceNanos = lastActivityNanos;
+                    }
+                    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+                writeStalledSinceNanos = 0;
+            }
+        } catch (IOException e) {
+            connectionFailed(e);
+        }
+    }
+
+    //Serializes as many queued messages as fit in maxBatchBytes.
+    //The frames, each message prefixed by its size, go back to back in a single buffer, so they are written
+    //with a single syscall. The receiver reads them as it reads messages sent one by one.
+    private ByteBuffer nextWriteBuffer() {
+        List<byte[]> messages = new ArrayList<>();
+        int totalBytes = 0;
+        Outbound outbound;
+        while (totalBytes < maxBatchBytes && (outbound = outboundQueue.poll()) != null) {
+            queuedBytes.addAndGet(-estimatedSize(outbound.message()));
+            try {
+                byte[] serialized = JsonSerDes.serialize(outbound.message());
+                messages.add(serialized);
+                inFlight.add(outbound);
+                totalBytes += 4 + serialized.length;
+            } catch (RuntimeException e) {
+                outbound.failureHandler().onSendFailure(outbound.message(), e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return null;
+        }
+        stats.writes.increment();
+        stats.messagesWritten.add(messages.size());
+        ByteBuffer buffer = ByteBuffer.allocate(totalBytes);
+        for (byte[] message : messages) {
+            buffer.putInt(message.length);
+            buffer.put(message);
+        }
+        return buffer.flip();
+    }
+
+    private void connectionFailed(IOException e) {
+        getLogger().info("Connection to " + address + " failed. " + e.getMessage());
+        stats.failures.increment();
+        closeSocket();
+        //Messages which were partially written are reported as failed as well.
+        //The peer might have received some of them, which is no different from a lost response.
+        failInFlight(e);
+        failQueued(e);
+        if (state == State.Closed) {
+            return;
+        }
+        reconnectAtNanos = System.nanoTime() + backoffNanos;
+        backoffNanos = Math.min(backoffNanos * 2, MAX_RECONNECT_BACKOFF_NANOS);
+        state = State.BackingOff;
+    }
+
+    private void failInFlight(Exception e) {
+        for (Outbound outbound : inFlight) {
+            outbound.failureHandler().onSendFailure(outbound.message(), e);
+        }
+        inFlight.clear();
+        writeBuffer = null;
+    }
+
+    private void failQueued(Exception e) {
+        Outbound outbound;
+        while ((outbound = outboundQueue.poll()) != null) {
+            queuedBytes.addAndGet(-estimatedSize(outbound.message()));
+            outbound.failureHandler().onSendFailure(outbound.message(), e);
+        }
+    }
+
+    private void closeSocket() {
+        writeStalledSinceNanos = 0;
+        if (selectionKey != null) {
+            selectionKey.cancel();
+            selectionKey = null;
+        }
+        if (socketChannel != null) {
+            try {
+                socketChannel.close();
+            } catch (IOException e) {
+                getLogger().debug("ignoring exception during socketchannel close", e);
+            }
+            socketChannel = null;
+        }
+    }
+
+    //Called on the selector thread, or after the selector thread has stopped.
+    void close() {
+        state = State.Closed;
+        closeSocket();
+        IOException closed = new IOException("Channel to " + address + " is closed");
+        failInFlight(closed);
+        failQueued(closed);
+    }
+
+    public InetAddressAndPort getAddress() {
+        return address;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    public int queuedMessages() {
+        return outboundQueue.size();
+    }
+}
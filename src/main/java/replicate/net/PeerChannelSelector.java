@@ -0,0 +1,158 @@
+package replicate.net;
+
+import replicate.common.Logging;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single selector thread driving the outbound PeerChannels of a node,
+ * or of all the nodes using a ReplicaRuntime which shares its selectors.
+ * Other threads never touch the sockets. They queue messages on the PeerChannel
+ * and signal this thread, which then connects or writes as needed.
+ * @see PeerChannels
+ */
+public class PeerChannelSelector extends Thread implements Logging {
+    private static final long HEALTH_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private final Selector selector;
+    //channels waiting for more messages before writing. accessed only by the selector thread.
+    private final List<PeerChannel> lingeringChannels = new ArrayList<>();
+    //all the open channels, of all the PeerChannels using this selector.
+    private final Set<PeerChannel> channels = ConcurrentHashMap.newKeySet();
+    private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private long lastHealthCheckNanos = System.nanoTime();
+
+    public PeerChannelSelector() throws IOException {
+        this("PeerChannelSelector");
+    }
+
+    public PeerChannelSelector(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+        setDaemon(true);
+    }
+
+    void add(PeerChannel channel) {
+        channels.add(channel);
+    }
+
+    //the channel is closed on the selector thread.
+    void close(PeerChannel channel) {
+        if (channels.remove(channel)) {
+            execute(channel::close);
+        }
+    }
+
+    void signal(PeerChannel channel) {
+        execute(channel::onSignal);
+    }
+
+    //called on the selector thread.
+    void lingerBeforeFlush(PeerChannel channel) {
+        lingeringChannels.add(channel);
+    }
+
+    private void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    SelectionKey register(SocketChannel socketChannel, int interestOps, PeerChannel channel) throws ClosedChannelException {
+        return socketChannel.register(selector, interestOps, channel);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(selectTimeoutMs());
+                runPendingTasks();
+                flushLingeringChannels();
+                Set<SelectionKey> selected = selector.selectedKeys();
+                for (SelectionKey key : selected) {
+                    if (key.isValid()) {
+                        ((PeerChannel) key.attachment()).handle(key);
+                    }
+                }
+                selected.clear();
+                checkHealth();
+            } catch (Exception e) {
+                getLogger().error(e);
+            }
+        }
+    }
+
+    private long selectTimeoutMs() {
+        long timeoutNanos = TimeUnit.SECONDS.toNanos(1);
+        long now = System.nanoTime();
+        for (PeerChannel channel : lingeringChannels) {
+            timeoutNanos = Math.min(timeoutNanos, channel.getFlushDeadlineNanos() - now);
+        }
+        //select can only wait in milliseconds. Shorter lingers are rounded up to 1ms.
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+    }
+
+    private void flushLingeringChannels() {
+        if (lingeringChannels.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        Iterator<PeerChannel> iterator = lingeringChannels.iterator();
+        while (iterator.hasNext()) {
+            PeerChannel channel = iterator.next();
+            if (now >= channel.getFlushDeadlineNanos()) {
+                iterator.remove();
+                channel.flushAfterLinger();
+            }
+        }
+    }
+
+    private void checkHealth() {
+        long now = System.nanoTime();
+        if (now - lastHealthCheckNanos < HEALTH_CHECK_INTERVAL_NANOS) {
+            return;
+        }
+        lastHealthCheckNanos = now;
+        for (PeerChannel channel : channels) {
+            channel.checkHealth(now);
+        }
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+        try {
+            join();
+        } catch (InterruptedException e) {
+            getLogger().warn("Interrupted", e);
+        }
+        for (PeerChannel channel : channels) {
+            channel.close();
+        }
+        channels.clear();
+        pendingTasks.clear();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            getLogger().warn("ignoring exception during selector close", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package replicate.net;
+
+import replicate.common.Config;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The outbound PeerChannels of a node, one per peer, driven by a PeerChannelSelector
+ * which can be shared with other nodes.
+ */
+public class PeerChannels {
+    private final Config config;
+    private final PeerChannelSelector selector;
+    private final ConnectionStats stats = new ConnectionStats();
+    private final Map<InetAddressAndPort, PeerChannel> channels = new ConcurrentHashMap<>();
+
+    public PeerChannels(Config config, PeerChannelSelector selector) {
+        this.config = config;
+        this.selector = selector;
+    }
+
+    //Channels are created once per peer and reused for all the messages to that peer.
+    public PeerChannel channelTo(InetAddressAndPort address) {
+        PeerChannel channel = channels.get(address);
+        if (channel != null) {
+            return channel;
+        }
+        return channels.computeIfAbsent(address, this::newChannel);
+    }
+
+    private PeerChannel newChannel(InetAddressAndPort address) {
+        PeerChannel channel = new PeerChannel(address, selector, config, stats);
+        selector.add(channel);
+        return channel;
+    }
+
+    public ConnectionStats getStats() {
+        return stats;
+    }
+
+    //Closes the connection to the given peer. Next send creates a new channel.
+    public void disconnect(InetAddressAndPort address) {
+        PeerChannel channel = channels.remove(address);
+        if (channel != null) {
+            selector.close(channel);
+        }
+    }
+
+    public void close() {
+        for (InetAddressAndPort address : channels.keySet()) {
+            disconnect(address);
+        }
+    }
+}
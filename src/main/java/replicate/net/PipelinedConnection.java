@@ -0,0 +1,140 @@
+package replicate.net;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import replicate.common.JsonSerDes;
+import replicate.common.RequestOrResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client connection which can have many requests in flight at the same time.
+ * Each request gets a correlationId unique on this connection. Servers respond with the
+ * same correlationId, so a single reader thread can match responses to the pending requests,
+ * irrespective of the order in which they arrive.
+ * Callers block in send once maxInFlight requests are waiting for responses.
+ */
+public class PipelinedConnection implements Closeable {
+    private static Logger logger = LogManager.getLogger(PipelinedConnection.class);
+
+    private final InetAddressAndPort address;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final DataInputStream in;
+    private final Semaphore inFlight;
+    private final AtomicInteger nextCorrelationId = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<RequestOrResponse>> pendingRequests = new ConcurrentHashMap<>();
+    private final Thread reader;
+    private volatile boolean closed;
+
+    public PipelinedConnection(InetAddressAndPort address, int maxInFlight) throws IOException {
+        this.address = address;
+        this.socket = new Socket(address.getAddress(), address.getPort());
+        this.socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.inFlight = new Semaphore(maxInFlight);
+        this.reader = new Thread(this::readResponses, "PipelinedConnection-reader-" + address);
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public CompletableFuture<RequestOrResponse> send(int requestId, byte[] messageBody) {
+        return send(requestId, messageBody, 0);
+    }
+
+    //The server drops the request, if it is still queued after timeoutMs.
+    public CompletableFuture<RequestOrResponse> send(int requestId, byte[] messageBody, int timeoutMs) {
+        CompletableFuture<RequestOrResponse> responseFuture = new CompletableFuture<>();
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responseFuture.completeExceptionally(e);
+            return responseFuture;
+        }
+        int correlationId = nextCorrelationId.incrementAndGet();
+        pendingRequests.put(correlationId, responseFuture);
+        //checked after registering, so that close either sees this request or we see closed.
+        if (closed) {
+            fail(correlationId, new NetworkException("Connection to " + address + " is closed"));
+            return responseFuture;
+        }
+        byte[] serializedRequest = JsonSerDes.serialize(new RequestOrResponse(requestId, messageBody, correlationId).setTimeoutMs(timeoutMs));
+        try {
+            synchronized (out) {
+                out.writeInt(serializedRequest.length);
+                out.write(serializedRequest);
+                out.flush();
+            }
+        } catch (IOException e) {
+            close(e);
+        }
+        return responseFuture;
+    }
+
+    private void readResponses() {
+        try {
+            while (!closed) {
+                byte[] responseBytes = new byte[in.readInt()];
+                in.readFully(responseBytes);
+                RequestOrResponse response = JsonSerDes.deserialize(responseBytes, RequestOrResponse.class);
+                CompletableFuture<RequestOrResponse> responseFuture = pendingRequests.remove(response.getCorrelationId());
+                if (responseFuture == null) {
+                    logger.warn("No pending request for response with correlationId " + response.getCorrelationId() + " from " + address);
+                    continue;
+                }
+                inFlight.release();
+                responseFuture.complete(response);
+            }
+        } catch (Exception e) {
+            close(e);
+        }
+    }
+
+    private void fail(int correlationId, Exception e) {
+        CompletableFuture<RequestOrResponse> responseFuture = pendingRequests.remove(correlationId);
+        if (responseFuture != null) {
+            inFlight.release();
+            responseFuture.completeExceptionally(e);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getInFlightRequests() {
+        return pendingRequests.size();
+    }
+
+    @Override
+    public void close() {
+        close(new NetworkException("Connection to " + address + " is closed"));
+    }
+
+    private void close(Exception cause) {
+        closed = true;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            logger.warn("ignoring exception during socket close", e);
+        }
+        NetworkException failure = cause instanceof NetworkException ? (NetworkException) cause
+                : new NetworkException("Connection to " + address + " failed", cause);
+        for (Integer correlationId : pendingRequests.keySet()) {
+            fail(correlationId, failure);
+        }
+    }
+}
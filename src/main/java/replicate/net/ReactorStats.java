@@ -0,0 +1,89 @@
+package replicate.net;
+
+import replicate.metrics.Counter;
+import replicate.metrics.Histogram;
+import replicate.metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for a single NIOReactor.
+ * Select loop latency is the time spent handling the ready keys in one iteration of the loop,
+ * excluding the time blocked in select. A high value means the reactor thread is saturated.
+ */
+public class ReactorStats {
+    final AtomicLong connections = new AtomicLong();
+    final Counter bytesRead = new Counter();
+    final Counter bytesWritten = new Counter();
+    final Counter messagesRead = new Counter();
+    final Histogram selectLoopNanos = new Histogram();
+    final Counter readPauses = new Counter();
+    final Counter overflowCloses = new Counter();
+
+    void recordSelectLoop(long nanos) {
+        selectLoopNanos.record(nanos);
+    }
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".connections", this::getConnections);
+        registry.register(prefix + ".bytesRead", bytesRead);
+        registry.register(prefix + ".bytesWritten", bytesWritten);
+        registry.register(prefix + ".messagesRead", messagesRead);
+        registry.register(prefix + ".selectLoopNanos", selectLoopNanos);
+        registry.register(prefix + ".readPauses", readPauses);
+        registry.register(prefix + ".overflowCloses", overflowCloses);
+    }
+
+    public long getConnections() {
+        return connections.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getMessagesRead() {
+        return messagesRead.get();
+    }
+
+    public long getSelectLoops() {
+        return selectLoopNanos.snapshot().getCount();
+    }
+
+    public long getAverageSelectLoopNanos() {
+        return (long) selectLoopNanos.snapshot().getMean();
+    }
+
+    public long getMaxSelectLoopNanos() {
+        return selectLoopNanos.snapshot().getMax();
+    }
+
+    //number of times a connection stopped reading because too many responses were pending.
+    public long getReadPauses() {
+        return readPauses.get();
+    }
+
+    //connections closed because the client did not read its responses.
+    public long getOverflowCloses() {
+        return overflowCloses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ReactorStats{" +
+                "connections=" + getConnections() +
+                ", bytesRead=" + getBytesRead() +
+                ", bytesWritten=" + getBytesWritten() +
+                ", messagesRead=" + getMessagesRead() +
+                ", selectLoops=" + getSelectLoops() +
+                ", averageSelectLoopNanos=" + getAverageSelectLoopNanos() +
+                ", maxSelectLoopNanos=" + getMaxSelectLoopNanos() +
+                ", readPauses=" + getReadPauses() +
+                ", overflowCloses=" + getOverflowCloses() +
+                '}';
+    }
+}
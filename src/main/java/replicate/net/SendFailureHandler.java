@@ -0,0 +1,10 @@
+package replicate.net;
+
+import replicate.common.RequestOrResponse;
+
+//Invoked when a message queued on a PeerChannel could not be written to the peer.
+//This is called from the PeerChannelSelector thread, so implementations should hand over
+//any state changes to the thread owning that state.
+public interface SendFailureHandler {
+    void onSendFailure(RequestOrResponse message, Exception e);
+}
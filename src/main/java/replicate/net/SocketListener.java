@@ -7,21 +7,33 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class SocketListener extends Thread implements Logging {
+public class SocketListener extends Thread implements Listener, Logging {
     private final InetAddressAndPort listenIp;
     private final Config config;
     private final ServerSocket serverSocket;
+    private final ThreadFactory handlerThreadFactory;
+    //runs the RequestConsumer for each request read from a connection.
+    private final Executor requestExecutor;
     private RequestConsumer server;
-    private List<SocketHandlerThread> clientThreads = new ArrayList<>();
+    private Set<SocketHandler> clientHandlers = ConcurrentHashMap.newKeySet();
 
     public SocketListener(RequestConsumer server, InetAddressAndPort listenIp, Config config) {
+        //requests are handled on the thread reading the connection.
+        this(server, listenIp, config, Thread::new, Runnable::run);
+    }
+
+    public SocketListener(RequestConsumer server, InetAddressAndPort listenIp, Config config, ThreadFactory handlerThreadFactory, Executor requestExecutor) {
         this.server = server;
         this.listenIp = listenIp;
         this.config = config;
+        this.handlerThreadFactory = handlerThreadFactory;
+        this.requestExecutor = requestExecutor;
         try {
             this.serverSocket = new ServerSocket();
             this.serverSocket.bind(new InetSocketAddress(listenIp.getAddress(), listenIp.getPort()));
@@ -44,9 +56,9 @@ public class SocketListener extends Thread implements Logging {
                  * For a single connection, need to have a dedicated thread constantly reading from connection.
                  * Can be optimized by using NIO.
                  */
-                SocketHandlerThread socketHandlerThread = new SocketHandlerThread(clientSocket);
-                socketHandlerThread.start();
-                clientThreads.add(socketHandlerThread);
+                SocketHandler socketHandler = new SocketHandler(clientSocket);
+                clientHandlers.add(socketHandler);
+                handlerThreadFactory.newThread(socketHandler).start();
 
             } catch (IOException e) {
                 getLogger().debug(e);
@@ -69,14 +81,17 @@ public class SocketListener extends Thread implements Logging {
     }
 
     private void closeAllClientConnections() {
-        for (SocketHandlerThread clientThread : clientThreads) {
-            closeClient(clientThread);
+        for (SocketHandler clientHandler : clientHandlers) {
+            closeClient(clientHandler);
         }
     }
 
-    private void closeClient(SocketHandlerThread clientThread) {
-        clientThread.closeConnection();
-        clientThread.isRunning = false;
+    private void closeClient(SocketHandler clientHandler) {
+        clientHandler.isRunning = false;
+        //closed only once, either on shutdown or when the handler fails to read.
+        if (clientHandlers.remove(clientHandler)) {
+            clientHandler.closeConnection();
+        }
     }
 
     private void closeQuitely() {
@@ -95,18 +110,18 @@ public class SocketListener extends Thread implements Logging {
         return listenIp;
     }
 
-    class SocketHandlerThread extends Thread implements Logging {
+    //Runnable rather than a Thread subclass, so that it can run on a virtual thread.
+    class SocketHandler implements Runnable, Logging {
         private final BlockingIOConnection clientConnection;
-        volatile boolean isRunning = false;
+        volatile boolean isRunning = true;
 
-        public SocketHandlerThread(Socket clientSocket) {
+        public SocketHandler(Socket clientSocket) {
             this.clientConnection = new BlockingIOConnection(server, clientSocket);
         }
 
         //<codeFragment name="ServerSocketHandlingThread">
         @Override
         public void run() {
-            isRunning = true;
             try {
                 //Continues to read/write to the socket connection till it is closed.
                 while (isRunning) {
@@ -120,8 +135,12 @@ public class SocketListener extends Thread implements Logging {
 
         private void handleRequest() {
             RequestOrResponse request = clientConnection.readRequest();
+            accept(request);
+        }
+
+        private void accept(RequestOrResponse request) {
             MessageId messageId = MessageId.valueOf(request.getRequestId());
-            server.accept(new Message<>(request, new Message.Header(request.getFromAddress(), request.getCorrelationId(), messageId), clientConnection));
+            requestExecutor.execute(() -> server.accept(new Message<>(request, new Message.Header(request.getFromAddress(), request.getCorrelationId(), messageId), clientConnection)));
         }
 
         public void closeConnection() {
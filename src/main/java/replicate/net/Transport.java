@@ -0,0 +1,42 @@
+package replicate.net;
+
+import replicate.common.Config;
+import replicate.common.RequestOrResponse;
+
+import java.io.IOException;
+
+/**
+ * Messaging between replicas, and between clients and replicas.
+ * A replica registers consumers for the messages it receives on its peer and client addresses,
+ * and sends one-way messages to its peers. Responses from peers arrive as messages on
+ * the peer listener, matched by correlationId.
+ */
+public interface Transport {
+    void listenForPeers(InetAddressAndPort address, RequestConsumer consumer) throws IOException;
+
+    void listenForClients(InetAddressAndPort address, RequestConsumer consumer) throws IOException;
+
+    //starts accepting connections on the registered addresses.
+    void start();
+
+    //Failures to connect or write to the peer are reported to failureHandler asynchronously.
+    void send(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler);
+
+    //closes the connection to the peer. It is reopened on the next send.
+    void disconnect(InetAddressAndPort address);
+
+    ConnectionStats getConnectionStats();
+
+    void shutdown();
+
+    static Transport create(Config config) throws IOException {
+        switch (config.getTransportType()) {
+            case NETTY:
+                return new NettyTransport(config);
+            case LOOPBACK:
+                return new LoopbackTransport(config);
+            default:
+                return new NioTransport(config);
+        }
+    }
+}
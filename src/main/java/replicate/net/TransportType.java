@@ -0,0 +1,10 @@
+package replicate.net;
+
+public enum TransportType {
+    //the project's own listeners (see ListenerMode) and PeerChannels.
+    NIO,
+    //Netty event loops, with epoll when available.
+    NETTY,
+    //in-memory queues between replicas in the same JVM. Clients still use TCP.
+    LOOPBACK
+}
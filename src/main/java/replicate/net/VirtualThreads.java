@@ -0,0 +1,64 @@
+package replicate.net;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates virtual threads when the JVM supports them (Java 21+).
+ * The project compiles for Java 17, so the virtual thread builder is looked up reflectively.
+ * On older JVMs this falls back to daemon platform threads, so the same code runs everywhere.
+ */
+public class VirtualThreads {
+    private static final Logger logger = LogManager.getLogger(VirtualThreads.class);
+    private static final Method ofVirtual = lookup(Thread.class, "ofVirtual");
+    private static final AtomicBoolean fallbackLogged = new AtomicBoolean();
+
+    public static boolean isSupported() {
+        return ofVirtual != null;
+    }
+
+    public static ThreadFactory threadFactory(String namePrefix) {
+        if (isSupported()) {
+            try {
+                Object builder = ofVirtual.invoke(null);
+                Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+                builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+                return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                logger.warn("Could not create virtual thread factory, using platform threads", e);
+            }
+        } else if (fallbackLogged.compareAndSet(false, true)) {
+            logger.warn("Virtual threads are not supported on Java " + Runtime.version().feature() + ", using platform threads");
+        }
+        return platformThreadFactory(namePrefix);
+    }
+
+    //Starts a new thread for every task.
+    public static Executor threadPerTaskExecutor(String namePrefix) {
+        ThreadFactory threadFactory = threadFactory(namePrefix);
+        return task -> threadFactory.newThread(task).start();
+    }
+
+    private static ThreadFactory platformThreadFactory(String namePrefix) {
+        AtomicLong threadNumber = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(task, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static Method lookup(Class<?> aClass, String methodName) {
+        try {
+            return aClass.getMethod(methodName);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -1,25 +1,22 @@
 package replicate.net.requestwaitinglist;
 
-import java.time.Duration;
+import replicate.common.HashedWheelTimer;
 
 class CallbackDetails {
     RequestCallback requestCallback;
-    long createTimeNanos;
+    HashedWheelTimer.Timeout timeout;
 
-    public CallbackDetails(RequestCallback requestCallback, long createTimeNanos) {
+    public CallbackDetails(RequestCallback requestCallback) {
         this.requestCallback = requestCallback;
-        this.createTimeNanos = createTimeNanos;
     }
 
     public RequestCallback getRequestCallback() {
         return requestCallback;
     }
 
-    public long elapsedTimeNanos(long nowNanos) {
-        return nowNanos - createTimeNanos;
-    }
-
-    boolean isExpired(Duration timeout, long nowNanos) {
-        return elapsedTimeNanos(nowNanos) >= timeout.toNanos();
+    void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel();
+        }
     }
 }
@@ -0,0 +1,252 @@
+package replicate.net.requestwaitinglist;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import replicate.common.HashedWheelTimer;
+import replicate.metrics.Counter;
+import replicate.metrics.MetricsRegistry;
+import replicate.net.InetAddressAndPort;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * RequestWaitingList specialised for int correlationIds.
+ * Callbacks are kept in an open addressing table with linear probing, indexed by
+ * the correlationId, so adding and completing a request neither boxes the key
+ * nor allocates an entry object.
+ *
+ * Removal shifts the following entries of the probe sequence back, so the table
+ * never needs tombstones. The table is guarded by its own monitor, which is
+ * uncontended unless a request expires at the same time as another is added or completed.
+ * Callbacks are always invoked outside the monitor.
+ *
+ * Each request expires at its own deadline, on the shared HashedWheelTimer.
+ * The timeout is cancelled when the response arrives.
+ *
+ * Requests added with the peer they are sent to report their round trip time, or their expiry,
+ * to the RoundTripListener. Errors and cancellations say nothing about the peer's latency, so are not reported.
+ * Correlation ids are never reused for a resend, so every response matches exactly one send.
+ */
+public class IntKeyedRequestWaitingList<Response> {
+    private static Logger logger = LogManager.getLogger(IntKeyedRequestWaitingList.class);
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private RequestCallback<Response>[] callbacks = newCallbacks(INITIAL_CAPACITY);
+    private HashedWheelTimer.Timeout[] timeouts = new HashedWheelTimer.Timeout[INITIAL_CAPACITY];
+    //filled only for requests added with a peer, when there is a roundTripListener.
+    private InetAddressAndPort[] peers = new InetAddressAndPort[INITIAL_CAPACITY];
+    private long[] sentNanos = new long[INITIAL_CAPACITY];
+    private int size;
+    //resize when more than half the slots are used, to keep the probe sequences short.
+    private int resizeThreshold = INITIAL_CAPACITY / 2;
+
+    private final HashedWheelTimer timer;
+    private final Duration expirationDuration;
+    private final RoundTripListener roundTripListener;
+    private final Counter responses = new Counter();
+    private final Counter errors = new Counter();
+    private final Counter expiries = new Counter();
+    private final Counter cancellations = new Counter();
+
+    public IntKeyedRequestWaitingList() {
+        this(Duration.ofMillis(2000));
+    }
+
+    public IntKeyedRequestWaitingList(Duration expirationDuration) {
+        this(HashedWheelTimer.shared(), expirationDuration);
+    }
+
+    public IntKeyedRequestWaitingList(HashedWheelTimer timer, Duration expirationDuration) {
+        this(timer, expirationDuration, null);
+    }
+
+    public IntKeyedRequestWaitingList(HashedWheelTimer timer, Duration expirationDuration, RoundTripListener roundTripListener) {
+        this.timer = timer;
+        this.expirationDuration = expirationDuration;
+        this.roundTripListener = roundTripListener;
+    }
+
+    public void add(int key, RequestCallback<Response> callback) {
+        add(key, callback, expirationDuration);
+    }
+
+    public void add(int key, RequestCallback<Response> callback, Duration timeout) {
+        add(key, callback, timeout, null);
+    }
+
+    public void add(int key, RequestCallback<Response> callback, Duration timeout, InetAddressAndPort peer) {
+        long sent = roundTripListener != null ? System.nanoTime() : 0;
+        synchronized (this) {
+            if (size >= resizeThreshold) {
+                resize(keys.length * 2);
+            }
+            int slot = findSlot(keys, callbacks, key);
+            if (callbacks[slot] == null) {
+                size++;
+            } else {
+                //the key is added again. The earlier request's timeout should not expire this one.
+                timeouts[slot].cancel();
+            }
+            keys[slot] = key;
+            callbacks[slot] = callback;
+            peers[slot] = roundTripListener != null ? peer : null;
+            sentNanos[slot] = sent;
+            //scheduled after the entry is inserted, so that even an immediate expiry finds it.
+            //Scheduling only queues the timeout for the timer thread, so is cheap enough to do holding the monitor.
+            timeouts[slot] = timer.schedule(() -> expire(key, callback), timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void handleResponse(int key, Response response, InetAddressAndPort fromNode) {
+        RequestCallback<Response> callback = remove(key, Completion.RESPONSE);
+        if (callback != null) {
+            responses.increment();
+            callback.onResponse(response, fromNode);
+        }
+    }
+
+    public void handleError(int key, Exception e) {
+        RequestCallback<Response> callback = remove(key, Completion.ERROR);
+        if (callback != null) {
+            errors.increment();
+            callback.onError(e);
+        }
+    }
+
+    //Removes the request without invoking its callback, when the response is not needed anymore.
+    public void cancel(int key) {
+        if (remove(key, Completion.CANCEL) != null) {
+            cancellations.increment();
+        }
+    }
+
+    //No of requests waiting for a response.
+    public synchronized int size() {
+        return size;
+    }
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".pending", this::size);
+        registry.register(prefix + ".responses", responses);
+        registry.register(prefix + ".errors", errors);
+        registry.register(prefix + ".expiries", expiries);
+        registry.register(prefix + ".cancellations", cancellations);
+    }
+
+    private enum Completion { RESPONSE, ERROR, EXPIRY, CANCEL }
+
+    private RequestCallback<Response> remove(int key, Completion completion) {
+        return remove(key, completion, null);
+    }
+
+    //removes the request only if its callback is expectedCallback, unless that is null.
+    private synchronized RequestCallback<Response> remove(int key, Completion completion, RequestCallback<Response> expectedCallback) {
+        int slot = findSlot(keys, callbacks, key);
+        RequestCallback<Response> callback = callbacks[slot];
+        if (callback == null) {
+            return null; //already completed or expired.
+        }
+        if (expectedCallback != null && callback != expectedCallback) {
+            return null; //the key was added again after this request's timeout fired.
+        }
+        if (completion != Completion.EXPIRY) {
+            timeouts[slot].cancel();
+        }
+        reportRoundTrip(slot, completion);
+        removeSlot(slot);
+        return callback;
+    }
+
+    private void reportRoundTrip(int slot, Completion completion) {
+        InetAddressAndPort peer = peers[slot];
+        if (peer == null) {
+            return;
+        }
+        if (completion == Completion.RESPONSE) {
+            roundTripListener.onResponse(peer, System.nanoTime() - sentNanos[slot]);
+        } else if (completion == Completion.EXPIRY) {
+            roundTripListener.onExpiry(peer);
+        }
+    }
+
+    private void expire(int key, RequestCallback<Response> expiringCallback) {
+        RequestCallback<Response> callback = remove(key, Completion.EXPIRY, expiringCallback);
+        if (callback != null) {
+            expiries.increment();
+            logger.info("Expiring " + key);
+            callback.onError(new TimeoutException("Request expired"));
+        }
+    }
+
+    //Slot with the key, or the empty slot where the key should be inserted.
+    private static int findSlot(int[] keys, RequestCallback<?>[] callbacks, int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (callbacks[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //Consecutive correlationIds would fill consecutive slots. Mixing the bits spreads them.
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    //Backward shift deletion. Moves later entries of the probe sequence into the gap,
+    //unless their home slot lies cyclically after the gap.
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (callbacks[next] != null) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                callbacks[gap] = callbacks[next];
+                timeouts[gap] = timeouts[next];
+                peers[gap] = peers[next];
+                sentNanos[gap] = sentNanos[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        callbacks[gap] = null;
+        timeouts[gap] = null;
+        peers[gap] = null;
+        size--;
+    }
+
+    private void resize(int newCapacity) {
+        int[] oldKeys = keys;
+        RequestCallback<Response>[] oldCallbacks = callbacks;
+        HashedWheelTimer.Timeout[] oldTimeouts = timeouts;
+        InetAddressAndPort[] oldPeers = peers;
+        long[] oldSentNanos = sentNanos;
+        keys = new int[newCapacity];
+        callbacks = newCallbacks(newCapacity);
+        timeouts = new HashedWheelTimer.Timeout[newCapacity];
+        peers = new InetAddressAndPort[newCapacity];
+        sentNanos = new long[newCapacity];
+        resizeThreshold = newCapacity / 2;
+        for (int i = 0; i < oldCallbacks.length; i++) {
+            if (oldCallbacks[i] != null) {
+                int slot = findSlot(keys, callbacks, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                callbacks[slot] = oldCallbacks[i];
+                timeouts[slot] = oldTimeouts[i];
+                peers[slot] = oldPeers[i];
+                sentNanos[slot] = oldSentNanos[i];
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Response> RequestCallback<Response>[] newCallbacks(int capacity) {
+        return new RequestCallback[capacity];
+    }
+}
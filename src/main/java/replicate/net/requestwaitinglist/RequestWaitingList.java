@@ -2,19 +2,17 @@ package replicate.net.requestwaitinglist;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import replicate.common.HashedWheelTimer;
 import replicate.common.SystemClock;
+import replicate.metrics.Counter;
+import replicate.metrics.MetricsRegistry;
 import replicate.net.InetAddressAndPort;
 
 import java.time.Duration;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
-
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * The nodes expecting messages from other nodes as response
@@ -72,66 +70,100 @@ public class RequestWaitingList<Key, Response> {
 
     private Map<Key, CallbackDetails> pendingRequests = new ConcurrentHashMap<>();
     private InetAddressAndPort NONE;
+    private final Counter responses = new Counter();
+    private final Counter errors = new Counter();
+    private final Counter expiries = new Counter();
 
     public void add(Key key, RequestCallback<Response> callback) {
+        add(key, callback, expirationDuration);
+    }
+
+    //Each request expires at its own deadline on the shared timer. The timeout is cancelled on response.
+    public void add(Key key, RequestCallback<Response> callback, Duration timeout) {
         long now = clock.nanoTime();
         logger.debug("RequestWaitingList adding " + key + " at " + now);
-        pendingRequests.put(key, new CallbackDetails(callback, now));
+        CallbackDetails callbackDetails = new CallbackDetails(callback);
+        pendingRequests.put(key, callbackDetails);
+        callbackDetails.timeout = timer.schedule(() -> expire(key, callbackDetails), timeout.toNanos(), TimeUnit.NANOSECONDS);
     }
 
     private SystemClock clock;
-    private ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
-    private Duration expirationDuration; //do not expire for now.
+    private final HashedWheelTimer timer;
+    private Duration expirationDuration;
     public RequestWaitingList(SystemClock clock) {
-        this(clock, Duration.ofMillis(1000)); //TODO: Keeping this as 1
-        // second occasionally expires some get requests and fails read-repair tests
+        //Tests delay messages by a second, so requests need to wait longer than that.
+        this(clock, Duration.ofMillis(2000));
     }
     public RequestWaitingList(SystemClock clock, Duration duration) {
+        this(clock, duration, HashedWheelTimer.shared());
+    }
+
+    public RequestWaitingList(SystemClock clock, Duration duration, HashedWheelTimer timer) {
         this.expirationDuration = duration;
         this.clock = clock;
-        executor.scheduleWithFixedDelay(this::expire, expirationDuration.toMillis(), expirationDuration.toMillis(), MILLISECONDS);
+        this.timer = timer;
     }
 
-    private void expire() {
-        List<Key> expiredRequestKeys = getExpiredRequestKeys();
-        if (expiredRequestKeys.isEmpty()) {
+    private void expire(Key key, CallbackDetails callbackDetails) {
+        //the key might have been completed and added again with a new callback.
+        if (!pendingRequests.remove(key, callbackDetails)) {
             return;
         }
-        logger.info("Expiring " + expiredRequestKeys);
-        expiredRequestKeys.stream().forEach(expiredRequestKey -> {
-            CallbackDetails cb = pendingRequests.remove(expiredRequestKey);
-            cb.requestCallback.onError(new TimeoutException("Request expired"));
-        });
+        expiries.increment();
+        logger.info("Expiring " + key);
+        callbackDetails.getRequestCallback().onError(new TimeoutException("Request expired"));
     }
 
-    private List<Key> getExpiredRequestKeys() {
-        return pendingRequests.entrySet().stream().filter(entry -> entry.getValue().isExpired(this.expirationDuration, clock.nanoTime())).map(e -> e.getKey()).collect(Collectors.toList());
+    private CallbackDetails remove(Object key) {
+        CallbackDetails callbackDetails = pendingRequests.remove(key);
+        if (callbackDetails != null) {
+            callbackDetails.cancelTimeout();
+        }
+        return callbackDetails;
     }
 
     public void handleResponse(Key key, Response response) {
-        if (!pendingRequests.containsKey(key)) {
+        logger.debug("RequestWaitingList received response for " + key + " at " + clock.nanoTime());
+        CallbackDetails callbackDetails = remove(key);
+        if (callbackDetails == null) {
             return;
         }
-        logger.debug("RequestWaitingList received response for " + key + " at " + clock.nanoTime());
-        CallbackDetails callbackDetails = pendingRequests.remove(key);
+        responses.increment();
         callbackDetails.getRequestCallback().onResponse(response, NONE);//TODO:Possibly use Optional
 
     }
 
     public void handleResponse(Key key, Response response, InetAddressAndPort fromNode) {
         logger.debug("RequestWaitingList received response for " + key + " at " + clock.nanoTime());
-
-        if (!pendingRequests.containsKey(key)) {
+        CallbackDetails callbackDetails = remove(key);
+        if (callbackDetails == null) {
             return;
         }
-        CallbackDetails callbackDetails = pendingRequests.remove(key);
+        responses.increment();
         callbackDetails.getRequestCallback().onResponse(response, fromNode);
 
     }
 
     public void handleError(int requestId, Exception e) {
-        CallbackDetails callbackDetails = pendingRequests.remove(requestId);
+        CallbackDetails callbackDetails = remove(requestId);
+        if (callbackDetails == null) {
+            //already completed or expired.
+            return;
+        }
+        errors.increment();
         callbackDetails.getRequestCallback().onError(e);
     }
 
+    //No of requests waiting for a response.
+    public int size() {
+        return pendingRequests.size();
+    }
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.gauge(prefix + ".pending", this::size);
+        registry.register(prefix + ".responses", responses);
+        registry.register(prefix + ".errors", errors);
+        registry.register(prefix + ".expiries", expiries);
+    }
+
 }
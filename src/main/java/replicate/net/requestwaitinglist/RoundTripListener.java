@@ -0,0 +1,11 @@
+package replicate.net.requestwaitinglist;
+
+import replicate.net.InetAddressAndPort;
+
+//Notified of the round trip times of the requests in an IntKeyedRequestWaitingList.
+//Called while the waiting list holds its monitor, so implementations should only update their estimates.
+public interface RoundTripListener {
+    void onResponse(InetAddressAndPort peer, long roundTripNanos);
+
+    void onExpiry(InetAddressAndPort peer);
+}
@@ -122,12 +122,12 @@ public class SingleValuePaxos extends Replica {
 
     private CompletableFuture<Optional<String>> doPaxos(byte[] value) {
         int maxAttempts = 2;
-        return FutureUtils.retryWithRandomDelay(() -> {
+        return FutureUtils.retryWithBackoff(() -> {
             //Each retry with higher generation/epoch
             MonotonicId newGeneration = new MonotonicId(lastKnownGeneration.incrementAndGet(),
                     serverId);
             return doPaxos(newGeneration, value);
-        }, maxAttempts, singularUpdateQueueExecutor).thenApply(result -> result.value);
+        }, maxAttempts, this::retryBackoff, singularUpdateQueueExecutor).thenApply(result -> result.value);
 
     }
 
@@ -217,7 +217,7 @@ public class SingleValuePaxos extends Replica {
 
     private CompletableFuture<Map<InetAddressAndPort, PrepareResponse>> prepare(MonotonicId monotonicId) {
         var callback = new AsyncQuorumCallback<PrepareResponse>(getNoOfReplicas(), p -> p.promised);
-        sendMessageToReplicas(callback, MessageId.Prepare, new PrepareRequest(monotonicId));
+        sendMessageToQuorum(callback, MessageId.Prepare, new PrepareRequest(monotonicId));
         return callback.getQuorumFuture();
     }
 
@@ -134,7 +134,7 @@ public class PaxosKVStore extends Replica {
 
     private CompletableFuture<Map<InetAddressAndPort, PrepareResponse>> sendPrepareRequest(String key, MonotonicId monotonicId) {
         var callback = new AsyncQuorumCallback<PrepareResponse>(getNoOfReplicas(), p -> p.promised);
-        sendMessageToReplicas(callback, MessageId.Prepare, new PrepareRequest(key, monotonicId));
+        sendMessageToQuorum(callback, MessageId.Prepare, new PrepareRequest(key, monotonicId));
         return callback.getQuorumFuture();
     }
 
@@ -119,14 +119,14 @@ public class PaxosLog extends Replica {
 
     private CompletableFuture<PaxosResult> doPaxos(int index, byte[] value, CompletionCallback<ExecuteCommandResponse> callback) {
         int maxAttempts = 5;
-        return FutureUtils.retryWithRandomDelay(() -> {
+        return FutureUtils.retryWithBackoff(() -> {
             //Each retry with higher generation/epoch
             MonotonicId newGeneration = new MonotonicId(maxKnownPaxosRoundId.incrementAndGet(),
                     serverId);
             CompletableFuture<PaxosResult> result = doPaxos(newGeneration,
                     index, value, callback);
             return result;
-        }, maxAttempts, singularUpdateQueueExecutor);
+        }, maxAttempts, this::retryBackoff, singularUpdateQueueExecutor);
     }
 
     private CompletableFuture<PaxosResult> doPaxos(MonotonicId monotonicId, int index, byte[] initialValue, CompletionCallback<ExecuteCommandResponse> callback) {
@@ -175,7 +175,7 @@ public class PaxosLog extends Replica {
     private CompletableFuture<Map<InetAddressAndPort, PrepareResponse>> sendPrepareRequest(int index, MonotonicId monotonicId) {
         var callback = new AsyncQuorumCallback<PrepareResponse>(getNoOfReplicas(), p -> p.promised);
         logger.info(getName() + " sending prepare request for " + index);
-        sendMessageToReplicas(callback, MessageId.Prepare, new PrepareRequest(index, monotonicId));
+        sendMessageToQuorum(callback, MessageId.Prepare, new PrepareRequest(index, monotonicId));
         return callback.getQuorumFuture();
     }
 
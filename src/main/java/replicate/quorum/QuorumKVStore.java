@@ -62,23 +62,26 @@ public class QuorumKVStore extends Replica {
         Config configWithSystemWalDir = makeNewConfigWithSystemWalDir(config);
         this.systemStorage = new DurableKVStore(configWithSystemWalDir);
         this.durableStore = new DurableKVStore(config);
+        this.durableStore.registerMetrics(getMetrics(), "wal");
         this.generation = incrementAndGetGeneration();
         this.clientState = new ClientState(clock);
     }
 
     @Override
     protected void registerHandlers() {
+        //Keys are independent of each other. So requests are handled on the update lane for their key,
+        //if the replica is configured with more than one lane.
         //messages handled by replicas.
-        handlesMessage(MessageId.VersionedSetValueRequest, this::handleSetValueRequest, VersionedSetValueRequest.class);
+        handlesMessage(MessageId.VersionedSetValueRequest, this::handleSetValueRequest, VersionedSetValueRequest.class, r -> r.key);
         handlesMessage(MessageId.SetValueResponse, this::handleSetValueResponse, SetValueResponse.class);
-        handlesMessage(MessageId.VersionedGetValueRequest, this::handleGetValueRequest, GetValueRequest.class);
+        handlesMessage(MessageId.VersionedGetValueRequest, this::handleGetValueRequest, GetValueRequest.class, GetValueRequest::getKey);
         handlesMessage(MessageId.GetValueResponse, this::handleGetValueResponse, GetValueResponse.class);
 
         //client requests
         //These handles send messages to replicas using Replica::sendMessageToReplicas
         //It uses RequestWaitingList to wait for the corresponding response messages.
-        handlesRequestAsync(MessageId.SetValueRequest, this::handleClientSetValueRequest, SetValueRequest.class);
-        handlesRequestAsync(MessageId.GetValueRequest, this::handleClientGetValueRequest, GetValueRequest.class);
+        handlesRequestAsync(MessageId.SetValueRequest, this::handleClientSetValueRequest, SetValueRequest.class, SetValueRequest::getKey);
+        handlesRequestAsync(MessageId.GetValueRequest, this::handleClientGetValueRequest, GetValueRequest.class, GetValueRequest::getKey);
     }
 
     private void handleGetValueResponse(Message<GetValueResponse> message) {
@@ -110,7 +113,7 @@ public class QuorumKVStore extends Replica {
         logger.info("Handling get request for " + clientRequest.getKey() + " in " + getName());
         GetValueRequest requestToReplicas = new GetValueRequest(clientRequest.getKey());
         AsyncQuorumCallback<GetValueResponse> quorumCallback = new AsyncQuorumCallback<GetValueResponse>(getNoOfReplicas());
-        sendMessageToReplicas(quorumCallback, MessageId.VersionedGetValueRequest, requestToReplicas);
+        sendMessageToQuorum(quorumCallback, MessageId.VersionedGetValueRequest, requestToReplicas);
         return quorumCallback.getQuorumFuture().thenComposeAsync((responses) -> {
             return new ReadRepairer(this, responses, config.isAsyncReadRepair()).readRepair();
         });
@@ -139,6 +142,15 @@ public class QuorumKVStore extends Replica {
         durableStore.put(key, JsonSerDes.toJson(storedValue));
     }
 
+    private CompletableFuture<Void> putAsync(String key, StoredValue storedValue) {
+        return durableStore.putAsync(key, JsonSerDes.toJson(storedValue));
+    }
+
+    //null without Config.withWalBatching.
+    public StageMetrics getWalStageMetrics() {
+        return durableStore.getWalStageMetrics();
+    }
+
     public StoredValue get(String key) {
         String storedValue = durableStore.get(key);
         if (storedValue == null) {
@@ -159,6 +171,11 @@ public class QuorumKVStore extends Replica {
         return generation;
     }
 
+    @Override
+    protected long describeTerm() {
+        return generation;
+    }
+
 
     private void handleGetValueRequest(Message<GetValueRequest> message) {
         GetValueRequest getValueRequest = message.messagePayload();
@@ -173,12 +190,13 @@ public class QuorumKVStore extends Replica {
 
         if (storedValue.timestamp < setValueRequest.version) { //set only if previous timestamp is less.
             logger.info("Setting newer value " + setValueRequest.value);
-            put(setValueRequest.key, new StoredValue(setValueRequest.key, setValueRequest.value, setValueRequest.version, 1));
+            //With wal batching, acknowledged once the value is flushed to the wal.
+            putAsync(setValueRequest.key, new StoredValue(setValueRequest.key, setValueRequest.value, setValueRequest.version, 1))
+                    .thenRun(() -> sendOneway(message.getFromAddress(), new SetValueResponse("Success"), message.getCorrelationId()));
         } else {
             logger.info("Not setting value " + setValueRequest.value + " because timestamp higher " + storedValue.timestamp + " than request " + setValueRequest.version);
-
+            sendOneway(message.getFromAddress(), new SetValueResponse("Success"), message.getCorrelationId());
         }
-        sendOneway(message.getFromAddress(), new SetValueResponse("Success"), message.getCorrelationId());
     }
 
     public void doAsyncReadRepair() {
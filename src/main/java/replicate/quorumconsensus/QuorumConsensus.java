@@ -27,17 +27,19 @@ public class QuorumConsensus extends Replica {
 
     @Override
     protected void registerHandlers() {
-        handlesMessage(MessageId.GetVersion, this::handleGetVersionRequest, GetVersionRequest.class);
+        //Each key is versioned independently. So requests are handled on the update lane for their key,
+        //if the replica is configured with more than one lane.
+        handlesMessage(MessageId.GetVersion, this::handleGetVersionRequest, GetVersionRequest.class, GetVersionRequest::getKey);
         handlesMessage(MessageId.GetVersionResponse, this::handleGetVersionResponse, GetVersionResponse.class);
 
-        handlesMessage(MessageId.VersionedSetValueRequest, this::handlePeerSetValueRequest, VersionedSetValueRequest.class);
+        handlesMessage(MessageId.VersionedSetValueRequest, this::handlePeerSetValueRequest, VersionedSetValueRequest.class, r -> r.key);
         handlesMessage(MessageId.SetValueResponse, this::handleSetValueResponse, SetValueResponse.class);
 
-        handlesMessage(MessageId.VersionedGetValueRequest, this::handleGetValueRequest, GetValueRequest.class);
+        handlesMessage(MessageId.VersionedGetValueRequest, this::handleGetValueRequest, GetValueRequest.class, GetValueRequest::getKey);
         handlesMessage(MessageId.GetValueResponse, this::handleGetValueResponse, GetValueResponse.class);
 
-        handlesRequestAsync(MessageId.SetValueRequest, this::handleClientSetValueRequest, SetValueRequest.class);
-        handlesRequestAsync(MessageId.GetValueRequest, this::handleClientGetValueRequest, GetValueRequest.class);
+        handlesRequestAsync(MessageId.SetValueRequest, this::handleClientSetValueRequest, SetValueRequest.class, r -> r.key);
+        handlesRequestAsync(MessageId.GetValueRequest, this::handleClientGetValueRequest, GetValueRequest.class, GetValueRequest::getKey);
     }
 
     private void handleGetValueResponse(Message<GetValueResponse> getValueResponseMessage) {
@@ -55,7 +57,7 @@ public class QuorumConsensus extends Replica {
     private CompletableFuture<SetValueResponse> handleClientSetValueRequest(SetValueRequest clientSetValueRequest) {
         var getVersion = new GetVersionRequest(clientSetValueRequest.key);
         var versionCallback = new AsyncQuorumCallback<GetVersionResponse>(getNoOfReplicas());
-        sendMessageToReplicas(versionCallback, MessageId.GetVersion, getVersion);
+        sendMessageToQuorum(versionCallback, MessageId.GetVersion, getVersion);
         var quorumFuture = versionCallback.getQuorumFuture();
         return quorumFuture.thenCompose((r) ->
                 assignVersionAndSetValue(clientSetValueRequest, getExistingVersions(r)));
@@ -96,7 +98,7 @@ public class QuorumConsensus extends Replica {
 
     private CompletableFuture<StoredValue> handleClientGetValueRequest(GetValueRequest request) {
         var asyncQuorumCallback = new AsyncQuorumCallback<GetValueResponse>(getNoOfReplicas());
-        sendMessageToReplicas(asyncQuorumCallback, MessageId.VersionedGetValueRequest, request);
+        sendMessageToQuorum(asyncQuorumCallback, MessageId.VersionedGetValueRequest, request);
         return asyncQuorumCallback.getQuorumFuture()
                 .thenCompose((nodesToValues)-> {
                     return new ReadRepairer(this, nodesToValues).readRepair();
@@ -19,4 +19,9 @@ public class Raft extends Replica {
     protected void registerHandlers() {
 
     }
+
+    @Override
+    protected String describeRole() {
+        return serverRole.name();
+    }
 }
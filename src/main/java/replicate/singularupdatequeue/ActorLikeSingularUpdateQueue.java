@@ -2,44 +2,65 @@ package replicate.singularupdatequeue;
 
 import replicate.common.Logging;
 
-import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
+/**
+ * Many actors share a small pool of threads. An actor is scheduled on the pool only
+ * when it has messages, and at most one thread runs it at a time.
+ * Once scheduled, the actor drains up to batchBudget messages, or for up to the time slice,
+ * whichever comes first, before giving the thread back to other actors.
+ * So the executor hand-off and the CAS on isScheduled are paid per batch rather than per message,
+ * while a busy actor still can not starve the others.
+ */
 //<codeFragment name = "queue">
 public class ActorLikeSingularUpdateQueue<Req, Res> implements Runnable, Logging {
-    private ArrayBlockingQueue<RequestWrapper<Req, Res>> workQueue
-            = new ArrayBlockingQueue<RequestWrapper<Req, Res>>(100);
+    public static final int DEFAULT_BATCH_BUDGET = 64;
+    public static final long DEFAULT_TIME_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Queue<RequestWrapper<Req, Res>> workQueue = new ConcurrentLinkedQueue<>();
     private Function<Req, Res> handler;
     private volatile boolean isRunning = false;
     //</codeFragment>
 
-    static Executor executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    static Executor sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+    private final Executor executor;
+    private final int batchBudget;
+    private final long timeSliceNanos;
 
     public ActorLikeSingularUpdateQueue(Function<Req, Res> handler) {
+        this(handler, DEFAULT_BATCH_BUDGET, DEFAULT_TIME_SLICE_NANOS);
+    }
+
+    public ActorLikeSingularUpdateQueue(Function<Req, Res> handler, int batchBudget, long timeSliceNanos) {
+        this(handler, batchBudget, timeSliceNanos, sharedExecutor);
+    }
+
+    public ActorLikeSingularUpdateQueue(Function<Req, Res> handler, int batchBudget, long timeSliceNanos, Executor executor) {
+        if (batchBudget < 1) {
+            throw new IllegalArgumentException("batchBudget should be at least 1, but was " + batchBudget);
+        }
         this.handler = handler;
+        this.batchBudget = batchBudget;
+        this.timeSliceNanos = timeSliceNanos;
+        this.executor = executor;
     }
-    volatile AtomicBoolean isScheduled = new AtomicBoolean(false);
+    AtomicBoolean isScheduled = new AtomicBoolean(false);
 
     //<codeFragment name = "submit">
     public CompletableFuture<Res> submit(Req request) {
-        try {
-            var requestWrapper = new RequestWrapper<Req, Res>(request);
-            workQueue.put(requestWrapper);
-            registerForExecution();
-            return requestWrapper.getFuture();
-        }
-        catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        var requestWrapper = new RequestWrapper<Req, Res>(request);
+        workQueue.add(requestWrapper);
+        registerForExecution();
+        return requestWrapper.getFuture();
     }
 
     private void registerForExecution() {
-        if (!workQueue.isEmpty()) {
-            if (setAsScheduled()) {
-                executor.execute(this);
-            }
+        if (setAsScheduled()) {
+            executor.execute(this);
         }
     }
 
@@ -52,39 +73,47 @@ public class ActorLikeSingularUpdateQueue<Req, Res> implements Runnable, Logging
     @Override
     public void run() {
         try {
-            Optional<RequestWrapper<Req, Res>> item = take();
-            item.ifPresent(requestWrapper -> {
-                try {
-                    Res response = handler.apply(requestWrapper.getRequest());
-                    requestWrapper.complete(response);
-
-                } catch (Exception e) {
-                    requestWrapper.completeExceptionally(e);
-                }
-            });
+            drainBatch();
         } finally {
-          isScheduled.set(false);
-          registerForExecution();
+            isScheduled.set(false);
+            //a message added after the last poll, but before isScheduled was reset,
+            //could not schedule the actor, so it is checked here.
+            if (!workQueue.isEmpty()) {
+                registerForExecution();
+            }
         }
     }
-    //</codeFragment>
-    //<codeFragment name = "take">
-    private Optional<RequestWrapper<Req, Res>> take() {
-        try {
-            return Optional.ofNullable(workQueue.poll(300, TimeUnit.MILLISECONDS));
 
-        } catch (InterruptedException e) {
-            return Optional.empty();
+    private void drainBatch() {
+        long deadline = System.nanoTime() + timeSliceNanos;
+        for (int processed = 0; processed < batchBudget; processed++) {
+            RequestWrapper<Req, Res> requestWrapper = workQueue.poll();
+            if (requestWrapper == null) {
+                return;
+            }
+            process(requestWrapper);
+            if (System.nanoTime() - deadline >= 0) {
+                return;
+            }
         }
     }
 
+    private void process(RequestWrapper<Req, Res> requestWrapper) {
+        try {
+            Res response = handler.apply(requestWrapper.getRequest());
+            requestWrapper.complete(response);
+
+        } catch (Exception e) {
+            requestWrapper.completeExceptionally(e);
+        }
+    }
+    //</codeFragment>
 
     public void shutdown() {
         this.isRunning = false;
     }
 
-    //</codeFragment>
-
+    //size of ConcurrentLinkedQueue is O(n), so this is meant only for diagnostics.
     public int taskCount() {
         return workQueue.size();
     }
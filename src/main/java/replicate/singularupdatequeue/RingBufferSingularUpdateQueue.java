@@ -0,0 +1,169 @@
+package replicate.singularupdatequeue;
+
+import replicate.common.Logging;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * SingularUpdateQueue backed by a pre-allocated ring buffer, in the style of the LMAX Disruptor.
+ * Multiple producers claim slots with a single atomic increment and publish them by writing
+ * the claimed sequence in the slot's availability entry. The single consumer thread processes
+ * all the contiguous published slots in a batch, and only then makes the slots available
+ * to producers again. There are no locks, and the consumer never blocks in a timed poll.
+ *
+ *  consumed        published (available)       claimed
+ *     |                                           |
+ *  ---+----+----+----+----+----+----+----+----+---+---
+ *     | s1 | s2 | s3 | s4 |    | s6 |    |    |
+ *  ---+----+----+----+----+----+----+----+----+-------
+ *      <----- batch ----->  s5 is claimed, but not yet published.
+ *
+ * Slots are reused, so {@link #execute} allocates nothing per item.
+ * {@link #submit} allocates the CompletableFuture it returns.
+ * Producers wait, spinning and then yielding, when the buffer is full.
+ */
+public class RingBufferSingularUpdateQueue<Req, Res> extends Thread implements Logging {
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final Function<Req, Res> handler;
+    private final WaitStrategy waitStrategy;
+    private final int mask;
+    private final int capacity;
+    private final Object[] requests;
+    private final Object[] futures;
+    //sequence published in each slot. A slot is available to the consumer when it holds the expected sequence.
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    //last sequence processed by the consumer. Producers can reuse the slots up to it.
+    private final AtomicLong consumed = new AtomicLong(-1);
+    private volatile boolean isRunning = false;
+
+    public RingBufferSingularUpdateQueue(Function<Req, Res> handler) {
+        this(handler, 1024, WaitStrategy.parking());
+    }
+
+    public RingBufferSingularUpdateQueue(Function<Req, Res> handler, int capacity, WaitStrategy waitStrategy) {
+        super("RingBufferSingularUpdateQueue");
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity should be a power of 2, but was " + capacity);
+        }
+        this.handler = handler;
+        this.waitStrategy = waitStrategy;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.requests = new Object[capacity];
+        this.futures = new Object[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        setDaemon(true);
+    }
+
+    public CompletableFuture<Res> submit(Req request) {
+        CompletableFuture<Res> future = new CompletableFuture<>();
+        publish(request, future);
+        return future;
+    }
+
+    //The response of the handler is discarded. Failures are logged.
+    public void execute(Req request) {
+        publish(request, null);
+    }
+
+    private void publish(Req request, CompletableFuture<Res> future) {
+        long sequence = claimed.incrementAndGet();
+        waitForCapacity(sequence);
+        int slot = (int) (sequence & mask);
+        requests[slot] = request;
+        futures[slot] = future;
+        //the volatile write publishes the request and the future with it.
+        published.set(slot, sequence);
+        waitStrategy.signal();
+    }
+
+    private void waitForCapacity(long sequence) {
+        int spins = 0;
+        while (sequence - capacity > consumed.get()) {
+            if (spins++ < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    //running is set before the thread starts, so that a shutdown right after start is not lost.
+    @Override
+    public synchronized void start() {
+        isRunning = true;
+        super.start();
+    }
+
+    @Override
+    public void run() {
+        int idleCount = 0;
+        while (isRunning) {
+            if (processAvailableBatch() > 0) {
+                idleCount = 0;
+            } else {
+                waitStrategy.idle(idleCount++, this::hasItems);
+            }
+        }
+    }
+
+    private boolean hasItems() {
+        long next = consumed.get() + 1;
+        return published.get((int) (next & mask)) == next;
+    }
+
+    private int processAvailableBatch() {
+        long next = consumed.get() + 1;
+        int processed = 0;
+        while (processed < MAX_BATCH_SIZE && published.get((int) ((next + processed) & mask)) == next + processed) {
+            process((int) ((next + processed) & mask));
+            processed++;
+        }
+        if (processed > 0) {
+            //slots are released only after the whole batch, with a single write.
+            consumed.lazySet(next + processed - 1);
+        }
+        return processed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(int slot) {
+        Req request = (Req) requests[slot];
+        CompletableFuture<Res> future = (CompletableFuture<Res>) futures[slot];
+        requests[slot] = null;
+        futures[slot] = null;
+        try {
+            Res response = handler.apply(request);
+            if (future != null) {
+                future.complete(response);
+            }
+        } catch (Exception e) {
+            if (future != null) {
+                future.completeExceptionally(e);
+            } else {
+                getLogger().error("Failed to handle " + request, e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        this.isRunning = false;
+        waitStrategy.signalAll();
+    }
+
+    public int taskCount() {
+        return (int) (claimed.get() - consumed.get());
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+}
@@ -0,0 +1,112 @@
+package replicate.singularupdatequeue;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How the consumer thread of a RingBufferSingularUpdateQueue waits when there is nothing to process.
+ * Spinning gives the lowest latency but keeps a core busy. Parking frees the core, at the cost
+ * of the producers having to wake up the consumer.
+ */
+public interface WaitStrategy {
+    /**
+     * Called by the consumer when the queue is empty.
+     * idleCount is the number of consecutive calls without any item becoming available.
+     */
+    void idle(int idleCount, BooleanSupplier hasItems);
+
+    //Called by producers after publishing an item.
+    void signal();
+
+    //Wakes up the consumer, e.g. on shutdown.
+    void signalAll();
+
+    //Only when the consumer has a core of its own. Otherwise it takes CPU time away from the producers.
+    static WaitStrategy busySpin() {
+        return new BusySpinWaitStrategy();
+    }
+
+    static WaitStrategy yielding() {
+        return new YieldingWaitStrategy();
+    }
+
+    static WaitStrategy parking() {
+        return new ParkingWaitStrategy();
+    }
+
+    class BusySpinWaitStrategy implements WaitStrategy {
+        @Override
+        public void idle(int idleCount, BooleanSupplier hasItems) {
+            Thread.onSpinWait();
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    //Spins for a while before yielding the core to other threads.
+    class YieldingWaitStrategy implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public void idle(int idleCount, BooleanSupplier hasItems) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+
+        @Override
+        public void signalAll() {
+        }
+    }
+
+    //Spins briefly, then parks the consumer until a producer publishes an item.
+    //The consumer sets waiting before checking for items and the producers publish before
+    //checking waiting. Both are volatile, so either the consumer sees the item or the producer sees
+    //the consumer waiting, and a wakeup is never lost.
+    class ParkingWaitStrategy implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+        private volatile boolean waiting;
+        private volatile Thread consumer;
+
+        @Override
+        public void idle(int idleCount, BooleanSupplier hasItems) {
+            if (idleCount < SPIN_TRIES) {
+                Thread.onSpinWait();
+                return;
+            }
+            consumer = Thread.currentThread();
+            waiting = true;
+            if (!hasItems.getAsBoolean()) {
+                LockSupport.park(this);
+            }
+            waiting = false;
+        }
+
+        @Override
+        public void signal() {
+            if (waiting) {
+                LockSupport.unpark(consumer);
+            }
+        }
+
+        @Override
+        public void signalAll() {
+            Thread consumer = this.consumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package replicate.singularupdatequeue.example;
+
+import replicate.singularupdatequeue.ActorLikeSingularUpdateQueue;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Same as SingleThreadedAccount, but the account is an actor sharing a pool of threads
+ * with all the other accounts, instead of owning a thread. So there can be an account per customer.
+ */
+public class ActorAccount {
+    private final ActorLikeSingularUpdateQueue<Request, Response> queue;
+    private int balance = 0;
+
+    public ActorAccount(int balance) {
+        this(balance, ActorLikeSingularUpdateQueue.DEFAULT_BATCH_BUDGET);
+    }
+
+    public ActorAccount(int balance, int batchBudget) {
+        this.balance = balance;
+        this.queue = new ActorLikeSingularUpdateQueue<Request, Response>(this::handleMessage,
+                batchBudget, ActorLikeSingularUpdateQueue.DEFAULT_TIME_SLICE_NANOS);
+    }
+
+    private Response handleMessage(Request request) {
+        if (request.requestType == RequestType.CREDIT) {
+            balance += request.amount;
+            return Response.succecss(balance);
+
+        } else if (request.requestType == RequestType.DEBIT) {
+            if (balance < request.amount) {
+                return Response.failure("Not enough balance");
+            }
+            balance -= request.amount;
+            return Response.succecss(balance);
+        }
+        throw new IllegalArgumentException("Unknown request type " + request.requestType);
+    }
+
+    public CompletableFuture<Response> credit(int amount) {
+        return queue.submit(new Request(amount, RequestType.CREDIT));
+    }
+
+    public CompletableFuture<Response> debit(int amount) {
+        return queue.submit(new Request(amount, RequestType.DEBIT));
+    }
+
+    //returns the balance once all the messages submitted before are processed.
+    public CompletableFuture<Integer> balance() {
+        return credit(0).thenApply(response -> ((SuccessResponse) response).getBalance());
+    }
+}
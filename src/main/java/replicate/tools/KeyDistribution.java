@@ -0,0 +1,108 @@
+package replicate.tools;
+
+import java.util.Random;
+
+/**
+ * Picks which of the keys, numbered 0 to keys - 1, the next operation of a load is for.
+ */
+public abstract class KeyDistribution {
+    protected final long keys;
+
+    protected KeyDistribution(long keys) {
+        if (keys < 1) {
+            throw new IllegalArgumentException("Need at least one key, got " + keys);
+        }
+        this.keys = keys;
+    }
+
+    public abstract long nextKey(Random random);
+
+    public long getKeys() {
+        return keys;
+    }
+
+    public static KeyDistribution uniform(long keys) {
+        return new Uniform(keys);
+    }
+
+    //theta of 0.99 is the usual skew, where a few percent of the keys get most of the operations.
+    public static KeyDistribution zipfian(long keys, double theta) {
+        return new Zipfian(keys, theta);
+    }
+
+    public static KeyDistribution parse(String name, long keys) {
+        switch (name) {
+            case "uniform": return uniform(keys);
+            case "zipfian": return zipfian(keys, Zipfian.DEFAULT_THETA);
+            default: throw new IllegalArgumentException("Unknown key distribution " + name + ", expected uniform or zipfian");
+        }
+    }
+
+    static class Uniform extends KeyDistribution {
+        Uniform(long keys) {
+            super(keys);
+        }
+
+        @Override
+        public long nextKey(Random random) {
+            return Math.floorMod(random.nextLong(), keys);
+        }
+
+        @Override
+        public String toString() {
+            return "uniform";
+        }
+    }
+
+    /**
+     * Key 0 is the most frequent, key 1 the next and so on, with the frequency of key i
+     * proportional to 1 / (i + 1)^theta.
+     * Generates keys in constant time, as in "Quickly Generating Billion-Record Synthetic Databases"
+     * by Gray et al, after summing the series once for all the keys when created.
+     */
+    static class Zipfian extends KeyDistribution {
+        static final double DEFAULT_THETA = 0.99;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+
+        Zipfian(long keys, double theta) {
+            super(keys);
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException("theta should be between 0 and 1, but was " + theta);
+            }
+            this.theta = theta;
+            this.zetaN = zeta(keys, theta);
+            this.alpha = 1 / (1 - theta);
+            this.eta = (1 - Math.pow(2.0 / keys, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public long nextKey(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + Math.pow(0.5, theta)) {
+                return Math.min(1, keys - 1);
+            }
+            long key = (long) (keys * Math.pow(eta * u - eta + 1, alpha));
+            return Math.min(key, keys - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "zipfian(" + theta + ")";
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package replicate.tools;
+
+import replicate.common.NetworkClient;
+import replicate.metrics.Histogram;
+import replicate.net.InetAddressAndPort;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends a Workload of reads and writes to the client ports of a cluster, and reports the
+ * throughput and latencies as a LoadReport.
+ *
+ * In a closed loop, each of concurrency clients sends an operation once the response
+ * to its previous one arrives, at most at its share of the rate, if there is one.
+ * In an open loop, operations are sent at the rate whether or not the earlier ones have
+ * responses, with up to concurrency of them in flight per target. Either way, the response time
+ * of an operation is measured from when the rate says it should have been sent. So when the
+ * cluster stalls, the operations which could not be sent in the meantime are counted with
+ * the time they waited, rather than being left out as if they were never meant to be sent.
+ * The service time of an operation is measured from when the sender has handed it to the connection.
+ * Operations meant to be sent during the warmup are not counted.
+ *
+ * Usage: LoadGenerator [-a kv|command] [-m closed|open] [-c concurrency] [-r requestsPerSec]
+ *                      [-d seconds] [-W warmupSeconds] [-n keys] [-k uniform|zipfian]
+ *                      [-R readFraction] [-s valueBytes] [-w writeTarget] [-o report.json]
+ *                      host:port [host:port ...]
+ * Writes go to the writeTarget, by default the first of the targets, e.g. the leader.
+ * Reads are spread over all the targets.
+ */
+public class LoadGenerator {
+    public enum Mode {
+        CLOSED, OPEN
+    }
+
+    //Sends the operation, completing with whether it succeeded.
+    //Returns once the operation is handed to the connection, which may wait for room in the in-flight window.
+    public interface RequestSender {
+        CompletableFuture<Boolean> send(Workload.Operation operation);
+    }
+
+    private final Workload workload;
+    private final RequestSender sender;
+    private Mode mode = Mode.CLOSED;
+    private int concurrency = 1;
+    //requests per second. 0 is as fast as the responses come for a closed loop.
+    private double rate = 0;
+    private long durationMs = 10_000;
+    private long warmupMs = 0;
+    private long responseTimeoutMs = 10_000;
+    private List<String> targets = new ArrayList<>();
+
+    private final int noOfOperationTypes = Workload.OperationType.values().length;
+    private final Histogram[] responseTimes = new Histogram[noOfOperationTypes];
+    private final Histogram[] serviceTimes = new Histogram[noOfOperationTypes];
+    private final LongAdder[] requests = new LongAdder[noOfOperationTypes];
+    private final LongAdder[] errors = new LongAdder[noOfOperationTypes];
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private long measureFromNanos;
+
+    public LoadGenerator(Workload workload, RequestSender sender) {
+        this.workload = workload;
+        this.sender = sender;
+        for (int i = 0; i < noOfOperationTypes; i++) {
+            responseTimes[i] = new Histogram();
+            serviceTimes[i] = new Histogram();
+            requests[i] = new LongAdder();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    public LoadGenerator withMode(Mode mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    public LoadGenerator withConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    public LoadGenerator withRate(double requestsPerSecond) {
+        this.rate = requestsPerSecond;
+        return this;
+    }
+
+    public LoadGenerator withDurationMs(long durationMs) {
+        this.durationMs = durationMs;
+        return this;
+    }
+
+    public LoadGenerator withWarmupMs(long warmupMs) {
+        this.warmupMs = warmupMs;
+        return this;
+    }
+
+    public LoadGenerator withResponseTimeoutMs(long responseTimeoutMs) {
+        this.responseTimeoutMs = responseTimeoutMs;
+        return this;
+    }
+
+    //only for the report.
+    public LoadGenerator withTargets(List<String> targets) {
+        this.targets = targets;
+        return this;
+    }
+
+    public LoadReport run() throws InterruptedException {
+        if (mode == Mode.OPEN && rate <= 0) {
+            throw new IllegalArgumentException("An open loop needs a rate");
+        }
+        long start = System.nanoTime();
+        measureFromNanos = start + TimeUnit.MILLISECONDS.toNanos(warmupMs);
+        long end = measureFromNanos + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        if (mode == Mode.CLOSED) {
+            runClosedLoop(start, end);
+        } else {
+            runOpenLoop(start, end);
+        }
+        return report();
+    }
+
+    private void runClosedLoop(long start, long end) throws InterruptedException {
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            //clients with a rate are spread over the first interval, rather than sending together.
+            long firstSend = rate > 0 ? start + intervalNanos(rate) * i : start;
+            Thread client = new Thread(() -> runClosedLoopClient(firstSend, end), "LoadGenerator-client-" + i);
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+    }
+
+    private void runClosedLoopClient(long firstSend, long end) {
+        Random random = ThreadLocalRandom.current();
+        long clientInterval = rate > 0 ? intervalNanos(rate / concurrency) : 0;
+        long nextSend = firstSend;
+        while (true) {
+            long intended;
+            if (clientInterval > 0) {
+                intended = nextSend;
+                nextSend += clientInterval;
+                if (intended >= end) {
+                    break;
+                }
+                parkUntil(intended);
+            } else {
+                intended = System.nanoTime();
+                if (intended >= end) {
+                    break;
+                }
+            }
+            Workload.Operation operation = workload.next(random);
+            CompletableFuture<Boolean> response = sender.send(operation);
+            long sent = System.nanoTime();
+            boolean succeeded;
+            try {
+                succeeded = response.get(responseTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                succeeded = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            record(operation, intended, sent, succeeded);
+        }
+    }
+
+    private void runOpenLoop(long start, long end) throws InterruptedException {
+        Random random = ThreadLocalRandom.current();
+        double interval = 1_000_000_000.0 / rate;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * interval);
+            if (intended >= end) {
+                break;
+            }
+            parkUntil(intended);
+            Workload.Operation operation = workload.next(random);
+            inFlight.incrementAndGet();
+            //can block when the sender has too many requests in flight, which delays the following ones.
+            CompletableFuture<Boolean> response = sender.send(operation);
+            //the request is on the connection now, so the service time leaves out the wait for the in-flight window.
+            long sent = System.nanoTime();
+            response.orTimeout(responseTimeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((succeeded, e) -> {
+                        record(operation, intended, sent, e == null && succeeded);
+                        inFlight.decrementAndGet();
+                    });
+        }
+        long waitUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(responseTimeoutMs) * 2;
+        while (inFlight.get() > 0 && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void record(Workload.Operation operation, long intendedNanos, long sentNanos, boolean succeeded) {
+        if (intendedNanos < measureFromNanos) {
+            return;
+        }
+        int type = operation.getType().ordinal();
+        requests[type].increment();
+        if (!succeeded) {
+            errors[type].increment();
+            return;
+        }
+        long now = System.nanoTime();
+        responseTimes[type].record(now - intendedNanos);
+        serviceTimes[type].record(now - sentNanos);
+    }
+
+    private LoadReport report() {
+        Map<String, LoadReport.OperationReport> operations = new LinkedHashMap<>();
+        for (Workload.OperationType type : Workload.OperationType.values()) {
+            int i = type.ordinal();
+            if (requests[i].sum() > 0) {
+                operations.put(type.name().toLowerCase(), new LoadReport.OperationReport(requests[i].sum(), errors[i].sum(),
+                        durationMs, responseTimes[i].snapshot(), serviceTimes[i].snapshot()));
+            }
+        }
+        KeyDistribution keys = workload.getKeys();
+        return new LoadReport(workload.getApi().name().toLowerCase(), mode.name().toLowerCase(), targets, concurrency, rate,
+                keys.toString(), keys.getKeys(), workload.getReadFraction(), workload.getValueBytes(), durationMs,
+                mode == Mode.OPEN || rate > 0, operations);
+    }
+
+    private static long intervalNanos(double requestsPerSecond) {
+        return (long) (1_000_000_000.0 / requestsPerSecond);
+    }
+
+    private static void parkUntil(long nanoTime) {
+        long remaining;
+        while ((remaining = nanoTime - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * Sends the operations as client requests with a NetworkClient.
+     * Writes go to the write target and reads round-robin to all the targets.
+     */
+    public static class NetworkSender implements RequestSender {
+        private final NetworkClient client;
+        private final InetAddressAndPort writeTarget;
+        private final List<InetAddressAndPort> targets;
+        private final AtomicInteger nextTarget = new AtomicInteger();
+
+        public NetworkSender(NetworkClient client, InetAddressAndPort writeTarget, List<InetAddressAndPort> targets) {
+            this.client = client;
+            this.writeTarget = writeTarget;
+            this.targets = targets;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> send(Workload.Operation operation) {
+            InetAddressAndPort target = operation.getType() == Workload.OperationType.WRITE
+                    ? writeTarget
+                    : targets.get(Math.floorMod(nextTarget.getAndIncrement(), targets.size()));
+            //the responses differ between the replicas, and only success is counted.
+            return client.sendAsync(operation.getRequest(), target, Object.class)
+                    .thenApply(NetworkClient.Response::isSuccess);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Workload.Api api = Workload.Api.KV;
+        Mode mode = Mode.CLOSED;
+        int concurrency = 16;
+        double rate = 0;
+        long durationSeconds = 10;
+        long warmupSeconds = 2;
+        long keys = 100_000;
+        String keyDistribution = "zipfian";
+        double readFraction = 0.5;
+        int valueBytes = 100;
+        InetAddressAndPort writeTarget = null;
+        String reportFile = null;
+        List<InetAddressAndPort> targets = new ArrayList<>();
+        List<String> targetNames = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-a": api = Workload.Api.valueOf(args[++i].toUpperCase()); break;
+                case "-m": mode = Mode.valueOf(args[++i].toUpperCase()); break;
+                case "-c": concurrency = Integer.parseInt(args[++i]); break;
+                case "-r": rate = Double.parseDouble(args[++i]); break;
+                case "-d": durationSeconds = Long.parseLong(args[++i]); break;
+                case "-W": warmupSeconds = Long.parseLong(args[++i]); break;
+                case "-n": keys = Long.parseLong(args[++i]); break;
+                case "-k": keyDistribution = args[++i]; break;
+                case "-R": readFraction = Double.parseDouble(args[++i]); break;
+                case "-s": valueBytes = Integer.parseInt(args[++i]); break;
+                case "-w": writeTarget = StatsTop.parseAddress(args[++i]); break;
+                case "-o": reportFile = args[++i]; break;
+                default:
+                    targets.add(StatsTop.parseAddress(args[i]));
+                    targetNames.add(args[i]);
+            }
+        }
+        if (targets.isEmpty()) {
+            System.err.println("Usage: LoadGenerator [-a kv|command] [-m closed|open] [-c concurrency] [-r requestsPerSec] " +
+                    "[-d seconds] [-W warmupSeconds] [-n keys] [-k uniform|zipfian] [-R readFraction] [-s valueBytes] " +
+                    "[-w writeTarget] [-o report.json] host:port [host:port ...]");
+            System.exit(1);
+        }
+        Workload workload = new Workload(api, KeyDistribution.parse(keyDistribution, keys), readFraction, valueBytes);
+        //an open loop keeps up to concurrency requests in flight on the connection to each target.
+        int maxInFlight = mode == Mode.OPEN ? concurrency : Math.max(concurrency, 128);
+        try (NetworkClient client = new NetworkClient(1, maxInFlight)) {
+            LoadReport report = new LoadGenerator(workload, new NetworkSender(client, writeTarget == null ? targets.get(0) : writeTarget, targets))
+                    .withMode(mode)
+                    .withConcurrency(concurrency)
+                    .withRate(rate)
+                    .withDurationMs(TimeUnit.SECONDS.toMillis(durationSeconds))
+                    .withWarmupMs(TimeUnit.SECONDS.toMillis(warmupSeconds))
+                    .withTargets(targetNames)
+                    .run();
+            System.out.print(report);
+            if (reportFile != null) {
+                writeReport(report, Path.of(reportFile));
+            } else {
+                System.out.println(report.toJson());
+            }
+        }
+        System.exit(0);
+    }
+
+    static void writeReport(LoadReport report, Path file) throws IOException {
+        Files.write(file, report.toJson().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,202 @@
+package replicate.tools;
+
+import replicate.common.JsonSerDes;
+import replicate.metrics.HistogramSnapshot;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a LoadGenerator run, written as JSON so that runs of different replicas,
+ * or of the same replica before and after a change, can be compared by scripts.
+ *
+ * Response time is measured from when the operation was meant to be sent, as per the rate,
+ * so an operation delayed behind a slow one is counted as waiting too, and is not left out
+ * of the percentiles (coordinated omission). Service time is measured from when it was sent.
+ * Both are the same for a closed loop without a rate, as there is no schedule to fall behind.
+ * Latencies are in microseconds.
+ */
+public class LoadReport {
+    private final String api;
+    private final String mode;
+    private final List<String> targets;
+    private final int concurrency;
+    private final double targetRate;
+    private final String keyDistribution;
+    private final long keys;
+    private final double readFraction;
+    private final int valueBytes;
+    private final long durationMs;
+    private final long requests;
+    private final long errors;
+    private final double throughput;
+    private final boolean coordinatedOmissionCorrected;
+    private final Map<String, OperationReport> operations;
+
+    public LoadReport(String api, String mode, List<String> targets, int concurrency, double targetRate,
+                      String keyDistribution, long keys, double readFraction, int valueBytes, long durationMs,
+                      boolean coordinatedOmissionCorrected, Map<String, OperationReport> operations) {
+        this.api = api;
+        this.mode = mode;
+        this.targets = targets;
+        this.concurrency = concurrency;
+        this.targetRate = targetRate;
+        this.keyDistribution = keyDistribution;
+        this.keys = keys;
+        this.readFraction = readFraction;
+        this.valueBytes = valueBytes;
+        this.durationMs = durationMs;
+        this.coordinatedOmissionCorrected = coordinatedOmissionCorrected;
+        this.operations = operations;
+        this.requests = operations.values().stream().mapToLong(o -> o.requests).sum();
+        this.errors = operations.values().stream().mapToLong(o -> o.errors).sum();
+        this.throughput = perSecond(requests - errors, durationMs);
+    }
+
+    public static class OperationReport {
+        private final long requests;
+        private final long errors;
+        private final double throughput;
+        private final LatencyReport responseTime;
+        private final LatencyReport serviceTime;
+
+        OperationReport(long requests, long errors, long durationMs, HistogramSnapshot responseTime, HistogramSnapshot serviceTime) {
+            this.requests = requests;
+            this.errors = errors;
+            this.throughput = perSecond(requests - errors, durationMs);
+            this.responseTime = LatencyReport.of(responseTime);
+            this.serviceTime = LatencyReport.of(serviceTime);
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public LatencyReport getResponseTime() {
+            return responseTime;
+        }
+
+        public LatencyReport getServiceTime() {
+            return serviceTime;
+        }
+    }
+
+    public static class LatencyReport {
+        private final long count;
+        private final long mean;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        LatencyReport(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        static LatencyReport of(HistogramSnapshot nanos) {
+            return new LatencyReport(nanos.getCount(), micros(Math.round(nanos.getMean())),
+                    micros(nanos.getValueAtPercentile(50)), micros(nanos.getValueAtPercentile(90)),
+                    micros(nanos.getValueAtPercentile(99)), micros(nanos.getValueAtPercentile(99.9)),
+                    micros(nanos.getMax()));
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static double perSecond(long count, long durationMs) {
+        return durationMs <= 0 ? 0 : count * 1000.0 / durationMs;
+    }
+
+    public String toJson() {
+        return JsonSerDes.toJson(this);
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public boolean isCoordinatedOmissionCorrected() {
+        return coordinatedOmissionCorrected;
+    }
+
+    public Map<String, OperationReport> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        String rate = targetRate > 0 ? String.format(" at %.0f requests/s", targetRate) : "";
+        out.append(String.format("%s %s loop, concurrency %d%s, %s keys for %dms: %d requests, %d errors, %.0f/s%n",
+                api, mode, concurrency, rate, keyDistribution, durationMs, requests, errors, throughput));
+        out.append(String.format("%-6s %-8s %9s %9s %9s %9s %9s %9s%n", "OP", "LATENCY", "COUNT", "p50", "p90", "p99", "p999", "max"));
+        operations.forEach((name, operation) -> {
+            appendLatency(out, name, "response", operation.responseTime);
+            appendLatency(out, name, "service", operation.serviceTime);
+        });
+        return out.toString();
+    }
+
+    private static void appendLatency(StringBuilder out, String operation, String name, LatencyReport latency) {
+        out.append(String.format("%-6s %-8s %9d %9d %9d %9d %9d %9d%n", operation, name, latency.count,
+                latency.p50, latency.p90, latency.p99, latency.p999, latency.max));
+    }
+}
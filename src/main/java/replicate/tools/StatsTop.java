@@ -0,0 +1,216 @@
+package replicate.tools;
+
+import replicate.common.NetworkClient;
+import replicate.metrics.messages.GetStatsRequest;
+import replicate.metrics.messages.StatsResponse;
+import replicate.net.InetAddressAndPort;
+
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Top-style live view of a running cluster. Polls every node with GetStats on its client port
+ * and prints throughput, queue depths and latency percentiles for the last interval.
+ *
+ * Usage: StatsTop [-i intervalMs] [-n iterations] [-l latencyRows] host:port [host:port ...]
+ */
+public class StatsTop {
+    private static final String CLEAR_SCREEN = "\033[H\033[2J";
+
+    private final List<InetAddressAndPort> nodes;
+    private final int latencyRows;
+    private Map<InetAddressAndPort, StatsResponse> previous = new LinkedHashMap<>();
+
+    public StatsTop(List<InetAddressAndPort> nodes, int latencyRows) {
+        this.nodes = nodes;
+        this.latencyRows = latencyRows;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long intervalMs = 1000;
+        int iterations = Integer.MAX_VALUE;
+        int latencyRows = 10;
+        List<InetAddressAndPort> nodes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-i": intervalMs = Long.parseLong(args[++i]); break;
+                case "-n": iterations = Integer.parseInt(args[++i]); break;
+                case "-l": latencyRows = Integer.parseInt(args[++i]); break;
+                default: nodes.add(parseAddress(args[i]));
+            }
+        }
+        if (nodes.isEmpty()) {
+            System.err.println("Usage: StatsTop [-i intervalMs] [-n iterations] [-l latencyRows] host:port [host:port ...]");
+            System.exit(1);
+        }
+        StatsTop top = new StatsTop(nodes, latencyRows);
+        try (NetworkClient client = new NetworkClient()) {
+            long lastPoll = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                Map<InetAddressAndPort, StatsResponse> current = top.poll(client, intervalMs);
+                long now = System.nanoTime();
+                System.out.print(CLEAR_SCREEN + top.update(current, TimeUnit.NANOSECONDS.toMillis(now - lastPoll)));
+                System.out.flush();
+                lastPoll = now;
+                Thread.sleep(intervalMs);
+            }
+        }
+        System.exit(0);
+    }
+
+    static InetAddressAndPort parseAddress(String hostAndPort) {
+        int separator = hostAndPort.lastIndexOf(':');
+        return InetAddressAndPort.create(hostAndPort.substring(0, separator), Integer.parseInt(hostAndPort.substring(separator + 1)));
+    }
+
+    //Nodes which do not respond within the timeout are left out.
+    Map<InetAddressAndPort, StatsResponse> poll(NetworkClient client, long timeoutMs) {
+        Map<InetAddressAndPort, CompletableFuture<NetworkClient.Response<StatsResponse>>> requests = new LinkedHashMap<>();
+        for (InetAddressAndPort node : nodes) {
+            requests.put(node, client.sendAsync(new GetStatsRequest(), node, StatsResponse.class));
+        }
+        Map<InetAddressAndPort, StatsResponse> responses = new LinkedHashMap<>();
+        requests.forEach((node, request) -> {
+            try {
+                var response = request.get(timeoutMs, TimeUnit.MILLISECONDS);
+                if (response.isSuccess()) {
+                    responses.put(node, response.getResult());
+                }
+            } catch (Exception e) {
+                //unreachable. shown as such in the view.
+            }
+        });
+        return responses;
+    }
+
+    //Renders the view for the current snapshots, with rates since the previous ones.
+    String update(Map<InetAddressAndPort, StatsResponse> current, long elapsedMs) {
+        String view = render(previous, current, elapsedMs);
+        previous = current;
+        return view;
+    }
+
+    String render(Map<InetAddressAndPort, StatsResponse> previous, Map<InetAddressAndPort, StatsResponse> current, long elapsedMs) {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("replicate top - %s, interval %dms%n%n", LocalTime.now().truncatedTo(ChronoUnit.SECONDS), elapsedMs));
+        out.append(String.format("%-14s %-16s %6s %9s %9s %9s %7s %8s %6s %10s%n",
+                "NODE", "ROLE", "TERM", "UPTIME", "REQ/S", "MSG/S", "QUEUE", "PENDING", "CONNS", "WAL"));
+        List<LatencyRow> latencies = new ArrayList<>();
+        for (InetAddressAndPort node : nodes) {
+            StatsResponse stats = current.get(node);
+            if (stats == null) {
+                out.append(String.format("%-14s %s%n", node.getAddress().getHostAddress() + ":" + node.getPort(), "unreachable"));
+                continue;
+            }
+            StatsResponse before = previous.get(node);
+            out.append(String.format("%-14s %-16s %6d %9s %9.0f %9.0f %7d %8d %6d %10s%n",
+                    stats.getName(), stats.getRole(), stats.getTerm(), formatUptime(stats.getUptimeMs()),
+                    rate(requestsCompleted(stats) - (before == null ? 0 : requestsCompleted(before)), before, elapsedMs),
+                    rate(messagesRead(stats) - (before == null ? 0 : messagesRead(before)), before, elapsedMs),
+                    sumGauges(stats, ".queueDepth"), stats.getGauges().getOrDefault("replica.pendingResponses.pending", 0L),
+                    sumGauges(stats, ".connections"), formatBytes(sumGauges(stats, ".sizeBytes"))));
+            stats.getLatencies().forEach((name, latency) -> {
+                long count = latency.getCount() - previousCount(before, name);
+                latencies.add(new LatencyRow(stats.getName(), name, rate(count, before, elapsedMs), latency));
+            });
+        }
+        out.append(String.format("%n%-14s %-52s %9s %9s %9s %9s %9s%n", "NODE", "LATENCY (us)", "RATE/S", "p50", "p99", "p999", "max"));
+        latencies.sort(Comparator.comparingDouble((LatencyRow row) -> row.rate).reversed()
+                .thenComparing(row -> -row.latency.getCount()));
+        for (LatencyRow row : latencies.subList(0, Math.min(latencyRows, latencies.size()))) {
+            out.append(String.format("%-14s %-52s %9.0f %9d %9d %9d %9d%n", row.node, row.name, row.rate,
+                    micros(row.latency.getP50()), micros(row.latency.getP99()), micros(row.latency.getP999()), micros(row.latency.getMax())));
+        }
+        return out.toString();
+    }
+
+    //client requests complete when their response future completes.
+    private static long requestsCompleted(StatsResponse stats) {
+        long completed = 0;
+        for (var entry : stats.getLatencies().entrySet()) {
+            if (entry.getKey().endsWith(".responseLatencyNanos")) {
+                completed += entry.getValue().getCount();
+            }
+        }
+        return completed;
+    }
+
+    private static long messagesRead(StatsResponse stats) {
+        long messages = 0;
+        for (var entry : stats.getCounters().entrySet()) {
+            if (entry.getKey().endsWith(".messagesRead")) {
+                messages += entry.getValue();
+            }
+        }
+        return messages;
+    }
+
+    private static long sumGauges(StatsResponse stats, String suffix) {
+        long sum = 0;
+        for (var entry : stats.getGauges().entrySet()) {
+            if (entry.getKey().endsWith(suffix)) {
+                sum += entry.getValue();
+            }
+        }
+        return sum;
+    }
+
+    private static long previousCount(StatsResponse before, String latencyName) {
+        if (before == null) {
+            return 0;
+        }
+        StatsResponse.LatencySummary latency = before.getLatencies().get(latencyName);
+        return latency == null ? 0 : latency.getCount();
+    }
+
+    //no rate for the first snapshot of a node, as counters are cumulative since it started.
+    private static double rate(long delta, StatsResponse before, long elapsedMs) {
+        if (before == null || elapsedMs <= 0) {
+            return 0;
+        }
+        return delta * 1000.0 / elapsedMs;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    static String formatUptime(long uptimeMs) {
+        long seconds = uptimeMs / 1000;
+        if (seconds < 3600) {
+            return String.format("%dm%02ds", seconds / 60, seconds % 60);
+        }
+        return String.format("%dh%02dm", seconds / 3600, (seconds % 3600) / 60);
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024));
+    }
+
+    private static class LatencyRow {
+        final String node;
+        final String name;
+        final double rate;
+        final StatsResponse.LatencySummary latency;
+
+        LatencyRow(String node, String name, double rate, StatsResponse.LatencySummary latency) {
+            this.node = node;
+            this.name = name;
+            this.rate = rate;
+            this.latency = latency;
+        }
+    }
+}
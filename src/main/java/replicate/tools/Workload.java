@@ -0,0 +1,101 @@
+package replicate.tools;
+
+import replicate.common.MessagePayload;
+import replicate.quorum.messages.GetValueRequest;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.twophaseexecution.messages.ExecuteCommandRequest;
+import replicate.wal.SetValueCommand;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The mix of reads and writes a LoadGenerator sends, and the client requests they are sent as.
+ * Reads are always GetValueRequests. Writes depend on the client API of the replicas.
+ */
+public class Workload {
+    public enum Api {
+        //SetValueRequest, e.g. QuorumKVStore, QuorumConsensus, PaxosKVStore and SingleValuePaxos.
+        KV,
+        //ExecuteCommandRequest with a SetValueCommand, e.g. MultiPaxos, PaxosLog, ViewStampedReplication,
+        //the two phase execution replicas and the head of ChainReplication.
+        COMMAND
+    }
+
+    public enum OperationType {
+        READ, WRITE
+    }
+
+    public static class Operation {
+        final OperationType type;
+        final String key;
+        final MessagePayload request;
+
+        Operation(OperationType type, String key, MessagePayload request) {
+            this.type = type;
+            this.key = key;
+            this.request = request;
+        }
+
+        public OperationType getType() {
+            return type;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public MessagePayload getRequest() {
+            return request;
+        }
+    }
+
+    private final Api api;
+    private final KeyDistribution keys;
+    private final double readFraction;
+    private final int valueBytes;
+
+    public Workload(Api api, KeyDistribution keys, double readFraction, int valueBytes) {
+        if (readFraction < 0 || readFraction > 1) {
+            throw new IllegalArgumentException("readFraction should be between 0 and 1, but was " + readFraction);
+        }
+        this.api = api;
+        this.keys = keys;
+        this.readFraction = readFraction;
+        this.valueBytes = valueBytes;
+    }
+
+    public Operation next(Random random) {
+        String key = "key" + keys.nextKey(random);
+        if (random.nextDouble() < readFraction) {
+            return new Operation(OperationType.READ, key, new GetValueRequest(key));
+        }
+        String value = randomValue(random);
+        MessagePayload request = api == Api.KV
+                ? new SetValueRequest(key, value)
+                : new ExecuteCommandRequest(new SetValueCommand(key, value).serialize());
+        return new Operation(OperationType.WRITE, key, request);
+    }
+
+    private String randomValue(Random random) {
+        char[] value = new char[valueBytes];
+        Arrays.fill(value, (char) ('a' + random.nextInt(26)));
+        return new String(value);
+    }
+
+    public Api getApi() {
+        return api;
+    }
+
+    public KeyDistribution getKeys() {
+        return keys;
+    }
+
+    public double getReadFraction() {
+        return readFraction;
+    }
+
+    public int getValueBytes() {
+        return valueBytes;
+    }
+}
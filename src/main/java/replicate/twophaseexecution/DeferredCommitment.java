@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import replicate.common.*;
 import replicate.net.InetAddressAndPort;
+import replicate.net.requestwaitinglist.RequestWaitingList;
 import replicate.twophaseexecution.messages.*;
 import replicate.vsr.CompletionCallback;
 import replicate.wal.Command;
@@ -61,6 +62,8 @@ import java.util.function.Function;
 public class DeferredCommitment extends Replica {
     Command acceptedCommand; //intermediate storage waiting for confirmation.
     DurableKVStore kvStore; //final storage exposed to clients.
+    //client requests waiting for their command to be committed.
+    protected final RequestWaitingList requestWaitingList;
 
     // what to do with other requests?
     //if not accepting other requests..
@@ -74,6 +77,8 @@ public class DeferredCommitment extends Replica {
     public DeferredCommitment(String name, Config config, SystemClock clock, InetAddressAndPort clientConnectionAddress, InetAddressAndPort peerConnectionAddress, List<InetAddressAndPort> peerAddresses) throws IOException {
         super(name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses);
         this.kvStore = new DurableKVStore(config);
+        this.requestWaitingList = new RequestWaitingList(clock);
+        requestWaitingList.registerMetrics(getMetrics(), "replica.requestWaitingList");
     }
 
     @Override
@@ -65,6 +65,16 @@ public class ViewStampedReplication extends Replica {
         return viewNumber;
     }
 
+    @Override
+    protected String describeRole() {
+        return status.name();
+    }
+
+    @Override
+    protected long describeTerm() {
+        return viewNumber;
+    }
+
     static enum Status {
         Normal,ViewChange,Recovering
     }
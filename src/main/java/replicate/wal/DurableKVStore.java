@@ -1,22 +1,34 @@
 package replicate.wal;
 
 import replicate.common.Config;
+import replicate.common.PipelineStage;
+import replicate.common.StageMetrics;
+import replicate.metrics.MetricsRegistry;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DurableKVStore {
     //persistent..
-    private final Map<String, String> kv = new HashMap<>();
+    //Concurrent, as replicas can update different keys from different update lanes.
+    //The wal orders the writes across lanes.
+    private final Map<String, String> kv = new ConcurrentHashMap<>();
 
     public String get(String key) {
         return kv.get(key);
     }
 
     public void put(String key, String value) {
+        if (walStage != null) {
+            //through the wal stage, so that the entries are in the same order as the async puts.
+            putAsync(key, value).join();
+            return;
+        }
 
         //Then applyLog at startup.
         //e.g. Cassandra's WAL for memtable.
@@ -32,6 +44,95 @@ public class DurableKVStore {
         //respond to client
     }
 
+    //With wal batching, the future completes once the entry is flushed with the rest of its batch.
+    //The value is visible to get before that, so that the next update for the key reads it,
+    //but it should be acknowledged only after the future completes.
+    //If the write fails, the value is rolled back to the last one written to the wal.
+    //Updates to a key should be made from one thread at a time, e.g. the key's update lane,
+    //so that they reach the wal in the order they are applied.
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        if (walStage == null) {
+            put(key, value);
+            return CompletableFuture.completedFuture(null);
+        }
+        var pendingWrite = new PendingWrite(key, new SetValueCommand(key, value).serialize());
+        unflushedWrites.compute(key, (k, latest) -> {
+            if (latest != null) {
+                latest.next = pendingWrite;
+            }
+            pendingWrite.previousValue = kv.put(key, value);
+            return pendingWrite;
+        });
+        walStage.submit(pendingWrite);
+        return pendingWrite.durable;
+    }
+
+    private void writeBatch(List<PendingWrite> batch) {
+        List<byte[]> entries = new ArrayList<>(batch.size());
+        for (PendingWrite pendingWrite : batch) {
+            entries.add(pendingWrite.data);
+        }
+        RuntimeException failure = null;
+        try {
+            //on failure, the wal truncates the entries of the batch it had written, so all of them are rolled back.
+            wal.writeEntries(entries);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        for (PendingWrite pendingWrite : batch) {
+            flushed(pendingWrite, failure == null);
+            if (failure == null) {
+                pendingWrite.durable.complete(null);
+            } else {
+                pendingWrite.durable.completeExceptionally(failure);
+            }
+        }
+    }
+
+    //Writes to a key are flushed in the order they were made, so this is the oldest unflushed write for the key.
+    private void flushed(PendingWrite pendingWrite, boolean durable) {
+        unflushedWrites.compute(pendingWrite.key, (key, latest) -> {
+            PendingWrite next = pendingWrite.next;
+            if (!durable) {
+                if (next != null) {
+                    //the later write is in the map now. It rolls back to what this one would have.
+                    next.previousValue = pendingWrite.previousValue;
+                } else if (pendingWrite.previousValue == null) {
+                    kv.remove(key);
+                } else {
+                    kv.put(key, pendingWrite.previousValue);
+                }
+            }
+            return next == null ? null : latest;
+        });
+    }
+
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        wal.registerMetrics(registry, prefix);
+        if (walStage != null) {
+            walStage.getMetrics().registerMetrics(registry);
+        }
+    }
+
+    //null without wal batching.
+    public StageMetrics getWalStageMetrics() {
+        return walStage == null ? null : walStage.getMetrics();
+    }
+
+    private static class PendingWrite {
+        final String key;
+        final byte[] data;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+        //guarded by the key's entry in unflushedWrites.
+        String previousValue;
+        PendingWrite next;
+
+        PendingWrite(String key, byte[] data) {
+            this.key = key;
+            this.data = data;
+        }
+    }
+
     private Long appendLog(String key, String value) {
         Long aLong = wal.writeEntry(new SetValueCommand(key, value).serialize());
         return aLong;
@@ -40,12 +141,19 @@ public class DurableKVStore {
     //@VisibleForTesting
     final WriteAheadLog wal;
     private final Config config;
+    //null unless Config.withWalBatching.
+    private final PipelineStage<PendingWrite> walStage;
+    //latest write of each key not yet flushed to the wal. Each links to the next write of its key.
+    private final Map<String, PendingWrite> unflushedWrites = new ConcurrentHashMap<>();
 
     public DurableKVStore(Config config) {
         this.config = config;
         this.wal = WriteAheadLog.openWAL(config);
         applyLog();
         //Assignment 1: applyLog at startup.
+        this.walStage = config.isWalBatching()
+                ? PipelineStage.batching("wal-" + config.getWalDir().getName(), config.getStageQueueCapacity(), config.getWalMaxBatchEntries(), this::writeBatch)
+                : null;
     }
 
     public void applyLog() {
@@ -69,6 +177,9 @@ public class DurableKVStore {
 
     //simulates crash.
     public void close() {
+        if (walStage != null) {
+            walStage.shutdown();
+        }
         wal.close();
         kv.clear();
     }
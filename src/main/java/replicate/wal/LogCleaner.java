@@ -3,7 +3,6 @@ package replicate.wal;
 import replicate.common.Config;
 
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -14,10 +13,11 @@ public abstract class LogCleaner {
     public LogCleaner(Config config, WriteAheadLog wal) {
         this.config = config;
         this.wal = wal;
+        this.scheduler = config.getRuntime().getScheduler();
     }
 
-    //TODO:When multiple logs are created in multi-raft, a thread is created for each.Make this a shared threadpool instead
-    private ScheduledExecutorService singleThreadedExecutor = Executors.newScheduledThreadPool(1);
+    //shared by the logs of all the replicas using the runtime.
+    private final ScheduledExecutorService scheduler;
 
     public void cleanLogs() {
         List<WALSegment> segmentsTobeDeleted = getSegmentsToBeDeleted();
@@ -35,7 +35,7 @@ public abstract class LogCleaner {
     }
 
     private void scheduleLogCleaning() {
-        singleThreadedExecutor.schedule(() -> {
+        scheduler.schedule(() -> {
             cleanLogs();
         }, config.getCleanTaskIntervalMs(), TimeUnit.MILLISECONDS);
     }
@@ -1,5 +1,7 @@
 package replicate.wal;
 
+import replicate.metrics.Histogram;
+
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -20,6 +22,8 @@ public class WALSegment {
     final FileChannel fileChannel;
     Map<Long, Long> entryOffsets = new HashMap<Long, Long>();
     private File file;
+    //set by the WriteAheadLog for its open segment.
+    Histogram fsyncLatency;
 
     private WALSegment(Long startIndex, File file) {
         try {
@@ -111,9 +115,15 @@ public class WALSegment {
     }
 
     public synchronized Long writeEntry(WALEntry logEntry) {
+        return writeEntry(logEntry, true);
+    }
+
+    //Without flush, the entry is durable only after the next flush.
+    //Used to write a batch of entries with a single fsync.
+    public synchronized Long writeEntry(WALEntry logEntry, boolean flush) {
         try {
             long entryOffset = fileChannel.size();
-            writeToChannel(logEntry.serialize());
+            writeToChannel(logEntry.serialize(), flush);
             entryOffsets.put(logEntry.getEntryIndex(), entryOffset);
             return logEntry.getEntryIndex();
         } catch (IOException e) {
@@ -121,13 +131,15 @@ public class WALSegment {
         }
     }
 
-    private Long writeToChannel(ByteBuffer buffer) {
+    private Long writeToChannel(ByteBuffer buffer, boolean flush) {
         try {
             buffer.flip();
             while (buffer.hasRemaining()) {
                 fileChannel.write(buffer);
             }
-            flush();
+            if (flush) {
+                flush();
+            }
             return fileChannel.position();
 
         } catch (IOException e) {
@@ -137,7 +149,11 @@ public class WALSegment {
 
     public synchronized void flush() {
         try {
+            long start = System.nanoTime();
             fileChannel.force(true);
+            if (fsyncLatency != null) {
+                fsyncLatency.record(System.nanoTime() - start);
+            }
 
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -168,6 +184,17 @@ public class WALSegment {
     }
     //</codeFragment>
 
+    //Removes whatever was written from the file position on, even entries written only partially.
+    public synchronized void truncateToSize(long size) {
+        try {
+            fileChannel.truncate(size);
+            entryOffsets.values().removeIf(offset -> offset >= size);
+            flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     //<codeFragment name="walFileName">
     public static String createFileName(Long startIndex) {
         return logPrefix + "_" + startIndex + logSuffix;
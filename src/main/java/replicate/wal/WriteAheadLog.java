@@ -1,6 +1,9 @@
 package replicate.wal;
 
 import replicate.common.Config;
+import replicate.metrics.Counter;
+import replicate.metrics.Histogram;
+import replicate.metrics.MetricsRegistry;
 
 import java.io.File;
 import java.io.IOException;
@@ -8,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.function.Consumer;
 
 
 public class WriteAheadLog {
@@ -20,6 +24,11 @@ public class WriteAheadLog {
     //So that it easier to traverse them to find specific entry.
     //#see getAllSegmentsContainingLogGreaterThan
     List<WALSegment> sortedSavedSegments;
+    //recorded by the open segment.
+    private final Histogram fsyncLatency = new Histogram();
+    private final Counter entriesWritten = new Counter();
+    //@VisibleForTesting, to fail a batch partway through.
+    Consumer<WALEntry> beforeBatchEntryWrite = entry -> {};
 
     public static WriteAheadLog openWAL(Config config) {
         return new WriteAheadLog(openAllSegments(config.getWalDir()), config);
@@ -45,6 +54,7 @@ public class WriteAheadLog {
     public WriteAheadLog(List<WALSegment> segmentsSortedByIndex, Config config) {
         sortedSavedSegments = segmentsSortedByIndex;
         this.openSegment = lastOpenSegment(segmentsSortedByIndex, lastIndex());
+        this.openSegment.fsyncLatency = fsyncLatency;
         this.config = config;
        //<codeFragment name="logCleanerInit">
         this.logCleaner = newLogCleaner(config);
@@ -67,6 +77,7 @@ public class WriteAheadLog {
     //<codeFragment name="rollSegment">
     public synchronized Long writeEntry(WALEntry entry) {
         maybeRoll();
+        entriesWritten.increment();
         return openSegment.writeEntry(entry);
     }
 
@@ -77,6 +88,7 @@ public class WriteAheadLog {
             sortedSavedSegments.add(openSegment);
             long lastId = openSegment.getLastLogEntryIndex();
             openSegment = WALSegment.open(lastId, config.getWalDir());
+            openSegment.fsyncLatency = fsyncLatency;
         }
     }
     //</codeFragment>
@@ -95,6 +107,20 @@ public class WriteAheadLog {
         openSegment.flush();
     }
 
+    public void registerMetrics(MetricsRegistry registry, String prefix) {
+        registry.register(prefix + ".fsyncNanos", fsyncLatency);
+        registry.register(prefix + ".entriesWritten", entriesWritten);
+        registry.gauge(prefix + ".sizeBytes", this::sizeInBytes);
+    }
+
+    public synchronized long sizeInBytes() {
+        long size = openSegment.size();
+        for (WALSegment segment : sortedSavedSegments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
     public void close() {
         openSegment.close();
     }
@@ -188,6 +214,33 @@ public class WriteAheadLog {
         return writeEntry(logEntry);
     }
 
+    //Writes all the entries with a single fsync at the end. Returns the index of the last entry.
+    //If a write or the fsync fails, the entries already written are truncated, so that none of the batch
+    //is replayed after a restart. The whole batch goes in one segment, which can take it past the max log size.
+    public synchronized Long writeEntries(List<byte[]> entries) {
+        maybeRoll();
+        long segmentSizeBefore = openSegment.size();
+        long lastIndex = getLastLogIndex();
+        try {
+            for (byte[] data : entries) {
+                lastIndex++;
+                WALEntry entry = new WALEntry(lastIndex, data, EntryType.DATA, 0);
+                beforeBatchEntryWrite.accept(entry);
+                openSegment.writeEntry(entry, false);
+            }
+            openSegment.flush();
+        } catch (RuntimeException e) {
+            try {
+                openSegment.truncateToSize(segmentSizeBefore);
+            } catch (RuntimeException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+        entriesWritten.add(entries.size());
+        return lastIndex;
+    }
+
     public synchronized Long getLastLogEntryGeneration() {
         if (isEmpty()) {
             return 0l;
@@ -0,0 +1,112 @@
+package replicate.common;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.net.InetAddressAndPort;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdmissionControlTest {
+    ExecutorService lane = Executors.newSingleThreadExecutor();
+    CountDownLatch laneBlocked = new CountDownLatch(1);
+    List<String> handled = new CopyOnWriteArrayList<>();
+
+    @After
+    public void tearDown() {
+        laneBlocked.countDown();
+        lane.shutdownNow();
+    }
+
+    @Test
+    public void rejectsClientRequestsBeyondQueueLimit() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(new Config().withMaxQueuedClientRequests(2), new ExecutorService[]{lane});
+        blockLane();
+
+        admissionControl.submitClientRequest(0, () -> handled.add("client1"));
+        admissionControl.submitClientRequest(0, () -> handled.add("client2"));
+        assertThrows(OverloadedException.class, () -> admissionControl.submitClientRequest(0, () -> handled.add("client3")));
+        assertEquals(2, admissionControl.getQueuedClientRequests());
+
+        laneBlocked.countDown();
+        TestUtils.waitUntilTrue(() -> handled.size() == 2, "Waiting for queued client requests", Duration.ofSeconds(2));
+        assertEquals(List.of("client1", "client2"), handled);
+        assertEquals(0, admissionControl.getQueuedClientRequests());
+        //slots are freed once the queued requests run.
+        admissionControl.submitClientRequest(0, () -> handled.add("client3"));
+        TestUtils.waitUntilTrue(() -> handled.size() == 3, "Waiting for client request", Duration.ofSeconds(2));
+    }
+
+    @Test
+    public void peerMessagesAreHandledBeforeQueuedClientRequests() throws Exception {
+        AdmissionControl admissionControl = new AdmissionControl(new Config().withMaxQueuedClientRequests(10), new ExecutorService[]{lane});
+        blockLane();
+
+        admissionControl.submitClientRequest(0, () -> handled.add("client1"));
+        admissionControl.submitClientRequest(0, () -> handled.add("client2"));
+        admissionControl.submitPeerMessage(0, peerMessage(admissionControl, "peer1"));
+        admissionControl.submitPeerMessage(0, peerMessage(admissionControl, "peer2"));
+
+        laneBlocked.countDown();
+        TestUtils.waitUntilTrue(() -> handled.size() == 4, "Waiting for lane", Duration.ofSeconds(2));
+        //client requests keep their order.
+        assertEquals(List.of("peer1", "peer2", "client1", "client2"), handled);
+    }
+
+    @Test
+    public void rejectsClientRequestsWhileQuorumRequestsAreInFlight() {
+        AdmissionControl admissionControl = new AdmissionControl(new Config().withMaxInflightQuorumRequests(1), new ExecutorService[]{lane});
+        AsyncQuorumCallback<String> quorum = new AsyncQuorumCallback<>(3);
+        admissionControl.quorumStarted(quorum);
+
+        OverloadedException e = assertThrows(OverloadedException.class, () -> admissionControl.submitClientRequest(0, () -> handled.add("client1")));
+        assertEquals("Overloaded: 1 quorum requests in flight", e.getMessage());
+
+        quorum.onResponse("ok", InetAddressAndPort.create("127.0.0.1", 9000));
+        quorum.onResponse("ok", InetAddressAndPort.create("127.0.0.1", 9001));
+        assertEquals(0, admissionControl.getInflightQuorumRequests());
+        admissionControl.submitClientRequest(0, () -> handled.add("client1"));
+    }
+
+    @Test
+    public void rejectsClientRequestsForShutDownLane() {
+        AdmissionControl admissionControl = new AdmissionControl(new Config().withMaxQueuedClientRequests(1), new ExecutorService[]{lane});
+        lane.shutdown();
+
+        OverloadedException e = assertThrows(OverloadedException.class, () -> admissionControl.submitClientRequest(0, () -> handled.add("client1")));
+        assertEquals("Overloaded: update lane 0 is shut down", e.getMessage());
+        //the queue slot is released, so the next request is not rejected for a full queue.
+        assertEquals(0, admissionControl.getQueuedClientRequests());
+        e = assertThrows(OverloadedException.class, () -> admissionControl.submitClientRequest(0, () -> handled.add("client2")));
+        assertEquals("Overloaded: update lane 0 is shut down", e.getMessage());
+        assertTrue(handled.isEmpty());
+    }
+
+    //peer messages report when they start running, as Replica's peer message tasks do.
+    private Runnable peerMessage(AdmissionControl admissionControl, String name) {
+        return () -> {
+            admissionControl.peerMessageStarted(0);
+            handled.add(name);
+        };
+    }
+
+    private void blockLane() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        lane.execute(() -> {
+            running.countDown();
+            try {
+                laneBlocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        running.await();
+    }
+}
@@ -3,6 +3,14 @@ package replicate.common;
 import org.junit.Test;
 import replicate.paxos.messages.PrepareResponse;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class AsyncQuorumCallbackTest {
@@ -16,4 +24,48 @@ public class AsyncQuorumCallbackTest {
         assertTrue(callback.quorumFuture.isCompletedExceptionally());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void ignoresResponsesAfterQuorumIsReached() throws ExecutionException, InterruptedException {
+        AsyncQuorumCallback<PrepareResponse> callback = new AsyncQuorumCallback<>(3, p -> p.promised);
+        callback.onResponse(new PrepareResponse(true), TestUtils.randomAddress());
+        callback.onResponse(new PrepareResponse(true), TestUtils.randomAddress());
+        Map<?, PrepareResponse> quorumResponses = callback.getQuorumFuture().get();
+
+        callback.onResponse(new PrepareResponse(true), TestUtils.randomAddress());
+        assertEquals(2, quorumResponses.size());
+    }
+
+    @Test
+    public void countsResponsesArrivingConcurrently() throws Exception {
+        int noOfReplicas = 101;
+        AsyncQuorumCallback<PrepareResponse> callback = new AsyncQuorumCallback<>(noOfReplicas, p -> p.promised);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        //only the rejections and one promise arrive, so the quorum can not succeed.
+        for (int i = 0; i < noOfReplicas; i++) {
+            boolean promised = i == 0;
+            boolean error = i % 2 == 0 && !promised;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (error) {
+                    callback.onError(new RuntimeException("Request expired"));
+                } else {
+                    callback.onResponse(new PrepareResponse(promised), TestUtils.randomAddress());
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(callback.getQuorumFuture().isCompletedExceptionally());
+        assertFalse(callback.getQuorumFuture().isCancelled());
+    }
+}
@@ -0,0 +1,74 @@
+package replicate.common;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HashedWheelTimerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, 8);
+
+    @After
+    public void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    public void runsTaskAfterItsDeadline() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        AtomicLong expiredAtNanos = new AtomicLong();
+        long scheduledAtNanos = System.nanoTime();
+        timer.schedule(() -> {
+            expiredAtNanos.set(System.nanoTime());
+            expired.countDown();
+        }, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertTrue(expiredAtNanos.get() - scheduledAtNanos >= TimeUnit.MILLISECONDS.toNanos(30));
+    }
+
+    @Test
+    public void deadlinesLongerThanOneRotationWaitForTheirRound() throws InterruptedException {
+        //the wheel rotates every 8 * 5 = 40ms.
+        CountDownLatch expired = new CountDownLatch(1);
+        long scheduledAtNanos = System.nanoTime();
+        AtomicLong expiredAtNanos = new AtomicLong();
+        timer.schedule(() -> {
+            expiredAtNanos.set(System.nanoTime());
+            expired.countDown();
+        }, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertTrue(expiredAtNanos.get() - scheduledAtNanos >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotRun() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        HashedWheelTimer.Timeout cancelled = timer.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        timer.schedule(later::countDown, 60, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertFalse(cancelled.cancel());
+        TestUtils.waitUntilTrue(() -> timer.pendingTimeouts() == 0, "Waiting for cancelled timeout to be removed", Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void expiredTimeoutCanNotBeCancelled() throws InterruptedException {
+        CountDownLatch expired = new CountDownLatch(1);
+        HashedWheelTimer.Timeout timeout = timer.schedule(expired::countDown, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(2, TimeUnit.SECONDS));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+}
@@ -0,0 +1,157 @@
+package replicate.common;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@RunWith(Parameterized.class)
+public class LaneExecutorTest {
+    //lanes with a thread each, and lanes sharing a single thread.
+    @Parameterized.Parameters(name = "laneThreads={0}")
+    public static Collection<Object[]> laneThreads() {
+        return Arrays.asList(new Object[][]{{0}, {1}});
+    }
+
+    private final ReplicaRuntime runtime;
+    private final LaneExecutor lane;
+
+    public LaneExecutorTest(int laneThreads) {
+        this.runtime = new ReplicaRuntime("test", laneThreads, 0);
+        this.lane = runtime.newLane("test-lane");
+    }
+
+    @Test
+    public void runsTasksInOrder() throws Exception {
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            lane.execute(() -> order.add(task));
+        }
+
+        TestUtils.waitUntilTrue(() -> order.size() == 1000, "Waiting for all the tasks", Duration.ofSeconds(5));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void busyLaneDoesNotStarveOtherLanes() throws Exception {
+        LaneExecutor otherLane = runtime.newLane("other-lane");
+        CountDownLatch otherLaneRan = new CountDownLatch(1);
+        //a lane which keeps executing more tasks, as long as the other lane has not run.
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (otherLaneRan.getCount() > 0) {
+                    lane.execute(this);
+                }
+            }
+        });
+        otherLane.execute(otherLaneRan::countDown);
+
+        assertTrue(otherLaneRan.await(5, TimeUnit.SECONDS));
+        otherLane.shutdown();
+    }
+
+    @Test
+    public void keepsRunningTasksAfterOneFails() throws Exception {
+        lane.execute(() -> {
+            throw new IllegalStateException("failing task");
+        });
+        Future<String> next = lane.submit(() -> "ran");
+
+        assertEquals("ran", next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void terminatesOnceQueuedTasksAreRun() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        lane.execute(() -> await(blocked));
+        AtomicInteger runs = new AtomicInteger();
+        lane.execute(runs::incrementAndGet);
+        lane.shutdown();
+
+        assertFalse(lane.awaitTermination(100, TimeUnit.MILLISECONDS));
+        blocked.countDown();
+        assertTrue(lane.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertThrows(RejectedExecutionException.class, () -> lane.execute(runs::incrementAndGet));
+    }
+
+    @After
+    public void shutdown() {
+        lane.shutdownNow();
+        runtime.shutdown();
+    }
+
+    @Test
+    public void runsDelayedTasksOnTheLaneAfterTheDelay() throws Exception {
+        long start = System.nanoTime();
+        ScheduledFuture<String> future = lane.schedule(() -> Thread.currentThread().getName(), 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("test-lane"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void delayedTasksQueueBehindTheTasksAlreadyExecuted() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        lane.execute(() -> await(blocked));
+        ScheduledFuture<?> future = lane.schedule(() -> {}, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        assertFalse(future.isDone());
+        blocked.countDown();
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void cancelledTasksDoNotRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = lane.schedule(runs::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(future.cancel(false));
+        Thread.sleep(300);
+        assertEquals(0, runs.get());
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void periodicTasksRunTillCancelled() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        ScheduledFuture<?> future = lane.scheduleWithFixedDelay(runs::incrementAndGet, 0, 10, TimeUnit.MILLISECONDS);
+
+        TestUtils.waitUntilTrue(() -> runs.get() >= 3, "Waiting for the task to repeat", Duration.ofSeconds(5));
+        future.cancel(false);
+        int runsAfterCancel = runs.get();
+        Thread.sleep(100);
+        //a run which had already started when cancelled is still counted.
+        assertTrue(runs.get() <= runsAfterCancel + 1);
+    }
+
+    @Test
+    public void delayedTasksAreDroppedOnceTheLaneIsShutdown() throws Exception {
+        ScheduledFuture<?> future = lane.schedule(() -> {}, 50, TimeUnit.MILLISECONDS);
+        lane.shutdown();
+
+        TestUtils.waitUntilTrue(future::isCancelled, "Waiting for the task to be dropped", Duration.ofSeconds(5));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package replicate.common;
+
+import replicate.net.InetAddressAndPort;
+import replicate.net.SendFailureHandler;
+
+import java.io.IOException;
+
+/**
+ * Cost of Network.sendOneWay on top of the transport, with and without the fault injection
+ * interceptor installed. The transport discards the messages, so only the Network code is measured.
+ *
+ * Usage: NetworkSendBenchmark [messages]
+ */
+public class NetworkSendBenchmark {
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        InetAddressAndPort[] peers = new InetAddressAndPort[]{
+                InetAddressAndPort.create("127.0.0.1", 9000),
+                InetAddressAndPort.create("127.0.0.1", 9001),
+                InetAddressAndPort.create("127.0.0.1", 9002)};
+        RequestOrResponse message = new RequestOrResponse(MessageId.SetValueRequest.getId(), new byte[16], 1);
+        SendFailureHandler ignoreFailure = (m, e) -> {};
+
+        Network network = new Network(new RecordingTransport(false));
+        Network withFaultInjection = new Network(new RecordingTransport(false));
+        //a rule for a peer we never send to, so every message goes through the rule checks and is sent.
+        withFaultInjection.dropMessagesTo(InetAddressAndPort.create("127.0.0.1", 9999));
+
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("without interceptors: %.1f ns/send%n", run(network, peers, message, ignoreFailure, messages));
+            System.out.printf("with fault injector:  %.1f ns/send%n", run(withFaultInjection, peers, message, ignoreFailure, messages));
+        }
+        System.exit(0);
+    }
+
+    private static double run(Network network, InetAddressAndPort[] peers, RequestOrResponse message, SendFailureHandler failureHandler, int messages) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            network.sendOneWay(peers[i % peers.length], message, failureHandler);
+        }
+        return (System.nanoTime() - start) / (double) messages;
+    }
+}
@@ -0,0 +1,72 @@
+package replicate.common;
+
+import org.junit.Test;
+import replicate.net.InetAddressAndPort;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class NetworkTest {
+    private final InetAddressAndPort peer = InetAddressAndPort.create("127.0.0.1", 9000);
+    private final InetAddressAndPort otherPeer = InetAddressAndPort.create("127.0.0.1", 9001);
+
+    @Test
+    public void countsMessagesSentToEachPeer() throws IOException {
+        RecordingTransport transport = new RecordingTransport(true);
+        Network network = new Network(transport);
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        network.sendOneWay(otherPeer, message(), (m, e) -> {});
+
+        assertEquals(3, transport.sent.size());
+        assertEquals(2, network.getMessagesSentTo(peer));
+        assertEquals(1, network.getMessagesSentTo(otherPeer));
+    }
+
+    @Test
+    public void dropsMessagesOnlyToTheConfiguredPeer() throws IOException {
+        RecordingTransport transport = new RecordingTransport(true);
+        Network network = new Network(transport);
+        network.dropMessagesTo(peer);
+
+        assertThrows(IOException.class, () -> network.sendOneWay(peer, message(), (m, e) -> {}));
+        network.sendOneWay(otherPeer, message(), (m, e) -> {});
+
+        assertEquals(1, transport.sent.size());
+        assertEquals(1, transport.disconnects);
+    }
+
+    @Test
+    public void dropsMessagesAfterTheGivenCountUntilReconnected() throws IOException {
+        RecordingTransport transport = new RecordingTransport(true);
+        Network network = new Network(transport);
+        network.sendOneWay(peer, message(), (m, e) -> {}); //not counted for the drop rule.
+        network.dropMessagesAfter(peer, 2);
+
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        assertThrows(IOException.class, () -> network.sendOneWay(peer, message(), (m, e) -> {}));
+
+        network.reconnectTo(peer);
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        assertEquals(4, transport.sent.size());
+    }
+
+    @Test
+    public void interceptorCanTakeOverTheMessage() throws IOException {
+        RecordingTransport transport = new RecordingTransport(true);
+        Network network = new Network(transport);
+        network.addInterceptor((address, message, failureHandler) -> !address.equals(peer));
+
+        network.sendOneWay(peer, message(), (m, e) -> {});
+        network.sendOneWay(otherPeer, message(), (m, e) -> {});
+
+        assertEquals(1, transport.sent.size());
+        assertEquals(0, network.getMessagesSentTo(peer));
+    }
+
+    private RequestOrResponse message() {
+        return new RequestOrResponse(MessageId.SetValueRequest.getId(), new byte[0], 1);
+    }
+}
@@ -0,0 +1,116 @@
+package replicate.common;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class PipelineStageTest {
+
+    @Test
+    public void batchingStageHandsOverQueuedItemsTogetherInOrder() throws Exception {
+        CountDownLatch firstBatchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch allHandled = new CountDownLatch(11);
+        PipelineStage<Integer> stage = PipelineStage.batching("test-batching", 100, 4, batch -> {
+            batches.add(new ArrayList<>(batch));
+            firstBatchStarted.countDown();
+            await(releaseFirstBatch);
+            batch.forEach(i -> allHandled.countDown());
+        });
+        try {
+            stage.submit(0);
+            assertTrue(firstBatchStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i <= 10; i++) {
+                stage.submit(i);
+            }
+            releaseFirstBatch.countDown();
+            assertTrue(allHandled.await(5, TimeUnit.SECONDS));
+
+            assertEquals(List.of(List.of(0), List.of(1, 2, 3, 4), List.of(5, 6, 7, 8), List.of(9, 10)), batches);
+            //metrics are recorded after the handler returns.
+            TestUtils.waitUntilTrue(() -> stage.getMetrics().getProcessed() == 11, "Waiting for metrics", Duration.ofSeconds(5));
+            assertEquals(11 / 4.0, stage.getMetrics().getAverageBatchSize(), 0.01);
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void submitBlocksWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch handling = new CountDownLatch(1);
+        PipelineStage<Integer> stage = PipelineStage.of("test-bounded", 1, 2, i -> {
+            handling.countDown();
+            await(release);
+        });
+        try {
+            stage.submit(0);
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+            stage.submit(1);
+            stage.submit(2);
+            assertEquals(2, stage.getQueueDepth());
+
+            AtomicBoolean submitted = new AtomicBoolean();
+            Thread producer = new Thread(() -> {
+                stage.submit(3);
+                submitted.set(true);
+            });
+            producer.start();
+            producer.join(200);
+            assertFalse(submitted.get());
+
+            release.countDown();
+            producer.join(5000);
+            assertTrue(submitted.get());
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    @Test
+    public void recordsQueueWaitAndServiceTime() throws Exception {
+        CountDownLatch handled = new CountDownLatch(3);
+        PipelineStage<Integer> stage = PipelineStage.of("test-metrics", 1, 10, i -> {
+            sleep(20);
+            handled.countDown();
+        });
+        try {
+            for (int i = 0; i < 3; i++) {
+                stage.submit(i);
+            }
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+            StageMetrics metrics = stage.getMetrics();
+            assertEquals("test-metrics", metrics.getName());
+            assertTrue(metrics.getAverageServiceMicros() >= 20_000);
+            //the last item waits for the first two.
+            assertTrue(metrics.getMaxQueueWaitMicros() >= 40_000);
+        } finally {
+            stage.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package replicate.common;
+
+import replicate.net.ConnectionStats;
+import replicate.net.InetAddressAndPort;
+import replicate.net.RequestConsumer;
+import replicate.net.SendFailureHandler;
+import replicate.net.Transport;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+//Transport which only records the messages sent, to test and benchmark Network on its own.
+class RecordingTransport implements Transport {
+    final List<RequestOrResponse> sent = new CopyOnWriteArrayList<>();
+    private final boolean record;
+    private final ConnectionStats stats = new ConnectionStats();
+    int disconnects;
+
+    RecordingTransport(boolean record) {
+        this.record = record;
+    }
+
+    @Override
+    public void listenForPeers(InetAddressAndPort address, RequestConsumer consumer) {
+    }
+
+    @Override
+    public void listenForClients(InetAddressAndPort address, RequestConsumer consumer) {
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void send(InetAddressAndPort address, RequestOrResponse message, SendFailureHandler failureHandler) {
+        if (record) {
+            sent.add(message);
+        }
+    }
+
+    @Override
+    public void disconnect(InetAddressAndPort address) {
+        disconnects++;
+    }
+
+    @Override
+    public ConnectionStats getConnectionStats() {
+        return stats;
+    }
+
+    @Override
+    public void shutdown() {
+    }
+}
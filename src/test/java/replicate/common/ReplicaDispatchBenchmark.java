@@ -0,0 +1,119 @@
+package replicate.common;
+
+import replicate.net.ClientConnection;
+import replicate.net.InetAddressAndPort;
+import replicate.net.TransportType;
+import replicate.paxoslog.messages.CommitRequest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes allocated per message by Replica.handlePeerMessage and handleClientRequest, on the
+ * transport thread which dispatches the message and on the update lane which runs the handler.
+ * The replica skips deserialization and returns the same request every time, and the handlers
+ * do nothing, so only the dispatch path is measured.
+ * The update lane's queue node is the one allocation left besides the task.
+ *
+ * Usage: ReplicaDispatchBenchmark [messages]
+ */
+public class ReplicaDispatchBenchmark {
+    private static final int BATCH = 10_000;
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        System.setProperty("replicate.transport", TransportType.LOOPBACK.name());
+        InetAddressAndPort peerAddress = TestUtils.randomLocalAddress();
+        DispatchReplica replica = new DispatchReplica(new Config(TestUtils.tempDir("dispatch").getAbsolutePath()),
+                TestUtils.randomLocalAddress(), peerAddress);
+        InetAddressAndPort fromAddress = TestUtils.randomLocalAddress();
+        Message<RequestOrResponse> peerMessage = new Message<>(new RequestOrResponse(MessageId.Commit.getId(), new byte[0], 1, fromAddress),
+                new Message.Header(fromAddress, 1, MessageId.Commit));
+        Message<RequestOrResponse> clientRequest = new Message<>(new RequestOrResponse(MessageId.SetValueRequest.getId(), new byte[0], 1),
+                new Message.Header(fromAddress, 1, MessageId.SetValueRequest), new DiscardingConnection());
+        try {
+            for (int round = 0; round < 3; round++) {
+                run("handlePeerMessage", replica, messages, () -> replica.handlePeerMessage(peerMessage));
+                run("handleClientRequest", replica, messages, () -> replica.handleClientRequest(clientRequest));
+            }
+        } finally {
+            replica.shutdown();
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, DispatchReplica replica, int messages, Runnable dispatch) {
+        long threadId = Thread.currentThread().getId();
+        long handledBefore = replica.handled.get();
+        long laneAllocatedBefore = replica.laneAllocatedBytes();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int sent = 0; sent < messages; sent += BATCH) {
+            for (int i = 0; i < BATCH; i++) {
+                dispatch.run();
+            }
+            //keeps the lane's queue short, so its nodes are not promoted out of the young generation.
+            while (replica.handled.get() - handledBefore < sent + BATCH) {
+                Thread.onSpinWait();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        long laneAllocated = replica.laneAllocatedBytes() - laneAllocatedBefore;
+        System.out.printf("%-20s %6.1f ns/message %8.1f bytes/message dispatching %8.1f bytes/message on the update lane%n",
+                name, (double) elapsed / messages, (double) allocated / messages, (double) laneAllocated / messages);
+    }
+
+    static class DispatchReplica extends Replica {
+        private final CommitRequest request = new CommitRequest(1, new byte[0], new MonotonicId(1, 1));
+        private final CompletableFuture<String> response = CompletableFuture.completedFuture("ok");
+        final AtomicLong handled = new AtomicLong();
+        private volatile long laneThreadId = -1;
+
+        DispatchReplica(Config config, InetAddressAndPort clientAddress, InetAddressAndPort peerAddress) throws IOException {
+            super("dispatch", config, new SystemClock(), clientAddress, peerAddress, List.of(peerAddress));
+        }
+
+        @Override
+        protected void registerHandlers() {
+            handlesMessage(MessageId.Commit, this::handleCommit, CommitRequest.class);
+            handlesRequestAsync(MessageId.SetValueRequest, this::handleSetValue, CommitRequest.class);
+        }
+
+        private void handleCommit(Message<CommitRequest> message) {
+            laneThreadId = Thread.currentThread().getId();
+            handled.lazySet(handled.get() + 1);
+        }
+
+        private CompletableFuture<String> handleSetValue(CommitRequest request) {
+            laneThreadId = Thread.currentThread().getId();
+            handled.lazySet(handled.get() + 1);
+            return response;
+        }
+
+        //the payload is decoded once, as deserialization is not what is measured.
+        @Override
+        protected <T> T deserialize(RequestOrResponse request, Class<T> clazz) {
+            return clazz.cast(this.request);
+        }
+
+        long laneAllocatedBytes() {
+            return laneThreadId == -1 ? 0 : threadMXBean.getThreadAllocatedBytes(laneThreadId);
+        }
+    }
+
+    static class DiscardingConnection implements ClientConnection {
+        @Override
+        public void write(RequestOrResponse response) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
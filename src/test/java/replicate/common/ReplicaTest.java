@@ -1,5 +1,148 @@
 package replicate.common;
 
-public class ReplicaTest {
+import org.junit.Test;
+import replicate.net.InetAddressAndPort;
+import replicate.quorum.QuorumKVStore;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
 
-}
\ No newline at end of file
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+
+import static org.junit.Assert.*;
+
+public class ReplicaTest extends ClusterTest<QuorumKVStore> {
+    QuorumKVStore athens;
+    QuorumKVStore byzantium;
+    CountDownLatch laneBlocked = new CountDownLatch(1);
+
+    private void startCluster(UnaryOperator<Config> configuration) throws IOException {
+        this.nodes = TestUtils.startCluster(Arrays.asList("athens", "byzantium", "cyrene"),
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                        new QuorumKVStore(name, configuration.apply(config),
+                                clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        athens = nodes.get("athens");
+        byzantium = nodes.get("byzantium");
+    }
+
+    @Override
+    public void tearDown() {
+        laneBlocked.countDown();
+        super.tearDown();
+    }
+
+    @Test
+    public void dropsClientRequestsWhoseDeadlinePassedInQueue() throws Exception {
+        startCluster(config -> config);
+        blockSingularUpdateQueue();
+        try (NetworkClient client = new NetworkClient()) {
+            var response = client.sendAsync(new SetValueRequest("title", "Microservices"), athens.getClientConnectionAddress(),
+                    SetValueResponse.class, Duration.ofMillis(50));
+            Thread.sleep(200);
+            laneBlocked.countDown();
+
+            assertEquals("Deadline exceeded after 50ms in queue", response.get(5, TimeUnit.SECONDS).getErrorMessage().get());
+            assertEquals(1, athens.getMetrics().snapshot().getCounter("replica.clientRequests.deadlineExceeded"));
+            //the request was dropped without writing the value.
+            assertEquals(0, athens.getMetrics().snapshot().getCounter("wal.entriesWritten"));
+        }
+    }
+
+    @Test
+    public void countsDeadlineMissesApartFromRejections() throws Exception {
+        startCluster(config -> config.withMaxQueuedClientRequests(10));
+        blockSingularUpdateQueue();
+        try (NetworkClient client = new NetworkClient()) {
+            var response = client.sendAsync(new SetValueRequest("title", "Microservices"), athens.getClientConnectionAddress(),
+                    SetValueResponse.class, Duration.ofMillis(50));
+            Thread.sleep(200);
+            laneBlocked.countDown();
+
+            assertEquals("Deadline exceeded after 50ms in queue", response.get(5, TimeUnit.SECONDS).getErrorMessage().get());
+            var metrics = athens.getMetrics().snapshot();
+            assertEquals(1, metrics.getCounter("replica.clientRequests.deadlineExceeded"));
+            //the request was admitted, and missed its deadline in the queue.
+            assertEquals(1, metrics.getCounter("replica.admission.admitted"));
+            assertEquals(0, metrics.getCounter("replica.admission.rejectedQueueFull"));
+            assertEquals(0, metrics.getCounter("replica.admission.rejectedInflightQuorums"));
+        }
+    }
+
+    @Test
+    public void rejectsClientRequestsOnceQueueIsFull() throws Exception {
+        startCluster(config -> config.withMaxQueuedClientRequests(1));
+        blockSingularUpdateQueue();
+        try (NetworkClient client = new NetworkClient()) {
+            var queued = client.sendAsync(new SetValueRequest("title", "Microservices"), athens.getClientConnectionAddress(), SetValueResponse.class);
+            TestUtils.waitUntilTrue(() -> athens.getMetrics().snapshot().getGauge("replica.admission.queuedClientRequests") == 1,
+                    "Waiting for request to be queued", Duration.ofSeconds(2));
+
+            var rejected = client.sendAsync(new SetValueRequest("author", "Unmesh"), athens.getClientConnectionAddress(), SetValueResponse.class);
+            //rejected without waiting for the lane.
+            assertEquals("Overloaded: 1 client requests queued", rejected.get(5, TimeUnit.SECONDS).getErrorMessage().get());
+            assertFalse(queued.isDone());
+
+            laneBlocked.countDown();
+            assertTrue(queued.get(5, TimeUnit.SECONDS).isSuccess());
+            assertEquals(1, athens.getMetrics().snapshot().getCounter("replica.admission.rejectedQueueFull"));
+        }
+    }
+
+    @Test
+    public void estimatesRequestTimeoutsFromRoundTripsToPeers() throws Exception {
+        startCluster(config -> config.withAdaptiveTimeouts(20, 2000));
+        try (NetworkClient client = new NetworkClient()) {
+            for (int i = 0; i < 10; i++) {
+                var response = client.sendAsync(new SetValueRequest("key" + i, "value" + i), athens.getClientConnectionAddress(), SetValueResponse.class);
+                assertTrue(response.get(5, TimeUnit.SECONDS).isSuccess());
+            }
+        }
+        RttEstimator rttEstimator = athens.getRttEstimator();
+        InetAddressAndPort byzantiumAddress = byzantium.getPeerConnectionAddress();
+        TestUtils.waitUntilTrue(() -> rttEstimator.getSmoothedRttNanos(byzantiumAddress) > 0, "Waiting for round trips", Duration.ofSeconds(2));
+        //requests on loopback complete well within the configured max.
+        Duration timeout = rttEstimator.timeout(byzantiumAddress, Duration.ofSeconds(2));
+        assertTrue(timeout.toString(), timeout.compareTo(Duration.ofMillis(20)) >= 0 && timeout.compareTo(Duration.ofSeconds(2)) < 0);
+        assertTrue(athens.getMetrics().snapshot().getGauge("rtt." + byzantiumAddress + ".smoothedMicros") > 0);
+    }
+
+    @Test
+    public void retryBackoffLeavesOutPeersWithoutRoundTrips() throws Exception {
+        startCluster(config -> config.withAdaptiveTimeouts(20, 2000));
+        //no round trips to any peer yet.
+        assertEquals(Duration.ofMillis(100), athens.retryBackoff(1));
+        assertEquals(Duration.ofMillis(200), athens.retryBackoff(2));
+
+        try (NetworkClient client = new NetworkClient()) {
+            var response = client.sendAsync(new SetValueRequest("title", "Microservices"), athens.getClientConnectionAddress(), SetValueResponse.class);
+            assertTrue(response.get(5, TimeUnit.SECONDS).isSuccess());
+        }
+        RttEstimator rttEstimator = athens.getRttEstimator();
+        InetAddressAndPort byzantiumAddress = byzantium.getPeerConnectionAddress();
+        InetAddressAndPort cyreneAddress = nodes.get("cyrene").getPeerConnectionAddress();
+        //the response of the peer outside the quorum may be cancelled, so it may have no round trip.
+        TestUtils.waitUntilTrue(() -> rttEstimator.getSmoothedRttNanos(byzantiumAddress) > 0 || rttEstimator.getSmoothedRttNanos(cyreneAddress) > 0,
+                "Waiting for round trips", Duration.ofSeconds(2));
+        //from the sampled peers, well below the max even if a peer has no round trip yet.
+        Duration backoff = athens.retryBackoff(1);
+        assertTrue(backoff.toString(), backoff.compareTo(Duration.ofMillis(20)) >= 0 && backoff.compareTo(Duration.ofSeconds(2)) < 0);
+    }
+
+    private void blockSingularUpdateQueue() throws InterruptedException {
+        CountDownLatch running = new CountDownLatch(1);
+        athens.singularUpdateQueueExecutor.execute(() -> {
+            running.countDown();
+            try {
+                laneBlocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        running.await();
+    }
+}
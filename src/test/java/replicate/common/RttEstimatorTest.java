@@ -0,0 +1,87 @@
+package replicate.common;
+
+import org.junit.Test;
+import replicate.metrics.MetricsRegistry;
+import replicate.net.InetAddressAndPort;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+public class RttEstimatorTest {
+    InetAddressAndPort athens = InetAddressAndPort.create("127.0.0.1", 9000);
+    InetAddressAndPort byzantium = InetAddressAndPort.create("127.0.0.1", 9001);
+    Duration defaultTimeout = Duration.ofSeconds(2);
+
+    RttEstimator estimator = new RttEstimator(Duration.ofMillis(1), Duration.ofSeconds(1), Duration.ofMillis(1), new MetricsRegistry());
+
+    @Test
+    public void usesDefaultTimeoutTillFirstResponse() {
+        assertEquals(defaultTimeout, estimator.timeout(athens, defaultTimeout));
+        estimator.onExpiry(athens);
+        assertEquals(defaultTimeout, estimator.timeout(athens, defaultTimeout));
+    }
+
+    @Test
+    public void firstSampleSetsSmoothedRttAndHalfOfItAsVariance() {
+        estimator.onResponse(athens, millis(8));
+
+        assertEquals(millis(8), estimator.getSmoothedRttNanos(athens));
+        assertEquals(millis(4), estimator.getRttVarianceNanos(athens));
+        //srtt + 4 * rttvar
+        assertEquals(Duration.ofMillis(24), estimator.timeout(athens, defaultTimeout));
+        assertEquals(defaultTimeout, estimator.timeout(byzantium, defaultTimeout));
+    }
+
+    @Test
+    public void laterSamplesAreSmoothed() {
+        estimator.onResponse(athens, millis(8));
+        estimator.onResponse(athens, millis(16));
+
+        //srtt = 7/8 * 8 + 1/8 * 16, rttvar = 3/4 * 4 + 1/4 * |8 - 16|
+        assertEquals(millis(9), estimator.getSmoothedRttNanos(athens));
+        assertEquals(millis(5), estimator.getRttVarianceNanos(athens));
+        assertEquals(Duration.ofMillis(29), estimator.timeout(athens, defaultTimeout));
+    }
+
+    @Test
+    public void timeoutConvergesToRttOnStableNetwork() {
+        for (int i = 0; i < 100; i++) {
+            estimator.onResponse(athens, millis(2));
+        }
+        assertEquals(millis(2), estimator.getSmoothedRttNanos(athens));
+        //the variance decays, so the granularity sets the margin.
+        assertEquals(Duration.ofMillis(3), estimator.timeout(athens, defaultTimeout));
+    }
+
+    @Test
+    public void timeoutIsKeptBetweenMinAndMax() {
+        RttEstimator bounded = new RttEstimator(Duration.ofMillis(20), Duration.ofMillis(100), Duration.ofMillis(1), null);
+        bounded.onResponse(athens, 100_000); //100us
+        bounded.onResponse(byzantium, millis(500));
+
+        assertEquals(Duration.ofMillis(20), bounded.timeout(athens, defaultTimeout));
+        assertEquals(Duration.ofMillis(100), bounded.timeout(byzantium, defaultTimeout));
+    }
+
+    @Test
+    public void expiriesDoubleTimeoutTillNextResponse() {
+        estimator.onResponse(athens, millis(8));
+        estimator.onExpiry(athens);
+        assertEquals(Duration.ofMillis(48), estimator.timeout(athens, defaultTimeout));
+        estimator.onExpiry(athens);
+        assertEquals(Duration.ofMillis(96), estimator.timeout(athens, defaultTimeout));
+        for (int i = 0; i < 10; i++) {
+            estimator.onExpiry(athens);
+        }
+        assertEquals(Duration.ofSeconds(1), estimator.timeout(athens, defaultTimeout));
+
+        estimator.onResponse(athens, millis(8));
+        //srtt 8, rttvar = 3/4 * 4 + 0
+        assertEquals(Duration.ofMillis(20), estimator.timeout(athens, defaultTimeout));
+    }
+
+    private static long millis(long millis) {
+        return Duration.ofMillis(millis).toNanos();
+    }
+}
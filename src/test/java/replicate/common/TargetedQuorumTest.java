@@ -0,0 +1,97 @@
+package replicate.common;
+
+import org.junit.Test;
+import replicate.metrics.Counter;
+import replicate.net.InetAddressAndPort;
+import replicate.net.requestwaitinglist.RequestCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class TargetedQuorumTest {
+    List<InetAddressAndPort> replicas = new ArrayList<>();
+    List<InetAddressAndPort> sentTo = new CopyOnWriteArrayList<>();
+    Counter hedges = new Counter();
+
+    public TargetedQuorumTest() {
+        for (int i = 0; i < 5; i++) {
+            replicas.add(InetAddressAndPort.create("127.0.0.1", 9000 + i));
+        }
+    }
+
+    @Test
+    public void sendsToFastestQuorumOnly() throws Exception {
+        AsyncQuorumCallback<String> quorumCallback = new AsyncQuorumCallback<>(5);
+        TargetedQuorum<String> targetedQuorum = targetedQuorum(quorumCallback, Duration.ofSeconds(10));
+        targetedQuorum.start();
+        assertEquals(replicas.subList(0, 3), sentTo);
+
+        for (int i = 0; i < 3; i++) {
+            targetedQuorum.onResponse("ok", replicas.get(i));
+        }
+        assertEquals(3, quorumCallback.getQuorumFuture().get(1, TimeUnit.SECONDS).size());
+        assertEquals(3, sentTo.size());
+        assertEquals(0, hedges.get());
+    }
+
+    @Test
+    public void sendsToNextReplicaOnErrorOrRejection() throws Exception {
+        AsyncQuorumCallback<String> quorumCallback = new AsyncQuorumCallback<>(5, "ok"::equals);
+        TargetedQuorum<String> targetedQuorum = targetedQuorum(quorumCallback, Duration.ofSeconds(10));
+        targetedQuorum.start();
+
+        targetedQuorum.onResponse("ok", replicas.get(0));
+        targetedQuorum.onResponse("rejected", replicas.get(1));
+        assertEquals(replicas.subList(0, 4), sentTo);
+        targetedQuorum.onError(new TimeoutException("expired"));
+        assertEquals(replicas, sentTo);
+
+        targetedQuorum.onResponse("ok", replicas.get(3));
+        assertFalse(quorumCallback.getQuorumFuture().isDone());
+        targetedQuorum.onResponse("ok", replicas.get(4));
+        //the rejection is in the responses too.
+        assertEquals(4, quorumCallback.getQuorumFuture().get(1, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void failsOnceAllReplicasAreTried() {
+        AsyncQuorumCallback<String> quorumCallback = new AsyncQuorumCallback<>(5, "ok"::equals);
+        TargetedQuorum<String> targetedQuorum = targetedQuorum(quorumCallback, Duration.ofSeconds(10));
+        targetedQuorum.start();
+        for (int i = 0; i < 5; i++) {
+            targetedQuorum.onError(new TimeoutException("expired"));
+        }
+        assertEquals(5, sentTo.size());
+        assertTrue(quorumCallback.getQuorumFuture().isCompletedExceptionally());
+    }
+
+    @Test
+    public void hedgesToNextReplicaIfQuorumIsSlow() throws Exception {
+        AsyncQuorumCallback<String> quorumCallback = new AsyncQuorumCallback<>(5);
+        TargetedQuorum<String> targetedQuorum = targetedQuorum(quorumCallback, Duration.ofMillis(500));
+        targetedQuorum.start();
+        targetedQuorum.onResponse("ok", replicas.get(0));
+        targetedQuorum.onResponse("ok", replicas.get(1));
+        //third replica is slow.
+        TestUtils.waitUntilTrue(() -> sentTo.size() >= 4, "Waiting for hedged request", Duration.ofSeconds(2));
+        assertEquals(replicas.get(3), sentTo.get(3));
+        targetedQuorum.onResponse("ok", replicas.get(3));
+
+        assertEquals(3, quorumCallback.getQuorumFuture().get(1, TimeUnit.SECONDS).size());
+        assertEquals(1, hedges.get());
+        //no more hedges once the quorum is complete.
+        Thread.sleep(1000);
+        assertEquals(4, sentTo.size());
+    }
+
+    private TargetedQuorum<String> targetedQuorum(AsyncQuorumCallback<String> quorumCallback, Duration hedgeDelay) {
+        return new TargetedQuorum<>(quorumCallback, replicas, hedgeDelay.toNanos(),
+                (InetAddressAndPort replica, RequestCallback<String> callback) -> sentTo.add(replica), hedges);
+    }
+}
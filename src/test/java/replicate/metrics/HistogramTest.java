@@ -0,0 +1,83 @@
+package replicate.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverTheWholeRangeWithBoundedError() {
+        assertEquals(0, Histogram.bucketIndex(0));
+        assertEquals(15, Histogram.bucketIndex(15));
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucketIndex(Long.MAX_VALUE));
+        for (long value : new long[]{1, 17, 100, 1_000, 123_456, 10_000_000, 987_654_321_123L, Long.MAX_VALUE}) {
+            long upperBound = Histogram.bucketUpperBound(Histogram.bucketIndex(value));
+            assertTrue(upperBound >= value);
+            assertTrue("value " + value + " reported as " + upperBound, upperBound - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void reportsPercentilesOfRecordedValues() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_500, snapshot.getMean(), 0.1);
+        assertWithinBucketError(500_000, snapshot.getValueAtPercentile(50));
+        assertWithinBucketError(990_000, snapshot.getValueAtPercentile(99));
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void mergesValuesRecordedByAllThreads() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(40_000, snapshot.getCount());
+        assertEquals(9_999, snapshot.getMax());
+    }
+
+    @Test
+    public void shortLivedThreadsDoNotAddBuckets() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        for (int t = 0; t < 1000; t++) {
+            Thread thread = new Thread(() -> histogram.record(100));
+            thread.start();
+            thread.join();
+        }
+        assertEquals(1000, histogram.snapshot().getCount());
+        assertTrue(histogram.allocatedStripes() <= Histogram.STRIPES);
+    }
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        HistogramSnapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMean(), 0);
+    }
+
+    private static void assertWithinBucketError(long expected, long actual) {
+        assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,43 @@
+package replicate.metrics;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Cost of updating a Counter and recording into a Histogram, in nanoseconds
+ * and bytes allocated per update, on a single thread.
+ *
+ * Usage: MetricsBenchmark [updates]
+ */
+public class MetricsBenchmark {
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int updates = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("benchmark.counter");
+        Histogram histogram = registry.histogram("benchmark.histogram");
+        for (int round = 0; round < 3; round++) {
+            run("Counter.increment", updates, i -> counter.increment());
+            run("Histogram.record", updates, i -> histogram.record(i & 0xFFFFF));
+        }
+        System.out.println(registry.snapshot());
+        System.exit(0);
+    }
+
+    interface Update {
+        void apply(int i);
+    }
+
+    private static void run(String name, int updates, Update update) {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            update.apply(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-20s %6.1f ns/update %8.3f bytes/update%n", name, (double) elapsed / updates, (double) allocated / updates);
+    }
+}
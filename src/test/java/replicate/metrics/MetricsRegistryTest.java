@@ -0,0 +1,46 @@
+package replicate.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void snapshotHasCurrentValuesOfAllMetrics() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter sent = registry.counter("messages.sent");
+        sent.increment();
+        sent.add(2);
+        AtomicLong depth = new AtomicLong(5);
+        registry.gauge("queue.depth", depth::get);
+        registry.histogram("handler.latencyNanos").record(100);
+        Counter registered = registry.register("component.counter", new Counter());
+        registered.increment();
+
+        MetricsSnapshot snapshot = registry.snapshot();
+        assertEquals(3, snapshot.getCounter("messages.sent"));
+        assertEquals(1, snapshot.getCounter("component.counter"));
+        assertEquals(5, snapshot.getGauge("queue.depth"));
+        assertEquals(1, snapshot.getHistogram("handler.latencyNanos").getCount());
+
+        depth.set(7);
+        assertEquals(7, registry.snapshot().getGauge("queue.depth"));
+    }
+
+    @Test
+    public void returnsTheSameMetricForTheSameName() {
+        MetricsRegistry registry = new MetricsRegistry();
+        assertSame(registry.counter("a"), registry.counter("a"));
+        assertSame(registry.histogram("b"), registry.histogram("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNameRegisteredWithAnotherType() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("a");
+        registry.histogram("a");
+    }
+}
@@ -0,0 +1,196 @@
+package replicate.net;
+
+import replicate.common.Config;
+import replicate.common.JsonSerDes;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the listener modes with many concurrent clients.
+ * Every client has one request outstanding at a time. The clients are driven
+ * by a single selector thread, so the client side does not need a thread per connection.
+ * The handler sleeps for a while on each request, to simulate blocking work like a disk write.
+ *
+ * Usage: ListenerBenchmark [clients] [seconds] [handlerSleepMs] [mode]
+ * Each client uses two file descriptors in this process, so 10k clients need a ulimit above 20k.
+ */
+public class ListenerBenchmark {
+    private static final int MAX_SAMPLES = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int handlerSleepMs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        System.out.println("clients=" + clients + " seconds=" + seconds + " handlerSleepMs=" + handlerSleepMs
+                + " virtualThreadsSupported=" + VirtualThreads.isSupported());
+
+        ListenerMode[] modes = args.length > 3 ? new ListenerMode[]{ListenerMode.valueOf(args[3])} : ListenerMode.values();
+        for (ListenerMode mode : modes) {
+            run(mode, clients, seconds, handlerSleepMs);
+        }
+        System.exit(0);
+    }
+
+    private static void run(ListenerMode mode, int clients, int seconds, int handlerSleepMs) throws Exception {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        Listener listener = Listener.create(message -> {
+            sleep(handlerSleepMs);
+            message.getClientConnection().write((RequestOrResponse) message.messagePayload());
+        }, address, new Config().withListenerMode(mode));
+        listener.start();
+        try (ClientDriver driver = new ClientDriver(address, clients)) {
+            driver.runFor(TimeUnit.SECONDS.toNanos(1)); //warmup
+            driver.reset();
+            long start = System.nanoTime();
+            driver.runFor(TimeUnit.SECONDS.toNanos(seconds));
+            long elapsedNanos = System.nanoTime() - start;
+            int peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+            driver.report(mode, elapsedNanos, peakThreads);
+        } finally {
+            listener.shudown();
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        }
+    }
+
+    private static void sleep(int millis) {
+        if (millis == 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class ClientDriver implements AutoCloseable {
+        private final Selector selector = Selector.open();
+        private final List<SocketChannel> channels = new ArrayList<>();
+        private final byte[] request = JsonSerDes.serialize(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), 1));
+        private final long[] samples = new long[MAX_SAMPLES];
+        private long responses;
+        private int closedConnections;
+
+        ClientDriver(InetAddressAndPort address, int clients) throws IOException {
+            for (int i = 0; i < clients; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(address.getAddress(), address.getPort()));
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                ClientState state = new ClientState();
+                channel.register(selector, SelectionKey.OP_READ, state);
+                channels.add(channel);
+                //sent right away, so that no connection sits idle past the server read timeout.
+                send(channel, state);
+            }
+        }
+
+        void runFor(long durationNanos) throws IOException {
+            long deadline = System.nanoTime() + durationNanos;
+            while (System.nanoTime() < deadline) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    ClientState state = (ClientState) key.attachment();
+                    try {
+                        if (state.readFrom(channel)) {
+                            record(System.nanoTime() - state.sentAtNanos);
+                            send(channel, state);
+                        }
+                    } catch (IOException e) {
+                        //servers close connections which are idle past the read timeout.
+                        //When the server is too overloaded to respond, the client counts the connection as lost.
+                        key.cancel();
+                        channel.close();
+                        closedConnections++;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+
+        private void send(SocketChannel channel, ClientState state) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(4 + request.length);
+            frame.putInt(request.length).put(request).flip();
+            state.sentAtNanos = System.nanoTime();
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+
+        private void record(long latencyNanos) {
+            if (responses < MAX_SAMPLES) {
+                samples[(int) responses] = latencyNanos;
+            }
+            responses++;
+        }
+
+        void reset() {
+            responses = 0;
+        }
+
+        void report(ListenerMode mode, long elapsedNanos, int peakThreads) {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(responses, MAX_SAMPLES));
+            Arrays.sort(sorted);
+            double throughput = responses * 1_000_000_000.0 / elapsedNanos;
+            System.out.printf("%-30s throughput=%10.0f req/s p50=%8d us p99=%8d us peakThreads=%d closedConnections=%d%n",
+                    mode, throughput, percentile(sorted, 50) / 1000, percentile(sorted, 99) / 1000, peakThreads, closedConnections);
+        }
+
+        private static long percentile(long[] sorted, int percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[(int) ((long) sorted.length * percentile / 100)];
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (SocketChannel channel : channels) {
+                channel.close();
+            }
+            selector.close();
+        }
+    }
+
+    static class ClientState {
+        private final ByteBuffer size = ByteBuffer.allocate(4);
+        private ByteBuffer body;
+        long sentAtNanos;
+
+        //returns true once a complete response is read.
+        boolean readFrom(SocketChannel channel) throws IOException {
+            if (body == null) {
+                if (channel.read(size) < 0) {
+                    throw new IOException("Connection closed by server");
+                }
+                if (size.hasRemaining()) {
+                    return false;
+                }
+                body = ByteBuffer.allocate(size.flip().getInt());
+            }
+            if (channel.read(body) < 0) {
+                throw new IOException("Connection closed by server");
+            }
+            if (body.hasRemaining()) {
+                return false;
+            }
+            size.clear();
+            body = null;
+            return true;
+        }
+    }
+}
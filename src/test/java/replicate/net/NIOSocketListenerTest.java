@@ -0,0 +1,123 @@
+package replicate.net;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.common.Config;
+import replicate.common.JsonSerDes;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class NIOSocketListenerTest {
+    NIOSocketListener listener;
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.shudown();
+        }
+    }
+
+    @Test
+    public void spreadsConnectionsRoundRobinAcrossReactors() throws IOException {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> {
+            RequestOrResponse request = (RequestOrResponse) message.messagePayload();
+            message.getClientConnection().write(request);
+        }, address, new Config().withIoReactors(3));
+        listener.start();
+
+        List<SocketClient<RequestOrResponse>> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 6; i++) {
+                SocketClient<RequestOrResponse> client = new SocketClient<>(address);
+                clients.add(client);
+                RequestOrResponse response = client.blockingSend(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), i));
+                assertEquals(i, response.getCorrelationId().intValue());
+            }
+
+            List<ReactorStats> reactorStats = listener.getReactorStats();
+            assertEquals(3, reactorStats.size());
+            for (ReactorStats stats : reactorStats) {
+                assertEquals(2, stats.getConnections());
+                assertEquals(true, stats.getBytesRead() > 0);
+                assertEquals(true, stats.getBytesWritten() > 0);
+            }
+        } finally {
+            for (SocketClient<RequestOrResponse> client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @Test
+    public void pausesReadsWhenClientDoesNotReadResponses() throws IOException {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        byte[] largeResponse = new byte[64 * 1024];
+        listener = new NIOSocketListener(message -> {
+            RequestOrResponse request = (RequestOrResponse) message.messagePayload();
+            message.getClientConnection().write(new RequestOrResponse(MessageId.SetValueRequest.getId(), largeResponse, request.getCorrelationId()));
+        }, address, new Config().withConnectionWriteWatermarks(64 * 1024, 256 * 1024));
+        listener.start();
+
+        int noOfRequests = 100;
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            for (int i = 0; i < noOfRequests; i++) {
+                byte[] request = JsonSerDes.serialize(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), i));
+                out.writeInt(request.length);
+                out.write(request);
+            }
+            out.flush();
+
+            ReactorStats stats = listener.getReactorStats().get(0);
+            TestUtils.waitUntilTrue(() -> stats.getReadPauses() > 0, "Waiting for reads to pause", Duration.ofSeconds(5));
+
+            //reading the responses drains the pending writes and resumes reading requests.
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int i = 0; i < noOfRequests; i++) {
+                byte[] response = new byte[in.readInt()];
+                in.readFully(response);
+            }
+            assertEquals(0, stats.getOverflowCloses());
+        }
+    }
+
+    @Test
+    public void closesConnectionWhenTooManyResponsesArePending() throws IOException {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        byte[] largeResponse = new byte[64 * 1024];
+        listener = new NIOSocketListener(message -> {
+            RequestOrResponse request = (RequestOrResponse) message.messagePayload();
+            //multiple responses per request, so that pausing reads alone can not bound the pending responses.
+            for (int i = 0; i < 10; i++) {
+                message.getClientConnection().write(new RequestOrResponse(MessageId.SetValueRequest.getId(), largeResponse, request.getCorrelationId()));
+            }
+        }, address, new Config().withConnectionMaxOutboundMessages(16));
+        listener.start();
+
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            for (int i = 0; i < 10; i++) {
+                byte[] request = JsonSerDes.serialize(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), i));
+                out.writeInt(request.length);
+                out.write(request);
+            }
+            out.flush();
+
+            ReactorStats stats = listener.getReactorStats().get(0);
+            TestUtils.waitUntilTrue(() -> stats.getOverflowCloses() > 0, "Waiting for connection to be closed", Duration.ofSeconds(5));
+            TestUtils.waitUntilTrue(() -> stats.getConnections() == 0, "Waiting for connection to be removed", Duration.ofSeconds(5));
+        }
+    }
+}
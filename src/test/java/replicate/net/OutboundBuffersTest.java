@@ -0,0 +1,116 @@
+package replicate.net;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundBuffersTest {
+
+    @Test
+    public void rejectsBuffersWhenFull() {
+        OutboundBuffers buffers = new OutboundBuffers(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffers.add(ByteBuffer.wrap(new byte[]{(byte) i})));
+        }
+        assertFalse(buffers.add(ByteBuffer.wrap(new byte[]{4})));
+        assertEquals(4, buffers.pendingBytes());
+    }
+
+    @Test
+    public void rejectsBuffersBeyondCapacityWhichIsNotAPowerOfTwo() throws IOException {
+        OutboundBuffers buffers = new OutboundBuffers(5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(buffers.add(ByteBuffer.wrap(new byte[]{(byte) i})));
+        }
+        //the ring has room for 8, but only 5 buffers are kept.
+        assertFalse(buffers.add(ByteBuffer.wrap(new byte[]{5})));
+        assertEquals(5, buffers.size());
+
+        //the limit holds once the buffers wrap around the ring.
+        LimitedChannel channel = new LimitedChannel();
+        channel.limit = 4;
+        assertEquals(4, buffers.writeTo(channel));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffers.add(ByteBuffer.wrap(new byte[]{(byte) (5 + i)})));
+        }
+        assertFalse(buffers.add(ByteBuffer.wrap(new byte[]{9})));
+        channel.limit = Integer.MAX_VALUE;
+        assertEquals(5, buffers.writeTo(channel));
+        byte[] written = channel.out.toByteArray();
+        assertEquals(9, written.length);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(i, written[i]);
+        }
+    }
+
+    @Test
+    public void writesPartiallyAndWrapsAroundTheRing() throws IOException {
+        OutboundBuffers buffers = new OutboundBuffers(4);
+        LimitedChannel channel = new LimitedChannel();
+        byte next = 0;
+        for (int i = 0; i < 4; i++) {
+            buffers.add(ByteBuffer.wrap(new byte[]{next++, next++}));
+        }
+
+        channel.limit = 3;
+        assertEquals(3, buffers.writeTo(channel));
+        assertEquals(3, buffers.size()); //second buffer is half written.
+        assertEquals(5, buffers.pendingBytes());
+
+        //new buffers go to the slots freed at the start of the ring.
+        buffers.add(ByteBuffer.wrap(new byte[]{next++, next++}));
+        channel.limit = Integer.MAX_VALUE;
+        assertEquals(7, buffers.writeTo(channel));
+        assertTrue(buffers.isEmpty());
+
+        byte[] written = channel.out.toByteArray();
+        assertEquals(10, written.length);
+        for (int i = 0; i < written.length; i++) {
+            assertEquals(i, written[i]);
+        }
+    }
+
+    static class LimitedChannel implements GatheringByteChannel {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int limit;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for (int i = offset; i < offset + length; i++) {
+                while (srcs[i].hasRemaining() && written < limit) {
+                    out.write(srcs[i].get());
+                    written++;
+                }
+            }
+            limit -= written;
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[]{src});
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package replicate.net;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.common.Config;
+import replicate.common.Message;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeerChannelTest {
+    PeerChannelSelector selector;
+    PeerChannels peerChannels;
+    NIOSocketListener listener;
+
+    @After
+    public void tearDown() {
+        if (selector != null) {
+            selector.shutdown();
+        }
+        if (listener != null) {
+            listener.shudown();
+        }
+    }
+
+    @Test
+    public void deliversQueuedMessagesInOrder() throws IOException {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> received.add(message.getCorrelationId()), address);
+        listener.start();
+        peerChannels = startPeerChannels(new Config());
+
+        PeerChannel channel = peerChannels.channelTo(address);
+        for (int i = 0; i < 100; i++) {
+            channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), i), failOnError());
+        }
+
+        TestUtils.waitUntilTrue(() -> received.size() == 100, "Waiting for all messages", Duration.ofSeconds(5));
+        //messages are processed on a thread pool after being read, so only check that all arrived.
+        for (int i = 0; i < 100; i++) {
+            assertEquals(true, received.contains(i));
+        }
+    }
+
+    @Test
+    public void batchesMessagesQueuedWithinLingerTime() throws IOException {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> received.add(message.getCorrelationId()), address);
+        listener.start();
+        peerChannels = startPeerChannels(new Config().withPeerBatching(5000, 64 * 1024));
+
+        PeerChannel channel = peerChannels.channelTo(address);
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 0), failOnError());
+        TestUtils.waitUntilTrue(() -> received.size() == 1, "Waiting for connection", Duration.ofSeconds(5));
+
+        for (int i = 1; i <= 100; i++) {
+            channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), i), failOnError());
+        }
+        TestUtils.waitUntilTrue(() -> received.size() == 101, "Waiting for all messages", Duration.ofSeconds(5));
+
+        ConnectionStats stats = peerChannels.getStats();
+        assertEquals(101, stats.getMessagesWritten());
+        assertTrue("Expected messages to be batched " + stats, stats.getWrites() < 10);
+        //the frames written together are read back one by one, in order.
+        for (int i = 0; i <= 100; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+    }
+
+    @Test
+    public void reusesConnectionAndReopensItAfterIdleTimeout() throws IOException {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> received.add(message.getCorrelationId()), address);
+        listener.start();
+        peerChannels = startPeerChannels(new Config().withPeerConnectionIdleTimeoutMs(100));
+
+        PeerChannel channel = peerChannels.channelTo(address);
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 1), failOnError());
+        TestUtils.waitUntilTrue(() -> received.size() == 1, "Waiting for first message", Duration.ofSeconds(5));
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 2), failOnError());
+        TestUtils.waitUntilTrue(() -> received.size() == 2, "Waiting for second message", Duration.ofSeconds(5));
+
+        ConnectionStats stats = peerChannels.getStats();
+        assertEquals(1, stats.getConnects());
+        assertEquals(1, stats.getReuses());
+
+        TestUtils.waitUntilTrue(() -> stats.getIdleCloses() == 1, "Waiting for idle connection to be closed", Duration.ofSeconds(5));
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 3), failOnError());
+        TestUtils.waitUntilTrue(() -> received.size() == 3, "Waiting for message after reconnect", Duration.ofSeconds(5));
+        assertEquals(2, stats.getConnects());
+    }
+
+    @Test
+    public void reportsFailureWhenPeerIsNotReachable() throws IOException {
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        peerChannels = startPeerChannels(new Config());
+
+        PeerChannel channel = peerChannels.channelTo(TestUtils.randomLocalAddress());
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 1), (message, e) -> failed.add(message.getCorrelationId()));
+        channel.send(new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 2), (message, e) -> failed.add(message.getCorrelationId()));
+
+        TestUtils.waitUntilTrue(() -> failed.size() == 2, "Waiting for failures to be reported", Duration.ofSeconds(5));
+    }
+
+    private PeerChannels startPeerChannels(Config config) throws IOException {
+        selector = new PeerChannelSelector();
+        selector.start();
+        return new PeerChannels(config, selector);
+    }
+
+    private SendFailureHandler failOnError() {
+        return (message, e) -> {
+            throw new AssertionError("Unexpected failure sending " + message.getCorrelationId(), e);
+        };
+    }
+}
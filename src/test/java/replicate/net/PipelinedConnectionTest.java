@@ -0,0 +1,82 @@
+package replicate.net;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelinedConnectionTest {
+    NIOSocketListener listener;
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.shudown();
+        }
+    }
+
+    @Test
+    public void matchesResponsesArrivingOutOfOrder() throws Exception {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> {
+            RequestOrResponse request = (RequestOrResponse) message.messagePayload();
+            if (request.getCorrelationId() % 2 == 0) {
+                sleep(50); //even requests respond later than the odd ones sent after them.
+            }
+            message.getClientConnection().write(new RequestOrResponse(request.getRequestId(), request.getMessageBodyJson(), request.getCorrelationId()));
+        }, address);
+        listener.start();
+
+        try (PipelinedConnection connection = new PipelinedConnection(address, 10)) {
+            List<CompletableFuture<RequestOrResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                responses.add(connection.send(MessageId.SetValueRequest.getId(), ("request" + i).getBytes()));
+            }
+            for (int i = 0; i < 10; i++) {
+                RequestOrResponse response = responses.get(i).get(5, TimeUnit.SECONDS);
+                assertArrayEquals(("request" + i).getBytes(), response.getMessageBodyJson());
+            }
+            assertEquals(0, connection.getInFlightRequests());
+        }
+    }
+
+    @Test
+    public void failsPendingRequestsWhenConnectionCloses() throws Exception {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = new NIOSocketListener(message -> {
+            //never responds.
+        }, address);
+        listener.start();
+
+        PipelinedConnection connection = new PipelinedConnection(address, 10);
+        CompletableFuture<RequestOrResponse> response = connection.send(MessageId.SetValueRequest.getId(), "request".getBytes());
+        connection.close();
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("Expected request to fail on close");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NetworkException);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package replicate.net;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.common.Config;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SocketListenerTest {
+    Listener listener;
+
+    @After
+    public void tearDown() {
+        if (listener != null) {
+            listener.shudown();
+        }
+    }
+
+    @Test
+    public void servesRequestsInEveryListenerMode() throws IOException {
+        for (ListenerMode mode : ListenerMode.values()) {
+            InetAddressAndPort address = TestUtils.randomLocalAddress();
+            listener = Listener.create(message -> message.getClientConnection().write((RequestOrResponse) message.messagePayload()),
+                    address, new Config().withListenerMode(mode));
+            listener.start();
+
+            try (SocketClient<RequestOrResponse> client = new SocketClient<>(address)) {
+                RequestOrResponse response = client.blockingSend(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), 1));
+                assertArrayEquals(mode + " listener", "ping".getBytes(), response.getMessageBodyJson());
+            }
+            listener.shudown();
+            listener = null;
+        }
+    }
+
+    @Test
+    public void blockedRequestHandlerDoesNotBlockLaterRequestsOnTheConnection() throws Exception {
+        CountDownLatch secondRequestHandled = new CountDownLatch(1);
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        listener = Listener.create(message -> {
+            RequestOrResponse request = (RequestOrResponse) message.messagePayload();
+            if (request.getCorrelationId() == 1) {
+                await(secondRequestHandled); //blocks till the second request is handled.
+            } else {
+                secondRequestHandled.countDown();
+            }
+            message.getClientConnection().write(request);
+        }, address, new Config().withListenerMode(ListenerMode.VIRTUAL_THREAD_PER_CONNECTION));
+        listener.start();
+
+        try (PipelinedConnection connection = new PipelinedConnection(address, 10)) {
+            CompletableFuture<RequestOrResponse> first = connection.send(MessageId.SetValueRequest.getId(), "first".getBytes());
+            CompletableFuture<RequestOrResponse> second = connection.send(MessageId.SetValueRequest.getId(), "second".getBytes());
+            assertEquals(2, second.get(5, TimeUnit.SECONDS).getCorrelationId().intValue());
+            assertEquals(1, first.get(5, TimeUnit.SECONDS).getCorrelationId().intValue());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
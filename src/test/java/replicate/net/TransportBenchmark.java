@@ -0,0 +1,81 @@
+package replicate.net;
+
+import com.sun.management.OperatingSystemMXBean;
+import replicate.common.Config;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures one-way peer messages per second for each transport.
+ * One transport sends to another in the same process, keeping at most WINDOW messages
+ * in flight so that neither transport has to reject messages. Messages per core is the
+ * throughput divided by the CPU used by the process, which makes runs on machines with
+ * different numbers of cores comparable.
+ *
+ * Usage: TransportBenchmark [messages] [payloadBytes]
+ */
+public class TransportBenchmark {
+    private static final int WINDOW = 512;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int payloadBytes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        System.out.println("messages=" + messages + " payloadBytes=" + payloadBytes
+                + " cores=" + Runtime.getRuntime().availableProcessors());
+        for (TransportType transportType : TransportType.values()) {
+            run(transportType, messages, payloadBytes);
+        }
+        System.exit(0);
+    }
+
+    private static void run(TransportType transportType, int messages, int payloadBytes) throws Exception {
+        Config config = new Config().withTransportType(transportType);
+        LongAdder received = new LongAdder();
+        LongAdder failed = new LongAdder();
+        InetAddressAndPort receiverAddress = TestUtils.randomLocalAddress();
+        Transport receiver = Transport.create(config);
+        receiver.listenForPeers(receiverAddress, message -> received.increment());
+        receiver.start();
+        Transport sender = Transport.create(config);
+        try {
+            RequestOrResponse message = new RequestOrResponse(MessageId.SetValueRequest.getId(), new byte[payloadBytes], 1, receiverAddress);
+            send(sender, receiverAddress, message, messages / 10, received, failed); //warmup
+
+            received.reset();
+            OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+            long cpuStart = os.getProcessCpuTime();
+            long start = System.nanoTime();
+            send(sender, receiverAddress, message, messages, received, failed);
+            long elapsedNanos = System.nanoTime() - start;
+            long cpuNanos = os.getProcessCpuTime() - cpuStart;
+
+            double perSecond = messages * 1_000_000_000.0 / elapsedNanos;
+            double perCoreSecond = messages * 1_000_000_000.0 / cpuNanos;
+            System.out.printf("%-6s messages/s=%10.0f messages/core-second=%10.0f cpuUtilisation=%.2f cores failed=%d%n",
+                    transportType, perSecond, perCoreSecond, (double) cpuNanos / elapsedNanos, failed.sum());
+        } finally {
+            sender.shutdown();
+            receiver.shutdown();
+        }
+    }
+
+    private static void send(Transport sender, InetAddressAndPort address, RequestOrResponse message, int messages, LongAdder received, LongAdder failed) {
+        long receivedBefore = received.sum();
+        SendFailureHandler countFailure = (m, e) -> failed.increment();
+        for (int sent = 0; sent < messages; sent++) {
+            while (sent - (received.sum() - receivedBefore) - failed.sum() >= WINDOW) {
+                Thread.onSpinWait();
+            }
+            sender.send(address, message, countFailure);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received.sum() - receivedBefore + failed.sum() < messages && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package replicate.net;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import replicate.common.Config;
+import replicate.common.MessageId;
+import replicate.common.RequestOrResponse;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(Parameterized.class)
+public class TransportTest {
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> transports() {
+        return Arrays.asList(new Object[][]{{TransportType.NIO}, {TransportType.NETTY}, {TransportType.LOOPBACK}});
+    }
+
+    private final Config config;
+    private Transport sender;
+    private Transport receiver;
+
+    public TransportTest(TransportType transportType) {
+        this.config = new Config().withTransportType(transportType);
+    }
+
+    @After
+    public void tearDown() {
+        if (sender != null) {
+            sender.shutdown();
+        }
+        if (receiver != null) {
+            receiver.shutdown();
+        }
+    }
+
+    @Test
+    public void deliversPeerMessagesOverAtMostOneConnection() throws IOException {
+        List<Integer> received = new CopyOnWriteArrayList<>();
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        receiver = Transport.create(config);
+        receiver.listenForPeers(address, message -> received.add(message.getCorrelationId()));
+        receiver.start();
+        sender = Transport.create(config);
+
+        for (int i = 0; i < 100; i++) {
+            sender.send(address, new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), i), (message, e) -> {
+                throw new AssertionError("Failed to send " + message, e);
+            });
+        }
+
+        TestUtils.waitUntilTrue(() -> received.size() == 100, "Waiting for all messages", Duration.ofSeconds(5));
+        //messages of a connection are handed over in the order they were sent.
+        assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), received);
+        assertEquals(config.getTransportType() == TransportType.LOOPBACK ? 0 : 1, sender.getConnectionStats().getConnects());
+        if (config.getTransportType() == TransportType.NETTY) {
+            //every message after the first is sent on the connection the first one opened.
+            assertEquals(99, sender.getConnectionStats().getReuses());
+        }
+    }
+
+    @Test
+    public void respondsToClientsOnTheSameConnection() throws IOException {
+        InetAddressAndPort address = TestUtils.randomLocalAddress();
+        receiver = Transport.create(config);
+        receiver.listenForClients(address, message -> message.getClientConnection().write((RequestOrResponse) message.messagePayload()));
+        receiver.start();
+
+        try (SocketClient<RequestOrResponse> client = new SocketClient<>(address)) {
+            RequestOrResponse response = client.blockingSend(new RequestOrResponse(MessageId.SetValueRequest.getId(), "ping".getBytes(), 1));
+            assertArrayEquals("ping".getBytes(), response.getMessageBodyJson());
+        }
+    }
+
+    @Test
+    public void reportsFailureToSendToUnreachablePeer() throws IOException {
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        sender = Transport.create(config);
+        sender.send(TestUtils.randomLocalAddress(), new RequestOrResponse(MessageId.SetValueRequest.getId(), "".getBytes(), 1),
+                (message, e) -> failures.add(e));
+
+        TestUtils.waitUntilTrue(() -> failures.size() == 1, "Waiting for send to fail", Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,82 @@
+package replicate.net.requestwaitinglist;
+
+import replicate.common.SystemClock;
+import replicate.net.InetAddressAndPort;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+/**
+ * Adds 1M outstanding requests and then completes all of them, first with the
+ * generic RequestWaitingList keyed by boxed Integers, then with IntKeyedRequestWaitingList.
+ * Prints the time per operation and the bytes allocated per request.
+ *
+ * Usage: IntKeyedRequestWaitingListBenchmark [outstandingRequests]
+ */
+public class IntKeyedRequestWaitingListBenchmark {
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int outstandingRequests = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        SystemClock clock = new SystemClock();
+        RequestCallback<String> callback = new RequestCallback<>() {
+            @Override
+            public void onResponse(String r, InetAddressAndPort fromNode) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        };
+        //correlationIds are consecutive, starting from a random value.
+        int firstKey = 1_234_567;
+        for (int round = 0; round < 3; round++) {
+            //expiry is pushed out so that it does not run during the benchmark.
+            RequestWaitingList<Integer, String> generic = new RequestWaitingList<>(clock, Duration.ofHours(1));
+            long[] result = run(outstandingRequests, () -> {
+                for (int i = 0; i < outstandingRequests; i++) {
+                    generic.add(firstKey + i, callback);
+                }
+            }, () -> {
+                for (int i = 0; i < outstandingRequests; i++) {
+                    generic.handleResponse(firstKey + i, "response", null);
+                }
+            });
+            print("RequestWaitingList<Integer>", outstandingRequests, result);
+
+            IntKeyedRequestWaitingList<String> intKeyed = new IntKeyedRequestWaitingList<>(Duration.ofHours(1));
+            result = run(outstandingRequests, () -> {
+                for (int i = 0; i < outstandingRequests; i++) {
+                    intKeyed.add(firstKey + i, callback);
+                }
+            }, () -> {
+                for (int i = 0; i < outstandingRequests; i++) {
+                    intKeyed.handleResponse(firstKey + i, "response", null);
+                }
+            });
+            print("IntKeyedRequestWaitingList", outstandingRequests, result);
+        }
+        System.exit(0);
+    }
+
+    //returns add nanos, response nanos and allocated bytes.
+    private static long[] run(int outstandingRequests, Runnable adds, Runnable responses) {
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        adds.run();
+        long addsDone = System.nanoTime();
+        responses.run();
+        long end = System.nanoTime();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        return new long[]{addsDone - start, end - addsDone, allocated};
+    }
+
+    private static void print(String name, int outstandingRequests, long[] result) {
+        System.out.printf("%-28s add=%.1f ns, response=%.1f ns, allocated=%.1f bytes/request%n", name,
+                result[0] / (double) outstandingRequests,
+                result[1] / (double) outstandingRequests,
+                result[2] / (double) outstandingRequests);
+    }
+}
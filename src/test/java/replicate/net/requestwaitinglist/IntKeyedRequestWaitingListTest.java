@@ -0,0 +1,151 @@
+package replicate.net.requestwaitinglist;
+
+import org.junit.Test;
+import replicate.common.HashedWheelTimer;
+import replicate.common.TestUtils;
+import replicate.net.InetAddressAndPort;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class IntKeyedRequestWaitingListTest {
+    private final InetAddressAndPort fromNode = InetAddressAndPort.create("127.0.0.1", 9000);
+
+    @Test
+    public void invokesCallbackOnceForTheMatchingKey() {
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(Duration.ofHours(1));
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        list.add(1, first);
+        list.add(2, second);
+
+        list.handleResponse(2, "response", fromNode);
+        list.handleResponse(2, "duplicate", fromNode);
+
+        assertEquals(List.of("response"), second.responses);
+        assertTrue(first.responses.isEmpty());
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void keepsAllEntriesReachableAcrossResizesAndRemovals() {
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(Duration.ofHours(1));
+        int noOfRequests = 10_000;
+        List<RecordingCallback> callbacks = new ArrayList<>();
+        //keys wrap around from positive to negative, as the correlationIds do.
+        int firstKey = Integer.MAX_VALUE - noOfRequests / 2;
+        for (int i = 0; i < noOfRequests; i++) {
+            RecordingCallback callback = new RecordingCallback();
+            callbacks.add(callback);
+            list.add(firstKey + i, callback);
+        }
+        for (int i = 0; i < noOfRequests; i += 2) {
+            list.handleResponse(firstKey + i, "even", fromNode);
+        }
+        assertEquals(noOfRequests / 2, list.size());
+        for (int i = 1; i < noOfRequests; i += 2) {
+            list.handleError(firstKey + i, new RuntimeException("odd"));
+        }
+        assertEquals(0, list.size());
+        for (int i = 0; i < noOfRequests; i++) {
+            RecordingCallback callback = callbacks.get(i);
+            assertEquals(1, callback.responses.size() + callback.errors.size());
+        }
+    }
+
+    @Test
+    public void expiresRequestsWithoutResponseAtTheirOwnDeadline() {
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(Duration.ofHours(1));
+        RecordingCallback shortTimeout = new RecordingCallback();
+        RecordingCallback defaultTimeout = new RecordingCallback();
+        list.add(1, shortTimeout, Duration.ofMillis(50));
+        list.add(2, defaultTimeout);
+
+        TestUtils.waitUntilTrue(() -> shortTimeout.errorCount() == 1, "Waiting for request to expire", Duration.ofSeconds(2));
+        assertTrue(shortTimeout.errors.get(0) instanceof TimeoutException);
+        assertEquals(0, defaultTimeout.errorCount());
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void doesNotExpireCompletedRequests() throws InterruptedException {
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(Duration.ofMillis(20));
+        RecordingCallback callback = new RecordingCallback();
+        list.add(1, callback);
+        list.handleResponse(1, "response", fromNode);
+
+        Thread.sleep(100);
+        assertEquals(0, callback.errorCount());
+        assertEquals(List.of("response"), callback.responses);
+    }
+
+    @Test
+    public void keyAddedAgainExpiresOnlyAtItsOwnDeadline() throws InterruptedException {
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(Duration.ofHours(1));
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        list.add(1, first, Duration.ofMillis(20));
+        list.add(1, second);
+
+        Thread.sleep(100);
+        assertEquals(0, first.errorCount());
+        assertEquals(0, second.errorCount());
+        assertEquals(1, list.size());
+        list.handleResponse(1, "response", fromNode);
+        assertEquals(List.of("response"), second.responses);
+    }
+
+    @Test
+    public void reportsRoundTripsOfResponsesAndExpiriesToListener() throws InterruptedException {
+        List<String> roundTrips = new CopyOnWriteArrayList<>();
+        IntKeyedRequestWaitingList<String> list = new IntKeyedRequestWaitingList<>(HashedWheelTimer.shared(), Duration.ofHours(1), new RoundTripListener() {
+            @Override
+            public void onResponse(InetAddressAndPort peer, long roundTripNanos) {
+                roundTrips.add("response from " + peer + (roundTripNanos >= 10_000_000 ? " after 10ms" : ""));
+            }
+
+            @Override
+            public void onExpiry(InetAddressAndPort peer) {
+                roundTrips.add("expiry of " + peer);
+            }
+        });
+        InetAddressAndPort slowNode = InetAddressAndPort.create("127.0.0.1", 9001);
+        list.add(1, new RecordingCallback(), Duration.ofHours(1), fromNode);
+        list.add(2, new RecordingCallback(), Duration.ofMillis(20), slowNode);
+        list.add(3, new RecordingCallback(), Duration.ofHours(1), fromNode);
+        list.add(4, new RecordingCallback(), Duration.ofHours(1));
+
+        Thread.sleep(10);
+        list.handleResponse(1, "response", fromNode);
+        list.handleError(3, new RuntimeException("send failed"));
+        list.handleResponse(4, "no peer", fromNode);
+        TestUtils.waitUntilTrue(() -> roundTrips.size() == 2, "Waiting for request to expire", Duration.ofSeconds(2));
+
+        //errors and requests added without the peer are not reported.
+        assertEquals(List.of("response from " + fromNode + " after 10ms", "expiry of " + slowNode), roundTrips);
+    }
+
+    static class RecordingCallback implements RequestCallback<String> {
+        final List<String> responses = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+
+        @Override
+        public synchronized void onResponse(String r, InetAddressAndPort fromNode) {
+            responses.add(r);
+        }
+
+        @Override
+        public synchronized void onError(Exception e) {
+            errors.add(e);
+        }
+
+        synchronized int errorCount() {
+            return errors.size();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package replicate.quorum;
+
+import replicate.common.NetworkClient;
+import replicate.common.TestUtils;
+import replicate.net.TransportType;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Quorum write throughput on a large QuorumKVStore cluster running in this JVM.
+ * With the loopback transport, peers exchange messages through in-memory queues,
+ * so the numbers show the cost of the protocol rather than of the sockets.
+ * Run with the transport as the third argument to compare, e.g. NIO.
+ * The fourth argument sets the update lanes of each node, see Config.withUpdateLanes.
+ *
+ * Usage: LoopbackClusterBenchmark [nodes] [requests] [transport] [updateLanes]
+ */
+public class LoopbackClusterBenchmark {
+    private static final int IN_FLIGHT_REQUESTS = 64;
+
+    public static void main(String[] args) throws Exception {
+        int noOfNodes = args.length > 0 ? Integer.parseInt(args[0]) : 101;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        TransportType transportType = args.length > 2 ? TransportType.valueOf(args[2]) : TransportType.LOOPBACK;
+        int updateLanes = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        //every node's Config picks up the transport from the system property.
+        System.setProperty("replicate.transport", transportType.name());
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < noOfNodes; i++) {
+            names.add("node" + i);
+        }
+        Map<String, QuorumKVStore> nodes = TestUtils.startCluster(names,
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) -> new QuorumKVStore(name, config.withUpdateLanes(updateLanes), clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        QuorumKVStore coordinator = nodes.get("node0");
+        try (NetworkClient client = new NetworkClient(1, IN_FLIGHT_REQUESTS)) {
+            write(client, coordinator, requests / 10); //warmup
+            long start = System.nanoTime();
+            long failures = write(client, coordinator, requests);
+            long elapsedNanos = System.nanoTime() - start;
+
+            System.out.println("transport=" + transportType + " nodes=" + noOfNodes + " requests=" + requests + " updateLanes=" + updateLanes);
+            System.out.printf("quorum writes/s=%.0f failures=%d%n", requests * 1_000_000_000.0 / elapsedNanos, failures);
+            System.out.println("Peer messages from coordinator: " + coordinator.getPeerConnectionStats());
+        } finally {
+            for (QuorumKVStore node : nodes.values()) {
+                node.shutdown();
+            }
+            System.exit(0);
+        }
+    }
+
+    private static long write(NetworkClient client, QuorumKVStore coordinator, int requests) throws InterruptedException, IOException {
+        Semaphore window = new Semaphore(IN_FLIGHT_REQUESTS);
+        LongAdder failures = new LongAdder();
+        for (int i = 0; i < requests; i++) {
+            window.acquire();
+            CompletableFuture<NetworkClient.Response<SetValueResponse>> response = client.sendAsync(new SetValueRequest("key" + (i % 1000), "value" + i),
+                    coordinator.getClientConnectionAddress(), SetValueResponse.class);
+            response.whenComplete((r, e) -> {
+                if (e != null || r.isError()) {
+                    failures.increment();
+                }
+                window.release();
+            });
+        }
+        if (!window.tryAcquire(IN_FLIGHT_REQUESTS, 60, TimeUnit.SECONDS)) {
+            throw new IOException("Timed out waiting for responses");
+        }
+        return failures.sum();
+    }
+}
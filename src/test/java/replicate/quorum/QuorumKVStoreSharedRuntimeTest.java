@@ -0,0 +1,94 @@
+package replicate.quorum;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import replicate.common.ClusterTest;
+import replicate.common.ReplicaRuntime;
+import replicate.common.TestUtils;
+import replicate.net.TransportType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(Parameterized.class)
+public class QuorumKVStoreSharedRuntimeTest extends ClusterTest<QuorumKVStore> {
+    private static final int GROUPS = 4;
+    private static final int LANE_THREADS = 2;
+    private static final int IO_THREADS = 2;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> transports() {
+        return Arrays.asList(new Object[][]{{TransportType.NIO}, {TransportType.NETTY}});
+    }
+
+    private final TransportType transportType;
+    private final ReplicaRuntime runtime = new ReplicaRuntime("shared", LANE_THREADS, IO_THREADS);
+    private final List<QuorumKVStore> leaders = new ArrayList<>();
+    //event loops of transports which do not share the runtime's, e.g. left over by other tests.
+    private final int ownNettyThreadsBefore = ownNettyThreads();
+
+    public QuorumKVStoreSharedRuntimeTest(TransportType transportType) {
+        this.transportType = transportType;
+    }
+
+    @Override
+    public void setUp() throws IOException {
+        for (int group = 0; group < GROUPS; group++) {
+            String prefix = "group" + group + "-";
+            Map<String, QuorumKVStore> groupNodes = TestUtils.startCluster(Arrays.asList(prefix + "athens", prefix + "byzantium", prefix + "cyrene"),
+                    (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                            new QuorumKVStore(name, config.withRuntime(runtime).withTransportType(transportType).withUpdateLanes(2),
+                                    clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+            nodes.putAll(groupNodes);
+            leaders.add(groupNodes.get(prefix + "athens"));
+        }
+    }
+
+    @Test
+    public void replicaGroupsShareTheThreadsOfTheRuntime() throws IOException {
+        KVClient kvClient = new KVClient();
+        for (int group = 0; group < GROUPS; group++) {
+            QuorumKVStore athens = leaders.get(group);
+            assertTrue(kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices" + group).isSuccess());
+        }
+        for (int group = 0; group < GROUPS; group++) {
+            QuorumKVStore athens = leaders.get(group);
+            assertEquals("Microservices" + group, kvClient.getValue(athens.getClientConnectionAddress(), "title").getResult().value.value);
+        }
+
+        Map<String, Integer> threads = ReplicaRuntime.threadReport();
+        //none of the replicas started lanes, selectors or event loops of its own.
+        assertTrue(threads.toString(), threads.keySet().stream().noneMatch(name -> name.startsWith("groupN-")));
+        assertEquals(threads.toString(), ownNettyThreadsBefore, ownNettyThreads());
+        int processors = Runtime.getRuntime().availableProcessors();
+        int runtimeThreads = threads.entrySet().stream()
+                .filter(e -> e.getKey().startsWith("shared-"))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+        //timer, dispatch, lane, NIOReactor and PeerChannelSelector threads, and the netty boss and I/O event loops.
+        int nettyThreads = transportType == TransportType.NETTY ? 1 + IO_THREADS : 0;
+        assertTrue(threads.toString(), runtimeThreads <= 1 + processors + LANE_THREADS + 2 * IO_THREADS + nettyThreads);
+    }
+
+    private static int ownNettyThreads() {
+        return ReplicaRuntime.threadReport().entrySet().stream()
+                .filter(e -> e.getKey().startsWith(ReplicaRuntime.shared().getName() + "-netty-"))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+    }
+
+    //the replicas are shut down before the runtime they use.
+    @Override
+    public void tearDown() {
+        super.tearDown();
+        runtime.shutdown();
+    }
+}
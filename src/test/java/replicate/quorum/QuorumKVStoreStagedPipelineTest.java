@@ -0,0 +1,64 @@
+package replicate.quorum;
+
+import org.junit.Test;
+import replicate.common.ClusterTest;
+import replicate.common.NetworkClient;
+import replicate.common.StageMetrics;
+import replicate.common.TestUtils;
+import replicate.quorum.messages.GetValueRequest;
+import replicate.quorum.messages.GetValueResponse;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class QuorumKVStoreStagedPipelineTest extends ClusterTest<QuorumKVStore> {
+    QuorumKVStore athens;
+
+    @Override
+    public void setUp() throws IOException {
+        this.nodes = TestUtils.startCluster(Arrays.asList("athens", "byzantium", "cyrene"),
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                        new QuorumKVStore(name, config.withStagedPipeline(2).withWalBatching(64).withUpdateLanes(2),
+                                clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        athens = nodes.get("athens");
+    }
+
+    @Test
+    public void handlesRequestsThroughPipelineStages() throws Exception {
+        int noOfKeys = 50;
+        try (NetworkClient client = new NetworkClient(2, 32)) {
+            List<CompletableFuture<NetworkClient.Response<SetValueResponse>>> sets = new ArrayList<>();
+            for (int i = 0; i < noOfKeys; i++) {
+                sets.add(client.sendAsync(new SetValueRequest("key" + i, "value" + i), athens.getClientConnectionAddress(), SetValueResponse.class));
+            }
+            for (var set : sets) {
+                assertFalse(set.get(10, TimeUnit.SECONDS).isError());
+            }
+            for (int i = 0; i < noOfKeys; i++) {
+                var response = client.sendAsync(new GetValueRequest("key" + i), athens.getClientConnectionAddress(), GetValueResponse.class).get(10, TimeUnit.SECONDS);
+                assertEquals("value" + i, response.getResult().value.value);
+            }
+        }
+
+        List<StageMetrics> metrics = athens.getPipelineMetrics();
+        //metrics are recorded after the response is written.
+        TestUtils.waitUntilTrue(() -> metrics.get(3).getProcessed() == 2 * noOfKeys, "Waiting for respond stage metrics", Duration.ofSeconds(5));
+        assertEquals(Arrays.asList("athens-decode-0", "athens-decode-1", "athens-apply", "athens-respond"),
+                metrics.stream().map(StageMetrics::getName).collect(Collectors.toList()));
+        //client requests, and the peer requests and responses for them, are decoded and applied on the stages.
+        assertTrue(metrics.get(0).getProcessed() + metrics.get(1).getProcessed() >= 2 * noOfKeys);
+        assertTrue(metrics.get(2).getProcessed() >= 2 * noOfKeys);
+        assertEquals(2 * noOfKeys, metrics.get(3).getProcessed());
+        assertEquals(noOfKeys, athens.getWalStageMetrics().getProcessed());
+    }
+}
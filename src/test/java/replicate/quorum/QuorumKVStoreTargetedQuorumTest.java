@@ -0,0 +1,99 @@
+package replicate.quorum;
+
+import org.junit.Test;
+import replicate.common.ClusterTest;
+import replicate.common.RttEstimator;
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class QuorumKVStoreTargetedQuorumTest extends ClusterTest<QuorumKVStore> {
+    QuorumKVStore athens;
+
+    @Override
+    public void setUp() throws IOException {
+        this.nodes = TestUtils.startCluster(Arrays.asList("athens", "byzantium", "cyrene", "delphi", "ephesus"),
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                        new QuorumKVStore(name, config.withTargetedQuorums(),
+                                clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        athens = nodes.get("athens");
+    }
+
+    @Test
+    public void readsAreSentToQuorumOnly() throws IOException {
+        KVClient kvClient = new KVClient();
+        assertEquals("Success", kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices").getResult().result);
+        //wait for the write to reach all the replicas, so that the read does not repair any.
+        TestUtils.waitUntilTrue(() -> nodes.values().stream().allMatch(n -> "Microservices".equals(n.get("title").value)),
+                "Waiting for replication", Duration.ofSeconds(2));
+
+        long handledBefore = readRequestsHandled();
+        long hedgesBefore = hedges();
+        assertEquals("Microservices", kvClient.getValue(athens.getClientConnectionAddress(), "title").getResult().value.value);
+        //replicas record the request after responding, so the count can lag behind the client response.
+        TestUtils.waitUntilTrue(() -> (readRequestsHandled() - handledBefore) - (hedges() - hedgesBefore) >= 3, "Waiting for the replicas to handle the read", Duration.ofSeconds(2));
+        //a slow response, e.g. on a loaded machine, can still cause a hedged request.
+        assertEquals(3, (readRequestsHandled() - handledBefore) - (hedges() - hedgesBefore));
+    }
+
+    @Test
+    public void hedgesReadsWhenQuorumReplicaIsSlow() throws IOException {
+        KVClient kvClient = new KVClient();
+        kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices");
+        TestUtils.waitUntilTrue(() -> nodes.values().stream().allMatch(n -> "Microservices".equals(n.get("title").value)),
+                "Waiting for replication", Duration.ofSeconds(2));
+        //delay requests to two of the replicas the read is targeted at, as ranked by athens.
+        RttEstimator rttEstimator = athens.getRttEstimator();
+        List<QuorumKVStore> slowReplicas = nodes.values().stream()
+                .sorted(Comparator.comparingLong(n -> rttEstimator.getSmoothedRttNanos(n.getPeerConnectionAddress())))
+                .limit(3)
+                .filter(n -> n != athens)
+                .limit(2)
+                .collect(Collectors.toList());
+        slowReplicas.forEach(athens::addDelayForMessagesTo);
+        List<QuorumKVStore> fastReplicas = nodes.values().stream()
+                .filter(n -> !slowReplicas.contains(n))
+                .collect(Collectors.toList());
+
+        long hedgesBefore = hedges();
+        Map<QuorumKVStore, Long> handledBefore = new HashMap<>();
+        nodes.values().forEach(n -> handledBefore.put(n, readRequestsHandled(n)));
+        assertEquals("Microservices", kvClient.getValue(athens.getClientConnectionAddress(), "title").getResult().value.value);
+
+        //the delayed requests had not even reached the slow replicas when the read completed.
+        for (QuorumKVStore slowReplica : slowReplicas) {
+            assertEquals(slowReplica.getName(), handledBefore.get(slowReplica).longValue(), readRequestsHandled(slowReplica));
+        }
+        //the quorum of three was made up of the other replicas, which were sent the read by hedging.
+        assertTrue(hedges() - hedgesBefore >= 1);
+        TestUtils.waitUntilTrue(() -> fastReplicas.stream().allMatch(n -> readRequestsHandled(n) == handledBefore.get(n) + 1),
+                "Waiting for the replicas to handle the read", Duration.ofSeconds(2));
+    }
+
+    private long hedges() {
+        return athens.getMetrics().snapshot().getCounter("replica.targetedQuorum.hedges");
+    }
+
+    //counted by the replicas, as the messages sent by athens include its responses to itself.
+    private long readRequestsHandled() {
+        long handled = 0;
+        for (QuorumKVStore node : nodes.values()) {
+            handled += readRequestsHandled(node);
+        }
+        return handled;
+    }
+
+    private static long readRequestsHandled(QuorumKVStore node) {
+        return node.getMetrics().snapshot().getHistogram("handler.VersionedGetValueRequest.latencyNanos").getCount();
+    }
+}
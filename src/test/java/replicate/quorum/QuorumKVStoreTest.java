@@ -5,13 +5,21 @@ import replicate.common.ClusterTest;
 import replicate.common.MessageId;
 import replicate.common.NetworkClient;
 import replicate.common.TestUtils;
+import replicate.metrics.MetricsSnapshot;
+import replicate.metrics.messages.GetStatsRequest;
+import replicate.metrics.messages.StatsResponse;
 import replicate.net.InetAddressAndPort;
 import replicate.net.requestwaitinglist.TestClock;
+import replicate.quorum.messages.GetValueRequest;
 import replicate.quorum.messages.GetValueResponse;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
 
 import static org.junit.Assert.assertEquals;
@@ -37,6 +45,60 @@ public class QuorumKVStoreTest extends ClusterTest<QuorumKVStore> {
 
     }
 
+    @Test
+    public void outstandingRequestsAreRemovedOnceQuorumIsReached() throws IOException {
+        athens.addDelayForMessagesTo(cyrene);
+
+        KVClient kvClient = new KVClient();
+        var setValueResponse = kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices");
+        assertResponseSuccess(setValueResponse);
+
+        //the request to cyrene is still delayed, but the quorum of athens and byzantium has responded.
+        TestUtils.waitUntilTrue(() -> athens.getNoOfPendingRequests() == 0, "Waiting for outstanding requests to be removed", Duration.ofMillis(500));
+    }
+
+    @Test
+    public void metricsAreRecordedForRequests() throws IOException {
+        KVClient kvClient = new KVClient();
+        assertResponseSuccess(kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices"));
+
+        //metrics are recorded after the response is sent. The quorum can complete
+        //before athens handles its own VersionedSetValueRequest, so that is waited for as well.
+        TestUtils.waitUntilTrue(() -> {
+                    MetricsSnapshot metrics = athens.getMetrics().snapshot();
+                    return metrics.getHistogram("handler.SetValueRequest.responseLatencyNanos").getCount() == 1
+                            && metrics.getHistogram("handler.VersionedSetValueRequest.latencyNanos").getCount() >= 1;
+                }, "Waiting for request metrics", Duration.ofSeconds(2));
+        MetricsSnapshot snapshot = athens.getMetrics().snapshot();
+        assertEquals(1, snapshot.getHistogram("quorum.VersionedSetValueRequest.latencyNanos").getCount());
+        assertTrue(snapshot.getHistogram("handler.VersionedSetValueRequest.latencyNanos").getCount() >= 1);
+        assertTrue(snapshot.getHistogram("wal.fsyncNanos").getCount() >= 1);
+        assertTrue(snapshot.getCounter("wal.entriesWritten") >= 1);
+        assertTrue(snapshot.getCounter("replica.pendingResponses.responses") >= 2);
+        assertTrue(snapshot.getCounter("network.messagesSent." + byzantium.getPeerConnectionAddress()) >= 1);
+        assertTrue(snapshot.getGauges().containsKey("replica.updateLane.0.queueDepth"));
+    }
+
+    @Test
+    public void replicaServesStatsOnClientPort() throws Exception {
+        KVClient kvClient = new KVClient();
+        assertResponseSuccess(kvClient.setValue(athens.getClientConnectionAddress(), "title", "Microservices"));
+        TestUtils.waitUntilTrue(() -> athens.getMetrics().snapshot().getHistogram("handler.SetValueRequest.responseLatencyNanos").getCount() == 1,
+                "Waiting for request metrics", Duration.ofSeconds(2));
+
+        try (NetworkClient client = new NetworkClient()) {
+            NetworkClient.Response<StatsResponse> response = client.sendAsync(new GetStatsRequest(), athens.getClientConnectionAddress(), StatsResponse.class)
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(response.isSuccess());
+            StatsResponse stats = response.getResult();
+            assertEquals("athens", stats.getName());
+            assertEquals("Replica", stats.getRole());
+            assertEquals(1, stats.getLatencies().get("handler.SetValueRequest.responseLatencyNanos").getCount());
+            assertTrue(stats.getCounters().get("wal.entriesWritten") >= 1);
+            assertTrue(stats.getGauges().get("wal.sizeBytes") > 0);
+        }
+    }
+
     //Read Your Own Writes should give the same value written by me or a later value.
     //Try changing this test to have 5 replicas instead of three.
     //Try adding more failures, It returns error because Quorum condition will
@@ -90,7 +152,9 @@ public class QuorumKVStoreTest extends ClusterTest<QuorumKVStore> {
                 = {"Updated title", "Initial title", "Updated title"};
         assertTitleValues(nodes, initialExpectedTitles);
 
-        //response from cyrene and byzantium.
+        //athens is unreachable from cyrene, so the read quorum is cyrene and byzantium,
+        //whichever replica would have responded first.
+        cyrene.dropMessagesTo(athens);
 
         var titleResponse =
                 kvClient.getValue(cyrene.getClientConnectionAddress(),
@@ -476,4 +540,22 @@ public class QuorumKVStoreTest extends ClusterTest<QuorumKVStore> {
                 bob.getValue(cyrene.getClientConnectionAddress(), "title");
         assertResponseValue(thirdTitleResponse, "Nitroservices");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void pipelinedClientHasManyRequestsInFlightOnOneConnection() throws Exception {
+        try (NetworkClient client = new NetworkClient(1, 16)) {
+            List<CompletableFuture<NetworkClient.Response<SetValueResponse>>> responses = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                responses.add(client.sendAsync(new SetValueRequest("key" + i, "value" + i),
+                        athens.getClientConnectionAddress(), SetValueResponse.class));
+            }
+            for (CompletableFuture<NetworkClient.Response<SetValueResponse>> response : responses) {
+                assertTrue(response.get(5, TimeUnit.SECONDS).isSuccess());
+            }
+
+            var getValueResponse = client.sendAsync(new GetValueRequest("key99"),
+                    athens.getClientConnectionAddress(), GetValueResponse.class).get(5, TimeUnit.SECONDS);
+            assertResponseValue(getValueResponse, "value99");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package replicate.quorum;
+
+import org.junit.Test;
+import replicate.common.ClusterTest;
+import replicate.common.NetworkClient;
+import replicate.common.TestUtils;
+import replicate.quorum.messages.GetValueRequest;
+import replicate.quorum.messages.GetValueResponse;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class QuorumKVStoreUpdateLanesTest extends ClusterTest<QuorumKVStore> {
+    private static final int UPDATE_LANES = 4;
+    QuorumKVStore athens;
+
+    @Override
+    public void setUp() throws IOException {
+        this.nodes = TestUtils.startCluster(Arrays.asList("athens", "byzantium", "cyrene"),
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                        new QuorumKVStore(name, config.withUpdateLanes(UPDATE_LANES), clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        athens = nodes.get("athens");
+    }
+
+    @Test
+    public void handlesConcurrentRequestsForManyKeysOnUpdateLanes() throws Exception {
+        int noOfKeys = 100;
+        try (NetworkClient client = new NetworkClient(2, 32)) {
+            List<CompletableFuture<NetworkClient.Response<SetValueResponse>>> sets = new ArrayList<>();
+            for (int i = 0; i < noOfKeys; i++) {
+                sets.add(client.sendAsync(new SetValueRequest("key" + i, "value" + i), athens.getClientConnectionAddress(), SetValueResponse.class));
+            }
+            for (var set : sets) {
+                assertFalse(set.get(10, TimeUnit.SECONDS).isError());
+            }
+            for (int i = 0; i < noOfKeys; i++) {
+                var response = client.sendAsync(new GetValueRequest("key" + i), athens.getClientConnectionAddress(), GetValueResponse.class).get(10, TimeUnit.SECONDS);
+                assertEquals("value" + i, response.getResult().value.value);
+            }
+        }
+        assertEquals(UPDATE_LANES, athens.getUpdateLaneQueueDepths().length);
+    }
+}
@@ -0,0 +1,49 @@
+package replicate.quorum;
+
+import replicate.common.TestUtils;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures quorum write round trips on a 5-node QuorumKVStore cluster.
+ * Prints the latency percentiles along with the peer connection counters,
+ * which show if the peer connections are reused across requests.
+ */
+public class QuorumRoundTripBenchmark {
+    private static final int WARMUP_REQUESTS = 200;
+    private static final int REQUESTS = 2000;
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = Arrays.asList("athens", "byzantium", "cyrene", "delphi", "ephesus");
+        Map<String, QuorumKVStore> nodes = TestUtils.startCluster(names,
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) -> new QuorumKVStore(name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        try {
+            QuorumKVStore athens = nodes.get("athens");
+            KVClient client = new KVClient();
+            for (int i = 0; i < WARMUP_REQUESTS; i++) {
+                client.setValue(athens.getClientConnectionAddress(), "key" + i, "value" + i);
+            }
+
+            long[] latencies = new long[REQUESTS];
+            for (int i = 0; i < REQUESTS; i++) {
+                long start = System.nanoTime();
+                client.setValue(athens.getClientConnectionAddress(), "key" + i, "value" + i);
+                latencies[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(latencies);
+
+            System.out.println("Quorum writes: " + REQUESTS);
+            System.out.println("p50 (us): " + latencies[REQUESTS / 2] / 1000);
+            System.out.println("p99 (us): " + latencies[REQUESTS * 99 / 100] / 1000);
+            System.out.println("max (us): " + latencies[REQUESTS - 1] / 1000);
+            System.out.println("Peer connections from athens: " + athens.getPeerConnectionStats());
+        } finally {
+            nodes.values().forEach(n -> n.shutdown());
+        }
+        //replicas do not stop all their executors on shutdown.
+        System.exit(0);
+    }
+}
@@ -0,0 +1,68 @@
+package replicate.quorum;
+
+import replicate.common.NetworkClient;
+import replicate.common.ReplicaRuntime;
+import replicate.common.TestUtils;
+import replicate.quorum.messages.SetValueRequest;
+import replicate.quorum.messages.SetValueResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts many three node QuorumKVStore groups in this JVM, writes a value through each of them,
+ * and prints the threads of the process. With laneThreads and ioThreads of 0 every replica
+ * starts its own lanes and selectors, so the threads grow with the groups. Otherwise all the
+ * groups share the threads of one ReplicaRuntime.
+ *
+ * Usage: ReplicaGroupsBenchmark [groups] [laneThreads] [ioThreads]
+ */
+public class ReplicaGroupsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int noOfGroups = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int laneThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int ioThreads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        ReplicaRuntime runtime = new ReplicaRuntime("groups", laneThreads, ioThreads);
+
+        int threadsBefore = Thread.activeCount();
+        long start = System.nanoTime();
+        List<QuorumKVStore> replicas = new ArrayList<>();
+        List<QuorumKVStore> coordinators = new ArrayList<>();
+        for (int group = 0; group < noOfGroups; group++) {
+            Map<String, QuorumKVStore> nodes = TestUtils.startCluster(List.of("athens", "byzantium", "cyrene"),
+                    (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                            new QuorumKVStore(name, config.withRuntime(runtime), clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+            replicas.addAll(nodes.values());
+            coordinators.add(nodes.get("athens"));
+        }
+        long startupNanos = System.nanoTime() - start;
+
+        try (NetworkClient client = new NetworkClient()) {
+            List<CompletableFuture<NetworkClient.Response<SetValueResponse>>> writes = new ArrayList<>();
+            for (QuorumKVStore coordinator : coordinators) {
+                writes.add(client.sendAsync(new SetValueRequest("title", "Microservices"), coordinator.getClientConnectionAddress(), SetValueResponse.class));
+            }
+            int failures = 0;
+            for (var write : writes) {
+                if (write.get(60, TimeUnit.SECONDS).isError()) {
+                    failures++;
+                }
+            }
+
+            System.out.println("groups=" + noOfGroups + " replicas=" + replicas.size() + " laneThreads=" + laneThreads + " ioThreads=" + ioThreads);
+            System.out.printf("startup ms=%d write failures=%d%n", TimeUnit.NANOSECONDS.toMillis(startupNanos), failures);
+            System.out.println("threads before=" + threadsBefore + " after=" + Thread.activeCount());
+            ReplicaRuntime.threadReport().forEach((name, count) -> System.out.println("  " + name + "=" + count));
+        } finally {
+            for (QuorumKVStore replica : replicas) {
+                replica.shutdown();
+            }
+            runtime.shutdown();
+            System.exit(0);
+        }
+    }
+}
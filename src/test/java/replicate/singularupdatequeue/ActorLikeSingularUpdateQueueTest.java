@@ -0,0 +1,123 @@
+package replicate.singularupdatequeue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ActorLikeSingularUpdateQueueTest {
+
+    @Test
+    public void processesMessagesInSubmissionOrder() throws Exception {
+        List<Integer> processed = new ArrayList<>();
+        var queue = new ActorLikeSingularUpdateQueue<Integer, Integer>(i -> {
+            processed.add(i);
+            return i;
+        });
+        CompletableFuture<Integer> last = null;
+        for (int i = 0; i < 10_000; i++) {
+            last = queue.submit(i);
+        }
+        assertEquals(9_999, last.get(5, TimeUnit.SECONDS).intValue());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, processed.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void actorYieldsTheThreadAfterBatchBudget() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            List<String> processed = new ArrayList<>();
+            var first = new ActorLikeSingularUpdateQueue<String, String>(s -> { processed.add(s); return s; },
+                    2, TimeUnit.SECONDS.toNanos(10), singleThread);
+            var second = new ActorLikeSingularUpdateQueue<String, String>(s -> { processed.add(s); return s; },
+                    2, TimeUnit.SECONDS.toNanos(10), singleThread);
+
+            //block the only thread, so that both actors have all their messages queued before running.
+            CountDownLatch blocked = new CountDownLatch(1);
+            singleThread.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                }
+            });
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(first.submit("a" + i));
+            }
+            for (int i = 0; i < 4; i++) {
+                futures.add(second.submit("b" + i));
+            }
+            blocked.countDown();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+
+            assertEquals(List.of("a0", "a1", "b0", "b1", "a2", "a3", "b2", "b3"), processed);
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void actorYieldsTheThreadAfterTimeSlice() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        try {
+            List<String> processed = new ArrayList<>();
+            var slow = new ActorLikeSingularUpdateQueue<String, String>(s -> {
+                sleep(5);
+                processed.add(s);
+                return s;
+            }, 1000, TimeUnit.MILLISECONDS.toNanos(1), singleThread);
+            var fast = new ActorLikeSingularUpdateQueue<String, String>(s -> { processed.add(s); return s; },
+                    1000, TimeUnit.SECONDS.toNanos(10), singleThread);
+
+            CountDownLatch blocked = new CountDownLatch(1);
+            singleThread.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                }
+            });
+            CompletableFuture<String> slowDone = null;
+            for (int i = 0; i < 3; i++) {
+                slowDone = slow.submit("slow" + i);
+            }
+            CompletableFuture<String> fastDone = fast.submit("fast");
+            blocked.countDown();
+            CompletableFuture.allOf(slowDone, fastDone).get(5, TimeUnit.SECONDS);
+
+            //each slow message takes longer than the time slice, so the fast actor runs after the first one.
+            assertEquals(List.of("slow0", "fast", "slow1", "slow2"), processed);
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    public void handlerFailureCompletesFutureExceptionally() throws Exception {
+        var queue = new ActorLikeSingularUpdateQueue<Integer, Integer>(i -> {
+            if (i == 1) {
+                throw new IllegalStateException("failed");
+            }
+            return i;
+        });
+        CompletableFuture<Integer> failed = queue.submit(1);
+        assertEquals(2, queue.submit(2).get(5, TimeUnit.SECONDS).intValue());
+        assertTrue(failed.isCompletedExceptionally());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package replicate.singularupdatequeue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RingBufferSingularUpdateQueueTest {
+
+    @Test
+    public void processesRequestsFromEachProducerInOrderWithBusySpin() throws Exception {
+        //spinning threads compete for the core with the producers, unless each has its own core.
+        //So the buffer is large enough that the producers rarely wait.
+        assertProcessesAllRequestsInProducerOrder(WaitStrategy.busySpin(), 1024);
+    }
+
+    @Test
+    public void processesRequestsFromEachProducerInOrderWithYield() throws Exception {
+        assertProcessesAllRequestsInProducerOrder(WaitStrategy.yielding(), 8);
+    }
+
+    @Test
+    public void processesRequestsFromEachProducerInOrderWithPark() throws Exception {
+        assertProcessesAllRequestsInProducerOrder(WaitStrategy.parking(), 8);
+    }
+
+    //With a small buffer, producers regularly wait for the consumer to free slots.
+    private void assertProcessesAllRequestsInProducerOrder(WaitStrategy waitStrategy, int capacity) throws Exception {
+        int noOfProducers = 4;
+        int requestsPerProducer = 10_000;
+        //accessed only by the consumer thread.
+        int[] lastSeen = new int[noOfProducers];
+        List<String> outOfOrder = new ArrayList<>();
+        var queue = new RingBufferSingularUpdateQueue<int[], Integer>(request -> {
+            int producer = request[0];
+            int requestNo = request[1];
+            if (requestNo != lastSeen[producer] + 1) {
+                outOfOrder.add(producer + ":" + requestNo);
+            }
+            lastSeen[producer] = requestNo;
+            return requestNo;
+        }, capacity, waitStrategy);
+        queue.start();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < noOfProducers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 1; i <= requestsPerProducer; i++) {
+                    queue.execute(new int[]{producer, i});
+                }
+            });
+            thread.start();
+            producers.add(thread);
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        //submitted after all the other requests, so completes after they are processed.
+        queue.submit(new int[]{0, requestsPerProducer + 1}).get(10, TimeUnit.SECONDS);
+        queue.shutdown();
+
+        assertTrue(outOfOrder.toString(), outOfOrder.isEmpty());
+        for (int p = 1; p < noOfProducers; p++) {
+            assertEquals(requestsPerProducer, lastSeen[p]);
+        }
+    }
+
+    @Test
+    public void completesFutureWithTheHandlerResponse() throws Exception {
+        var queue = new RingBufferSingularUpdateQueue<String, Integer>(String::length);
+        queue.start();
+        assertEquals(Integer.valueOf(5), queue.submit("hello").get(1, TimeUnit.SECONDS));
+        queue.shutdown();
+    }
+
+    @Test
+    public void completesFutureExceptionallyIfHandlerFails() throws Exception {
+        var queue = new RingBufferSingularUpdateQueue<String, Integer>(request -> {
+            throw new IllegalStateException("Failed " + request);
+        });
+        queue.start();
+        CompletableFuture<Integer> response = queue.submit("hello");
+        try {
+            response.get(1, TimeUnit.SECONDS);
+            fail("Expected handler failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        //the consumer keeps running after a failure.
+        queue.execute("again");
+        assertTrue(queue.isRunning());
+        queue.shutdown();
+    }
+
+    @Test
+    public void rejectsCapacityWhichIsNotPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferSingularUpdateQueue<String, String>(r -> r, 100, WaitStrategy.parking()));
+    }
+}
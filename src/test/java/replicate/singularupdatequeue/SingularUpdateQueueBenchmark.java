@@ -0,0 +1,116 @@
+package replicate.singularupdatequeue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Throughput and allocation per item of the SingularUpdateQueue variants, with multiple producers
+ * submitting to a single consumer which only counts the items.
+ * Allocation is measured on the producer threads, which is where the per item garbage is created.
+ *
+ * Usage: SingularUpdateQueueBenchmark [producers] [itemsPerProducer]
+ */
+public class SingularUpdateQueueBenchmark {
+    private static final com.sun.management.ThreadMXBean threadMXBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    interface QueueFactory {
+        //returns the method producers call for each item.
+        Consumer<Long> create(Function<Long, Long> handler);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int producers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int itemsPerProducer = args.length > 1 ? Integer.parseInt(args[1]) : 250_000;
+
+        for (int round = 0; round < 2; round++) {
+            run("SingularUpdateQueue (ArrayBlockingQueue, 2ms poll)", producers, itemsPerProducer, handler -> {
+                var queue = new SingularUpdateQueue<Long, Long>(handler);
+                queue.setDaemon(true);
+                queue.start();
+                return queue::submit;
+            });
+            run("ActorLikeSingularUpdateQueue", producers, itemsPerProducer, handler -> {
+                var queue = new ActorLikeSingularUpdateQueue<Long, Long>(handler);
+                return queue::submit;
+            });
+            run("ExecutorBackedSingularUpdateQueue", producers, itemsPerProducer, handler -> {
+                var queue = new ExecutorBackedSingularUpdateQueue<Long, Long>(handler);
+                return queue::submit;
+            });
+            run("RingBuffer submit, park", producers, itemsPerProducer, handler -> {
+                var queue = new RingBufferSingularUpdateQueue<Long, Long>(handler, 1024, WaitStrategy.parking());
+                queue.start();
+                return queue::submit;
+            });
+            run("RingBuffer execute, park", producers, itemsPerProducer, handler -> {
+                var queue = new RingBufferSingularUpdateQueue<Long, Long>(handler, 1024, WaitStrategy.parking());
+                queue.start();
+                return queue::execute;
+            });
+            run("RingBuffer execute, yield", producers, itemsPerProducer, handler -> {
+                var queue = new RingBufferSingularUpdateQueue<Long, Long>(handler, 1024, WaitStrategy.yielding());
+                queue.start();
+                return queue::execute;
+            });
+            run("RingBuffer execute, busy spin", producers, itemsPerProducer, handler -> {
+                var queue = new RingBufferSingularUpdateQueue<Long, Long>(handler, 1024, WaitStrategy.busySpin());
+                queue.start();
+                return queue::execute;
+            });
+        }
+        System.exit(0);
+    }
+
+    private static void run(String name, int producers, int itemsPerProducer, QueueFactory factory) throws InterruptedException {
+        long totalItems = (long) producers * itemsPerProducer;
+        CountDownLatch processed = new CountDownLatch(1);
+        long[] count = new long[1]; //updated only by the consumer.
+        Consumer<Long> queue = factory.create(item -> {
+            if (++count[0] == totalItems) {
+                processed.countDown();
+            }
+            return item;
+        });
+
+        Long item = 1L; //boxed once, so the benchmark itself does not allocate per item.
+        long[] allocatedBytes = new long[producers];
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                long threadId = Thread.currentThread().getId();
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long before = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    queue.accept(item);
+                }
+                allocatedBytes[producer] = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        processed.await();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long allocated = 0;
+        for (long bytes : allocatedBytes) {
+            allocated += bytes;
+        }
+        System.out.printf("%-52s %,12.0f items/s %8.1f bytes/item%n", name,
+                totalItems * 1_000_000_000.0 / elapsedNanos, allocated / (double) totalItems);
+    }
+}
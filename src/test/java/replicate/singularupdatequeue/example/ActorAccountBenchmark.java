@@ -0,0 +1,61 @@
+package replicate.singularupdatequeue.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of many account actors sharing the ActorLikeSingularUpdateQueue thread pool,
+ * with a batch budget of 1 (a hand-off per message) against larger budgets.
+ * Producers credit random accounts, so with enough accounts all the pool threads are kept busy.
+ *
+ * Usage: ActorAccountBenchmark [accounts] [producers] [creditsPerProducer]
+ */
+public class ActorAccountBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int producers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int creditsPerProducer = args.length > 2 ? Integer.parseInt(args[2]) : 500_000;
+
+        System.out.printf("%d accounts, %d producers, %d cores%n", accounts, producers, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 2; round++) {
+            for (int budget : new int[]{1, 16, 64, 256}) {
+                run(accounts, producers, creditsPerProducer, budget);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(int noOfAccounts, int producers, int creditsPerProducer, int batchBudget) throws Exception {
+        ActorAccount[] accounts = new ActorAccount[noOfAccounts];
+        for (int i = 0; i < noOfAccounts; i++) {
+            accounts[i] = new ActorAccount(0, batchBudget);
+        }
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int p = 0; p < producers; p++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < creditsPerProducer; i++) {
+                    accounts[random.nextInt(accounts.length)].credit(1);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long total = 0;
+        for (ActorAccount account : accounts) {
+            total += account.balance().get(30, TimeUnit.SECONDS);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (total != (long) producers * creditsPerProducer) {
+            throw new IllegalStateException("Expected total balance " + (long) producers * creditsPerProducer + " but was " + total);
+        }
+        System.out.printf("batchBudget %4d: %,12.0f credits/s%n", batchBudget, total * 1_000_000_000.0 / elapsed);
+    }
+}
@@ -0,0 +1,63 @@
+package replicate.tools;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class KeyDistributionTest {
+    private static final int KEYS = 1000;
+    private static final int SAMPLES = 100_000;
+
+    @Test
+    public void uniformKeysAreSpreadEvenly() {
+        long[] counts = sample(KeyDistribution.uniform(KEYS));
+        for (long count : counts) {
+            //100 expected for each key.
+            assertTrue("count " + count, count > 50 && count < 150);
+        }
+    }
+
+    @Test
+    public void zipfianKeysAreSkewedTowardsTheFirstKeys() {
+        long[] counts = sample(KeyDistribution.zipfian(KEYS, 0.99));
+        //with theta 0.99, key 0 gets about 1 / zeta(1000) = 13% of the operations.
+        assertTrue("count " + counts[0], counts[0] > 0.11 * SAMPLES && counts[0] < 0.15 * SAMPLES);
+        assertTrue(counts[0] > counts[1]);
+        assertTrue(counts[1] > counts[10]);
+        long firstTenKeys = 0;
+        for (int i = 0; i < 10; i++) {
+            firstTenKeys += counts[i];
+        }
+        //1% of the keys get about 38% of the operations.
+        assertTrue("first ten keys " + firstTenKeys, firstTenKeys > 0.3 * SAMPLES);
+    }
+
+    @Test
+    public void singleKey() {
+        Random random = new Random(1);
+        assertEquals(0, KeyDistribution.uniform(1).nextKey(random));
+        assertEquals(0, KeyDistribution.zipfian(1, 0.99).nextKey(random));
+    }
+
+    @Test
+    public void rejectsUnknownDistributionsAndInvalidSkew() {
+        assertThrows(IllegalArgumentException.class, () -> KeyDistribution.parse("hotspot", KEYS));
+        assertThrows(IllegalArgumentException.class, () -> KeyDistribution.zipfian(KEYS, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> KeyDistribution.uniform(0));
+    }
+
+    private long[] sample(KeyDistribution keys) {
+        Random random = new Random(42);
+        long[] counts = new long[KEYS];
+        for (int i = 0; i < SAMPLES; i++) {
+            long key = keys.nextKey(random);
+            assertTrue("key " + key, key >= 0 && key < KEYS);
+            counts[(int) key]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,140 @@
+package replicate.tools;
+
+import org.junit.After;
+import org.junit.Test;
+import replicate.common.NetworkClient;
+import replicate.common.TestUtils;
+import replicate.net.InetAddressAndPort;
+import replicate.quorum.QuorumKVStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LoadGeneratorTest {
+    private final Workload workload = new Workload(Workload.Api.KV, KeyDistribution.uniform(100), 0.5, 10);
+    private final List<QuorumKVStore> nodes = new ArrayList<>();
+
+    @Test
+    public void openLoopCountsTheWaitOfRequestsHeldUpBehindAStall() throws Exception {
+        //the first write blocks the sender for 500ms, as a full connection would, and the rest respond right away.
+        AtomicBoolean stalled = new AtomicBoolean();
+        LoadGenerator.RequestSender stallingOnce = operation -> {
+            if (operation.getType() == Workload.OperationType.WRITE && stalled.compareAndSet(false, true)) {
+                sleep(500);
+            }
+            return CompletableFuture.completedFuture(true);
+        };
+
+        LoadReport report = new LoadGenerator(workload, stallingOnce)
+                .withMode(LoadGenerator.Mode.OPEN)
+                .withRate(200)
+                .withDurationMs(2000)
+                .run();
+
+        //the 100 requests which should have been sent during the stall waited up to 500ms.
+        assertEquals(400, report.getRequests(), 2);
+        long responseP90 = Math.max(report.getOperations().get("read").getResponseTime().getP90(),
+                report.getOperations().get("write").getResponseTime().getP90());
+        assertTrue("response time p90 " + responseP90, responseP90 >= 100_000);
+        //once sent, they were served right away, including the write which stalled the sender.
+        long serviceMax = Math.max(report.getOperations().get("read").getServiceTime().getMax(),
+                report.getOperations().get("write").getServiceTime().getMax());
+        assertTrue("service time max " + serviceMax, serviceMax < 50_000);
+        assertTrue(report.isCoordinatedOmissionCorrected());
+    }
+
+    @Test
+    public void closedLoopWaitsForEachResponseBeforeSendingTheNext() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        LoadGenerator.RequestSender slowSender = operation -> CompletableFuture.supplyAsync(() -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep(5);
+            inFlight.decrementAndGet();
+            return true;
+        });
+
+        LoadReport report = new LoadGenerator(workload, slowSender)
+                .withConcurrency(2)
+                .withDurationMs(500)
+                .run();
+
+        assertTrue(maxInFlight.get() <= 2);
+        assertTrue(report.getRequests() > 0);
+        assertFalse(report.isCoordinatedOmissionCorrected());
+    }
+
+    @Test
+    public void failedAndTimedOutRequestsAreCountedAsErrors() throws Exception {
+        AtomicInteger sent = new AtomicInteger();
+        LoadGenerator.RequestSender failingSender = operation -> {
+            switch (sent.getAndIncrement() % 3) {
+                case 0: return CompletableFuture.completedFuture(false);
+                case 1: return new CompletableFuture<>(); //never completes.
+                default: return CompletableFuture.completedFuture(true);
+            }
+        };
+
+        LoadReport report = new LoadGenerator(workload, failingSender)
+                .withMode(LoadGenerator.Mode.OPEN)
+                .withRate(100)
+                .withDurationMs(300)
+                .withResponseTimeoutMs(100)
+                .run();
+
+        assertEquals(30, report.getRequests());
+        assertEquals(20, report.getErrors());
+    }
+
+    @Test
+    public void drivesQuorumKVStoreAndReportsAsJson() throws Exception {
+        Map<String, QuorumKVStore> cluster = TestUtils.startCluster(Arrays.asList("athens", "byzantium", "cyrene"),
+                (name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses) ->
+                        new QuorumKVStore(name, config, clock, clientConnectionAddress, peerConnectionAddress, peerAddresses));
+        nodes.addAll(cluster.values());
+        List<InetAddressAndPort> targets = new ArrayList<>();
+        for (QuorumKVStore node : nodes) {
+            targets.add(node.getClientConnectionAddress());
+        }
+
+        LoadReport report;
+        try (NetworkClient client = new NetworkClient()) {
+            report = new LoadGenerator(new Workload(Workload.Api.KV, KeyDistribution.zipfian(100, 0.99), 0.5, 10),
+                    new LoadGenerator.NetworkSender(client, targets.get(0), targets))
+                    .withConcurrency(4)
+                    .withDurationMs(1000)
+                    .withWarmupMs(200)
+                    .run();
+        }
+
+        assertTrue(report.getRequests() > 0);
+        assertEquals(0, report.getErrors());
+        String json = report.toJson();
+        assertTrue(json, json.contains("\"mode\":\"closed\""));
+        assertTrue(json, json.contains("\"keyDistribution\":\"zipfian(0.99)\""));
+        assertTrue(json, json.contains("\"read\":{\"requests\":"));
+        assertTrue(json, json.contains("\"responseTime\":{\"count\":"));
+    }
+
+    @After
+    public void shutdown() {
+        nodes.forEach(QuorumKVStore::shutdown);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
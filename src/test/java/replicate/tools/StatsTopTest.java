@@ -0,0 +1,62 @@
+package replicate.tools;
+
+import org.junit.Test;
+import replicate.metrics.messages.StatsResponse;
+import replicate.net.InetAddressAndPort;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsTopTest {
+    InetAddressAndPort athens = InetAddressAndPort.create("127.0.0.1", 9000);
+    InetAddressAndPort byzantium = InetAddressAndPort.create("127.0.0.1", 9001);
+
+    @Test
+    public void ratesAreComputedFromTheDifferenceBetweenSnapshots() {
+        StatsTop top = new StatsTop(List.of(athens, byzantium), 10);
+        top.update(Map.of(athens, stats(1000, 100)), 1000);
+
+        String view = top.update(Map.of(athens, stats(3000, 600)), 500);
+
+        String athensRow = lineStartingWith(view, "athens");
+        //(3000 - 1000) messages and (600 - 100) requests in 500ms.
+        assertTrue(athensRow, athensRow.matches(".*Leader\\s+7\\s+1m05s\\s+1000\\s+4000\\s+5\\s+2\\s+3\\s+2.0KB"));
+        assertTrue(lineStartingWith(view, "127.0.0.1:9001").contains("unreachable"));
+        String latencyRow = lineStartingWith(view, "athens         handler.SetValueRequest");
+        assertTrue(latencyRow, latencyRow.matches(".*1000\\s+50\\s+900\\s+1000\\s+2000"));
+    }
+
+    @Test
+    public void noRatesForTheFirstSnapshot() {
+        StatsTop top = new StatsTop(List.of(athens), 10);
+        String view = top.update(Map.of(athens, stats(1000, 100)), 1000);
+        assertTrue(lineStartingWith(view, "athens").matches(".*1m05s\\s+0\\s+0\\s+.*"));
+    }
+
+    @Test
+    public void formatsUptimeAndBytes() {
+        assertEquals("0m59s", StatsTop.formatUptime(59_000));
+        assertEquals("2h01m", StatsTop.formatUptime(7_260_000));
+        assertEquals("512B", StatsTop.formatBytes(512));
+        assertEquals("1.5MB", StatsTop.formatBytes(1536 * 1024));
+    }
+
+    private StatsResponse stats(long messagesRead, long requests) {
+        return new StatsResponse("athens", "Leader", 7, 65_000,
+                Map.of("transport.clientReactor.0.messagesRead", messagesRead),
+                Map.of("replica.updateLane.0.queueDepth", 4L, "replica.updateLane.1.queueDepth", 1L,
+                        "replica.pendingResponses.pending", 2L,
+                        "transport.clientReactor.0.connections", 3L,
+                        "wal.sizeBytes", 2048L),
+                Map.of("handler.SetValueRequest.responseLatencyNanos",
+                        new StatsResponse.LatencySummary(requests, 80_000, 50_000, 900_000, 1_000_000, 2_000_000)));
+    }
+
+    private String lineStartingWith(String view, String prefix) {
+        return view.lines().filter(line -> line.startsWith(prefix)).findFirst()
+                .orElseThrow(() -> new AssertionError("No line starting with " + prefix + " in\n" + view));
+    }
+}
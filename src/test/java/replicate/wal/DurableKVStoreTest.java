@@ -4,9 +4,23 @@ import org.junit.Test;
 import replicate.common.Config;
 import replicate.common.TestUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class DurableKVStoreTest {
 
@@ -45,5 +59,120 @@ public class DurableKVStoreTest {
         assertEquals(recoveredKvStore.get("newTitle"), "Distributed Systems");
     }
 
+    @Test
+    public void shouldRecoverBatchedWritesFromWAL() throws Exception {
+        File walDir = TestUtils.tempDir("distrib/patterns/walbatching");
+        DurableKVStore kv = new DurableKVStore(new Config(walDir.getAbsolutePath()).withWalBatching(64));
+        List<CompletableFuture<Void>> writes = new CopyOnWriteArrayList<>();
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        //holding the wal keeps the first batch from being written, so the concurrent puts queue up behind it.
+        synchronized (kv.wal) {
+            for (int writer = 0; writer < 4; writer++) {
+                int firstKey = writer;
+                //each key is updated from one thread, as by a replica's update lane.
+                writers.submit(() -> {
+                    for (int i = firstKey; i < 1000; i += 4) {
+                        writes.add(kv.putAsync("key" + (i % 8), "value" + i));
+                    }
+                });
+            }
+            TestUtils.waitUntilTrue(() -> writes.size() == 1000, "Waiting for the puts", Duration.ofSeconds(5));
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        writers.shutdown();
+        //a single fsync covers more than one entry.
+        assertTrue(kv.getWalStageMetrics().getAverageBatchSize() > 1);
+        //the stage counts a batch after its futures are completed.
+        TestUtils.waitUntilTrue(() -> kv.getWalStageMetrics().getProcessed() == 1000, "Waiting for the batches to be counted", Duration.ofSeconds(5));
+        kv.close();
+
+        DurableKVStore recoveredKvStore = new DurableKVStore(new Config(walDir.getAbsolutePath()));
+        for (int i = 0; i < 8; i++) {
+            assertEquals("value" + (992 + i), recoveredKvStore.get("key" + i));
+        }
+    }
+
+    @Test
+    public void rollsBackBatchedWritesWhichFailToReachTheWAL() throws Exception {
+        File walDir = TestUtils.tempDir("distrib/patterns/walbatchingfailure");
+        DurableKVStore kv = new DurableKVStore(new Config(walDir.getAbsolutePath()).withWalBatching(64));
+        kv.put("title", "Microservices");
+        //writes fail once the wal is closed.
+        kv.wal.close();
+
+        CompletableFuture<Void> update = kv.putAsync("title", "Distributed Systems");
+        CompletableFuture<Void> laterUpdate = kv.putAsync("title", "Patterns of Distributed Systems");
+        CompletableFuture<Void> insert = kv.putAsync("author", "Martin");
+
+        assertFailed(update);
+        assertFailed(laterUpdate);
+        assertFailed(insert);
+        assertEquals("Microservices", kv.get("title"));
+        assertNull(kv.get("author"));
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void batchWhichFailsPartwayIsNotReplayedAfterRestart() throws Exception {
+        File walDir = TestUtils.tempDir("distrib/patterns/walbatchingpartialfailure");
+        DurableKVStore kv = new DurableKVStore(new Config(walDir.getAbsolutePath()).withWalBatching(64));
+        kv.put("title", "Microservices");
+        //the first write holds the wal stage, so that the next three are written as one batch.
+        //The third entry of that batch fails, after the first two are written.
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch batchQueued = new CountDownLatch(1);
+        List<String> batchedValues = new CopyOnWriteArrayList<>();
+        kv.wal.beforeBatchEntryWrite = entry -> {
+            SetValueCommand command = (SetValueCommand) Command.deserialize(new ByteArrayInputStream(entry.getData()));
+            batchedValues.add(command.value);
+            if (command.value.equals("Martin")) {
+                firstWriteStarted.countDown();
+                await(batchQueued);
+            } else if (command.value.equals("2023")) {
+                throw new RuntimeException("Injected write failure");
+            }
+        };
+        CompletableFuture<Void> firstWrite = kv.putAsync("author", "Martin");
+        firstWriteStarted.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> update = kv.putAsync("title", "Distributed Systems");
+        CompletableFuture<Void> insert = kv.putAsync("publisher", "Addison-Wesley");
+        CompletableFuture<Void> failingInsert = kv.putAsync("year", "2023");
+        batchQueued.countDown();
+
+        firstWrite.get(5, TimeUnit.SECONDS);
+        assertFailed(update);
+        assertFailed(insert);
+        assertFailed(failingInsert);
+        assertEquals(List.of("Martin", "Distributed Systems", "Addison-Wesley", "2023"), batchedValues);
+        assertEquals("Microservices", kv.get("title"));
+        assertNull(kv.get("publisher"));
+        //the wal takes new writes after the truncated batch.
+        kv.wal.beforeBatchEntryWrite = entry -> {};
+        kv.put("edition", "First");
+        kv.close();
+
+        //the entries written before the failure are not replayed either.
+        DurableKVStore recoveredKvStore = new DurableKVStore(new Config(walDir.getAbsolutePath()));
+        assertEquals("Microservices", recoveredKvStore.get("title"));
+        assertEquals("Martin", recoveredKvStore.get("author"));
+        assertEquals("First", recoveredKvStore.get("edition"));
+        assertNull(recoveredKvStore.get("publisher"));
+        assertNull(recoveredKvStore.get("year"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertFailed(CompletableFuture<Void> write) throws InterruptedException, TimeoutException {
+        try {
+            write.get(5, TimeUnit.SECONDS);
+            fail("Write should fail");
+        } catch (ExecutionException e) {
+            //expected
+        }
+    }
+}